@@ -0,0 +1,63 @@
+package sir.barchable.clash.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static sir.barchable.clash.model.ObjectType.*;
+
+/**
+ * Game logic lookups, by type id and by type name.
+ * <p>
+ * Reads the logic from the apk or directory named by <code>-Dlogic</code> if set. Otherwise it uses a made up table of
+ * buildings, the same shape as the real one.
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogicBenchmark {
+    private static final String[] COLUMNS = {"Name", "BuildTimeD", "BuildResource", "BuildCost", "Hitpoints", "Damage"};
+
+    private Logic logic;
+
+    @Setup
+    public void setUp() throws IOException {
+        String logicFile = System.getProperty("logic");
+        logic = logicFile != null ? LogicParser.loadLogic(new File(logicFile)) : syntheticLogic();
+    }
+
+    private static Logic syntheticLogic() {
+        List<Logic.Data> buildings = new ArrayList<>();
+        for (int id = TROOP_HOUSING; id <= AIR_BLASTER; id++) {
+            List<Object[]> levels = new ArrayList<>();
+            for (int level = 0; level < 12; level++) {
+                levels.add(new Object[] {
+                    level == 0 ? (id == CANNON ? "Cannon" : "Building" + (id % OID_RADIX)) : null,
+                    level, "Gold", 1000 * (level + 1), 400 + 50 * level, 10 + level
+                });
+            }
+            buildings.add(new Logic.Data(COLUMNS, levels));
+        }
+        Map<String, List<Logic.Data>> dataMap = new LinkedHashMap<>();
+        dataMap.put("buildings", buildings);
+        return new Logic(dataMap);
+    }
+
+    @Benchmark
+    public int getIntById() {
+        return logic.getInt(CANNON, "Hitpoints", 5);
+    }
+
+    @Benchmark
+    public int getIntByName() {
+        return logic.getInt("buildings:Cannon", "Hitpoints", 5);
+    }
+}
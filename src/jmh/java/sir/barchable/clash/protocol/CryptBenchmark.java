@@ -0,0 +1,97 @@
+package sir.barchable.clash.protocol;
+
+import org.openjdk.jmh.annotations.*;
+import sir.barchable.util.KeystreamBuffer;
+import sir.barchable.util.RC4;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream encryption and key setup. Clash7Crypt is measured generating keystream as it's used, a ring at a time, and
+ * on a prefetch thread.
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptBenchmark {
+    /**
+     * Bytes encrypted per call.
+     */
+    @Param({"64", "16384"})
+    int length;
+
+    private byte[] buffer;
+    private byte[] key;
+    private byte[] nonce;
+    private int seed;
+    private RC4 rc4;
+    private Clash7Crypt crypt;
+    private Clash7Crypt bulkCrypt;
+    private Clash7Crypt prefetchCrypt;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        buffer = new byte[length];
+        random.nextBytes(buffer);
+        key = new byte[32];
+        random.nextBytes(key);
+        nonce = new byte[24];
+        random.nextBytes(nonce);
+        seed = random.nextInt();
+        rc4 = new RC4(key);
+        crypt = new Clash7Crypt();
+        bulkCrypt = new Clash7Crypt(KeystreamBuffer.Mode.BULK);
+        prefetchCrypt = new Clash7Crypt(KeystreamBuffer.Mode.BACKGROUND);
+    }
+
+    @Benchmark
+    public byte[] rc4Encrypt() {
+        rc4.encrypt(buffer, 0, buffer.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] clash7Encrypt() {
+        crypt.encrypt(buffer, 0, buffer.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] clash7EncryptBulk() {
+        bulkCrypt.encrypt(buffer, 0, buffer.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] clash7EncryptPrefetch() {
+        prefetchCrypt.encrypt(buffer, 0, buffer.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public RC4 rc4SetKey() {
+        rc4.setKey(key);
+        return rc4;
+    }
+
+    @Benchmark
+    public Clash7Crypt clash7SetKey() {
+        crypt.setKey(nonce);
+        return crypt;
+    }
+
+    /**
+     * Key generation as it happens at login: seed a generator, then scramble the server's nonce.
+     */
+    @Benchmark
+    public byte[] scramble() {
+        return new Clash7Random(seed).scramble(nonce);
+    }
+}
@@ -0,0 +1,80 @@
+package sir.barchable.clash.protocol;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message decoding and encoding, by message type.
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageFactoryBenchmark {
+    @Param({"EnemyHomeData", "OwnHomeData", "AllianceStream", "EndClientTurn", "GlobalChatLine"})
+    Pdu.Type type;
+
+    /**
+     * Scale of the generated message.
+     */
+    @Param({"16", "256"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean lazy;
+
+    private MessageFactory messageFactory;
+    private byte[] payload;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        messageFactory = new MessageFactory(new TypeFactory());
+        messageFactory.setLazy(lazy);
+        MessageGenerator generator = new MessageGenerator(messageFactory, 1);
+        generator.setSize(size);
+        Pdu pdu = generator.generatePdu(type);
+        payload = pdu.getPayload();
+        pdu.release();
+        message = messageFactory.fromPdu(new Pdu(type.id(), payload));
+    }
+
+    /**
+     * Decode, then read every field, down through nested structs and arrays, so that lazy decoding does the same work.
+     */
+    @Benchmark
+    public void fromPdu(Blackhole blackhole) {
+        // A new PDU each time, because a PDU keeps the message read from it
+        Message message = messageFactory.fromPdu(new Pdu(type.id(), payload));
+        consume(message.getFields(), blackhole);
+    }
+
+    private static void consume(Object value, Blackhole blackhole) {
+        if (value instanceof Map) {
+            for (Object field : ((Map<?, ?>) value).values()) {
+                consume(field, blackhole);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                consume(element, blackhole);
+            }
+        } else {
+            blackhole.consume(value);
+        }
+    }
+
+    @Benchmark
+    public int toPdu() {
+        Pdu pdu = messageFactory.toPdu(message);
+        int length = pdu.getPayloadLength();
+        pdu.release();
+        return length;
+    }
+}
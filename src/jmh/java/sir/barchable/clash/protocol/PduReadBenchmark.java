@@ -0,0 +1,196 @@
+package sir.barchable.clash.protocol;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static sir.barchable.util.NoopCipher.NOOP_CIPHER;
+
+/**
+ * Reads into the source stream and allocation for byte-at-a-time PDU framing (the old PduInputStream) against
+ * {@link PduDecoder}, reading a session of mostly small PDUs with the occasional large one. Scores are per PDU.
+ * <p>
+ * Each read of the source stands in for a socket read. The {@link Reads} counters report the reads made and the PDUs
+ * read in each iteration, so reads per PDU is one over the other. Run with the GC profiler to see the bytes allocated
+ * per PDU (gc.alloc.rate.norm):
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec@jmh -Djmh.args="-prof gc PduReadBenchmark"
+ * </pre>
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(PduReadBenchmark.PDUS)
+public class PduReadBenchmark {
+    static final int PDUS = 1000;
+
+    private byte[] stream;
+
+    /**
+     * Reads made into the source stream, and PDUs read.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Reads {
+        public long reads;
+        public long pdus;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            reads = 0;
+            pdus = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        stream = sessionStream(PDUS);
+    }
+
+    /**
+     * The baseline: a read per header byte.
+     */
+    @Benchmark
+    public int byteAtATime(Reads reads) throws IOException {
+        LegacyReader reader = new LegacyReader(new CountingInputStream(new ByteArrayInputStream(stream), reads));
+        int length = 0;
+        for (int i = 0; i < PDUS; i++) {
+            length += reader.read().getPayloadLength();
+        }
+        reads.pdus += PDUS;
+        return length;
+    }
+
+    @Benchmark
+    public int decoderStream(Reads reads) throws IOException {
+        PduInputStream in = new PduInputStream(new CountingInputStream(new ByteArrayInputStream(stream), reads), NOOP_CIPHER);
+        return read(in, reads);
+    }
+
+    @Benchmark
+    public int decoderChannel(Reads reads) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(stream));
+        PduInputStream in = new PduInputStream(new CountingChannel(channel, reads), NOOP_CIPHER);
+        return read(in, reads);
+    }
+
+    private int read(PduInputStream in, Reads reads) throws IOException {
+        int length = 0;
+        for (int i = 0; i < PDUS; i++) {
+            Pdu pdu = in.read();
+            length += pdu.getPayloadLength();
+            pdu.release();
+        }
+        reads.pdus += PDUS;
+        return length;
+    }
+
+    /**
+     * A mix of small PDUs with the occasional large one.
+     */
+    private static byte[] sessionStream(int count) throws IOException {
+        Random random = new Random(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PduOutputStream out = new PduOutputStream(bytes, NOOP_CIPHER)) {
+            for (int i = 0; i < count; i++) {
+                Pdu pdu = new Pdu();
+                pdu.setId(14102);
+                byte[] payload = new byte[i % 100 == 0 ? 20000 : 20 + random.nextInt(100)];
+                random.nextBytes(payload);
+                pdu.setPayload(payload);
+                out.write(pdu);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The framing PduInputStream used before {@link PduDecoder}.
+     */
+    private static class LegacyReader {
+        private final InputStream in;
+
+        LegacyReader(InputStream in) {
+            this.in = in;
+        }
+
+        Pdu read() throws IOException {
+            Pdu pdu = new Pdu();
+            pdu.setId(readUInt2());
+            int length = in.read() << 16 | in.read() << 8 | in.read();
+            pdu.setVersion(readUInt2());
+            byte[] payload = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int count = in.read(payload, n, length - n);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                n += count;
+            }
+            pdu.setPayload(NOOP_CIPHER.encrypt(payload));
+            return pdu;
+        }
+
+        private int readUInt2() throws IOException {
+            return in.read() << 8 | in.read();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final Reads reads;
+
+        CountingInputStream(InputStream in, Reads reads) {
+            super(in);
+            this.reads = reads;
+        }
+
+        @Override
+        public int read() throws IOException {
+            reads.reads++;
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads.reads++;
+            return super.read(b, off, len);
+        }
+    }
+
+    private static class CountingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        private final Reads reads;
+
+        CountingChannel(ReadableByteChannel channel, Reads reads) {
+            this.channel = channel;
+            this.reads = reads;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            reads.reads++;
+            return channel.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
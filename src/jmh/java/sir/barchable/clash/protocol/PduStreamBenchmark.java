@@ -0,0 +1,88 @@
+package sir.barchable.clash.protocol;
+
+import org.openjdk.jmh.annotations.*;
+import sir.barchable.util.Cipher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static sir.barchable.util.BitBucket.NOWHERE;
+import static sir.barchable.util.NoopCipher.NOOP_CIPHER;
+
+/**
+ * PDU framing, reading and writing a session's worth of generated messages of every type.
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PduStreamBenchmark {
+    /**
+     * Scale of the generated messages.
+     */
+    @Param({"16", "256"})
+    int size;
+
+    /**
+     * Whether the stream is encrypted.
+     */
+    @Param({"false", "true"})
+    boolean encrypted;
+
+    private Pdu[] pdus;
+    private byte[] stream;
+
+    @Setup
+    public void setUp() throws IOException {
+        MessageGenerator generator = new MessageGenerator(new MessageFactory(new TypeFactory()), 1);
+        generator.setSize(size);
+        List<Pdu> session = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            for (Pdu.Type type : generator.getMessageTypes()) {
+                session.add(generator.generatePdu(type));
+            }
+        }
+        pdus = session.toArray(new Pdu[session.size()]);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PduOutputStream out = new PduOutputStream(bytes, cipher())) {
+            for (Pdu pdu : pdus) {
+                out.write(pdu);
+            }
+        }
+        stream = bytes.toByteArray();
+    }
+
+    private Cipher cipher() {
+        return encrypted ? new Clash7Crypt() : NOOP_CIPHER;
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        PduInputStream in = new PduInputStream(new ByteArrayInputStream(stream), cipher());
+        int length = 0;
+        for (int i = 0; i < pdus.length; i++) {
+            Pdu pdu = in.read();
+            length += pdu.getPayloadLength();
+            pdu.release();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        PduOutputStream out = new PduOutputStream(NOWHERE, cipher());
+        for (Pdu pdu : pdus) {
+            out.write(pdu);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,47 @@
+package sir.barchable.clash.protocol;
+
+import org.openjdk.jmh.annotations.*;
+import sir.barchable.util.Json;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inflating zipped village JSON, the largest field most messages carry. This is the read that
+ * {@link MessageReader} makes for ZIP_STRING fields.
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipStringBenchmark {
+    /**
+     * Roughly the number of buildings in the village.
+     */
+    @Param({"16", "256"})
+    int size;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        MessageGenerator generator = new MessageGenerator(new MessageFactory(new TypeFactory()), 1);
+        generator.setSize(size);
+        String village = Json.toString(generator.village());
+        MessageSizer sizer = new MessageSizer();
+        sizer.writeZipString(village);
+        payload = new byte[sizer.size()];
+        PayloadOutputStream out = new PayloadOutputStream(payload, 0, payload.length);
+        out.writeZipString(village);
+        out.flush();
+    }
+
+    @Benchmark
+    public String readZipString() throws IOException {
+        return new PayloadInputStream(payload, 0, payload.length).readZipString();
+    }
+}
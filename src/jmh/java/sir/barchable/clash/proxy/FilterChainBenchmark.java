@@ -0,0 +1,102 @@
+package sir.barchable.clash.proxy;
+
+import org.openjdk.jmh.annotations.*;
+import sir.barchable.clash.AttackAnalyzer;
+import sir.barchable.clash.VillageAnalyzer;
+import sir.barchable.clash.model.Logic;
+import sir.barchable.clash.model.LogicParser;
+import sir.barchable.clash.protocol.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static sir.barchable.clash.protocol.Pdu.Type.*;
+
+/**
+ * The proxy's filter chain: the login key tap, then the village and attack analyzers.
+ * <p>
+ * The analyzers need the game logic, which isn't in the repository. Point <code>-Dlogic</code> at the apk or the
+ * logic directory to run them. Without it a tap that reads the same messages, and does nothing with them, stands in
+ * for the analyzers, so the decoding is still measured.
+ *
+ * @author Sir Barchable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterChainBenchmark {
+    private static final Pdu.Type[] SESSION = {
+        Login, Encryption, LoginOk, OwnHomeData, KeepAlive, ServerKeepAlive, GlobalChatLine, AllianceStream,
+        EnemyHomeData, EndClientTurn, EnemyHomeData, EndClientTurn, VisitHome, VisitedHomeData, KeepAlive,
+        ServerKeepAlive, WarHomeData, EndClientTurn, OwnHomeData
+    };
+
+    /**
+     * Scale of the generated messages.
+     */
+    @Param({"16", "256"})
+    int size;
+
+    private PduFilter chain;
+    private int[] ids;
+    private byte[][] payloads;
+
+    @Setup
+    public void setUp() throws IOException {
+        MessageFactory messageFactory = new MessageFactory(new TypeFactory());
+        MessageGenerator generator = new MessageGenerator(messageFactory, 1);
+        generator.setSize(size);
+        ids = new int[SESSION.length];
+        payloads = new byte[SESSION.length][];
+        for (int i = 0; i < SESSION.length; i++) {
+            Pdu pdu = generator.generatePdu(SESSION[i]);
+            ids[i] = pdu.getId();
+            payloads[i] = pdu.getPayload();
+            pdu.release();
+        }
+
+        List<TypedMessageTap> taps = new ArrayList<>();
+        String logicFile = System.getProperty("logic");
+        if (logicFile != null) {
+            Logic logic = LogicParser.loadLogic(new File(logicFile));
+            taps.add(new VillageAnalyzer(logic));
+            taps.add(new AttackAnalyzer(logic));
+        } else {
+            taps.add(new TypedMessageTap() {
+                private final Projection projection = Projection
+                    .of(OwnHomeData).and(VisitedHomeData).and(EnemyHomeData).and(WarHomeData).and(EndClientTurn);
+
+                @Override
+                public void onMessage(TypedMessage message) {
+                }
+
+                @Override
+                public Projection getProjection() {
+                    return projection;
+                }
+            });
+        }
+
+        chain = new PduFilterChain(
+            new MessageTapFilter(messageFactory, new KeyTap()),
+            new TypedMessageTapFilter(messageFactory, taps.toArray(new TypedMessageTap[taps.size()]))
+        );
+    }
+
+    @Benchmark
+    public int filter() throws IOException {
+        int length = 0;
+        for (int i = 0; i < ids.length; i++) {
+            // A new PDU each time, because a PDU keeps the message read from it
+            Pdu pdu = chain.filter(new Pdu(ids[i], payloads[i]));
+            length += pdu.getPayloadLength();
+        }
+        return length;
+    }
+}
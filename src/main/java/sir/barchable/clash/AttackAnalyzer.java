@@ -6,9 +6,16 @@ import sir.barchable.clash.model.Logic;
 import sir.barchable.clash.model.LootCalculator.Loot;
 import sir.barchable.clash.model.LootCalculator.LootCollection;
 import sir.barchable.clash.model.SessionState;
-import sir.barchable.clash.protocol.Message;
-import sir.barchable.clash.proxy.MessageTap;
+import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.Projection;
+import sir.barchable.clash.protocol.TypedMessage;
+import sir.barchable.clash.protocol.typed.CommandComponent;
+import sir.barchable.clash.protocol.typed.EndClientTurn;
+import sir.barchable.clash.protocol.typed.EnemyHomeData;
+import sir.barchable.clash.protocol.typed.ResourceComponent;
+import sir.barchable.clash.protocol.typed.ResourceListComponent;
 import sir.barchable.clash.proxy.ProxySession;
+import sir.barchable.clash.proxy.TypedMessageTap;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -19,10 +26,15 @@ import java.util.Map;
  * @author Sir Barchable
  *         Date: 11/05/15
  */
-public class AttackAnalyzer implements MessageTap {
+public class AttackAnalyzer implements TypedMessageTap {
     private static final Logger log = LoggerFactory.getLogger(AttackAnalyzer.class);
     public static final String ATTACK_STATE_KEY = "attack.state";
 
+    private static final Projection PROJECTION = Projection
+        .of(Pdu.Type.EnemyHomeData)
+        .and(Pdu.Type.OwnHomeData)
+        .and(Pdu.Type.EndClientTurn);
+
     private Logic logic;
     private VillageAnalyzer villageAnalyzer;
 
@@ -32,12 +44,17 @@ public class AttackAnalyzer implements MessageTap {
     }
 
     @Override
-    public void onMessage(Message message) {
+    public Projection getProjection() {
+        return PROJECTION;
+    }
+
+    @Override
+    public void onMessage(TypedMessage message) {
         try{
             switch (message.getType()) {
                 case EnemyHomeData:
                     // Set up for attack
-                    setup(message.getMessage("attackerResources"));
+                    setup(((EnemyHomeData) message).attackerResources);
                     break;
 
                 case OwnHomeData:
@@ -48,7 +65,7 @@ public class AttackAnalyzer implements MessageTap {
 
                 case EndClientTurn:
                     // Add up the cost of troops/spells used during the attack
-                    accumulateCost(message.getArray("commands"));
+                    accumulateCost(((EndClientTurn) message).commands);
                     break;
             }
         } catch (Exception e) {
@@ -63,15 +80,18 @@ public class AttackAnalyzer implements MessageTap {
      *
      * @param commands an array of EndClientTurn commands (non troop placement commands will be ignored)
      */
-    private void accumulateCost(Message[] commands) {
+    private void accumulateCost(CommandComponent[] commands) {
         SessionState state = ProxySession.getSession().getSessionState();
         AttackState attackState = (AttackState) state.getAttribute(ATTACK_STATE_KEY);
         if (attackState != null) {
-            for (Message command : commands) {
-                switch (command.getInt("id")) {
+            for (CommandComponent command : commands) {
+                switch (command.id) {
                     case 600: // Place attacker
+                        attackState.accumulateCost(command.extension600.typeId);
+                        break;
+
                     case 604: // Cast spell
-                        attackState.accumulateCost(command.getInt("typeId"));
+                        attackState.accumulateCost(command.extension604.typeId);
                         break;
 
                     case 700: // Next
@@ -85,7 +105,7 @@ public class AttackAnalyzer implements MessageTap {
     /**
      * @param resources resources before attack
      */
-    private void setup(Message resources) {
+    private void setup(ResourceListComponent resources) {
         SessionState state = ProxySession.getSession().getSessionState();
         AttackState attackState = (AttackState) state.getAttribute(ATTACK_STATE_KEY);
         if (attackState == null) {
@@ -94,14 +114,12 @@ public class AttackAnalyzer implements MessageTap {
             Map<Integer, Integer> levelMap = new HashMap<>();
 
             // Save unit levels for cost calculations. Levels default to 0 if not set.
-            Message[] troopLevels = resources.getArray("unitLevels");
-            for (Message troopLevel : troopLevels) {
-                levelMap.put(troopLevel.getInt("type"), troopLevel.getInt("value"));
+            for (ResourceComponent troopLevel : resources.unitLevels) {
+                levelMap.put(troopLevel.type, troopLevel.value);
             }
 
-            Message[] spellLevels = resources.getArray("spellLevels");
-            for (Message spellLevel : spellLevels) {
-                levelMap.put(spellLevel.getInt("type"), spellLevel.getInt("value"));
+            for (ResourceComponent spellLevel : resources.spellLevels) {
+                levelMap.put(spellLevel.type, spellLevel.value);
             }
 
             int matchCost = logic.getInt("townhall_levels:" + state.getTownHallLevel(), "AttackCost");
@@ -114,7 +132,7 @@ public class AttackAnalyzer implements MessageTap {
     /**
      * @param resources resources after attack
      */
-    private void summarize(Message resources) {
+    private void summarize(ResourceListComponent resources) {
         SessionState state = ProxySession.getSession().getSessionState();
         AttackState attackState = (AttackState) state.getAttribute(ATTACK_STATE_KEY);
         if (attackState != null) {
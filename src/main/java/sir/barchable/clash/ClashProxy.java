@@ -5,7 +5,8 @@ import org.slf4j.LoggerFactory;
 import sir.barchable.clash.protocol.Connection;
 import sir.barchable.clash.proxy.MessageSaver;
 import sir.barchable.clash.proxy.MessageLogger;
-import sir.barchable.clash.proxy.MessageTapFilter;
+import sir.barchable.clash.proxy.TypedMessageTapFilter;
+import sir.barchable.clash.proxy.NioProxy;
 import sir.barchable.clash.proxy.PduFilterChain;
 import sir.barchable.clash.proxy.ProxySession;
 import sir.barchable.util.Dns;
@@ -16,8 +17,11 @@ import java.io.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -53,9 +57,20 @@ public class ClashProxy {
      */
     private InetAddress serverAddress;
 
+    /**
+     * Command line config.
+     */
+    private final Main.ProxyCommand command;
+
+    /**
+     * The non-blocking engine, if selected.
+     */
+    private NioProxy nioProxy;
+
     public ClashProxy(ClashServices services, Main.ProxyCommand command) throws IOException {
 
         this.services = services;
+        this.command = command;
 
         //
         // Look up the server using an external DNS because the internal one is probably being used to redirect
@@ -79,12 +94,15 @@ public class ClashProxy {
         // This filter prints stuff
         //
         MessageLogger logger = new MessageLogger(new OutputStreamWriter(System.out));
-        filterChain = filterChain.addAfter(new MessageTapFilter(
+        filterChain = filterChain.addAfter(new TypedMessageTapFilter(
             services.getMessageFactory(),
             new VillageAnalyzer(services.getLogic()),
             new AttackAnalyzer(services.getLogic())
-//            logger.tapFor(WarHomeData, "warVillage")
         ));
+//        filterChain = filterChain.addAfter(new MessageTapFilter(
+//            services.getMessageFactory(),
+//            logger.tapFor(WarHomeData, "warVillage")
+//        ));
 
 
 
@@ -108,6 +126,11 @@ public class ClashProxy {
         // Clean-up thread
         Runtime.getRuntime().addShutdownHook(new Thread((this::shutdownNow)));
 
+        if (command.getNio()) {
+            runNio();
+            return;
+        }
+
         try (ServerSocket listener = new ServerSocket(CLASH_PORT)) {
             log.info("Listening on {}", CLASH_PORT);
             while (running.get()) {
@@ -123,6 +146,41 @@ public class ClashProxy {
         }
     }
 
+    /**
+     * Accept connections and hand them off to the {@link NioProxy} event loops.
+     */
+    private void runNio() throws IOException {
+        nioProxy = new NioProxy(
+            services.getMessageFactory(),
+            new InetSocketAddress(serverAddress, CLASH_PORT),
+            filterChain,
+            command.getThreads(),
+            VillageAnalyzer::logSession
+        );
+        nioProxy.setTransparent(command.getTransparent());
+        nioProxy.setPrefetch(command.getKeystreamPrefetch());
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(CLASH_PORT));
+            log.info("Listening on {} with {} event loops", CLASH_PORT, command.getThreads());
+            while (running.get()) {
+                SocketChannel channel = listener.accept();
+                if (running.get()) {
+                    try {
+                        nioProxy.accept(channel);
+                    } catch (IOException e) {
+                        log.info("Could not proxy connection from {}: {}", channel.socket().getInetAddress(), e.toString());
+                        channel.close();
+                    }
+                } else {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Terminated with exception: {}", e.toString());
+        }
+    }
+
     /**
      * Accept a connection from a client and proxy it to the server. Will block until processing completes (typically
      * because the client closes its connection to us).
@@ -133,9 +191,11 @@ public class ClashProxy {
         log.info("Client connected from {}", socket.getInetAddress());
         try {
             try (
-                Connection clientConnection = new Connection(socket);
-                Connection serverConnection = new Connection(new Socket(this.serverAddress, CLASH_PORT))
+                Connection clientConnection = new Connection(socket, command.getKeystreamPrefetch());
+                Connection serverConnection = new Connection(new Socket(this.serverAddress, CLASH_PORT), command.getKeystreamPrefetch())
             ) {
+                clientConnection.setTransparent(command.getTransparent());
+                serverConnection.setTransparent(command.getTransparent());
                 ProxySession session = ProxySession.newSession(
                     services.getMessageFactory(), clientConnection, serverConnection, filterChain
                 );
@@ -157,6 +217,10 @@ public class ClashProxy {
         if (running.compareAndSet(true, false)) {
             log.info("Exiting...");
 
+            if (nioProxy != null) {
+                nioProxy.shutdown();
+            }
+
             executor.shutdownNow();
             try {
                 executor.awaitTermination(5, TimeUnit.SECONDS);
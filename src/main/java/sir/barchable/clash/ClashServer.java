@@ -75,7 +75,7 @@ public class ClashServer {
         log.info("Client connected from {}", socket.getInetAddress());
         try {
             try (
-                Connection clientConnection = new Connection(socket);
+                Connection clientConnection = new Connection(socket, command.getKeystreamPrefetch());
             ) {
                 ServerSession session = ServerSession.newSession(services, clientConnection, command);
                 log.info("Client {} disconnected", socket);
@@ -34,6 +34,7 @@ public class ClashServices {
 
         TypeFactory typeFactory;
         if (env.getResourceDir() != null) {
+            // Definitions under development. There's no snapshot of these, so they're parsed on each start.
             typeFactory = new TypeFactory(new ProtocolTool(env.getResourceDir()).read());
         } else {
             typeFactory = new TypeFactory();
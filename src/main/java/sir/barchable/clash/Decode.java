@@ -1,16 +1,21 @@
 package sir.barchable.clash;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.CaptureIndex;
 import sir.barchable.clash.protocol.Connection;
 import sir.barchable.clash.protocol.Message;
 import sir.barchable.clash.protocol.Pdu;
 import sir.barchable.clash.protocol.PduException;
 import sir.barchable.clash.proxy.MessageLogger;
 import sir.barchable.clash.proxy.MessageTapFilter;
+import sir.barchable.clash.proxy.TypedMessageTapFilter;
 import sir.barchable.clash.proxy.ProxySession;
 import sir.barchable.util.Hex;
 import sir.barchable.util.Json;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static sir.barchable.util.BitBucket.NOWHERE;
@@ -21,6 +26,8 @@ import static sir.barchable.util.BitBucket.NOWHERE;
  * @author Sir Barchable
  */
 public class Decode {
+    private static final Logger log = LoggerFactory.getLogger(Decode.class);
+
     private ClashServices services;
     private Main.DecodeCommand command;
     private final File workingDir;
@@ -49,6 +56,9 @@ public class Decode {
      * <i>server.stream</i>, containing raw tcp stream captures from a clash session.
      * <p>
      * Capture: <code>tcpflow port 9339</code>
+     * <p>
+     * If asked for, a {@link CaptureIndex} is written alongside each stream, so that later tools can decrypt from part
+     * way through.
      * @param clientOut where to write the decoded client stream
      * @param serverOut where to write the decoded server stream
      */
@@ -57,22 +67,47 @@ public class Decode {
         Dumper serverDumper = new Dumper(Pdu.Origin.Server, serverOut);
         File clientFile = new File(workingDir, "client.stream");
         File serverFile = new File(workingDir, "server.stream");
+        TypedMessageTapFilter analyzerFilter = new TypedMessageTapFilter(
+            services.getMessageFactory(),
+            new VillageAnalyzer(services.getLogic())
+        );
         MessageTapFilter tapFilter = new MessageTapFilter(
             services.getMessageFactory(),
-            new VillageAnalyzer(services.getLogic()),
             new MessageLogger(new OutputStreamWriter(System.out)).tapFor(Pdu.Type.WarHomeData, "warVillage")
         );
         try (
+            CaptureIndex.Writer clientIndex = openIndex(clientFile);
+            CaptureIndex.Writer serverIndex = openIndex(serverFile);
             // Client connection
-            Connection clientConnection = new Connection("Client", new FileInputStream(clientFile), NOWHERE);
+            Connection clientConnection = new Connection("Client", FileChannel.open(clientFile.toPath()), NOWHERE);
             // Server connection
-            Connection serverConnection = new Connection("Server", new FileInputStream(serverFile), NOWHERE)
+            Connection serverConnection = new Connection("Server", FileChannel.open(serverFile.toPath()), NOWHERE)
         ) {
-            ProxySession session = ProxySession.newSession(services.getMessageFactory(), clientConnection, serverConnection, clientDumper::dump, serverDumper::dump, tapFilter);
+            clientConnection.getIn().setCheckpointWriter(clientIndex);
+            serverConnection.getIn().setCheckpointWriter(serverIndex);
+            ProxySession session = ProxySession.newSession(services.getMessageFactory(), clientConnection, serverConnection, clientDumper::dump, serverDumper::dump, analyzerFilter, tapFilter);
             VillageAnalyzer.logSession(session);
         }
     }
 
+    /**
+     * Open the index for a capture, if indexing was asked for.
+     *
+     * @return the index writer, or null to decode without one
+     */
+    private CaptureIndex.Writer openIndex(File capture) {
+        if (!command.getWriteIndex()) {
+            return null;
+        }
+        File indexFile = CaptureIndex.indexFileFor(capture);
+        try {
+            return new CaptureIndex.Writer(indexFile);
+        } catch (IOException e) {
+            log.warn("Can't write {}, decoding without an index: {}", indexFile, e.toString());
+            return null;
+        }
+    }
+
     /**
      * Formats and writes PDUs to an output stream.
      */
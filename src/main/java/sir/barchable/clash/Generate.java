@@ -0,0 +1,81 @@
+package sir.barchable.clash;
+
+import com.beust.jcommander.ParameterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.MessageGenerator;
+import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.PduOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static sir.barchable.util.NoopCipher.NOOP_CIPHER;
+
+/**
+ * Write corpora of random messages, one .pdu file per message type, for benchmarks that would otherwise need live
+ * captures. Each file holds the requested number of unencrypted PDUs, one after the other.
+ *
+ * @see MessageGenerator
+ * @author Sir Barchable
+ */
+public class Generate {
+    private static final Logger log = LoggerFactory.getLogger(Generate.class);
+
+    private ClashServices services;
+    private Main.GenerateCommand command;
+
+    public Generate(ClashServices services, Main.GenerateCommand command) {
+        this.services = services;
+        this.command = command;
+    }
+
+    public void run() throws IOException {
+        File outDir = command.getOutDir();
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Couldn't create " + outDir);
+        }
+
+        MessageGenerator generator = new MessageGenerator(services.getMessageFactory(), command.getSeed());
+        generator.setSize(command.getSize());
+
+        for (Pdu.Type type : types(generator)) {
+            File file = new File(outDir, type + ".pdu");
+            try (PduOutputStream out = new PduOutputStream(new FileOutputStream(file), NOOP_CIPHER)) {
+                for (int i = 0; i < command.getCount(); i++) {
+                    Pdu pdu = generator.generatePdu(type);
+                    try {
+                        out.write(pdu);
+                    } finally {
+                        pdu.release();
+                    }
+                }
+            }
+            log.info("Wrote {} {} messages to {}", command.getCount(), type, file);
+        }
+    }
+
+    private List<Pdu.Type> types(MessageGenerator generator) {
+        List<Pdu.Type> all = generator.getMessageTypes();
+        if (command.getTypes() == null) {
+            return all;
+        }
+        List<Pdu.Type> types = new ArrayList<>();
+        for (String name : command.getTypes()) {
+            Pdu.Type type;
+            try {
+                type = Pdu.Type.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("Unknown message type '" + name + "'");
+            }
+            if (!all.contains(type)) {
+                throw new ParameterException("No definition for message type '" + name + "'");
+            }
+            types.add(type);
+        }
+        return types;
+    }
+}
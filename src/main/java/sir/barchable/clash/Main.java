@@ -3,8 +3,10 @@ package sir.barchable.clash;
 import com.beust.jcommander.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sir.barchable.util.KeystreamBuffer;
 
 import java.io.*;
+import java.util.List;
 
 /**
  * Common entry point for the command line tools.
@@ -21,6 +23,7 @@ public class Main {
     private ServerCommand serverCommand = new ServerCommand();
     private DecodeCommand decodeCommand = new DecodeCommand();
     private LoadCommand loadCommand = new LoadCommand();
+    private GenerateCommand generateCommand = new GenerateCommand();
 
     @Parameters(commandDescription = "Run the clash proxy")
     public static class ProxyCommand {
@@ -33,6 +36,18 @@ public class Main {
         @Parameter(names = {"-n", "--name-server"}, description = "Name server to read up-stream server address from")
         private String nameServer = "8.8.8.8";
 
+        @Parameter(names = {"--nio"}, description = "Use the non-blocking proxy engine")
+        private boolean nio;
+
+        @Parameter(names = {"--threads"}, description = "Number of event loop threads for the non-blocking engine")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = {"--transparent"}, description = "Forward unmodified messages as the original ciphertext instead of re-encrypting them")
+        private boolean transparent;
+
+        @Parameter(names = {"--prefetch-keystream"}, description = "Generate the RC4 keystream ahead of use on a helper thread")
+        private boolean prefetchKeystream;
+
         public boolean getSave() {
             return save;
         }
@@ -42,6 +57,18 @@ public class Main {
         public String getNameServer() {
             return nameServer;
         }
+        public boolean getNio() {
+            return nio;
+        }
+        public int getThreads() {
+            return threads;
+        }
+        public boolean getTransparent() {
+            return transparent;
+        }
+        public KeystreamBuffer.Mode getKeystreamPrefetch() {
+            return prefetchKeystream ? KeystreamBuffer.Mode.BACKGROUND : null;
+        }
     }
 
     @Parameters(commandDescription = "Run the clash server")
@@ -55,6 +82,9 @@ public class Main {
         @Parameter(names = {"--war"}, description = "Attack war layouts")
         private boolean war;
 
+        @Parameter(names = {"--prefetch-keystream"}, description = "Generate the RC4 keystream ahead of use on a helper thread")
+        private boolean prefetchKeystream;
+
         public File getHomeFile() {
             return homeFile;
         }
@@ -66,6 +96,10 @@ public class Main {
         public boolean getWar() {
             return war;
         }
+
+        public KeystreamBuffer.Mode getKeystreamPrefetch() {
+            return prefetchKeystream ? KeystreamBuffer.Mode.BACKGROUND : null;
+        }
     }
 
     @Parameters(commandDescription = "Decode captured tcp dumps")
@@ -76,6 +110,9 @@ public class Main {
         @Parameter(names = {"-j", "--json"}, description = "Dump messages as json")
         private boolean dumpJson;
 
+        @Parameter(names = {"-x", "--index"}, description = "Write a cipher checkpoint index beside each capture")
+        private boolean writeIndex;
+
         public boolean getDumpHex() {
             return dumpHex;
         }
@@ -83,6 +120,10 @@ public class Main {
         public boolean getDumpJson() {
             return dumpJson;
         }
+
+        public boolean getWriteIndex() {
+            return writeIndex;
+        }
     }
 
     @Parameters(commandDescription = "Read/write PDU files")
@@ -95,6 +136,44 @@ public class Main {
         }
     }
 
+    @Parameters(commandDescription = "Generate random PDU files for benchmarks")
+    public static class GenerateCommand {
+        @Parameter(names = {"-o", "--out-dir"}, description = "Directory to write the PDU files to", required = true)
+        private File outDir;
+
+        @Parameter(names = {"-n", "--count"}, description = "Number of messages of each type")
+        private int count = 100;
+
+        @Parameter(names = {"--size"}, description = "Largest array and string length, and roughly the number of village buildings")
+        private int size = 16;
+
+        @Parameter(names = {"--seed"}, description = "Random seed")
+        private long seed = 1;
+
+        @Parameter(names = {"-t", "--type"}, description = "Message types to generate. All types if not set")
+        private List<String> types;
+
+        public File getOutDir() {
+            return outDir;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public List<String> getTypes() {
+            return types;
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         Main main = new Main();
         JCommander commander = new JCommander(main);
@@ -103,6 +182,7 @@ public class Main {
         commander.addCommand("server", main.serverCommand);
         commander.addCommand("dump", main.decodeCommand);
         commander.addCommand("load", main.loadCommand);
+        commander.addCommand("generate", main.generateCommand);
 
         try {
             commander.parse(args);
@@ -147,6 +227,11 @@ public class Main {
                 load.run();
                 break;
 
+            case "generate":
+                Generate generate = new Generate(services, generateCommand);
+                generate.run();
+                break;
+
             default:
                 throw new ParameterException("Unknown command '" + command + "'");
         }
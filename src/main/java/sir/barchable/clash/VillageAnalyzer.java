@@ -8,17 +8,18 @@ import sir.barchable.clash.model.LootCalculator.Loot;
 import sir.barchable.clash.model.LootCalculator.LootCollection;
 import sir.barchable.clash.model.json.Village;
 import sir.barchable.clash.model.json.WarVillage;
-import sir.barchable.clash.protocol.Message;
-import sir.barchable.clash.proxy.MessageTap;
+import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.Projection;
+import sir.barchable.clash.protocol.TypedMessage;
+import sir.barchable.clash.protocol.typed.*;
 import sir.barchable.clash.proxy.ProxySession;
+import sir.barchable.clash.proxy.TypedMessageTap;
 import sir.barchable.util.Dates;
-import sir.barchable.util.Json;
 
 import java.io.IOException;
 import java.util.*;
 
 import static java.lang.Math.min;
-import static sir.barchable.clash.protocol.Pdu.Type.OwnHomeData;
 
 /**
  * Sum hit-points, dps, and resources for a village.
@@ -26,10 +27,16 @@ import static sir.barchable.clash.protocol.Pdu.Type.OwnHomeData;
  * @author Sir Barchable
  *         Date: 20/04/15
  */
-public class VillageAnalyzer implements MessageTap {
+public class VillageAnalyzer implements TypedMessageTap {
     private static final Logger log = LoggerFactory.getLogger(VillageAnalyzer.class);
     public static final String CLAN_STATS_PREFIX = "clan.stats.";
 
+    private static final Projection PROJECTION = Projection
+        .of(Pdu.Type.OwnHomeData)
+        .and(Pdu.Type.VisitedHomeData)
+        .and(Pdu.Type.EnemyHomeData)
+        .and(Pdu.Type.WarHomeData);
+
     private Logic logic;
     private LootCalculator lootCalculator;
 
@@ -39,28 +46,32 @@ public class VillageAnalyzer implements MessageTap {
     }
 
     @Override
-    public void onMessage(Message message) {
-        String homeVillage = (String) message.get("homeVillage");
+    public Projection getProjection() {
+        return PROJECTION;
+    }
 
+    @Override
+    public void onMessage(TypedMessage message) {
         switch (message.getType()) {
             case OwnHomeData:
+                OwnHomeData ownHome = (OwnHomeData) message;
+                analyzeHomeVillage(message, ownHome.homeVillage, ownHome.age, ownHome.timeStamp, ownHome.user);
+                break;
+
             case VisitedHomeData:
+                VisitedHomeData visitedHome = (VisitedHomeData) message;
+                analyzeHomeVillage(message, visitedHome.homeVillage, visitedHome.age, 0, visitedHome.user);
+                break;
+
             case EnemyHomeData:
-                try {
-                    Village village = Json.valueOf(homeVillage, Village.class);
-                    if(village.respawnVars==null){
-                        village.respawnVars = new Village.RespawnVars();
-                    }
-                    analyzeHomeVillage(message, village);
-                } catch (RuntimeException | IOException e) {
-                    log.warn("Could not read village", e);
-                }
+                EnemyHomeData enemyHome = (EnemyHomeData) message;
+                analyzeHomeVillage(message, enemyHome.homeVillage, enemyHome.age, enemyHome.timeStamp, enemyHome.user);
                 break;
 
             case WarHomeData:
                 try {
-                    WarVillage village = Json.valueOf(homeVillage, WarVillage.class);
-                    analyzeWarVillage(message, village);
+                    WarVillage village = message.getModels().get("homeVillage", ((WarHomeData) message).homeVillage, WarVillage.class);
+                    analyzeWarVillage(village);
                 } catch (IOException e) {
                     log.warn("Could not read village", e);
                 }
@@ -68,20 +79,27 @@ public class VillageAnalyzer implements MessageTap {
         }
     }
 
-    private void analyzeHomeVillage(Message message, Village village) {
+    private void analyzeHomeVillage(TypedMessage message, String homeVillage, int age, int timeStamp, UserComponent user) {
+        try {
+            Village village = message.getModels().get("homeVillage", homeVillage, Village.class);
+            analyzeHomeVillage(message.getType(), village, age, timeStamp, user);
+        } catch (RuntimeException | IOException e) {
+            log.warn("Could not read village", e);
+        }
+    }
+
+    private void analyzeHomeVillage(Pdu.Type type, Village village, int age, int timeStamp, UserComponent user) {
         SessionState sessionState = ProxySession.getSession().getSessionState();
 
-        int age = message.getInt("age");
-        Integer timeStamp = message.getInt("timeStamp");
+        // The village is shared with other readers of the message, so don't fill in the gaps
+        Village.RespawnVars respawnVars = village.respawnVars != null ? village.respawnVars : new Village.RespawnVars();
 
-        Message user = message.getMessage("user");
-        String userName = user.getString("userName");
-        Long userId = user.getLong("userId");
+        String userName = user.userName;
+        long userId = user.userId;
 
-        Map<String, Object> clan = (Map<String, Object>) user.get("clan");
         String clanName = null;
-        if (clan != null) {
-            clanName = (String) clan.get("clanName");
+        if (user.clan != null) {
+            clanName = user.clan.clanName;
         }
 
         int townHallLevel = 0;
@@ -178,20 +196,20 @@ public class VillageAnalyzer implements MessageTap {
         //
 
         // TODO Need to parse buildings
-        // Message resources = message.getMessage("resources");
-        Message resources = null;
+        // ResourceListComponent resources = message.resources;
+        ResourceListComponent resources = null;
         LootCollection loot = sumStorage(resources).withCollectorLoot(
             new Loot(collectorTotals.get("Gold"), collectorTotals.get("Elixir"), collectorTotals.get("DarkElixir"))
         );
 
-        if (message.getType() == OwnHomeData) {
+        if (type == Pdu.Type.OwnHomeData) {
             if (sessionState.getUserId() == 0) {
                 log.info("Welcome {}", userName);
                 // OwnHomeData. Remember town hall level for loot calculations
                 sessionState.setUserId(userId);
                 // Log startup info
                 log.info("Clock skew is {}ms", System.currentTimeMillis() - timeStamp * 1000l);
-                log.info("Gem box time in period {}", Dates.formatInterval(village.respawnVars.time_in_gembox_period));
+                log.info("Gem box time in period {}", Dates.formatInterval(respawnVars.time_in_gembox_period));
             }
             sessionState.setUserName(userName);
             sessionState.setTownHallLevel(townHallLevel);
@@ -223,7 +241,7 @@ public class VillageAnalyzer implements MessageTap {
         // Dump stats
         //
 
-        int timeToGemboxDrop = Math.max(0,village.respawnVars.time_to_gembox_drop);
+        int timeToGemboxDrop = Math.max(0, respawnVars.time_to_gembox_drop);
 
         log.info("{}", userName);
         log.info("Gem box drop {}", Dates.formatIntervalToDayString(timeToGemboxDrop));
@@ -236,7 +254,7 @@ public class VillageAnalyzer implements MessageTap {
         log.info("Collectors: {}", loot.getCollectorLoot());
         log.info("Total: {}", loot.total());
 
-        if (message.getType() != OwnHomeData) {
+        if (type != Pdu.Type.OwnHomeData) {
             // Apply raid penalty
             if (sessionState.getTownHallLevel() == 0) {
                 log.warn("User town hall level not set, can't calculate loot penalty.");
@@ -261,7 +279,7 @@ public class VillageAnalyzer implements MessageTap {
         }
     }
 
-    public LootCollection sumStorage(Message resources) {
+    public LootCollection sumStorage(ResourceListComponent resources) {
         Map<String, Integer> storageTotals = new LinkedHashMap<>();
         storageTotals.put("Elixir", 0);
         storageTotals.put("Gold", 0);
@@ -271,12 +289,9 @@ public class VillageAnalyzer implements MessageTap {
         storageTotals.put("WarDarkElixir", 0);
 
         if (resources != null) {
-            Message[] resourceCounts = resources.getArray("resourceCounts");
-            for (Message resourceCount : resourceCounts) {
-                int typeId = resourceCount.getInt("type");
-                String storageType = logic.getSubTypeName(typeId);
-                int resourceValue = resourceCount.getInt("value");
-                storageTotals.put(storageType, resourceValue);
+            for (ResourceComponent resourceCount : resources.resourceCounts) {
+                String storageType = logic.getSubTypeName(resourceCount.type);
+                storageTotals.put(storageType, resourceCount.value);
             }
         }
 
@@ -291,7 +306,7 @@ public class VillageAnalyzer implements MessageTap {
         );
     }
 
-    private void analyzeWarVillage(Message message, WarVillage village) {
+    private void analyzeWarVillage(WarVillage village) {
         SessionState sessionState = ProxySession.getSession().getSessionState();
 
         long homeId = (long) village.avatar_id_high << 32 | village.avatar_id_low & 0xffffffffl;
@@ -5,7 +5,6 @@ import org.slf4j.LoggerFactory;
 import sir.barchable.clash.model.json.Village;
 import sir.barchable.clash.model.json.WarVillage;
 import sir.barchable.clash.server.LogicException;
-import sir.barchable.util.Json;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -20,14 +19,6 @@ import java.util.List;
 public class LayoutManager {
     private static final Logger log = LoggerFactory.getLogger(LayoutManager.class);
 
-    public WarVillage loadWarVillage(String villageJson) throws IOException {
-        return Json.valueOf(villageJson, WarVillage.class);
-    }
-
-    public Village loadVillage(String villageJson) throws IOException {
-        return Json.valueOf(villageJson, Village.class);
-    }
-
     /**
      * Update coordinates in the village JSON description to the war layout.
      *
@@ -0,0 +1,220 @@
+package sir.barchable.clash.protocol;
+
+import sir.barchable.util.Cipher;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Side index for a captured PDU stream, allowing decryption to start part way through.
+ * <p>
+ * The stream cipher's state depends on every byte before it, so normally a capture can only be decrypted from the
+ * start. The index records the stream offset of a PDU and the cipher state before its payload at regular intervals,
+ * so that a reader can start from the nearest checkpoint at or before the PDU it wants. The first PDU after a re-key
+ * is always checkpointed, so getting from a checkpoint to a PDU never crosses a key change.
+ * <p>
+ * The file holds a magic number and version, then one entry per checkpoint: PDU number (long), stream offset (long),
+ * state length (unsigned short) and the exported cipher state.
+ *
+ * @author Sir Barchable
+ */
+public class CaptureIndex {
+    private static final int MAGIC = 0x43494458; // "CIDX"
+    private static final int VERSION = 1;
+
+    /**
+     * Checkpoint at least every this many PDUs...
+     */
+    public static final int DEFAULT_PDU_INTERVAL = 1000;
+
+    /**
+     * ...or this many bytes, whichever comes first.
+     */
+    public static final long DEFAULT_BYTE_INTERVAL = 16 * 1024 * 1024;
+
+    private final List<Checkpoint> checkpoints;
+
+    private CaptureIndex(List<Checkpoint> checkpoints) {
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * The conventional index file for a capture: the capture's name with an <i>.idx</i> suffix.
+     */
+    public static File indexFileFor(File capture) {
+        return new File(capture.getPath() + ".idx");
+    }
+
+    public static CaptureIndex load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return load(in);
+        }
+    }
+
+    public static CaptureIndex load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new PduException("Not a capture index");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new PduException("Unsupported capture index version " + version);
+        }
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        while (true) {
+            long pduNumber;
+            try {
+                pduNumber = data.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            long offset = data.readLong();
+            byte[] state = new byte[data.readUnsignedShort()];
+            data.readFully(state);
+            checkpoints.add(new Checkpoint(pduNumber, offset, state));
+        }
+        return new CaptureIndex(Collections.unmodifiableList(checkpoints));
+    }
+
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Find the last checkpoint at or before a PDU.
+     *
+     * @return the checkpoint, or null if there isn't one
+     */
+    public Checkpoint floor(long pduNumber) {
+        int lo = 0;
+        int hi = checkpoints.size() - 1;
+        Checkpoint floor = null;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Checkpoint checkpoint = checkpoints.get(mid);
+            if (checkpoint.pduNumber <= pduNumber) {
+                floor = checkpoint;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Open a capture positioned at a PDU, using a new {@link Clash7Crypt}.
+     *
+     * @param capture the capture the index was built from
+     * @param pduNumber the zero based number of the first PDU to read
+     * @return a stream whose next {@link PduInputStream#read() read} returns the PDU
+     */
+    public PduInputStream open(FileChannel capture, long pduNumber) throws IOException {
+        return open(capture, pduNumber, new Clash7Crypt());
+    }
+
+    /**
+     * Open a capture positioned at a PDU.
+     *
+     * @param capture the capture the index was built from
+     * @param pduNumber the zero based number of the first PDU to read
+     * @param cipher a cipher of the same type that built the index. Its state is replaced.
+     * @return a stream whose next {@link PduInputStream#read() read} returns the PDU
+     */
+    public PduInputStream open(FileChannel capture, long pduNumber, Cipher cipher) throws IOException {
+        Checkpoint checkpoint = floor(pduNumber);
+        if (checkpoint == null) {
+            throw new PduException("No checkpoint at or before PDU " + pduNumber);
+        }
+        capture.position(checkpoint.offset);
+        cipher.importState(checkpoint.state);
+        PduInputStream in = new PduInputStream(capture, cipher);
+        for (long i = checkpoint.pduNumber; i < pduNumber; i++) {
+            in.read().release();
+        }
+        return in;
+    }
+
+    public static class Checkpoint {
+        private final long pduNumber;
+        private final long offset;
+        private final byte[] state;
+
+        private Checkpoint(long pduNumber, long offset, byte[] state) {
+            this.pduNumber = pduNumber;
+            this.offset = offset;
+            this.state = state;
+        }
+
+        /**
+         * The zero based number of the PDU in the stream.
+         */
+        public long getPduNumber() {
+            return pduNumber;
+        }
+
+        /**
+         * The offset of the PDU's header in the stream.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * The cipher state before the PDU's payload.
+         */
+        public byte[] getState() {
+            return state.clone();
+        }
+    }
+
+    /**
+     * Builds an index as a stream is read. Attach to a {@link PduInputStream} with
+     * {@link PduInputStream#setCheckpointWriter}.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int pduInterval;
+        private final long byteInterval;
+        private long lastPdu;
+        private long lastOffset;
+        private boolean started;
+
+        public Writer(File file) throws IOException {
+            this(new BufferedOutputStream(new FileOutputStream(file)), DEFAULT_PDU_INTERVAL, DEFAULT_BYTE_INTERVAL);
+        }
+
+        public Writer(OutputStream out, int pduInterval, long byteInterval) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.pduInterval = pduInterval;
+            this.byteInterval = byteInterval;
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+        }
+
+        /**
+         * Called as each PDU is framed, before its payload is decrypted. Writes a checkpoint for the first PDU, when
+         * forced, and whenever an interval has passed.
+         */
+        void pdu(long pduNumber, long offset, Cipher cipher, boolean force) throws IOException {
+            if (!started || force || pduNumber - lastPdu >= pduInterval || offset - lastOffset >= byteInterval) {
+                byte[] state = cipher.exportState();
+                out.writeLong(pduNumber);
+                out.writeLong(offset);
+                out.writeShort(state.length);
+                out.write(state);
+                started = true;
+                lastPdu = pduNumber;
+                lastOffset = offset;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
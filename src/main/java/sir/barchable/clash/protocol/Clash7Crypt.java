@@ -1,14 +1,18 @@
 package sir.barchable.clash.protocol;
 
 import sir.barchable.util.Cipher;
+import sir.barchable.util.KeystreamBuffer;
 import sir.barchable.util.RC4;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Clash 7.1 packet cipher. RC4.
+ * <p>
+ * Optionally generates keystream ahead of use with a {@link KeystreamBuffer}. The output is the same either way.
  *
  * @author Sir Barchable
  */
@@ -18,15 +22,52 @@ public class Clash7Crypt implements Cipher {
     // The initial nonce is literally "nonce"
     private static final byte[] INITIAL_NONCE = "nonce".getBytes(UTF_8);
 
+    private final KeystreamBuffer.Mode prefetch;
+
     private RC4 rc4;
 
+    /**
+     * Prefetched keystream, if prefetching.
+     */
+    private KeystreamBuffer keystream;
+
     public Clash7Crypt() {
+        this(null);
+    }
+
+    /**
+     * @param prefetch how to generate keystream ahead of use, or null to generate it as it's used
+     */
+    public Clash7Crypt(KeystreamBuffer.Mode prefetch) {
+        this.prefetch = prefetch;
         setKey(INITIAL_NONCE);
     }
 
     @Override
-    public byte[] encrypt(byte[] b) {
-        return rc4.encrypt(b);
+    public void encrypt(byte[] b, int off, int len) {
+        if (keystream != null) {
+            keystream.encrypt(b, off, len);
+        } else {
+            rc4.encrypt(b, off, len);
+        }
+    }
+
+    @Override
+    public void encrypt(ByteBuffer buffer) {
+        if (keystream != null) {
+            keystream.encrypt(buffer);
+        } else {
+            rc4.encrypt(buffer);
+        }
+    }
+
+    @Override
+    public void skip(int length) {
+        if (keystream != null) {
+            keystream.skip(length);
+        } else {
+            rc4.skip(length);
+        }
     }
 
     @Override
@@ -34,6 +75,34 @@ public class Clash7Crypt implements Cipher {
         byte[] key = concat(BASE_KEY, nonce);
         rc4 = new RC4(key);
         rc4.skip(key.length);
+        if (keystream != null) {
+            keystream.close();
+            keystream = null;
+        }
+        if (prefetch != null) {
+            keystream = new KeystreamBuffer(rc4, prefetch);
+        }
+    }
+
+    /**
+     * The RC4 state. Not available while prefetching, because the generator has already run ahead of the output.
+     */
+    @Override
+    public byte[] exportState() {
+        if (keystream != null) {
+            throw new UnsupportedOperationException("Can't export the state of a prefetching cipher");
+        }
+        return rc4.getState();
+    }
+
+    @Override
+    public void importState(byte[] state) {
+        // A fresh generator, because a prefetch thread may still be running on the old one
+        rc4 = RC4.fromState(state);
+        if (keystream != null) {
+            keystream.close();
+            keystream = new KeystreamBuffer(rc4, prefetch);
+        }
     }
 
     private static byte[] concat(byte[] a, byte[] b) {
@@ -0,0 +1,31 @@
+package sir.barchable.clash.protocol;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes values of one {@link TypeFactory.Type}. Codecs are compiled from the protocol definition once, so
+ * field types, names and defaults are already resolved when a message is read or written.
+ *
+ * @see TypeFactory.Type#getCodec()
+ * @author Sir Barchable
+ */
+public interface Codec {
+    /**
+     * Read a value.
+     *
+     * @return the value, or null if the type is optional and the value isn't present
+     */
+    Object read(MessageInputStream in) throws IOException;
+
+    /**
+     * Move past a value without building it.
+     */
+    default void skip(MessageInputStream in) throws IOException {
+        read(in);
+    }
+
+    /**
+     * Write a value.
+     */
+    void write(Object value, MessageOutputStream out) throws IOException;
+}
@@ -0,0 +1,710 @@
+package sir.barchable.clash.protocol;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.Protocol.StructDefinition;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static sir.barchable.clash.protocol.TypeFactory.ANONYMOUS_FIELD_PREFIX;
+import static sir.barchable.clash.protocol.TypeFactory.ID_FIELD;
+
+/**
+ * Compiles {@link TypeFactory.Type types} into trees of {@link Codec codecs}. Each struct is compiled once, with its
+ * field keys, field codecs, defaults and extensions linked in, so reading and writing a message involves no name
+ * lookups or type parsing.
+ * <p>
+ * The codecs behave exactly like the interpreting {@link MessageReader} and {@link MessageWriter}, down to the
+ * exceptions thrown for bad input.
+ *
+ * @author Sir Barchable
+ */
+class CodecCompiler {
+    private static final Logger log = LoggerFactory.getLogger(CodecCompiler.class);
+
+    private final TypeFactory typeFactory;
+
+    /**
+     * Struct name -> codec. Structs are registered before their fields are linked, so recursive types work.
+     */
+    private final Map<String, StructCodec> structs = new HashMap<>();
+
+    CodecCompiler(TypeFactory typeFactory) {
+        this.typeFactory = typeFactory;
+    }
+
+    synchronized Codec compile(TypeFactory.Type type) {
+        Codec codec;
+        if (type.isArray()) {
+            codec = type.isPrimitive() ? primitiveArray(type) : new StructArrayCodec(type, struct(type.getStructDefinition()));
+        } else if (type.isPrimitive()) {
+            codec = primitive(type.getPrimitiveType(), type.getName());
+        } else {
+            codec = struct(type.getStructDefinition());
+        }
+        return type.isOptional() ? new OptionalCodec(codec) : codec;
+    }
+
+    private StructCodec struct(StructDefinition definition) {
+        StructCodec codec = structs.get(definition.getName());
+        if (codec == null) {
+            codec = new StructCodec(definition.getName());
+            structs.put(definition.getName(), codec);
+            List<FieldDefinition> fields = definition.getFields();
+            codec.fields = new FieldCodec[fields.size()];
+            for (int i = 0; i < codec.fields.length; i++) {
+                codec.fields[i] = field(fields.get(i), i + 1);
+            }
+            int fieldIndex = codec.fields.length;
+            codec.hasExtensions = !definition.getExtensions().isEmpty();
+            for (Extension extension : definition.getExtensions()) {
+                if (!codec.extensions.containsKey(extension.getId())) {
+                    List<FieldDefinition> extensionFields = extension.getFields();
+                    FieldCodec[] extensionCodecs = new FieldCodec[extensionFields.size()];
+                    int extensionIndex = fieldIndex;
+                    for (int i = 0; i < extensionCodecs.length; i++) {
+                        extensionCodecs[i] = field(extensionFields.get(i), ++extensionIndex);
+                    }
+                    codec.extensions.put(extension.getId(), extensionCodecs);
+                }
+            }
+        }
+        return codec;
+    }
+
+    private FieldCodec field(FieldDefinition definition, int fieldIndex) {
+        String key = definition.getName() != null ? definition.getName() : ANONYMOUS_FIELD_PREFIX + fieldIndex;
+        TypeFactory.Type type;
+        try {
+            type = typeFactory.resolveType(definition.getType());
+        } catch (TypeException e) {
+            // Extension fields aren't checked when the protocol is loaded; fail when the field is used, as the
+            // interpreter would
+            return new FieldCodec(key, new FailingCodec(e), null, null, null);
+        }
+        Object dflt = null;
+        RuntimeException dfltError = null;
+        if (definition.getDefault() != null) {
+            try {
+                dflt = type.valueOf(definition.getDefault());
+            } catch (RuntimeException e) {
+                // Only a problem if the default is ever needed
+                dfltError = e;
+            }
+        }
+        return new FieldCodec(key, type.getCodec(), dflt, dfltError, Record.Kind.of(type));
+    }
+
+    private static Codec primitive(TypeFactory.Primitive primitive, String name) {
+        switch (primitive) {
+            case BOOLEAN:
+                return new Codec() {
+                    public Object read(MessageInputStream in) throws IOException {
+                        return in.readBit();
+                    }
+
+                    public void skip(MessageInputStream in) throws IOException {
+                        in.readBit();
+                    }
+
+                    public void write(Object value, MessageOutputStream out) throws IOException {
+                        out.writeBit(value == null ? false : (Boolean) value);
+                    }
+                };
+
+            case BYTE:
+                return new Codec() {
+                    public Object read(MessageInputStream in) throws IOException {
+                        return (byte) in.read();
+                    }
+
+                    public void skip(MessageInputStream in) throws IOException {
+                        in.skipFully(1);
+                    }
+
+                    public void write(Object value, MessageOutputStream out) throws IOException {
+                        out.write(value == null ? 0 : (Byte) value);
+                    }
+                };
+
+            case INT:
+                return new Codec() {
+                    public Object read(MessageInputStream in) throws IOException {
+                        return in.readInt();
+                    }
+
+                    public void skip(MessageInputStream in) throws IOException {
+                        in.skipFully(4);
+                    }
+
+                    public void write(Object value, MessageOutputStream out) throws IOException {
+                        out.writeInt(value == null ? 0 : (Integer) value);
+                    }
+                };
+
+            case LONG:
+                return new Codec() {
+                    public Object read(MessageInputStream in) throws IOException {
+                        return in.readLong();
+                    }
+
+                    public void skip(MessageInputStream in) throws IOException {
+                        in.skipFully(8);
+                    }
+
+                    public void write(Object value, MessageOutputStream out) throws IOException {
+                        out.writeLong(value == null ? 0 : (Long) value);
+                    }
+                };
+
+            case STRING:
+                return new Codec() {
+                    public Object read(MessageInputStream in) throws IOException {
+                        return in.readString();
+                    }
+
+                    public void skip(MessageInputStream in) throws IOException {
+                        skipString(in);
+                    }
+
+                    public void write(Object value, MessageOutputStream out) throws IOException {
+                        out.writeString((String) value);
+                    }
+                };
+
+            case ZIP_STRING:
+                return new Codec() {
+                    public Object read(MessageInputStream in) throws IOException {
+                        return in.readZipString();
+                    }
+
+                    public void skip(MessageInputStream in) throws IOException {
+                        // The length covers the unzipped length and the zipped data, so no need to inflate
+                        skipString(in);
+                    }
+
+                    public void write(Object value, MessageOutputStream out) throws IOException {
+                        out.writeZipString(value == null ? "" : (String) value);
+                    }
+                };
+
+            default:
+                throw new IllegalArgumentException("Don't know how to read " + name);
+        }
+    }
+
+    private static void skipString(MessageInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length != 0xffffffff) {
+            if (length < 0 || length > MessageInputStream.MAX_ARRAY_LENGTH) {
+                throw new PduException("String length out of bounds (" + length + ")");
+            }
+            in.skipFully(length);
+        }
+    }
+
+    private static Codec primitiveArray(TypeFactory.Type type) {
+        switch (type.getPrimitiveType()) {
+            case BYTE:
+                return new ArrayCodec(type) {
+                    Object readElements(int length, MessageInputStream in) throws IOException {
+                        return in.readArray(new byte[length]);
+                    }
+
+                    void skipElements(int length, MessageInputStream in) throws IOException {
+                        in.skipFully(length);
+                    }
+
+                    void writeElements(Object value, MessageOutputStream out) throws IOException {
+                        out.write((byte[]) value);
+                    }
+                };
+
+            case INT:
+                return new ArrayCodec(type) {
+                    Object readElements(int length, MessageInputStream in) throws IOException {
+                        return in.readArray(new int[length]);
+                    }
+
+                    void skipElements(int length, MessageInputStream in) throws IOException {
+                        in.skipFully(length * 4);
+                    }
+
+                    void writeElements(Object value, MessageOutputStream out) throws IOException {
+                        for (int v : (int[]) value) {
+                            out.writeInt(v);
+                        }
+                    }
+                };
+
+            case LONG:
+                return new ArrayCodec(type) {
+                    Object readElements(int length, MessageInputStream in) throws IOException {
+                        return in.readArray(new long[length]);
+                    }
+
+                    void skipElements(int length, MessageInputStream in) throws IOException {
+                        // Long arrays are read as ints
+                        in.skipFully(length * 4);
+                    }
+
+                    void writeElements(Object value, MessageOutputStream out) throws IOException {
+                        for (long v : (long[]) value) {
+                            out.writeLong(v);
+                        }
+                    }
+                };
+
+            case STRING:
+                return new ArrayCodec(type) {
+                    Object readElements(int length, MessageInputStream in) throws IOException {
+                        return in.readArray(new String[length]);
+                    }
+
+                    void skipElements(int length, MessageInputStream in) throws IOException {
+                        for (int i = 0; i < length; i++) {
+                            skipString(in);
+                        }
+                    }
+
+                    void writeElements(Object value, MessageOutputStream out) throws IOException {
+                        for (String v : (String[]) value) {
+                            out.writeString(v);
+                        }
+                    }
+                };
+
+            default:
+                // Not supported by the protocol, but only an error if a message actually uses it
+                return new ArrayCodec(type) {
+                    Object readElements(int length, MessageInputStream in) {
+                        throw new IllegalArgumentException("Don't know how to read arrays of type " + type.getPrimitiveType());
+                    }
+
+                    void writeElements(Object value, MessageOutputStream out) {
+                        throw new IllegalArgumentException("Don't know how to write arrays of type " + type.getPrimitiveType());
+                    }
+                };
+        }
+    }
+
+    private static class FailingCodec implements Codec {
+        private final RuntimeException e;
+
+        FailingCodec(RuntimeException e) {
+            this.e = e;
+        }
+
+        @Override
+        public Object read(MessageInputStream in) {
+            throw e;
+        }
+
+        @Override
+        public void write(Object value, MessageOutputStream out) {
+            throw e;
+        }
+    }
+
+    static class OptionalCodec implements Codec {
+        final Codec codec;
+
+        OptionalCodec(Codec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public Object read(MessageInputStream in) throws IOException {
+            return in.readBit() ? codec.read(in) : null;
+        }
+
+        @Override
+        public void skip(MessageInputStream in) throws IOException {
+            if (in.readBit()) {
+                codec.skip(in);
+            }
+        }
+
+        @Override
+        public void write(Object value, MessageOutputStream out) throws IOException {
+            out.writeBit(value != null);
+            if (value != null) {
+                codec.write(value, out);
+            }
+        }
+    }
+
+    /**
+     * Arrays are prefixed with their length unless the type has a fixed length.
+     */
+    static abstract class ArrayCodec implements Codec {
+        final String name;
+        final int fixedLength;
+
+        ArrayCodec(TypeFactory.Type type) {
+            this.name = type.getName();
+            this.fixedLength = type.getLength();
+        }
+
+        @Override
+        public Object read(MessageInputStream in) throws IOException {
+            int length = fixedLength > 0 ? fixedLength : in.readInt();
+            if (length < 0 || length > MessageInputStream.MAX_ARRAY_LENGTH) {
+                throw new PduException("Array length out of bounds: " + length);
+            }
+            return readElements(length, in);
+        }
+
+        @Override
+        public void skip(MessageInputStream in) throws IOException {
+            skipElements(readLength(in), in);
+        }
+
+        int readLength(MessageInputStream in) throws IOException {
+            return in.readArrayLength(fixedLength);
+        }
+
+        @Override
+        public void write(Object value, MessageOutputStream out) throws IOException {
+            int length = value == null ? 0 : Array.getLength(value);
+            if (fixedLength == 0) {
+                out.writeInt(length);
+            } else if (length != fixedLength) {
+                throw new PduException("Array length mismatch for " + name + " (" + fixedLength + "!=" + length + ")");
+            }
+            if (value != null) {
+                writeElements(value, out);
+            }
+        }
+
+        abstract Object readElements(int length, MessageInputStream in) throws IOException;
+
+        void skipElements(int length, MessageInputStream in) throws IOException {
+            readElements(length, in);
+        }
+
+        abstract void writeElements(Object value, MessageOutputStream out) throws IOException;
+    }
+
+    static class StructArrayCodec extends ArrayCodec {
+        final StructCodec element;
+
+        StructArrayCodec(TypeFactory.Type type, StructCodec element) {
+            super(type);
+            this.element = element;
+        }
+
+        @Override
+        Object readElements(int length, MessageInputStream in) throws IOException {
+            Object[] messages = new Object[length];
+            for (int i = 0; i < length; i++) {
+                try {
+                    messages[i] = element.read(in);
+                } catch (PduException e) {
+                    throw new PduException("Could not read element " + i + " of " + name + "[]", e);
+                }
+            }
+            return messages;
+        }
+
+        @Override
+        void skipElements(int length, MessageInputStream in) throws IOException {
+            for (int i = 0; i < length; i++) {
+                try {
+                    element.skip(in);
+                } catch (PduException e) {
+                    throw new PduException("Could not read element " + i + " of " + name + "[]", e);
+                }
+            }
+        }
+
+        @Override
+        void writeElements(Object value, MessageOutputStream out) throws IOException {
+            for (Object struct : (Object[]) value) {
+                element.write(struct, out);
+            }
+        }
+    }
+
+    static class FieldCodec {
+        final String key;
+        final Codec codec;
+        final Object dflt;
+        final RuntimeException dfltError;
+
+        /**
+         * How the field is held unboxed in a {@link Record}, or null if it isn't.
+         */
+        final Record.Kind kind;
+
+        FieldCodec(String key, Codec codec, Object dflt, RuntimeException dfltError, Record.Kind kind) {
+            this.key = key;
+            this.codec = codec;
+            this.dflt = dflt;
+            this.dfltError = dfltError;
+            this.kind = kind;
+        }
+
+        Object valueFrom(Map<String, Object> struct) {
+            Object value = struct.get(key);
+            if (value == null) {
+                if (dfltError != null) {
+                    throw dfltError;
+                }
+                value = dflt;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The fields of a struct in stream order, with an index by key.
+     */
+    static class Layout {
+        final FieldCodec[] fields;
+        final Map<String, Integer> index = new HashMap<>();
+
+        /**
+         * Each field's slot in the primitive array of a {@link Record}, or -1 if the field isn't primitive.
+         */
+        final int[] slots;
+        final int primitiveCount;
+
+        Layout(FieldCodec[] fields) {
+            this.fields = fields;
+            this.slots = new int[fields.length];
+            int primitives = 0;
+            for (int i = 0; i < fields.length; i++) {
+                index.put(fields[i].key, i);
+                slots[i] = fields[i].kind == null ? -1 : primitives++;
+            }
+            this.primitiveCount = primitives;
+        }
+    }
+
+    static class StructCodec implements Codec {
+        final String name;
+        FieldCodec[] fields;
+        boolean hasExtensions;
+        private final Map<Integer, FieldCodec[]> extensions = new HashMap<>();
+        private volatile Layout baseLayout;
+        private final Map<Integer, Layout> layouts = new ConcurrentHashMap<>();
+
+        StructCodec(String name) {
+            this.name = name;
+        }
+
+        /**
+         * The layout of the struct for an extension id.
+         *
+         * @param id the value of the id field, or null if the struct has no extensions
+         */
+        Layout layout(Integer id) {
+            FieldCodec[] extension = id == null ? null : extensions.get(id);
+            if (extension == null) {
+                Layout layout = baseLayout;
+                if (layout == null) {
+                    layout = baseLayout = new Layout(fields);
+                }
+                return layout;
+            }
+            return layouts.computeIfAbsent(id, key -> {
+                FieldCodec[] all = Arrays.copyOf(fields, fields.length + extension.length);
+                System.arraycopy(extension, 0, all, fields.length, extension.length);
+                return new Layout(all);
+            });
+        }
+
+        @Override
+        public void skip(MessageInputStream in) {
+            int fieldIndex = 0;
+            try {
+                Object id = null;
+                for (FieldCodec field : fields) {
+                    fieldIndex++;
+                    if (hasExtensions && field.key.equals(ID_FIELD)) {
+                        id = field.codec.read(in);
+                    } else {
+                        field.codec.skip(in);
+                    }
+                }
+
+                if (hasExtensions) {
+                    if (id == null) {
+                        throw new PduException("id field missing from " + name);
+                    }
+                    FieldCodec[] extension = extensions.get((Integer) id);
+                    if (extension != null) {
+                        for (FieldCodec field : extension) {
+                            fieldIndex++;
+                            field.codec.skip(in);
+                        }
+                    } else {
+                        log.warn("No extension of {} with id {}", name, id);
+                    }
+                }
+            } catch (RuntimeException | IOException e) {
+                throw new PduException("Could not read field " + fieldIndex + " of " + name, e);
+            }
+        }
+
+        @Override
+        public Object read(MessageInputStream in) {
+            Record struct = new Record(this, layout(null), false);
+            int fieldIndex = 0;
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    fieldIndex++;
+                    struct.read(i, in);
+                }
+
+                if (hasExtensions) {
+                    Integer id = (Integer) struct.get(ID_FIELD);
+                    if (id == null) {
+                        throw new PduException("id field missing from " + name);
+                    }
+                    FieldCodec[] extension = extensions.get(id);
+                    if (extension != null) {
+                        struct.setLayout(layout(id));
+                        for (int i = fields.length; i < struct.layout.fields.length; i++) {
+                            fieldIndex++;
+                            struct.read(i, in);
+                        }
+                    } else {
+                        log.warn("No extension of {} with id {}", name, id);
+                    }
+                }
+            } catch (RuntimeException | IOException e) {
+                log.error("Pdu Error", e);
+                throw new PduException("Could not read field " + fieldIndex + " of " + name, e);
+            }
+            return struct;
+        }
+
+        /**
+         * Read the projected fields of the struct, skipping the rest. The id field of a struct with extensions is
+         * always read.
+         */
+        @SuppressWarnings("unchecked")
+        Map<String, Object> read(MessageInputStream in, Projection.Fields projection) {
+            if (projection == Projection.Fields.ALL) {
+                return (Map<String, Object>) read(in);
+            }
+            Map<String, Object> struct = new LinkedHashMap<>();
+            int fieldIndex = 0;
+            try {
+                Object id = null;
+                for (FieldCodec field : fields) {
+                    fieldIndex++;
+                    if (hasExtensions && field.key.equals(ID_FIELD)) {
+                        id = field.codec.read(in);
+                        struct.put(field.key, id);
+                    } else {
+                        readField(field, in, projection, struct);
+                    }
+                }
+
+                if (hasExtensions) {
+                    if (id == null) {
+                        throw new PduException("id field missing from " + name);
+                    }
+                    FieldCodec[] extension = extensions.get((Integer) id);
+                    if (extension != null) {
+                        for (FieldCodec field : extension) {
+                            fieldIndex++;
+                            readField(field, in, projection, struct);
+                        }
+                    } else {
+                        log.warn("No extension of {} with id {}", name, id);
+                    }
+                }
+            } catch (RuntimeException | IOException e) {
+                throw new PduException("Could not read field " + fieldIndex + " of " + name, e);
+            }
+            return struct;
+        }
+
+        private static void readField(FieldCodec field, MessageInputStream in, Projection.Fields projection, Map<String, Object> struct) throws IOException {
+            Projection.Fields subfields = projection.get(field.key);
+            if (subfields == null) {
+                field.codec.skip(in);
+            } else {
+                struct.put(field.key, readProjected(field.codec, in, subfields));
+            }
+        }
+
+        private static Object readProjected(Codec codec, MessageInputStream in, Projection.Fields projection) throws IOException {
+            if (projection == Projection.Fields.ALL) {
+                return codec.read(in);
+            } else if (codec instanceof StructCodec) {
+                return ((StructCodec) codec).read(in, projection);
+            } else if (codec instanceof OptionalCodec) {
+                return in.readBit() ? readProjected(((OptionalCodec) codec).codec, in, projection) : null;
+            } else if (codec instanceof StructArrayCodec) {
+                StructArrayCodec array = (StructArrayCodec) codec;
+                Object[] elements = new Object[array.readLength(in)];
+                for (int i = 0; i < elements.length; i++) {
+                    try {
+                        elements[i] = array.element.read(in, projection);
+                    } catch (PduException e) {
+                        throw new PduException("Could not read element " + i + " of " + array.name + "[]", e);
+                    }
+                }
+                return elements;
+            } else {
+                // No subfields to project
+                return codec.read(in);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(Object value, MessageOutputStream out) throws IOException {
+            if (value instanceof LazyStruct && ((LazyStruct) value).canWrite(this)) {
+                // Copy what hasn't changed from the payload it was read from
+                ((LazyStruct) value).write(out);
+                return;
+            }
+            Map<String, Object> struct = (Map<String, Object>) value;
+            if (struct == null) {
+                struct = Collections.emptyMap();
+            }
+            for (FieldCodec field : fields) {
+                Object fieldValue = field.valueFrom(struct);
+                try {
+                    field.codec.write(fieldValue, out);
+                } catch (RuntimeException e) {
+                    throw new IOException("Failed to write field " + field.key + " of " + name, e);
+                }
+            }
+            Object id = struct.get(ID_FIELD);
+            if (id instanceof Integer) {
+                FieldCodec[] extension = extensions.get(id);
+                if (extension != null) {
+                    for (FieldCodec field : extension) {
+                        Object fieldValue = field.valueFrom(struct);
+                        try {
+                            field.codec.write(fieldValue, out);
+                        } catch (IOException e) {
+                            throw new IOException("Failed to write field " + field.key + " of " + name, e);
+                        }
+                    }
+                }
+            }
+
+            Object end = struct.get("end");
+            if (end != null) {
+                for (Integer b : (Integer[]) end) {
+                    if (b != null) {
+                        out.write((byte) (int) b);
+                    }
+                }
+            }
+        }
+    }
+}
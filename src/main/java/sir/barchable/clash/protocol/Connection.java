@@ -1,10 +1,14 @@
 package sir.barchable.clash.protocol;
 
+import sir.barchable.util.KeystreamBuffer;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -21,9 +25,20 @@ public class Connection implements Closeable {
     private PduOutputStream out;
 
     public Connection(Socket socket) throws IOException {
+        this(socket, null);
+    }
+
+    /**
+     * @param socket the socket to read and write PDUs on
+     * @param prefetch how to generate keystream ahead of use, or null to generate it as it's used
+     */
+    public Connection(Socket socket, KeystreamBuffer.Mode prefetch) throws IOException {
         this.name = socket.toString();
-        this.in = new PduInputStream(socket.getInputStream());
-        this.out = new PduOutputStream(socket.getOutputStream());
+        SocketChannel channel = socket.getChannel();
+        this.in = channel == null
+            ? new PduInputStream(socket.getInputStream(), new Clash7Crypt(prefetch))
+            : new PduInputStream(channel, new Clash7Crypt(prefetch));
+        this.out = new PduOutputStream(socket.getOutputStream(), new Clash7Crypt(prefetch));
     }
 
     public Connection(String name, InputStream in, OutputStream out) {
@@ -32,6 +47,12 @@ public class Connection implements Closeable {
         this.out = new PduOutputStream(out);
     }
 
+    public Connection(String name, ReadableByteChannel in, OutputStream out) {
+        this.name = name;
+        this.in = new PduInputStream(in);
+        this.out = new PduOutputStream(out);
+    }
+
     public String getName() {
         return name;
     }
@@ -55,6 +76,14 @@ public class Connection implements Closeable {
         }
     }
 
+    /**
+     * Retain the ciphertext of PDUs read from this connection, so that unmodified PDUs can be forwarded to another
+     * connection without being re-encrypted.
+     */
+    public void setTransparent(boolean transparent) {
+        in.setRetainCiphertext(transparent);
+    }
+
     public void setKey(byte[] key) {
         in.setKey(key);
         out.setKey(key);
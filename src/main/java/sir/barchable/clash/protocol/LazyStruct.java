@@ -0,0 +1,401 @@
+package sir.barchable.clash.protocol;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.CodecCompiler.FieldCodec;
+import sir.barchable.clash.protocol.CodecCompiler.OptionalCodec;
+import sir.barchable.clash.protocol.CodecCompiler.StructArrayCodec;
+import sir.barchable.clash.protocol.CodecCompiler.StructCodec;
+
+import java.io.IOException;
+import java.util.*;
+
+import static sir.barchable.clash.protocol.TypeFactory.ID_FIELD;
+
+/**
+ * A struct that reads its fields from the message payload on demand.
+ * <p>
+ * The first access skip-scans the payload to find where each field starts, recording each start as one int: the byte
+ * offset shifted left three bits, plus the bit position if a bit field is part way through. Values are only read, and
+ * then cached in the {@link Record record's} slots, when they're asked for, so large fields that nobody looks at,
+ * like zipped village JSON, are never inflated. Nested structs, and the elements of struct arrays, are lazy too.
+ * <p>
+ * Until the struct changes shape it remembers which fields might have changed: fields that have been set, and arrays,
+ * which have been handed out and could be changed in place. When the struct is {@link #write written} the bytes of
+ * the other fields are copied straight from the payload, and only the changed fields are encoded again.
+ * <p>
+ * Because nothing is read up front, a malformed payload is only reported, as a {@link PduException}, when the field
+ * that can't be read is accessed.
+ *
+ * @author Sir Barchable
+ */
+class LazyStruct extends Record {
+    private static final Logger log = LoggerFactory.getLogger(LazyStruct.class);
+
+    private static final Object UNREAD = new Object();
+
+    private final byte[] payload;
+    private final int start;
+
+    /**
+     * End of the payload in the array, which may be longer.
+     */
+    private final int limit;
+
+    /**
+     * Start of each field in the layout, then the end of the struct.
+     */
+    private int[] offsets;
+
+    /**
+     * Fields whose values might no longer match the payload.
+     */
+    private boolean[] dirty;
+
+    /**
+     * @param codec the struct
+     * @param payload the payload holding the struct. Not copied, so mustn't change.
+     * @param start where the struct starts in the payload, as a byte offset shifted left three bits, plus the bit
+     *              position if a bit field is part way through
+     * @param limit the length of the payload
+     * @param trailing whether the struct is a whole message, with any bytes after it available as {@link #END_KEY}
+     */
+    LazyStruct(StructCodec codec, byte[] payload, int start, int limit, boolean trailing) {
+        super(codec, trailing);
+        this.payload = payload;
+        this.start = start;
+        this.limit = limit;
+    }
+
+    /**
+     * A lazy top level message.
+     *
+     * @param type the message type
+     * @param payload the message payload. Not copied, so mustn't change.
+     */
+    static LazyStruct forMessage(TypeFactory.Type type, byte[] payload) {
+        return forMessage(type, payload, payload.length);
+    }
+
+    /**
+     * A lazy top level message, in the first length bytes of an array.
+     */
+    static LazyStruct forMessage(TypeFactory.Type type, byte[] payload, int length) {
+        Codec codec = type.getCodec();
+        if (!(codec instanceof StructCodec)) {
+            throw new TypeException(type.getName() + " is not a struct");
+        }
+        return new LazyStruct((StructCodec) codec, payload, 0, length, true);
+    }
+
+    @Override
+    Object exposed(int i) {
+        Object value = value(i);
+        // Arrays can be changed in place, so once handed out they're treated as changed
+        if (value != null && value.getClass().isArray()) {
+            dirty[i] = true;
+        }
+        return value;
+    }
+
+    @Override
+    Object value(int i) {
+        Object value = refs[i];
+        if (value == UNREAD) {
+            read(i);
+        }
+        return super.value(i);
+    }
+
+    @Override
+    void changed(int i) {
+        dirty[i] = true;
+    }
+
+    @Override
+    Map<String, Object> materialize() {
+        Map<String, Object> fields = super.materialize();
+        dirty = null;
+        return fields;
+    }
+
+    /**
+     * Read every field now, so that a malformed payload is reported straight away rather than when the field is
+     * accessed. The payload is still kept for writing.
+     */
+    void load() {
+        index();
+        for (int i = 0; i < refs.length; i++) {
+            Object value = value(i);
+            if (value instanceof LazyStruct) {
+                ((LazyStruct) value).load();
+            } else if (value instanceof Object[]) {
+                for (Object element : (Object[]) value) {
+                    if (element instanceof LazyStruct) {
+                        ((LazyStruct) element).load();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A copy of the struct that can be changed independently. The copy reads the same payload and keeps the index.
+     * Only fields that might have changed are copied; the others are left unread in the copy, to be decoded again from
+     * the payload if they're wanted, so the cost of a copy follows the changes rather than the size of the message.
+     */
+    @Override
+    Map<String, Object> copy() {
+        if (delegate != null) {
+            return super.copy();
+        }
+        LazyStruct copy = new LazyStruct(codec, payload, start, limit, trailing);
+        if (offsets != null) {
+            copy.setLayout(layout);
+            copy.offsets = offsets;
+            copy.dirty = dirty.clone();
+            for (int i = 0; i < refs.length; i++) {
+                if (refs[i] != UNREAD && isModified(i)) {
+                    copy.store(i, StructCopy.copyOf(value(i)));
+                } else {
+                    copy.refs[i] = UNREAD;
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Can this struct be written by {@link #write(MessageOutputStream)}?
+     *
+     * @param codec the codec that would otherwise write it
+     */
+    boolean canWrite(StructCodec codec) {
+        return this.codec == codec && delegate == null;
+    }
+
+    /**
+     * Has anything in the struct, or in the structs nested in it, possibly changed since it was read?
+     */
+    boolean isModified() {
+        if (delegate != null) {
+            return true;
+        }
+        if (offsets == null) {
+            return false;
+        }
+        for (int i = 0; i < refs.length; i++) {
+            if (isModified(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isModified(int i) {
+        if (dirty[i]) {
+            return true;
+        }
+        Object value = refs[i];
+        if (value instanceof LazyStruct) {
+            return ((LazyStruct) value).isModified();
+        }
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                if (element instanceof LazyStruct && ((LazyStruct) element).isModified()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the struct, copying unchanged fields from the payload.
+     * <p>
+     * Fields are copied in runs that start and end on byte boundaries. A run with a changed field in it, or one that
+     * starts or ends part way through a bit field, or that would follow bits the output hasn't committed yet, is
+     * encoded field by field instead.
+     */
+    void write(MessageOutputStream out) throws IOException {
+        index();
+        int n = refs.length;
+        int copyFrom = -1;
+        int i = 0;
+        while (i < n) {
+            int j = i + 1;
+            while (j < n && (offsets[j] & 7) != 0) {
+                j++;
+            }
+            int from = offsets[i];
+            boolean copy = (from & 7) == 0 && (offset(j) & 7) == 0 && (copyFrom >= 0 || !out.hasPendingBits());
+            for (int k = i; copy && k < j; k++) {
+                copy = !isModified(k);
+            }
+            if (copy) {
+                if (copyFrom < 0) {
+                    copyFrom = from;
+                }
+            } else {
+                if (copyFrom >= 0) {
+                    out.write(payload, copyFrom >>> 3, (from - copyFrom) >>> 3);
+                    copyFrom = -1;
+                }
+                for (int k = i; k < j; k++) {
+                    writeField(k, out);
+                }
+            }
+            i = j;
+        }
+        if (copyFrom >= 0) {
+            out.write(payload, copyFrom >>> 3, (offset(n) - copyFrom) >>> 3);
+        }
+    }
+
+    /**
+     * Where a field starts, or with the field count, where the struct ends.
+     */
+    private int offset(int i) {
+        return i < offsets.length ? offsets[i] : limit << 3;
+    }
+
+    private void writeField(int i, MessageOutputStream out) throws IOException {
+        if (i == layout.fields.length) {
+            Object end = value(i);
+            if (end != null) {
+                for (Integer b : (Integer[]) end) {
+                    if (b != null) {
+                        out.write((byte) (int) b);
+                    }
+                }
+            }
+        } else {
+            FieldCodec field = layout.fields[i];
+            try {
+                field.codec.write(field.valueFrom(this), out);
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to write field " + field.key + " of " + codec.name, e);
+            }
+        }
+    }
+
+    /**
+     * Find the start of each field.
+     */
+    @Override
+    void index() {
+        if (offsets != null) {
+            return;
+        }
+        FieldCodec[] fields = codec.fields;
+        int[] fieldOffsets = new int[fields.length];
+        Object id = null;
+        int fieldIndex = 0;
+        CodecCompiler.Layout layout;
+        try {
+            Cursor cursor = new Cursor(start);
+            for (int i = 0; i < fields.length; i++) {
+                fieldIndex++;
+                fieldOffsets[i] = cursor.position();
+                if (codec.hasExtensions && fields[i].key.equals(ID_FIELD)) {
+                    id = fields[i].codec.read(cursor.in);
+                } else {
+                    fields[i].codec.skip(cursor.in);
+                }
+            }
+
+            if (codec.hasExtensions) {
+                if (id == null) {
+                    throw new PduException("id field missing from " + codec.name);
+                }
+                layout = codec.layout((Integer) id);
+                if (layout == codec.layout(null)) {
+                    log.warn("No extension of {} with id {}", codec.name, id);
+                }
+            } else {
+                layout = codec.layout(null);
+            }
+
+            int[] offsets = Arrays.copyOf(fieldOffsets, layout.fields.length + 1);
+            for (int i = fields.length; i < layout.fields.length; i++) {
+                fieldIndex++;
+                offsets[i] = cursor.position();
+                layout.fields[i].codec.skip(cursor.in);
+            }
+            offsets[layout.fields.length] = cursor.position();
+            this.offsets = offsets;
+        } catch (RuntimeException | IOException e) {
+            throw new PduException("Could not read field " + fieldIndex + " of " + codec.name, e);
+        }
+
+        setLayout(layout);
+        Arrays.fill(refs, UNREAD);
+        dirty = new boolean[refs.length];
+        if (id != null) {
+            store(layout.index.get(ID_FIELD), id);
+        }
+    }
+
+    private void read(int i) {
+        try {
+            Cursor cursor = new Cursor(offsets[i]);
+            if (i == layout.fields.length) {
+                refs[i] = MessageReader.readTrailing(cursor.in);
+            } else if (layout.fields[i].kind != null) {
+                read(i, cursor.in);
+            } else {
+                refs[i] = read(layout.fields[i].codec, cursor);
+            }
+        } catch (RuntimeException | IOException e) {
+            throw new PduException("Could not read field " + (i + 1) + " of " + codec.name, e);
+        }
+    }
+
+    /**
+     * Read a field value, deferring structs.
+     */
+    private Object read(Codec fieldCodec, Cursor cursor) throws IOException {
+        if (fieldCodec instanceof StructCodec) {
+            return new LazyStruct((StructCodec) fieldCodec, payload, cursor.position(), limit, false);
+        }
+        if (fieldCodec instanceof OptionalCodec && ((OptionalCodec) fieldCodec).codec instanceof StructCodec) {
+            StructCodec struct = (StructCodec) ((OptionalCodec) fieldCodec).codec;
+            return cursor.in.readBit() ? new LazyStruct(struct, payload, cursor.position(), limit, false) : null;
+        }
+        if (fieldCodec instanceof StructArrayCodec) {
+            StructArrayCodec array = (StructArrayCodec) fieldCodec;
+            Object[] elements = new Object[array.readLength(cursor.in)];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = new LazyStruct(array.element, payload, cursor.position(), limit, false);
+                try {
+                    array.element.skip(cursor.in);
+                } catch (PduException e) {
+                    throw new PduException("Could not read element " + i + " of " + array.name + "[]", e);
+                }
+            }
+            return elements;
+        }
+        return fieldCodec.read(cursor.in);
+    }
+
+    /**
+     * A stream over the payload that knows where it is.
+     */
+    private class Cursor {
+        private final PayloadInputStream in;
+
+        Cursor(int position) {
+            int offset = position >>> 3;
+            int bit = position & 7;
+            in = new PayloadInputStream(payload, offset, limit - offset);
+            if (bit > 0) {
+                in.resumeBits(payload[offset - 1], 1 << bit);
+            }
+        }
+
+        int position() {
+            int mask = in.getBitMask();
+            return in.position() << 3 | (mask == 0 ? 0 : Integer.numberOfTrailingZeros(mask));
+        }
+    }
+}
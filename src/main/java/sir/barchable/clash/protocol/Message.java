@@ -22,15 +22,19 @@ public class Message {
     private String typeName;
     private StructDefinition definition;
     private Map<String, Object> fields;
+    private ModelCache models;
 
     Message(TypeFactory typeFactory, String typeName) {
         this(typeFactory, typeName, null);
     }
 
     Message(TypeFactory typeFactory, String typeName, Map<String, Object> fields) {
+        this(typeFactory, typeFactory.resolveType(typeName), fields);
+    }
+
+    Message(TypeFactory typeFactory, TypeFactory.Type type, Map<String, Object> fields) {
         this.typeFactory = typeFactory;
-        this.typeName = typeName;
-        TypeFactory.Type type = typeFactory.resolveType(typeName);
+        this.typeName = type.getName();
         if (!type.isStruct()) {
             throw new TypeException("Not a struct");
         }
@@ -52,15 +56,19 @@ public class Message {
      * @return the PDU type, or  {@link Pdu.Type#Unknown}
      */
     public Pdu.Type getType() {
-        return Pdu.Type.valueOf(definition.getId());
+        Integer id = definition.getId();
+        return id == null ? Pdu.Type.Unknown : Pdu.Type.valueOf(id);
     }
 
     public void set(String key, Object value) {
         fields.put(key, value);
+        if (models != null) {
+            models.invalidate(key);
+        }
     }
 
     public void set(String key, Message value) {
-        fields.put(key, value == null ? null : value.getFields());
+        set(key, (Object) (value == null ? null : value.getFields()));
     }
 
     public Object get(String key) {
@@ -110,6 +118,33 @@ public class Message {
         return (String) fields.get(key);
     }
 
+    /**
+     * The model parsed from a JSON string field, e.g. the {@link Village} in homeVillage. Parsed once, then shared by
+     * everyone reading the message until the field is {@link #set(String, Object) set}, so if you change the model
+     * write it back.
+     *
+     * @param key the field name
+     * @param type the model class
+     * @return the model, or null if the field is null
+     */
+    public <T> T getModel(String key, Class<T> type) throws IOException {
+        return getModels().get(key, getString(key), type);
+    }
+
+    ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    /**
+     * Share a model cache, e.g. the one kept by the PDU the message was read from.
+     */
+    void setModels(ModelCache models) {
+        this.models = models;
+    }
+
     public Message[] getArray(String key) {
         FieldDefinition field = definition.getField(key);
         TypeFactory.Type type = typeFactory.resolveType(field.getType());
@@ -128,6 +163,20 @@ public class Message {
         return messages;
     }
 
+    /**
+     * A copy of the message that can be changed independently of this one. A message read from a PDU shares the
+     * payload with its copies, so only the fields that have been changed are copied, and the copy decodes the rest
+     * again if it needs them. This message is only read, so a template that nobody changes can be copied from several
+     * threads at once.
+     */
+    public Message copy() {
+        Message copy = new Message(typeFactory, typeName, StructCopy.copyStruct(fields));
+        if (models != null) {
+            copy.models = models.forCopy();
+        }
+        return copy;
+    }
+
     public Map<String, Object> getFields() {
         return fields;
     }
@@ -157,18 +206,15 @@ public class Message {
             case EnemyHomeData:
             case OwnHomeData:
             case VisitedHomeData:
-                Village village = Json.valueOf((String) fields.get("homeVillage"), Village.class);
-                fields.put("homeVillage", village);
+                fields.put("homeVillage", getModel("homeVillage", Village.class));
                 break;
 
             case WarHomeData:
-                WarVillage warVillage = Json.valueOf((String) fields.get("homeVillage"), WarVillage.class);
-                fields.put("homeVillage", warVillage);
+                fields.put("homeVillage", getModel("homeVillage", WarVillage.class));
                 break;
 
             case HomeBattleReplayData:
-                Replay data = Json.valueOf((String) fields.get("replay"), Replay.class);
-                fields.put("replay", data);
+                fields.put("replay", getModel("replay", Replay.class));
                 break;
         }
 
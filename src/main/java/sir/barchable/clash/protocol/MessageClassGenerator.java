@@ -0,0 +1,619 @@
+package sir.barchable.clash.protocol;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.Protocol.StructDefinition;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+
+import javax.lang.model.SourceVersion;
+import java.io.*;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static sir.barchable.clash.protocol.TypeFactory.ANONYMOUS_FIELD_PREFIX;
+import static sir.barchable.clash.protocol.TypeFactory.ID_FIELD;
+
+/**
+ * Generate a Java class for each struct in the protocol definition. Each class has a plain field for each field of
+ * the struct, and methods to decode and encode the struct directly, with no field maps or boxing. Structs with an id
+ * implement {@link TypedMessage}.
+ * <p>
+ * Fields are named as they are in the map API, so anonymous fields are <i>field1</i>, <i>field2</i> etc. Optional
+ * primitives are boxed, and null when absent. Each extension of a struct gets a nested class and a field, which is set
+ * when the struct's id selects it.
+ * <p>
+ * The classes are written to a single package, along with a <i>TypedMessages</i> class that decodes messages by id.
+ * The package is cleared of java files first, so don't put anything else in it.
+ *
+ * @author Sir Barchable
+ */
+public class MessageClassGenerator {
+    public static final String DEFAULT_PACKAGE = "sir.barchable.clash.protocol.typed";
+    public static final String REGISTRY_CLASS = "TypedMessages";
+
+    /**
+     * Names used by the generated code that fields mustn't hide.
+     */
+    private static final Set<String> RESERVED_NAMES = new HashSet<>(Arrays.asList(
+        "in", "out", "struct", "message", "array", "element", "i", "end", "ID"
+    ));
+
+    @Parameter(names = {"-d", "--definition-dir"}, required = true, description = "Directory to load the protocol definition from")
+    private File resourceDir;
+
+    @Parameter(names = {"-o", "--source-dir"}, required = true, description = "Source root to write the generated classes to")
+    private File sourceDir;
+
+    @Parameter(names = {"-p", "--package"}, description = "Package of the generated classes")
+    private String packageName = DEFAULT_PACKAGE;
+
+    private static final Logger log = LoggerFactory.getLogger(MessageClassGenerator.class);
+
+    private TypeFactory typeFactory;
+
+    public static void main(String[] args) {
+        MessageClassGenerator generator = new MessageClassGenerator();
+        JCommander commander = new JCommander(generator);
+        try {
+            commander.parse(args);
+            generator.run();
+        } catch (ParameterException e) {
+            commander.usage();
+        } catch (Exception e) {
+            log.error("Oops: ", e);
+        }
+    }
+
+    MessageClassGenerator() { }
+
+    public MessageClassGenerator(String packageName) {
+        this.packageName = packageName;
+    }
+
+    private void run() throws IOException {
+        Protocol protocol = new ProtocolTool(resourceDir).read();
+        Map<String, String> sources = generate(protocol);
+
+        File packageDir = new File(sourceDir, packageName.replace('.', File.separatorChar));
+        if (packageDir.isDirectory()) {
+            File[] oldSources = packageDir.listFiles((dir, name) -> name.endsWith(".java"));
+            if (oldSources != null) {
+                for (File oldSource : oldSources) {
+                    if (!oldSource.delete()) {
+                        throw new IOException("Couldn't delete " + oldSource);
+                    }
+                }
+            }
+        } else if (!packageDir.mkdirs()) {
+            throw new IOException("Couldn't create " + packageDir);
+        }
+
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(packageDir, source.getKey() + ".java")), UTF_8)) {
+                out.write(source.getValue());
+            }
+        }
+        log.info("Wrote {} classes to {}", sources.size(), packageDir);
+    }
+
+    /**
+     * Generate the classes for a protocol.
+     *
+     * @return a map of class name -> source, in name order
+     */
+    public Map<String, String> generate(Protocol protocol) {
+        typeFactory = new TypeFactory(protocol);
+
+        List<StructDefinition> definitions = new ArrayList<>(protocol.getMessages());
+        definitions.sort(Comparator.comparing(StructDefinition::getName));
+
+        Map<String, String> sources = new TreeMap<>();
+        Map<Integer, String> messages = new TreeMap<>();
+        for (StructDefinition definition : definitions) {
+            Integer id = definition.getId();
+            if (id != null) {
+                if (messages.containsKey(id)) {
+                    log.warn("Duplicate id {} for {}, ignoring", id, definition.getName());
+                    id = null;
+                } else {
+                    messages.put(id, definition.getName());
+                }
+            }
+            sources.put(definition.getName(), generateStruct(definition, id));
+        }
+        sources.put(REGISTRY_CLASS, generateRegistry(messages));
+        return sources;
+    }
+
+    private String generateStruct(StructDefinition definition, Integer id) {
+        String name = definition.getName();
+        Source src = new Source();
+        src.line("package " + packageName + ";");
+        src.line();
+        src.line("import " + MessageInputStream.class.getName() + ";");
+        src.line("import " + MessageOutputStream.class.getName() + ";");
+        if (id != null) {
+            src.line("import " + ModelCache.class.getName() + ";");
+            src.line("import " + TypedMessage.class.getName() + ";");
+        }
+        src.line();
+        src.line("import java.io.IOException;");
+        src.line();
+        src.javadoc(definition.getComment(), "Generated from the protocol definition by {@link " + getClass().getName() + "}. Don't edit.");
+        src.open("public class " + name + (id != null ? " implements TypedMessage" : "") + " {");
+        if (id != null) {
+            src.line("public static final int ID = " + id + ";");
+            src.line();
+        }
+
+        List<Field> fields = fields(definition.getFields(), 0);
+        List<ExtensionClass> extensions = extensions(definition, fields);
+
+        for (Field field : fields) {
+            field.declare(src);
+        }
+        for (ExtensionClass extension : extensions) {
+            src.javadoc(extension.comment);
+            src.line("public " + extension.className + " " + extension.fieldName + ";");
+            src.line();
+        }
+        if (id != null) {
+            src.javadoc("Bytes following the message that the definition doesn't account for.");
+            src.line("public byte[] end;");
+            src.line();
+
+            src.line("private ModelCache models;");
+            src.line();
+
+            src.line("@Override");
+            src.open("public int getId() {");
+            src.line("return ID;");
+            src.close();
+            src.line();
+
+            src.line("@Override");
+            src.open("public ModelCache getModels() {");
+            src.open("if (models == null) {");
+            src.line("models = new ModelCache();");
+            src.close();
+            src.line("return models;");
+            src.close();
+            src.line();
+
+            src.line("@Override");
+            src.open("public void setModels(ModelCache models) {");
+            src.line("this.models = models;");
+            src.close();
+            src.line();
+        }
+
+        // Decode
+        src.open("public static " + name + " decode(MessageInputStream in) throws IOException {");
+        src.line(name + " struct = new " + name + "();");
+        for (Field field : fields) {
+            field.decode(src);
+        }
+        if (!extensions.isEmpty()) {
+            src.open("switch (struct." + ID_FIELD + ") {");
+            for (ExtensionClass extension : extensions) {
+                src.open("case " + extension.id + ":");
+                src.line("struct." + extension.fieldName + " = " + extension.className + ".decode(in);");
+                src.line("break;");
+                src.outdent();
+            }
+            src.close();
+        }
+        src.line("return struct;");
+        src.close();
+        src.line();
+
+        if (id != null) {
+            src.javadoc("Decode a message, keeping any trailing bytes in {@link #end}.");
+            src.open("public static " + name + " decodeMessage(MessageInputStream in) throws IOException {");
+            src.line(name + " message = decode(in);");
+            src.line("message.end = in.readRemaining();");
+            src.line("return message;");
+            src.close();
+            src.line();
+        }
+
+        src.open("public static " + name + "[] decodeArray(MessageInputStream in, int length) throws IOException {");
+        src.line(name + "[] array = new " + name + "[length];");
+        src.open("for (int i = 0; i < length; i++) {");
+        src.line("array[i] = decode(in);");
+        src.close();
+        src.line("return array;");
+        src.close();
+        src.line();
+
+        // Encode
+        if (id != null) {
+            src.line("@Override");
+        }
+        src.open("public void encode(MessageOutputStream out) throws IOException {");
+        for (Field field : fields) {
+            field.encode(src);
+        }
+        if (!extensions.isEmpty()) {
+            src.open("switch (" + ID_FIELD + ") {");
+            for (ExtensionClass extension : extensions) {
+                src.open("case " + extension.id + ":");
+                src.line("(" + extension.fieldName + " != null ? " + extension.fieldName + " : new " + extension.className + "()).encode(out);");
+                src.line("break;");
+                src.outdent();
+            }
+            src.close();
+        }
+        if (id != null) {
+            src.open("if (end != null) {");
+            src.line("out.write(end);");
+            src.close();
+        }
+        src.close();
+
+        for (ExtensionClass extension : extensions) {
+            src.line();
+            generateExtension(src, extension);
+        }
+        src.close();
+        return src.toString();
+    }
+
+    private void generateExtension(Source src, ExtensionClass extension) {
+        src.javadoc(extension.comment);
+        src.open("public static class " + extension.className + " {");
+        for (Field field : extension.fields) {
+            field.declare(src);
+        }
+
+        src.open("public static " + extension.className + " decode(MessageInputStream in) throws IOException {");
+        src.line(extension.className + " struct = new " + extension.className + "();");
+        for (Field field : extension.fields) {
+            field.decode(src);
+        }
+        src.line("return struct;");
+        src.close();
+        src.line();
+
+        src.open("public void encode(MessageOutputStream out) throws IOException {");
+        for (Field field : extension.fields) {
+            field.encode(src);
+        }
+        src.close();
+        src.close();
+    }
+
+    private String generateRegistry(Map<Integer, String> messages) {
+        Source src = new Source();
+        src.line("package " + packageName + ";");
+        src.line();
+        src.line("import " + MessageInputStream.class.getName() + ";");
+        src.line("import " + TypedMessage.class.getName() + ";");
+        src.line();
+        src.line("import java.io.IOException;");
+        src.line();
+        src.javadoc("Decodes messages into their generated classes.", "Generated from the protocol definition by {@link " + getClass().getName() + "}. Don't edit.");
+        src.open("public class " + REGISTRY_CLASS + " {");
+        src.open("private " + REGISTRY_CLASS + "() {");
+        src.close();
+        src.line();
+        src.javadoc(null, "Decode a message, including any trailing bytes.", "@param id the message id", "@return the message, or null if there's no class for the id");
+        src.open("public static TypedMessage decode(int id, MessageInputStream in) throws IOException {");
+        src.open("switch (id) {");
+        for (String name : messages.values()) {
+            src.open("case " + name + ".ID:");
+            src.line("return " + name + ".decodeMessage(in);");
+            src.outdent();
+        }
+        src.open("default:");
+        src.line("return null;");
+        src.outdent();
+        src.close();
+        src.close();
+        src.close();
+        return src.toString();
+    }
+
+    private List<Field> fields(List<FieldDefinition> definitions, int fieldIndex) {
+        List<Field> fields = new ArrayList<>();
+        for (FieldDefinition definition : definitions) {
+            fieldIndex++;
+            String name = definition.getName() != null ? definition.getName() : ANONYMOUS_FIELD_PREFIX + fieldIndex;
+            if (!SourceVersion.isName(name) || RESERVED_NAMES.contains(name)) {
+                throw new TypeException("Field name " + name + " can't be used in generated code");
+            }
+            fields.add(new Field(name, typeFactory.resolveType(definition.getType()), definition));
+        }
+        return fields;
+    }
+
+    private List<ExtensionClass> extensions(StructDefinition definition, List<Field> fields) {
+        List<ExtensionClass> extensions = new ArrayList<>();
+        if (!definition.getExtensions().isEmpty()) {
+            boolean hasId = fields.stream().anyMatch(
+                field -> field.name.equals(ID_FIELD) && !field.type.isOptional() && field.javaType().equals("int")
+            );
+            if (!hasId) {
+                throw new TypeException(definition.getName() + " has extensions but no int " + ID_FIELD + " field");
+            }
+            Set<Integer> ids = new HashSet<>();
+            for (Extension extension : definition.getExtensions()) {
+                // First extension with an id wins, as in the map API
+                if (ids.add(extension.getId())) {
+                    extensions.add(new ExtensionClass(extension, fields(extension.getFields(), fields.size())));
+                }
+            }
+        }
+        return extensions;
+    }
+
+    private static class ExtensionClass {
+        private final int id;
+        private final String comment;
+        private final String className;
+        private final String fieldName;
+        private final List<Field> fields;
+
+        ExtensionClass(Extension extension, List<Field> fields) {
+            this.id = extension.getId();
+            this.comment = extension.getComment();
+            this.className = "Extension" + id;
+            this.fieldName = "extension" + id;
+            this.fields = fields;
+        }
+    }
+
+    private static class Field {
+        private final String name;
+        private final TypeFactory.Type type;
+        private final FieldDefinition definition;
+
+        Field(String name, TypeFactory.Type type, FieldDefinition definition) {
+            this.name = name;
+            this.type = type;
+            this.definition = definition;
+        }
+
+        String javaType() {
+            if (!type.isPrimitive()) {
+                return type.getStructDefinition().getName() + (type.isArray() ? "[]" : "");
+            }
+            if (type.isArray()) {
+                switch (type.getPrimitiveType()) {
+                    case BYTE:
+                        return "byte[]";
+                    case INT:
+                        return "int[]";
+                    case LONG:
+                        return "long[]";
+                    case STRING:
+                        return "String[]";
+                    default:
+                        throw new TypeException("Don't know how to generate arrays of type " + type.getPrimitiveType());
+                }
+            }
+            boolean boxed = type.isOptional();
+            switch (type.getPrimitiveType()) {
+                case BOOLEAN:
+                    return boxed ? "Boolean" : "boolean";
+                case BYTE:
+                    return boxed ? "Byte" : "byte";
+                case INT:
+                    return boxed ? "Integer" : "int";
+                case LONG:
+                    return boxed ? "Long" : "long";
+                default:
+                    return "String";
+            }
+        }
+
+        /**
+         * The initial value of the field, or null to leave it uninitialized.
+         */
+        String initializer() {
+            if (definition.getDefault() != null) {
+                Object dflt = type.valueOf(definition.getDefault());
+                if (dflt instanceof String) {
+                    return '"' + ((String) dflt).replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+                } else if (dflt instanceof Long) {
+                    return dflt + "L";
+                } else if (dflt instanceof Byte) {
+                    return "(byte) " + dflt;
+                } else if (dflt instanceof Integer || dflt instanceof Boolean) {
+                    return dflt.toString();
+                } else {
+                    throw new TypeException("Can't generate default " + definition.getDefault() + " for " + name);
+                }
+            }
+            if (type.isArray() && type.getLength() > 0 && !type.isOptional()) {
+                String javaType = javaType();
+                return "new " + javaType.substring(0, javaType.length() - 2) + "[" + type.getLength() + "]";
+            }
+            return null;
+        }
+
+        void declare(Source src) {
+            src.javadoc(definition.getComment());
+            String initializer = initializer();
+            src.line("public " + javaType() + " " + name + (initializer != null ? " = " + initializer : "") + ";");
+            src.line();
+        }
+
+        void decode(Source src) {
+            String read;
+            if (type.isArray()) {
+                String length = "in.readArrayLength(" + type.getLength() + ")";
+                if (type.isPrimitive()) {
+                    String javaType = javaType();
+                    read = "in.readArray(new " + javaType.substring(0, javaType.length() - 2) + "[" + length + "])";
+                } else {
+                    read = type.getStructDefinition().getName() + ".decodeArray(in, " + length + ")";
+                }
+            } else if (type.isPrimitive()) {
+                switch (type.getPrimitiveType()) {
+                    case BOOLEAN:
+                        read = "in.readBit()";
+                        break;
+                    case BYTE:
+                        read = "(byte) in.read()";
+                        break;
+                    case INT:
+                        read = "in.readInt()";
+                        break;
+                    case LONG:
+                        read = "in.readLong()";
+                        break;
+                    case STRING:
+                        read = "in.readString()";
+                        break;
+                    default:
+                        read = "in.readZipString()";
+                        break;
+                }
+            } else {
+                read = type.getStructDefinition().getName() + ".decode(in)";
+            }
+            if (type.isOptional()) {
+                read = "in.readBit() ? " + read + " : null";
+            }
+            src.line("struct." + name + " = " + read + ";");
+        }
+
+        void encode(Source src) {
+            if (type.isOptional()) {
+                src.line("out.writeBit(" + name + " != null);");
+                src.open("if (" + name + " != null) {");
+                encodeValue(src, name, true);
+                src.close();
+            } else {
+                encodeValue(src, name, false);
+            }
+        }
+
+        private void encodeValue(Source src, String value, boolean present) {
+            if (type.isArray()) {
+                src.line("out.writeArrayLength(" + (present ? value + ".length" : value + " == null ? 0 : " + value + ".length")
+                    + ", " + type.getLength() + ", \"" + type.getName() + "\");");
+                if (!present) {
+                    src.open("if (" + value + " != null) {");
+                }
+                if (type.isPrimitive() && type.getPrimitiveType() == TypeFactory.Primitive.BYTE) {
+                    src.line("out.write(" + value + ");");
+                } else {
+                    String javaType = javaType();
+                    src.open("for (" + javaType.substring(0, javaType.length() - 2) + " element : " + value + ") {");
+                    encodeElement(src, "element", false);
+                    src.close();
+                }
+                if (!present) {
+                    src.close();
+                }
+            } else {
+                encodeElement(src, value, present);
+            }
+        }
+
+        private void encodeElement(Source src, String value, boolean present) {
+            if (!type.isPrimitive()) {
+                String structName = type.getStructDefinition().getName();
+                src.line((present ? value : "(" + value + " != null ? " + value + " : new " + structName + "())") + ".encode(out);");
+                return;
+            }
+            switch (type.getPrimitiveType()) {
+                case BOOLEAN:
+                    src.line("out.writeBit(" + value + ");");
+                    break;
+                case BYTE:
+                    src.line("out.write(" + value + ");");
+                    break;
+                case INT:
+                    src.line("out.writeInt(" + value + ");");
+                    break;
+                case LONG:
+                    src.line("out.writeLong(" + value + ");");
+                    break;
+                case STRING:
+                    src.line("out.writeString(" + value + ");");
+                    break;
+                default:
+                    src.line("out.writeZipString(" + (present ? value : value + " == null ? \"\" : " + value) + ");");
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Indenting source writer.
+     */
+    private static class Source {
+        private final StringBuilder buffer = new StringBuilder();
+        private int depth;
+
+        void line() {
+            buffer.append('\n');
+        }
+
+        void line(String line) {
+            for (int i = 0; i < depth; i++) {
+                buffer.append("    ");
+            }
+            buffer.append(line).append('\n');
+        }
+
+        /**
+         * Write a line and indent the lines that follow.
+         */
+        void open(String line) {
+            line(line);
+            depth++;
+        }
+
+        void outdent() {
+            depth--;
+        }
+
+        /**
+         * Outdent and close a block.
+         */
+        void close() {
+            depth--;
+            line("}");
+        }
+
+        /**
+         * Write a doc comment, with paragraphs separated by &lt;p&gt; and blank paragraphs skipped. Writes nothing if
+         * all the paragraphs are blank.
+         */
+        void javadoc(String... paragraphs) {
+            List<String> lines = new ArrayList<>();
+            for (String paragraph : paragraphs) {
+                if (paragraph != null && !paragraph.trim().isEmpty()) {
+                    if (paragraph.startsWith("@")) {
+                        if (!lines.isEmpty() && !lines.get(lines.size() - 1).startsWith("@")) {
+                            lines.add("");
+                        }
+                    } else if (!lines.isEmpty()) {
+                        lines.add("<p>");
+                    }
+                    lines.add(paragraph.trim().replace("*/", "*&#47;"));
+                }
+            }
+            if (!lines.isEmpty()) {
+                line("/**");
+                for (String line : lines) {
+                    line(line.isEmpty() ? " *" : " * " + line);
+                }
+                line(" */");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+    }
+}
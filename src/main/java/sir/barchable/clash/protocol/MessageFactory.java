@@ -1,12 +1,13 @@
 package sir.barchable.clash.protocol;
 
+import sir.barchable.clash.protocol.typed.TypedMessages;
+import sir.barchable.util.BufferPool;
 import sir.barchable.util.NoopCipher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.io.InputStream;
 import java.util.*;
 
@@ -19,9 +20,12 @@ import java.util.*;
 public class MessageFactory {
 
     private static final Logger log = LoggerFactory.getLogger(MessageFactory.class);
+
     private TypeFactory typeFactory;
     private MessageReader reader;
     private MessageWriter writer;
+    private BufferPool bufferPool = BufferPool.getDefault();
+    private boolean lazy;
 
     public MessageFactory(TypeFactory typeFactory) {
         this.typeFactory = typeFactory;
@@ -41,6 +45,15 @@ public class MessageFactory {
         return typeFactory;
     }
 
+    /**
+     * Read messages from PDUs lazily? Messages read from PDUs keep the payload, and lazy messages only
+     * decode a field when it's accessed, which is much cheaper when only a few fields are wanted. Decoding errors are
+     * reported when the field is accessed rather than when the PDU is read. Defaults to false.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     /**
      * New empty message.
      *
@@ -49,11 +62,11 @@ public class MessageFactory {
      */
 
     public Message newMessage(Pdu.Type type) {
-        Optional<String> structName = typeFactory.getStructNameForId(type.id());
-        if (!structName.isPresent()) {
+        TypeFactory.MessageType messageType = typeFactory.getMessageType(type.id());
+        if (messageType == null) {
             throw new TypeException("No type definition for id " + type.id());
         }
-        return new Message(typeFactory, structName.get());
+        return new Message(typeFactory, messageType.getType(), null);
     }
 
     public Message newMessage(String type) {
@@ -61,36 +74,153 @@ public class MessageFactory {
     }
 
     /**
-     * Read a message.
+     * Read a message. The message is kept with the PDU, and shared by everyone else reading the PDU, along with any
+     * {@link Message#getModel(String, Class) models} parsed from it, so only change it if you own the PDU.
      *
      * @param pdu the PDU containing the message
      * @return a map of field names -> field values, or null if the message ID isn't recognized
      */
     public Message fromPdu(Pdu pdu) {
-        try (ByteArrayInputStream in = new ByteArrayInputStream(pdu.getPayload())) {
-            return fromStream(pdu.getType(), in);
-        } catch (TypeException | IOException e) {
+        if (pdu.message != null && pdu.messageFactory == this) {
+            return pdu.message;
+        }
+        Message message = fromPayload(pdu);
+        message.setModels(pdu.getModels());
+        pdu.messageFactory = this;
+        pdu.message = message;
+        return message;
+    }
+
+    /**
+     * Read the projected fields of a message, skipping the rest. Cheaper than a lazy read when the fields wanted are
+     * known up front.
+     *
+     * @param pdu the PDU containing the message
+     * @param projection the fields to read, or {@link Projection.Fields#ALL} for a normal {@link #fromPdu(Pdu) read}
+     * @return the message, holding only the projected fields
+     */
+    public Message fromPdu(Pdu pdu, Projection.Fields projection) {
+        if (projection == Projection.Fields.ALL || pdu.message != null && pdu.messageFactory == this) {
+            return fromPdu(pdu);
+        }
+        TypeFactory.MessageType messageType = typeFactory.getMessageType(pdu.getType().id());
+        if (messageType == null) {
+            throw new PduException("No type definition for " + pdu.getType() + " create one under main/messages/*/*.json");
+        }
+        try {
+            TypeFactory.Type type = messageType.getType();
+            if (projection.isEmpty()) {
+                // Nothing to read
+                return new Message(typeFactory, type, new LinkedHashMap<>());
+            }
+            MessageInputStream mIn = new PayloadInputStream(pdu.getPayloadBuffer(), 0, pdu.getPayloadLength());
+            mIn.setModels(pdu.getModels());
+            Map<String, Object> fields = ((CodecCompiler.StructCodec) type.getCodec()).read(mIn, projection);
+            if (projection.includes("end")) {
+                fields.put("end", reader.readEnd(mIn));
+            }
+            return new Message(typeFactory, type, fields);
+        } catch (TypeException e) {
+            throw new PduException(e);
+        }
+    }
+
+    /**
+     * Read a message over the PDU payload. The payload is kept so that when the message is written again only the
+     * fields that have changed need to be encoded. It isn't copied: a pooled buffer is given up by the pool instead.
+     */
+    private Message fromPayload(Pdu pdu) {
+        try {
+            TypeFactory.MessageType messageType = typeFactory.getMessageType(pdu.getType().id());
+            if (messageType == null) {
+                throw new PduException("No type definition for " + pdu.getType() + " create one under main/messages/*/*.json");
+            }
+            TypeFactory.Type type = messageType.getType();
+            LazyStruct fields = LazyStruct.forMessage(type, pdu.sharePayload(), pdu.getPayloadLength());
+            if (!lazy) {
+                fields.load();
+            }
+            return new Message(typeFactory, type, fields);
+        } catch (TypeException e) {
+            throw new PduException(e);
+        }
+    }
+
+    /**
+     * Read a message into its generated class. The classes are generated from the definitions in the source tree, not
+     * from this factory's {@link TypeFactory}.
+     *
+     * @param pdu the PDU containing the message
+     * @param type the class generated for the message
+     * @return the message
+     * @throws PduException if the message can't be read, or isn't of the expected type
+     */
+    public <T extends TypedMessage> T fromPdu(Pdu pdu, Class<T> type) {
+        TypedMessage message = decode(pdu);
+        if (message == null) {
+            throw new PduException("No message class for " + pdu.getType());
+        }
+        if (!type.isInstance(message)) {
+            throw new PduException("Expected " + type.getSimpleName() + ", got " + pdu.getType());
+        }
+        return type.cast(message);
+    }
+
+    /**
+     * Read a message into its generated class. Like {@link #fromPdu(Pdu)} the message is kept with the PDU and shared.
+     *
+     * @param pdu the PDU containing the message
+     * @return the message, or null if there's no class for the message ID
+     */
+    public TypedMessage decode(Pdu pdu) {
+        if (pdu.typedMessage != null) {
+            return pdu.typedMessage;
+        }
+        try {
+            MessageInputStream in = new PayloadInputStream(pdu.getPayloadBuffer(), 0, pdu.getPayloadLength());
+            in.setModels(pdu.getModels());
+            TypedMessage message = TypedMessages.decode(pdu.getId(), in);
+            if (message != null) {
+                message.setModels(pdu.getModels());
+            }
+            return pdu.typedMessage = message;
+        } catch (IOException e) {
             throw new PduException(e);
         }
     }
 
     /**
-     * Deserialize a message.
+     * Deserialize a message. Pass a {@link PayloadInputStream} if the message is already in memory.
      */
     public Message fromStream(Pdu.Type pduType, InputStream in) {
-        Optional<String> structName = typeFactory.getStructNameForId(pduType.id());
-        if (structName.isPresent()) {
+        TypeFactory.MessageType messageType = typeFactory.getMessageType(pduType.id());
+        if (messageType != null) {
             try {
-                String name = structName.get();
-                TypeFactory.Type type = typeFactory.resolveType(name);
+                TypeFactory.Type type = messageType.getType();
 
                 MessageInputStream mIn = MessageInputStream.toMessageInputStream(in);
-                Map<String, Object> fields = new LinkedHashMap<>( (Map<String, Object>)reader.readValue(type, mIn) );
+                ModelCache models = new ModelCache();
+                Map<String, Object> struct;
+                Object[] end;
+                mIn.setModels(models);
+                try {
+                    struct = (Map<String, Object>) reader.readValue(type, mIn);
+                    end = reader.readEnd(mIn);
+                } finally {
+                    mIn.setModels(null);
+                }
 
-                Object[] end = reader.readEnd(mIn);
-                fields.put("end",end);
+                Map<String, Object> fields;
+                if (struct instanceof Record) {
+                    fields = Record.withEnd((Record) struct, end);
+                } else {
+                    fields = new LinkedHashMap<>(struct);
+                    fields.put("end", end);
+                }
 
-                return new Message(typeFactory, name, fields);
+                Message message = new Message(typeFactory, type, fields);
+                message.setModels(models);
+                return message;
             } catch (TypeException | IOException e) {
                 throw new PduException(e);
             }
@@ -103,18 +233,74 @@ public class MessageFactory {
      * Read an unencrypted PDU from a stream and deserialize the contents.
      */
     public Message fromStream(InputStream in) throws IOException {
-        return fromPdu(new PduInputStream(in, NoopCipher.NOOP_CIPHER).read());
+        Pdu pdu = new PduInputStream(in, NoopCipher.NOOP_CIPHER).read();
+        try {
+            return fromPdu(pdu);
+        } finally {
+            pdu.release();
+        }
     }
 
+    /**
+     * Serialize a message. The message is sized first, then written once into a pooled buffer of exactly that size,
+     * which backs the PDU; {@link Pdu#release() release} it when done to return the buffer to the pool.
+     */
     public Pdu toPdu(Message message) {
-        ByteArrayOutputStream sink = new ByteArrayOutputStream();
-        MessageOutputStream out = new MessageOutputStream(sink);
+        TypeFactory.Type type = typeFactory.resolveType(message.getDefinition().getName());
+        int id = type.getStructDefinition().getId();
         try {
-            TypeFactory.Type type = typeFactory.resolveType(message.getDefinition().getName());
-            writer.write(type, message.getFields(), out);
-            return new Pdu(type.getStructDefinition().getId(), sink.toByteArray());
+            ModelCache models = message.getModels();
+            MessageSizer sizer = new MessageSizer();
+            sizer.setModels(models);
+            writer.write(type, message.getFields(), sizer);
+            return encode(id, sizer.size(), out -> {
+                out.setModels(models);
+                writer.write(type, message.getFields(), out);
+                out.flush();
+            });
         } catch (IOException e) {
             throw new PduException(e);
         }
     }
+
+    /**
+     * Serialize a typed message, like {@link #toPdu(Message)}.
+     */
+    public Pdu toPdu(TypedMessage message) {
+        try {
+            ModelCache models = message.getModels();
+            MessageSizer sizer = new MessageSizer();
+            sizer.setModels(models);
+            message.encode(sizer);
+            return encode(message.getId(), sizer.size(), out -> {
+                out.setModels(models);
+                message.encode(out);
+                out.flush();
+            });
+        } catch (IOException e) {
+            throw new PduException(e);
+        }
+    }
+
+    private interface Encoder {
+        void encode(PayloadOutputStream out) throws IOException;
+    }
+
+    private Pdu encode(int id, int length, Encoder encoder) throws IOException {
+        byte[] buffer = bufferPool.acquire(length);
+        try {
+            PayloadOutputStream out = new PayloadOutputStream(buffer, 0, length);
+            encoder.encode(out);
+            if (out.size() != length) {
+                throw new PduException("Message " + id + " was sized at " + length + " bytes but wrote " + out.size());
+            }
+        } catch (RuntimeException | IOException e) {
+            bufferPool.release(buffer);
+            if (e instanceof BufferOverflowException) {
+                throw new PduException("Message " + id + " wrote more than the " + length + " bytes it was sized at");
+            }
+            throw e;
+        }
+        return Pdu.wrap(bufferPool, id, buffer, length);
+    }
 }
@@ -0,0 +1,271 @@
+package sir.barchable.clash.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import sir.barchable.clash.model.json.Village;
+import sir.barchable.clash.protocol.Protocol.StructDefinition;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+import sir.barchable.util.Json;
+
+import java.util.*;
+
+import static sir.barchable.clash.model.ObjectType.*;
+import static sir.barchable.clash.protocol.TypeFactory.ANONYMOUS_FIELD_PREFIX;
+import static sir.barchable.clash.protocol.TypeFactory.ID_FIELD;
+
+/**
+ * Make random messages that follow the protocol definition, for benchmarks and tests that would otherwise need
+ * captured traffic.
+ * <p>
+ * Every field gets a value of its declared type. Optional fields are sometimes left out, structs with extensions get
+ * one of their extensions, and arrays without a fixed length get up to {@link #setSize(int) size} elements. Home
+ * village fields get the JSON of a random {@link Village}, with a layout scaled by the same size. Given the same seed
+ * and size the generator makes the same messages.
+ *
+ * @author Sir Barchable
+ */
+public class MessageGenerator {
+    /**
+     * How deep optional and array fields are filled in, in case a struct refers back to itself.
+     */
+    private static final int MAX_DEPTH = 8;
+
+    private static final String VILLAGE_FIELD = "homeVillage";
+
+    private final MessageFactory messageFactory;
+    private final TypeFactory typeFactory;
+    private final Random random;
+    private int size = 16;
+
+    /**
+     * Extensions that can be generated, by struct name.
+     */
+    private final Map<String, List<Extension>> extensions = new HashMap<>();
+
+    public MessageGenerator(MessageFactory messageFactory, long seed) {
+        this.messageFactory = messageFactory;
+        this.typeFactory = messageFactory.getTypeFactory();
+        this.random = new Random(seed);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Set the scale of generated messages: the most elements in an array, the longest string, and roughly the number
+     * of buildings in a village.
+     */
+    public void setSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size " + size);
+        }
+        this.size = size;
+    }
+
+    /**
+     * Message types the generator can make: every type with a definition.
+     */
+    public List<Pdu.Type> getMessageTypes() {
+        List<Pdu.Type> types = new ArrayList<>();
+        for (Pdu.Type type : Pdu.Type.values()) {
+            if (type != Pdu.Type.Unknown && typeFactory.getMessageType(type.id()) != null) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    public Message generate(Pdu.Type type) {
+        Message message = messageFactory.newMessage(type);
+        for (Map.Entry<String, Object> field : generateStruct(message.getDefinition(), 0).entrySet()) {
+            message.set(field.getKey(), field.getValue());
+        }
+        return message;
+    }
+
+    /**
+     * Make a PDU holding a random message.
+     */
+    public Pdu generatePdu(Pdu.Type type) {
+        return messageFactory.toPdu(generate(type));
+    }
+
+    private Map<String, Object> generateStruct(StructDefinition definition, int depth) {
+        Map<String, Object> struct = new LinkedHashMap<>();
+        Extension extension = null;
+        List<Extension> candidates = extensions(definition);
+        if (!candidates.isEmpty()) {
+            extension = candidates.get(random.nextInt(candidates.size()));
+        }
+        int fieldIndex = 0;
+        for (FieldDefinition field : definition.getFields()) {
+            fieldIndex++;
+            if (extension != null && ID_FIELD.equals(field.getName())) {
+                struct.put(ID_FIELD, extension.getId());
+            } else {
+                putField(struct, field, fieldIndex, depth);
+            }
+        }
+        if (extension != null) {
+            for (FieldDefinition field : extension.getFields()) {
+                putField(struct, field, ++fieldIndex, depth);
+            }
+        }
+        return struct;
+    }
+
+    /**
+     * The extensions of a struct whose field types all resolve. Where ids repeat the first extension wins, as it does
+     * in the codec.
+     */
+    private List<Extension> extensions(StructDefinition definition) {
+        return extensions.computeIfAbsent(definition.getName(), name -> {
+            List<Extension> usable = new ArrayList<>();
+            Set<Integer> ids = new HashSet<>();
+            for (Extension extension : definition.getExtensions()) {
+                if (!ids.add(extension.getId())) {
+                    continue;
+                }
+                try {
+                    for (FieldDefinition field : extension.getFields()) {
+                        typeFactory.resolveType(field.getType());
+                    }
+                    usable.add(extension);
+                } catch (TypeException e) {
+                    // Leave it out
+                }
+            }
+            return usable;
+        });
+    }
+
+    private void putField(Map<String, Object> struct, FieldDefinition field, int fieldIndex, int depth) {
+        String key = field.getName() == null ? ANONYMOUS_FIELD_PREFIX + fieldIndex : field.getName();
+        TypeFactory.Type type = typeFactory.resolveType(field.getType());
+        Object value;
+        if (VILLAGE_FIELD.equals(key) && type.getPrimitiveType() == TypeFactory.Primitive.ZIP_STRING && !type.isArray()) {
+            value = villageJson();
+        } else if (type.isOptional() && (depth >= MAX_DEPTH || random.nextInt(4) == 0)) {
+            value = null;
+        } else {
+            value = generateValue(type, depth);
+        }
+        struct.put(key, value);
+    }
+
+    private Object generateValue(TypeFactory.Type type, int depth) {
+        if (type.isArray()) {
+            int length = type.getLength() > 0 ? type.getLength() : depth >= MAX_DEPTH ? 0 : random.nextInt(size + 1);
+            if (!type.isPrimitive()) {
+                Object[] elements = new Object[length];
+                for (int i = 0; i < length; i++) {
+                    elements[i] = generateStruct(type.getStructDefinition(), depth + 1);
+                }
+                return elements;
+            }
+            switch (type.getPrimitiveType()) {
+                case BYTE:
+                    byte[] bytes = new byte[length];
+                    random.nextBytes(bytes);
+                    return bytes;
+                case INT:
+                    int[] ints = new int[length];
+                    for (int i = 0; i < length; i++) {
+                        ints[i] = random.nextInt();
+                    }
+                    return ints;
+                case LONG:
+                    long[] longs = new long[length];
+                    for (int i = 0; i < length; i++) {
+                        longs[i] = random.nextInt();
+                    }
+                    return longs;
+                case STRING:
+                    String[] strings = new String[length];
+                    for (int i = 0; i < length; i++) {
+                        strings[i] = randomString();
+                    }
+                    return strings;
+                default:
+                    throw new TypeException("Can't generate arrays of type " + type.getPrimitiveType());
+            }
+        }
+        if (!type.isPrimitive()) {
+            return generateStruct(type.getStructDefinition(), depth + 1);
+        }
+        switch (type.getPrimitiveType()) {
+            case BOOLEAN:
+                return random.nextBoolean();
+            case BYTE:
+                return (byte) random.nextInt();
+            case INT:
+                return random.nextInt();
+            case LONG:
+                return random.nextLong();
+            default:
+                return randomString();
+        }
+    }
+
+    private String randomString() {
+        char[] chars = new char[random.nextInt(size + 1)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    private String villageJson() {
+        try {
+            return Json.toString(village());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A random village with one town hall, about {@link #size} other buildings, and obstacles, traps and decorations
+     * in proportion.
+     */
+    Village village() {
+        Village village = new Village();
+        village.active_layout = 0;
+        village.war_layout = 0;
+        village.layout_state = new Integer[] {0, 0, 0, 0, 0};
+        village.buildings = new Village.Building[size + 1];
+        village.buildings[0] = building(TOWN_HALL, 10);
+        for (int i = 1; i < village.buildings.length; i++) {
+            village.buildings[i] = building(TROOP_HOUSING + random.nextInt(AIR_BLASTER - TROOP_HOUSING + 1), 12);
+        }
+        village.obstacles = new Village.Building[size / 2];
+        for (int i = 0; i < village.obstacles.length; i++) {
+            village.obstacles[i] = building(PINE_TREE + random.nextInt(NPC_PLANT_2 - PINE_TREE + 1), 0);
+            village.obstacles[i].lvl = null;
+        }
+        village.traps = new Village.Building[size / 4];
+        for (int i = 0; i < village.traps.length; i++) {
+            village.traps[i] = building(MINE + random.nextInt(HALLOWEENSKELS - MINE + 1), 5);
+        }
+        village.decos = new Village.Building[size / 4];
+        for (int i = 0; i < village.decos.length; i++) {
+            village.decos[i] = building(BARBARIAN_STATUE + random.nextInt(GREECE_FLAG - BARBARIAN_STATUE + 1), 0);
+            village.decos[i].lvl = null;
+        }
+        village.newShopBuildings = new Integer[0];
+        village.newShopTraps = new Integer[0];
+        village.newShopDecos = new Integer[0];
+        village.respawnVars = new Village.RespawnVars();
+        village.respawnVars.respawnSeed = random.nextInt();
+        return village;
+    }
+
+    private Village.Building building(int data, int maxLevel) {
+        Village.Building building = new Village.Building();
+        building.data = data;
+        building.lvl = random.nextInt(maxLevel + 1);
+        building.x = random.nextInt(44);
+        building.y = random.nextInt(44);
+        return building;
+    }
+}
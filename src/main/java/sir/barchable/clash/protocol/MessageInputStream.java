@@ -4,10 +4,8 @@ import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sir.barchable.util.BitInputStream;
-import sir.barchable.util.Bits;
 
 import java.io.*;
-import java.util.zip.InflaterInputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -25,17 +23,39 @@ public class MessageInputStream extends InputStream {
 
     private BitInputStream in;
 
+    /**
+     * Where to keep the blocks of zipped strings read, if anywhere.
+     */
+    private ModelCache models;
+
     public MessageInputStream(InputStream in) {
         this.in = BitInputStream.toBitInputStream(in);
     }
 
+    /**
+     * For subclasses that read from something other than a stream. They override every read.
+     *
+     * @see PayloadInputStream
+     */
+    protected MessageInputStream() {
+    }
+
     /**
      * Wrap or cast an InputStream to a MessageInputStream.
+     *
+     * @see PayloadInputStream for payloads that are already in memory
      */
     public static MessageInputStream toMessageInputStream(InputStream in) {
         return in instanceof MessageInputStream ? (MessageInputStream) in : new MessageInputStream(in);
     }
 
+    /**
+     * Keep the block of each zipped string read in the cache of the message being read.
+     */
+    void setModels(ModelCache models) {
+        this.models = models;
+    }
+
     @Override
     public int read() throws IOException {
         return in.read();
@@ -50,6 +70,36 @@ public class MessageInputStream extends InputStream {
         in.close();
     }
 
+    /**
+     * @see BitInputStream#getBitMask()
+     */
+    public int getBitMask() {
+        return in.getBitMask();
+    }
+
+    /**
+     * @see BitInputStream#resumeBits(int, int)
+     */
+    public void resumeBits(int bitField, int mask) {
+        in.resumeBits(bitField, mask);
+    }
+
+    /**
+     * Skip bytes, failing if there aren't enough.
+     */
+    public void skipFully(int n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
     public int readUnsignedByte() throws IOException {
         int ch = in.read();
         if (ch == -1) {
@@ -106,28 +156,40 @@ public class MessageInputStream extends InputStream {
             return "";
         }
 
-        // Read unzipped Length
-        int unzippedLength = Bits.swapEndian(readInt());
-        checkLength(unzippedLength);
-
-        // Read zipped data
-        byte[] zipped = readArray(new byte[length - 4]);
-        InflaterInputStream zipStream = new InflaterInputStream(new ByteArrayInputStream(zipped));
-        ByteArrayOutputStream out = new ByteArrayOutputStream(unzippedLength);
+        // Read the unzipped length, zipped data and terminator
+        byte[] block = readArray(new byte[length]);
+        String s = ZipStrings.inflate(block);
+        if (models != null) {
+            models.putBlock(s, block);
+        }
+        return s;
+    }
 
-        // Unzip it
-        IOUtils.copy(zipStream, out);
-        byte[] unzipped = out.toByteArray();
+    /**
+     * Read the length of an array.
+     *
+     * @param fixedLength the length of the array if it's fixed by its type, or 0 to read the length from the stream
+     */
+    public int readArrayLength(int fixedLength) throws IOException {
+        int length = fixedLength > 0 ? fixedLength : readInt();
+        if (length < 0 || length > MAX_ARRAY_LENGTH) {
+            throw new PduException("Array length out of bounds: " + length);
+        }
+        return length;
+    }
 
-        // Decode the string
-        return new String(unzipped, UTF_8);
+    /**
+     * Read everything left in the stream, e.g. bytes trailing a message that the definition doesn't account for.
+     */
+    public byte[] readRemaining() throws IOException {
+        return IOUtils.toByteArray(this);
     }
 
     public byte[] readArray(byte[] a) throws IOException {
         return readArray(a, 0, a.length);
     }
 
-    public final byte[] readArray(byte a[], int off, int len) throws IOException {
+    public byte[] readArray(byte a[], int off, int len) throws IOException {
         if (len < 0) {
             throw new IndexOutOfBoundsException();
         }
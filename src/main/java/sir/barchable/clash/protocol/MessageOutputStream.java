@@ -1,13 +1,10 @@
 package sir.barchable.clash.protocol;
 
 import sir.barchable.util.BitOutputStream;
-import sir.barchable.util.Bits;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.DeflaterOutputStream;
 
 /**
  * Output stream with support for writing Clash primitives.
@@ -18,14 +15,35 @@ import java.util.zip.DeflaterOutputStream;
 public class MessageOutputStream extends OutputStream {
     private BitOutputStream out;
 
+    /**
+     * Where to find the blocks of zipped strings, and keep new ones, if anywhere.
+     */
+    private ModelCache models;
+
     public MessageOutputStream(OutputStream out) {
         this.out = out instanceof BitOutputStream ? (BitOutputStream) out : new BitOutputStream(out);
     }
 
+    /**
+     * For subclasses that write to something other than a stream. They override every write.
+     *
+     * @see PayloadOutputStream
+     */
+    protected MessageOutputStream() {
+    }
+
     public void writeBit(boolean bit) throws IOException {
         out.writeBit(bit);
     }
 
+    /**
+     * Is a bit field part way through being written? The next bit would go into the same byte, where a byte write
+     * would first commit the bit field.
+     */
+    public boolean hasPendingBits() {
+        return out.hasPendingBits();
+    }
+
     public void writeInt(int v) throws IOException {
         out.write(v >>> 24);
         out.write(v >>> 16 & 0xff);
@@ -35,7 +53,7 @@ public class MessageOutputStream extends OutputStream {
 
     private byte buffer[] = new byte[8];
 
-    public final void writeLong(long v) throws IOException {
+    public void writeLong(long v) throws IOException {
         buffer[0] = (byte) (v >>> 56);
         buffer[1] = (byte) (v >>> 48);
         buffer[2] = (byte) (v >>> 40);
@@ -59,21 +77,33 @@ public class MessageOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Reuse and keep the blocks of zipped strings in the cache of the message being written.
+     */
+    void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    /**
+     * The block for a zipped string: the one it was read from or last written as, or a new one.
+     */
+    byte[] zipBlock(String s) {
+        byte[] block = models == null ? null : models.getBlock(s);
+        if (block == null) {
+            block = ZipStrings.deflate(s);
+            if (models != null) {
+                models.putBlock(s, block);
+            }
+        }
+        return block;
+    }
+
     public void writeZipString(String s) throws IOException {
-        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        DeflaterOutputStream zipStream = new DeflaterOutputStream(out);
-        zipStream.write(bytes);
-        zipStream.close();
-        byte[] zipped = out.toByteArray();
+        // unzipped length in little endian order, zipped utf-8 encoded string, and null terminator
+        byte[] block = zipBlock(s);
         // write total length
-        writeInt(zipped.length + 5);
-        // write unzipped length in little endian order
-        writeInt(Bits.swapEndian(bytes.length));
-        // write zipped utf-8 encoded string
-        write(zipped);
-        // null terminator
-        write(0);
+        writeInt(block.length);
+        write(block);
     }
 
     public void writeArray(int[] ints) throws IOException {
@@ -85,6 +115,21 @@ public class MessageOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Write the length of an array.
+     *
+     * @param length the length of the array
+     * @param fixedLength the length of the array if it's fixed by its type, or 0 to write the length to the stream
+     * @param name the type name, for errors
+     */
+    public void writeArrayLength(int length, int fixedLength, String name) throws IOException {
+        if (fixedLength == 0) {
+            writeInt(length);
+        } else if (length != fixedLength) {
+            throw new PduException("Array length mismatch for " + name + " (" + fixedLength + "!=" + length + ")");
+        }
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
         out.write(b, off, len);
@@ -6,7 +6,6 @@ import sir.barchable.clash.protocol.Protocol.StructDefinition;
 import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
 import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.*;
 import java.lang.StringBuilder;
@@ -25,6 +24,11 @@ public class MessageReader {
      */
     private boolean allFields = true;
 
+    /**
+     * Read with the types' compiled {@link Codec codecs} rather than interpreting the definitions.
+     */
+    private boolean compiled = true;
+
     public MessageReader() {
         this(new TypeFactory());
     }
@@ -40,11 +44,11 @@ public class MessageReader {
      * @return a map of field names -> field values, or null if the message ID isn't recognized
      */
     public Map<String, Object> readMessage(Pdu pdu) {
-        Optional<String> messageName = typeFactory.getStructNameForId(pdu.getId());
-        if (messageName.isPresent()) {
+        TypeFactory.MessageType messageType = typeFactory.getMessageType(pdu.getId());
+        if (messageType != null) {
             try {
-                MessageInputStream in = new MessageInputStream(new ByteArrayInputStream(pdu.getPayload()));
-                return (Map<String, Object>) readValue(messageName.get(), in);
+                MessageInputStream in = new PayloadInputStream(pdu.getPayloadBuffer(), 0, pdu.getPayloadLength());
+                return (Map<String, Object>) readValue(messageType.getType(), in);
             } catch (IOException e) {
                 throw new PduException(e);
             }
@@ -62,6 +66,14 @@ public class MessageReader {
         return readValue(typeFactory.resolveType(typeName), in);
     }
 
+    /**
+     * Use compiled codecs (the default), or interpret the type definitions field by field. Both produce the same
+     * results; the interpreter is kept as the reference.
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    }
+
     /**
      * Read a value from the stream.
      *
@@ -70,6 +82,13 @@ public class MessageReader {
      * @return the value, or null if the value was optional and not present in the stream
      */
     public Object readValue(TypeFactory.Type definition, MessageInputStream in) throws IOException {
+        if (compiled && allFields) {
+            return definition.getCodec().read(in);
+        }
+        return interpretValue(definition, in);
+    }
+
+    private Object interpretValue(TypeFactory.Type definition, MessageInputStream in) throws IOException {
         if (definition.isOptional() && !in.readBit()) {
             return null;
         }
@@ -84,6 +103,10 @@ public class MessageReader {
     }
 
     public Object[] readEnd( MessageInputStream in) {
+        return readTrailing(in);
+    }
+
+    static Integer[] readTrailing(MessageInputStream in) {
         ArrayList<Integer> extraBytes = new ArrayList<Integer>();
         try{
             while(true){
@@ -133,7 +156,7 @@ public class MessageReader {
             Object[] messages = new Object[length];
             for (int i = 0; i < length; i++) {
                 try {
-                    messages[i] = readValue(definition.getName(), in);
+                    messages[i] = interpretValue(typeFactory.resolveType(definition.getName()), in);
                 } catch (PduException e) {
                     throw new PduException("Could not read element " + i + " of " + definition.getName() + "[]", e);
                 }
@@ -178,7 +201,7 @@ public class MessageReader {
             StructDefinition struct = definition.getStructDefinition();
             for (FieldDefinition field : struct.getFields()) {
                 fieldIndex++;
-                Object value = readValue(field.getType(), in);
+                Object value = interpretValue(typeFactory.resolveType(field.getType()), in);
                 if (field.getName() != null || allFields) {
                     fields.put(field.getName() != null ? field.getName() : "field" + fieldIndex, value);
                 }
@@ -195,7 +218,7 @@ public class MessageReader {
                     // Read extension to the struct
                     for (FieldDefinition field : extension.getFields()) {
                         fieldIndex++;
-                        Object value = readValue(field.getType(), in);
+                        Object value = interpretValue(typeFactory.resolveType(field.getType()), in);
                         if (field.getName() != null || allFields) {
                             fields.put(field.getName() != null ? field.getName() : "field" + fieldIndex, value);
                         }
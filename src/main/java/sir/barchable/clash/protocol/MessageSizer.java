@@ -0,0 +1,123 @@
+package sir.barchable.clash.protocol;
+
+/**
+ * A {@link MessageOutputStream} that writes nothing, and just counts the bytes that would have been written, so that
+ * a payload can be written once into an array of the right size.
+ * <p>
+ * Strings aren't encoded to be counted. Zipped strings are zipped, but the result is remembered (see
+ * {@link ZipStrings}) so writing the string afterwards doesn't zip it again.
+ *
+ * @author Sir Barchable
+ */
+public class MessageSizer extends MessageOutputStream {
+    private int size;
+
+    /**
+     * Bits written to a bit field that hasn't been committed.
+     */
+    private int bitCount;
+
+    /**
+     * The number of bytes written so far, including any partly written bit field.
+     */
+    public int size() {
+        return size + (bitCount > 0 ? 1 : 0);
+    }
+
+    @Override
+    public void writeBit(boolean bit) {
+        if (++bitCount == 8) {
+            flushBits();
+        }
+    }
+
+    @Override
+    public boolean hasPendingBits() {
+        return bitCount > 0;
+    }
+
+    private void flushBits() {
+        if (bitCount > 0) {
+            size++;
+            bitCount = 0;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        flushBits();
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        flushBits();
+        size += len;
+    }
+
+    @Override
+    public void writeInt(int v) {
+        flushBits();
+        size += 4;
+    }
+
+    @Override
+    public void writeLong(long v) {
+        flushBits();
+        size += 8;
+    }
+
+    @Override
+    public void writeString(String s) {
+        writeInt(0);
+        if (s != null) {
+            size += utf8Length(s);
+        }
+    }
+
+    @Override
+    public void writeZipString(String s) {
+        writeInt(0);
+        size += zipBlock(s).length;
+    }
+
+    @Override
+    public void writeArray(int[] ints) {
+        writeInt(0);
+        size += ints.length * 4;
+    }
+
+    @Override
+    public void flush() {
+        flushBits();
+    }
+
+    @Override
+    public void close() {
+        flushBits();
+    }
+
+    /**
+     * The length of a string encoded as UTF-8, the way {@link String#getBytes(java.nio.charset.Charset)} encodes it,
+     * with unpaired surrogates replaced by '?'.
+     */
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
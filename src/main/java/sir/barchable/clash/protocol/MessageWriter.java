@@ -19,14 +19,35 @@ public class MessageWriter {
     private TypeFactory typeFactory;
     private static final Logger log = LoggerFactory.getLogger(MessageWriter.class);
 
+    /**
+     * Write with the types' compiled {@link Codec codecs} rather than interpreting the definitions.
+     */
+    private boolean compiled = true;
+
     public MessageWriter(TypeFactory typeFactory) {
         this.typeFactory = typeFactory;
     }
 
+    /**
+     * Use compiled codecs (the default), or interpret the type definitions field by field. Both produce the same
+     * output; the interpreter is kept as the reference.
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    }
+
     public void write(TypeFactory.Type type, Object o, MessageOutputStream out) throws IOException {
         if (out == null) {
             throw new NullPointerException("null payload");
         }
+        if (compiled) {
+            type.getCodec().write(o, out);
+        } else {
+            interpret(type, o, out);
+        }
+    }
+
+    private void interpret(TypeFactory.Type type, Object o, MessageOutputStream out) throws IOException {
 
         if (type.isOptional()) {
             out.writeBit(o != null);
@@ -86,7 +107,7 @@ public class MessageWriter {
             } else {
                 TypeFactory.Type structName = typeFactory.resolveType(type.getStructDefinition().getName());
                 for (Object struct : (Object[]) o) {
-                    write(structName, struct, out);
+                    interpret(structName, struct, out);
                 }
             }
         }
@@ -141,7 +162,7 @@ public class MessageWriter {
                 value = fieldType.valueOf(fieldDefinition.getDefault());
             }
             try {
-                write(fieldType, value, out);
+                interpret(fieldType, value, out);
             } catch (RuntimeException e) {
                 throw new IOException("Failed to write field " + key + " of " + type.getName(), e);
             }
@@ -162,7 +183,7 @@ public class MessageWriter {
                         value = fieldType.valueOf(fieldDefinition.getDefault());
                     }
                     try {
-                        write(fieldType, value, out);
+                        interpret(fieldType, value, out);
                     } catch (IOException e) {
                         throw new IOException("Failed to write field " + key + " of " + type.getName(), e);
                     }
@@ -0,0 +1,99 @@
+package sir.barchable.clash.protocol;
+
+import sir.barchable.util.Json;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The models parsed from the JSON fields of a message, e.g. the {@link sir.barchable.clash.model.json.Village} in
+ * homeVillage, so that each document is parsed once however many consumers look at it.
+ * <p>
+ * A model is remembered along with the string it was parsed from, and only handed out again for an equal string, so
+ * replacing the field invalidates it. A PDU keeps one cache for both its {@link Message} and {@link TypedMessage}
+ * views. Models are shared: anyone changing one should write it back to the field.
+ * <p>
+ * The cache also keeps the zip block of each zipped string read or written with the message, so that writing an
+ * unchanged string back out (e.g. when a village is copied, or decoded and encoded again) reuses the block rather than
+ * compressing the string again.
+ *
+ * @see Message#getModel(String, Class)
+ * @see TypedMessage#getModels()
+ * @author Sir Barchable
+ */
+public class ModelCache {
+    private final Map<String, Model> models = new HashMap<>(4);
+
+    /**
+     * Zipped string -> its block. Shared with the caches of copies of the message.
+     */
+    private final Map<String, byte[]> blocks;
+
+    public ModelCache() {
+        this(new ConcurrentHashMap<>(4));
+    }
+
+    private ModelCache(Map<String, byte[]> blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * A cache for a copy of the message. Models can be changed, so they aren't shared with the copy, but zip blocks
+     * are.
+     */
+    ModelCache forCopy() {
+        return new ModelCache(blocks);
+    }
+
+    /**
+     * Get the model for a field, parsing it if it hasn't been parsed.
+     *
+     * @param key the field name
+     * @param json the field value
+     * @param type the model class
+     * @return the model, or null if the field is null
+     */
+    public synchronized <T> T get(String key, String json, Class<T> type) throws IOException {
+        if (json == null) {
+            return null;
+        }
+        Model model = models.get(key);
+        if (model == null || !model.json.equals(json) || !type.isInstance(model.value)) {
+            model = new Model(json, Json.valueOf(json, type));
+            models.put(key, model);
+        }
+        return type.cast(model.value);
+    }
+
+    /**
+     * Forget the model for a field.
+     */
+    public synchronized void invalidate(String key) {
+        models.remove(key);
+    }
+
+    /**
+     * The block a zipped string was read from or written as.
+     *
+     * @return the block, or null if the string hasn't been seen
+     */
+    byte[] getBlock(String s) {
+        return blocks.get(s);
+    }
+
+    void putBlock(String s, byte[] block) {
+        blocks.put(s, block);
+    }
+
+    private static class Model {
+        private final String json;
+        private final Object value;
+
+        Model(String json, Object value) {
+            this.json = json;
+            this.value = value;
+        }
+    }
+}
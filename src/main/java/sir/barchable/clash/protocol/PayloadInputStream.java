@@ -0,0 +1,182 @@
+package sir.barchable.clash.protocol;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link MessageInputStream} over a payload that's already in memory. Reads go straight to a {@link ByteBuffer}, so
+ * ints and longs are read whole and int arrays in bulk, rather than a byte at a time through a chain of streams.
+ * <p>
+ * Bits are read as they are by {@link sir.barchable.util.BitInputStream}: little endian, with any byte read
+ * discarding the rest of a partly read bit field.
+ *
+ * @author Sir Barchable
+ */
+public class PayloadInputStream extends MessageInputStream {
+    private final ByteBuffer buffer;
+    private final int start;
+    private int bitField = -1;
+    private int mask;
+
+    /**
+     * @param payload the array holding the payload. Not copied.
+     * @param offset where the payload starts in the array
+     * @param length the payload length
+     */
+    public PayloadInputStream(byte[] payload, int offset, int length) {
+        this(ByteBuffer.wrap(payload, offset, length));
+    }
+
+    /**
+     * Read the remaining bytes of a buffer. The buffer's position and limit aren't changed.
+     */
+    public PayloadInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.start = buffer.position();
+    }
+
+    /**
+     * Where the next byte will be read from, relative to the start of the array, or the buffer position, the stream
+     * was created with.
+     */
+    public int position() {
+        return start + buffer.position();
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public int read() {
+        bitField = -1;
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        bitField = -1;
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public boolean readBit() throws EOFException {
+        if (bitField == -1) {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            bitField = buffer.get() & 0xff;
+            mask = 1;
+        }
+
+        boolean bit = (bitField & mask) != 0;
+        if ((mask <<= 1) == 0x100) {
+            bitField = -1;
+        }
+        return bit;
+    }
+
+    @Override
+    public int getBitMask() {
+        return bitField == -1 ? 0 : mask;
+    }
+
+    @Override
+    public void resumeBits(int bitField, int mask) {
+        this.bitField = bitField & 0xff;
+        this.mask = mask;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public long skip(long n) {
+        bitField = -1;
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public void skipFully(int n) throws EOFException {
+        require(n);
+        buffer.position(buffer.position() + n);
+    }
+
+    @Override
+    public int readUnsignedByte() throws EOFException {
+        require(1);
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int readInt() throws EOFException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws EOFException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public byte[] readRemaining() {
+        bitField = -1;
+        byte[] remaining = new byte[buffer.remaining()];
+        buffer.get(remaining);
+        return remaining;
+    }
+
+    @Override
+    public byte[] readArray(byte[] a, int off, int len) throws EOFException {
+        if (len < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        require(len);
+        buffer.get(a, off, len);
+        return a;
+    }
+
+    @Override
+    public int[] readArray(int[] a) throws EOFException {
+        require(a.length * 4L);
+        buffer.asIntBuffer().get(a);
+        buffer.position(buffer.position() + a.length * 4);
+        return a;
+    }
+
+    @Override
+    public long[] readArray(long[] a) throws EOFException {
+        // Longs are sent as ints
+        require(a.length * 4L);
+        for (int i = 0; i < a.length; i++) {
+            a[i] = buffer.getInt();
+        }
+        return a;
+    }
+
+    /**
+     * Start reading at a byte boundary, and check there's enough left to read.
+     */
+    private void require(long n) throws EOFException {
+        bitField = -1;
+        if (n > buffer.remaining()) {
+            buffer.position(buffer.limit());
+            throw new EOFException();
+        }
+    }
+}
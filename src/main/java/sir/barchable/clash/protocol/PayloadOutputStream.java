@@ -0,0 +1,124 @@
+package sir.barchable.clash.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link MessageOutputStream} that writes straight into an array, for payloads whose size is known up front (see
+ * {@link MessageSizer}). Writing past the end of the array throws a {@link java.nio.BufferOverflowException}.
+ * <p>
+ * Bits are written as they are by {@link sir.barchable.util.BitOutputStream}: little endian, committed up to the next
+ * byte boundary by any byte write or flush.
+ *
+ * @author Sir Barchable
+ */
+public class PayloadOutputStream extends MessageOutputStream {
+    private final ByteBuffer buffer;
+    private final int start;
+    private int bitField = -1;
+    private int mask;
+
+    /**
+     * @param payload the array to write the payload into
+     * @param offset where the payload starts in the array
+     * @param length the space available for the payload
+     */
+    public PayloadOutputStream(byte[] payload, int offset, int length) {
+        this.buffer = ByteBuffer.wrap(payload, offset, length).slice().order(ByteOrder.BIG_ENDIAN);
+        this.start = offset;
+    }
+
+    /**
+     * Where the next byte will be written, relative to the start of the array.
+     */
+    public int position() {
+        return start + buffer.position();
+    }
+
+    /**
+     * The number of bytes written.
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    @Override
+    public void writeBit(boolean bit) {
+        if (bitField == -1) {
+            bitField = 0;
+            mask = 1;
+        }
+        if (bit) {
+            bitField |= mask;
+        }
+        mask <<= 1;
+        if (mask == 0x100) {
+            flushBits();
+        }
+    }
+
+    @Override
+    public boolean hasPendingBits() {
+        return bitField != -1;
+    }
+
+    private void flushBits() {
+        if (bitField != -1) {
+            buffer.put((byte) bitField);
+            bitField = -1;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        flushBits();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        flushBits();
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void writeInt(int v) {
+        flushBits();
+        buffer.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+        flushBits();
+        buffer.putLong(v);
+    }
+
+    @Override
+    public void writeString(String s) {
+        if (s == null) {
+            writeInt(0xffffffff);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    @Override
+    public void writeArray(int[] ints) {
+        writeInt(ints.length);
+        buffer.asIntBuffer().put(ints);
+        buffer.position(buffer.position() + ints.length * 4);
+    }
+
+    @Override
+    public void flush() {
+        flushBits();
+    }
+
+    @Override
+    public void close() {
+        flushBits();
+    }
+}
@@ -1,5 +1,12 @@
 package sir.barchable.clash.protocol;
 
+import sir.barchable.util.BufferPool;
+import sir.barchable.util.IdTable;
+import sir.barchable.util.TrackedCipher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Clash of Clans Protocol Data Unit.
  *
@@ -176,13 +183,19 @@ public class Pdu {
             return id;
         }
 
-        public static Type valueOf(int id) {
-            for (Type e : Type.values()) {
-                if (e.id() == id) {
-                    return e;
+        private static final IdTable<Type> byId = new IdTable<>();
+
+        static {
+            for (Type type : values()) {
+                if (byId.get(type.id) == null) {
+                    byId.put(type.id, type);
                 }
             }
-            return Unknown;
+        }
+
+        public static Type valueOf(int id) {
+            Type type = byId.get(id);
+            return type == null ? Unknown : type;
         }
     }
 
@@ -193,8 +206,51 @@ public class Pdu {
 
     int id;
     int version;
+
+    /**
+     * The type for the id, resolved on first use.
+     */
+    private Type type;
     byte[] payload;
 
+    /**
+     * The number of payload bytes in use. Less than payload.length if the payload is a pooled buffer.
+     */
+    int payloadLength;
+
+    /**
+     * The pool the payload came from, or null if it isn't pooled.
+     */
+    private BufferPool pool;
+
+    private AtomicInteger refCount;
+
+    /**
+     * The payload as it was read off the wire, if the reader retained it, and where it sits in the sender's keystream.
+     */
+    private byte[] ciphertext;
+    private TrackedCipher.Keystream keystream;
+    private long keystreamOffset;
+
+    /**
+     * What the payload has been decoded to, so that every filter reading the PDU shares one decoding. Kept by the
+     * {@link MessageFactory}, and dropped when the payload changes.
+     */
+    MessageFactory messageFactory;
+    Message message;
+    TypedMessage typedMessage;
+
+    /**
+     * Models parsed from the payload's JSON fields, shared by the {@link #message} and {@link #typedMessage} views.
+     */
+    private ModelCache models;
+
+    /**
+     * Set when a message read from the PDU keeps the pooled payload buffer, which then goes to the garbage collector
+     * rather than back to the pool.
+     */
+    private boolean payloadShared;
+
     public Pdu() {
         payload = new byte[0];
     }
@@ -202,6 +258,36 @@ public class Pdu {
     public Pdu(int id, byte[] payload) {
         this.id = id;
         this.payload = payload;
+        this.payloadLength = payload.length;
+    }
+
+    /**
+     * Create a PDU backed by a pooled buffer. The PDU starts with a reference count of one, and the buffer is
+     * returned to the pool when the count drops to zero.
+     *
+     * @param length the payload length
+     * @see #retain()
+     * @see #release()
+     */
+    public static Pdu allocate(BufferPool pool, int id, int length) {
+        return wrap(pool, id, pool.acquire(length), length);
+    }
+
+    /**
+     * Create a PDU that takes ownership of a buffer acquired from a pool.
+     *
+     * @param buffer the pooled buffer
+     * @param length the number of payload bytes in the buffer
+     */
+    public static Pdu wrap(BufferPool pool, int id, byte[] buffer, int length) {
+        if (length > buffer.length) {
+            throw new IllegalArgumentException("Payload length " + length + " exceeds buffer");
+        }
+        Pdu pdu = new Pdu(id, buffer);
+        pdu.payloadLength = length;
+        pdu.pool = pool;
+        pdu.refCount = new AtomicInteger(1);
+        return pdu;
     }
 
     public int getId() {
@@ -209,11 +295,17 @@ public class Pdu {
     }
 
     public Type getType() {
-        return Type.valueOf(id);
+        Type type = this.type;
+        if (type == null) {
+            this.type = type = Type.valueOf(id);
+        }
+        return type;
     }
 
     public void setId(int id) {
         this.id = id;
+        this.type = null;
+        clearDecoded();
     }
 
     public int getVersion() {
@@ -224,16 +316,161 @@ public class Pdu {
         this.version = version;
     }
 
+    /**
+     * Get the payload. If the PDU is backed by a pooled buffer this is a trimmed copy; use
+     * {@link #getPayloadBuffer()} and {@link #getPayloadLength()} to avoid the copy.
+     */
     public byte[] getPayload() {
+        return payload.length == payloadLength ? payload : Arrays.copyOf(payload, payloadLength);
+    }
+
+    /**
+     * The array backing the payload. Only the first {@link #getPayloadLength()} bytes are part of the payload, and
+     * a pooled array is only valid until the PDU is {@link #release() released}. If you modify the payload in place
+     * call {@link #clearCiphertext()}.
+     */
+    public byte[] getPayloadBuffer() {
         return payload;
     }
 
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Replace the payload. A pooled payload buffer is returned to its pool, and any retained ciphertext is discarded.
+     */
     public void setPayload(byte[] payload) {
+        releaseBuffer();
+        clearDecoded();
         this.payload = payload;
+        this.payloadLength = payload.length;
+    }
+
+    /**
+     * Keep the original ciphertext of a pooled PDU so that it can be forwarded without re-encryption.
+     *
+     * @param ciphertext a buffer from the PDU's pool holding the encrypted payload; ownership passes to the PDU
+     * @param keystream the keystream the payload was encrypted with
+     * @param offset the keystream offset of the first payload byte
+     */
+    public void setCiphertext(byte[] ciphertext, TrackedCipher.Keystream keystream, long offset) {
+        if (pool == null) {
+            throw new IllegalStateException("Ciphertext can only be retained by pooled PDUs");
+        }
+        clearCiphertext();
+        this.ciphertext = ciphertext;
+        this.keystream = keystream;
+        this.keystreamOffset = offset;
+    }
+
+    public boolean hasCiphertext() {
+        return ciphertext != null;
+    }
+
+    /**
+     * The retained ciphertext, valid for the first {@link #getPayloadLength()} bytes.
+     */
+    public byte[] getCiphertextBuffer() {
+        return ciphertext;
+    }
+
+    /**
+     * Could the retained ciphertext be written by a cipher at this point in its keystream?
+     */
+    public boolean isCiphertextFor(TrackedCipher cipher) {
+        return isCiphertextFor(cipher, 0);
+    }
+
+    /**
+     * Could the retained ciphertext from this payload offset on be written by a cipher at this point in its keystream?
+     */
+    public boolean isCiphertextFor(TrackedCipher cipher, int offset) {
+        return ciphertext != null && cipher.isAt(keystream, keystreamOffset + offset);
+    }
+
+    /**
+     * Discard the retained ciphertext, and anything decoded from the payload. Call this if the payload is modified in
+     * place.
+     */
+    public void clearCiphertext() {
+        if (ciphertext != null) {
+            pool.release(ciphertext);
+            ciphertext = null;
+            keystream = null;
+        }
+        clearDecoded();
+    }
+
+    private void clearDecoded() {
+        messageFactory = null;
+        message = null;
+        typedMessage = null;
+        models = null;
+    }
+
+    /**
+     * The payload buffer, for a reader that keeps it after the PDU is released. The buffer mustn't be changed after
+     * this.
+     */
+    byte[] sharePayload() {
+        payloadShared = pool != null;
+        return payload;
+    }
+
+    ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
     }
 
     public int getLength() {
-        return 7 + payload.length;
+        return 7 + payloadLength;
+    }
+
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Take another reference to a pooled PDU. Does nothing if the PDU isn't pooled.
+     *
+     * @return this PDU
+     */
+    public Pdu retain() {
+        if (refCount != null) {
+            refCount.incrementAndGet();
+        }
+        return this;
+    }
+
+    /**
+     * Drop a reference to a pooled PDU, returning its buffer to the pool if this was the last one. Does nothing if the
+     * PDU isn't pooled.
+     */
+    public void release() {
+        if (refCount != null) {
+            int count = refCount.decrementAndGet();
+            if (count == 0) {
+                releaseBuffer();
+            } else if (count < 0) {
+                throw new IllegalStateException("PDU released too many times");
+            }
+        }
+    }
+
+    private void releaseBuffer() {
+        if (pool != null) {
+            clearCiphertext();
+            if (!payloadShared) {
+                pool.release(payload);
+            }
+            payloadShared = false;
+            pool = null;
+            payload = new byte[0];
+            payloadLength = 0;
+        }
     }
 
     public Origin getOrigin() {
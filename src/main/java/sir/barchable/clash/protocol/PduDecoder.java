@@ -0,0 +1,219 @@
+package sir.barchable.clash.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Frame PDUs out of a byte stream.
+ * <p>
+ * Reads go into a reusable direct buffer, as many bytes at a time as the channel will give us, and complete frames
+ * are parsed out of the buffer in place. The buffer grows to fit the largest PDU seen.
+ * <p>
+ * The decoder hands back a single reused {@link Frame}. Its payload is a view of the decoder's buffer and is only
+ * valid until the next call to {@link #next()}, {@link #fill} or {@link #read}.
+ *
+ * @author Sir Barchable
+ */
+public class PduDecoder {
+    /**
+     * PDU header length: 2 byte id, 3 byte payload length, 2 byte version.
+     */
+    public static final int HEADER_LENGTH = 7;
+
+    /**
+     * Largest payload that can be described by the 3 byte length field.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = 0xffffff;
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Unconsumed input is always between position and limit.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Reused view of the buffer for frame payloads.
+     */
+    private ByteBuffer view;
+
+    private final Frame frame = new Frame();
+
+    public PduDecoder() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public PduDecoder(int capacity) {
+        allocate(Math.max(capacity, HEADER_LENGTH));
+        buffer.limit(0);
+    }
+
+    /**
+     * Read once from a channel. In non-blocking mode this may read nothing.
+     *
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    public int fill(ReadableByteChannel in) throws IOException {
+        buffer.compact();
+        try {
+            return in.read(buffer);
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Parse the next frame out of the bytes already read.
+     *
+     * @return the next complete frame, or null if more input is needed
+     */
+    public Frame next() {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        int start = buffer.position();
+        int length = getUInt3(start + 2);
+        if (buffer.remaining() < HEADER_LENGTH + length) {
+            if (HEADER_LENGTH + length > buffer.capacity()) {
+                // Make room for the rest of this PDU
+                grow(HEADER_LENGTH + length);
+            }
+            return null;
+        }
+
+        frame.id = getUInt2(start);
+        frame.length = length;
+        frame.version = getUInt2(start + 5);
+        int end = start + HEADER_LENGTH + length;
+        view.limit(end).position(start + HEADER_LENGTH);
+        buffer.position(end);
+        return frame;
+    }
+
+    /**
+     * Blocking read of the next frame, filling from the channel as necessary.
+     *
+     * @throws EOFException if the stream ends before a complete frame has been read
+     */
+    public Frame read(ReadableByteChannel in) throws IOException {
+        Frame next;
+        while ((next = next()) == null) {
+            if (fill(in) < 0) {
+                throw new EOFException();
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Blocking read of just the next header, for callers that want to stream the payload with
+     * {@link #readPayload}. The frame's payload view is empty.
+     *
+     * @throws EOFException if the stream ends before a complete header has been read
+     */
+    public Frame readHeader(ReadableByteChannel in) throws IOException {
+        while (buffer.remaining() < HEADER_LENGTH) {
+            if (fill(in) < 0) {
+                throw new EOFException();
+            }
+        }
+        int start = buffer.position();
+        frame.id = getUInt2(start);
+        frame.length = getUInt3(start + 2);
+        frame.version = getUInt2(start + 5);
+        buffer.position(start + HEADER_LENGTH);
+        view.limit(buffer.position()).position(buffer.position());
+        return frame;
+    }
+
+    /**
+     * Copy the next part of a payload whose header was read with {@link #readHeader}. Buffered bytes are returned
+     * first; the channel is only read if the buffer is empty.
+     *
+     * @return the number of bytes copied, at least one if len is positive
+     * @throws EOFException if the stream ends first
+     */
+    public int readPayload(ReadableByteChannel in, byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!buffer.hasRemaining()) {
+            if (fill(in) < 0) {
+                throw new EOFException();
+            }
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    /**
+     * The number of buffered bytes that haven't been framed yet.
+     */
+    public int available() {
+        return buffer.remaining();
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = buffer.capacity();
+        while (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        ByteBuffer old = buffer;
+        allocate(capacity);
+        buffer.put(old);
+        buffer.flip();
+    }
+
+    private void allocate(int capacity) {
+        buffer = ByteBuffer.allocateDirect(capacity);
+        view = buffer.duplicate();
+    }
+
+    private int getUInt2(int index) {
+        return (buffer.get(index) & 0xff) << 8 | buffer.get(index + 1) & 0xff;
+    }
+
+    private int getUInt3(int index) {
+        return (buffer.get(index) & 0xff) << 16 | (buffer.get(index + 1) & 0xff) << 8 | buffer.get(index + 2) & 0xff;
+    }
+
+    /**
+     * A PDU header and a view of its (still encrypted) payload.
+     */
+    public class Frame {
+        private int id;
+        private int length;
+        private int version;
+
+        public int getId() {
+            return id;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * The payload bytes, between position and limit. Only valid until the decoder is next used.
+         */
+        public ByteBuffer getPayload() {
+            return view;
+        }
+
+        /**
+         * Copy the payload out of the decoder's buffer.
+         */
+        public byte[] copyPayload() {
+            byte[] payload = new byte[length];
+            view.get(payload);
+            return payload;
+        }
+    }
+}
@@ -1,17 +1,45 @@
 package sir.barchable.clash.protocol;
 
+import sir.barchable.util.BufferPool;
 import sir.barchable.util.Cipher;
+import sir.barchable.util.TrackedCipher;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /**
- * Read Clash PDUs.
+ * Read Clash PDUs. PDUs are framed by a {@link PduDecoder}, so the underlying stream is read in large chunks rather
+ * than a byte at a time, and may be read past the end of the current PDU.
  *
  * @author Sir Barchable
  */
 public class PduInputStream implements Closeable {
-    private InputStream in;
-    private Cipher cipher;
+    private ReadableByteChannel in;
+    private TrackedCipher cipher;
+    private PduDecoder decoder = new PduDecoder();
+    private BufferPool bufferPool = BufferPool.getDefault();
+
+    /**
+     * Keep the original ciphertext of each PDU?
+     */
+    private boolean retainCiphertext;
+
+    /**
+     * Optional index of the stream being read.
+     */
+    private CaptureIndex.Writer checkpointWriter;
+
+    /**
+     * PDUs framed so far, and the stream offset of the next one.
+     */
+    private long pduCount;
+    private long position;
+
+    /**
+     * Checkpoint the next PDU whatever the interval, because the key has changed.
+     */
+    private boolean rekeyed;
 
     /**
      * Creates a PDU input stream with a newly initialized stream cipher.
@@ -24,56 +52,95 @@ public class PduInputStream implements Closeable {
     }
 
     public PduInputStream(InputStream in, Cipher cipher) {
+        this(Channels.newChannel(in), cipher);
+    }
+
+    public PduInputStream(ReadableByteChannel in) {
+        this(in, new Clash7Crypt());
+    }
+
+    public PduInputStream(ReadableByteChannel in, Cipher cipher) {
         this.in = in;
-        this.cipher = cipher;
+        this.cipher = new TrackedCipher(cipher);
     }
 
+    /**
+     * Read the next PDU. The PDU is backed by a pooled buffer that is decrypted in place; {@link Pdu#release()
+     * release} it when done to return the buffer to the pool.
+     */
     public final Pdu read() throws IOException {
-        Pdu pdu = new Pdu();
-        pdu.id = readUInt2();
-        int length = readUInt3();
-        pdu.version = readUInt2();
-        pdu.payload = cipher.encrypt(readBytes(length));
+        PduDecoder.Frame frame = decoder.read(in);
+        int length = frame.getLength();
+        Pdu pdu = newPdu(frame);
+        frame.getPayload().get(pdu.payload, 0, length);
+        decrypt(pdu, 0, length);
         return pdu;
     }
 
-    private int readUInt3() throws IOException {
-        int ch1 = in.read();
-        int ch2 = in.read();
-        int ch3 = in.read();
-        if ((ch1 | ch2 | ch3) < 0) {
-            throw new EOFException();
-        }
-        return (ch1 << 24) | (ch2 << 8) | ch3;
+    /**
+     * Read the header of the next PDU, without waiting for the payload. The payload of the returned PDU is allocated
+     * but empty until it has been filled by calls to {@link #readPayload}. Release the PDU when done.
+     */
+    public final Pdu readHeader() throws IOException {
+        return newPdu(decoder.readHeader(in));
     }
 
-    public final int readUInt2() throws IOException {
-        int ch1 = in.read();
-        int ch2 = in.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (ch1 << 8) | ch2;
+    /**
+     * Read and decrypt the next part of the payload of a PDU from {@link #readHeader}. Blocks until at least one byte
+     * is available.
+     *
+     * @param pdu the PDU being read
+     * @param offset how much of the payload has been read so far
+     * @return the number of bytes read into the payload at offset
+     */
+    public final int readPayload(Pdu pdu, int offset) throws IOException {
+        int n = decoder.readPayload(in, pdu.payload, offset, pdu.payloadLength - offset);
+        decrypt(pdu, offset, n);
+        return n;
     }
 
-    private byte[] readBytes(int len) throws IOException {
-        if (len < 0) {
-            throw new IndexOutOfBoundsException();
+    private Pdu newPdu(PduDecoder.Frame frame) throws IOException {
+        int length = frame.getLength();
+        if (checkpointWriter != null) {
+            checkpointWriter.pdu(pduCount, position, cipher, rekeyed);
+            rekeyed = false;
         }
-        byte[] b = new byte[len];
-        int n = 0;
-        while (n < len) {
-            int count = in.read(b, n, len - n);
-            if (count < 0) {
-                throw new EOFException();
-            }
-            n += count;
+        pduCount++;
+        position += PduDecoder.HEADER_LENGTH + length;
+        Pdu pdu = Pdu.allocate(bufferPool, frame.getId(), length);
+        pdu.version = frame.getVersion();
+        if (retainCiphertext) {
+            pdu.setCiphertext(bufferPool.acquire(length), cipher.getKeystream(), cipher.getOffset());
         }
-        return b;
+        return pdu;
+    }
+
+    private void decrypt(Pdu pdu, int offset, int length) {
+        if (pdu.hasCiphertext()) {
+            System.arraycopy(pdu.payload, offset, pdu.getCiphertextBuffer(), offset, length);
+        }
+        cipher.encrypt(pdu.payload, offset, length);
+    }
+
+    /**
+     * Keep the ciphertext of each PDU read, so that a {@link PduOutputStream} at the same point in the same keystream
+     * can forward it without re-encrypting.
+     */
+    public void setRetainCiphertext(boolean retainCiphertext) {
+        this.retainCiphertext = retainCiphertext;
+    }
+
+    /**
+     * Record cipher checkpoints in an index as the stream is read, so that it can later be decrypted from part way
+     * through. Counting starts from the first PDU read from this stream.
+     */
+    public void setCheckpointWriter(CaptureIndex.Writer checkpointWriter) {
+        this.checkpointWriter = checkpointWriter;
     }
 
     public void setKey(byte[] nonce) {
         cipher.setKey(nonce);
+        rekeyed = true;
     }
 
     @Override
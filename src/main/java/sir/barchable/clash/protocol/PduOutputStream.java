@@ -1,20 +1,87 @@
 package sir.barchable.clash.protocol;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.util.BufferPool;
 import sir.barchable.util.Cipher;
+import sir.barchable.util.ThreadPools;
+import sir.barchable.util.TrackedCipher;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Write Clash PDUs.
+ * <p>
+ * Each PDU's header and payload are assembled and encrypted in a pending buffer, and the buffer is written to the
+ * underlying stream according to the {@link FlushPolicy}. Writes can also be grouped with {@link #beginBatch()} and
+ * {@link #endBatch()} so that a burst of PDUs goes out in one write.
  *
  * @author Sir Barchable
  *         Date: 6/04/15
  */
 public class PduOutputStream implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PduOutputStream.class);
+
+    private static final int HEADER_LENGTH = PduDecoder.HEADER_LENGTH;
+
+    /**
+     * Write pending data once there's this much of it, whatever the policy.
+     */
+    private static final int MAX_PENDING = 256 * 1024;
+
+    /**
+     * When to write buffered PDUs to the underlying stream.
+     */
+    public enum FlushPolicy {
+        /**
+         * Write each PDU as soon as it has been encrypted, unless a batch is open.
+         */
+        IMMEDIATE,
+
+        /**
+         * Only write when a batch ends or on an explicit {@link #flush()}.
+         */
+        BATCH,
+
+        /**
+         * Write within a fixed delay of the first buffered PDU, so that PDUs written close together share a write.
+         */
+        DEADLINE
+    }
+
     private OutputStream out;
-    private Cipher cipher;
+    private TrackedCipher cipher;
+    private BufferPool bufferPool = BufferPool.getDefault();
+
+    private FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+    private long deadlineMicros;
+    private ScheduledFuture<?> deadlineFlush;
+
+    /**
+     * Runs deadline flushes. The shared {@link Scheduler} unless one has been set.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * The failure of a deadline flush, thrown from the next write, flush or close.
+     */
+    private IOException deadlineFailure;
+
+    /**
+     * Open batches.
+     */
+    private int batchDepth;
+
+    /**
+     * Encrypted bytes that haven't been written yet. Pooled.
+     */
+    private byte[] pending;
+    private int pendingLength;
 
     /**
      * Creates a PDU output stream with a newly initialized stream cipher.
@@ -28,34 +95,242 @@ public class PduOutputStream implements Closeable {
 
     public PduOutputStream(OutputStream out, Cipher cipher) {
         this.out = out;
-        this.cipher = cipher;
+        this.cipher = new TrackedCipher(cipher);
+    }
+
+    /**
+     * Flush each PDU as it's written (the default), or only at the end of a batch.
+     */
+    public synchronized void setFlushPolicy(FlushPolicy flushPolicy) {
+        if (flushPolicy == FlushPolicy.DEADLINE) {
+            throw new IllegalArgumentException("Use setFlushDeadline to set a deadline policy");
+        }
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Write buffered PDUs no later than this long after the first of them was written.
+     */
+    public synchronized void setFlushDeadline(long micros) {
+        if (micros <= 0) {
+            throw new IllegalArgumentException("Deadline must be positive");
+        }
+        this.flushPolicy = FlushPolicy.DEADLINE;
+        this.deadlineMicros = micros;
+    }
+
+    public synchronized FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Run deadline flushes on this scheduler instead of the shared one.
+     */
+    synchronized void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Start a batch. PDUs written before the matching {@link #endBatch()} are held back and written together.
+     * Batches may be nested.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
     }
 
-    public void write(Pdu pdu) throws IOException {
-        writeShort(pdu.getId());
-        writeUInt3(pdu.getPayload().length);
-        writeShort(pdu.getVersion());
-        out.write(cipher.encrypt(pdu.getPayload()));
-        out.flush();
+    /**
+     * End a batch, writing everything buffered if this was the outermost one.
+     */
+    public synchronized void endBatch() throws IOException {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("No batch in progress");
+        }
+        if (--batchDepth == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Write a PDU. The header and payload are assembled and encrypted in the pending buffer, so the PDU isn't
+     * modified.
+     * <p>
+     * If the PDU carries ciphertext from a stream that is at the same point in the same keystream as this one, the
+     * ciphertext is written as is.
+     */
+    public synchronized void write(Pdu pdu) throws IOException {
+        checkDeadlineFailure();
+        int length = pdu.getPayloadLength();
+        int off = reserve(HEADER_LENGTH + length);
+        putShort(pending, off, pdu.getId());
+        putUInt3(pending, off + 2, length);
+        putShort(pending, off + 5, pdu.getVersion());
+        off += HEADER_LENGTH;
+        if (pdu.isCiphertextFor(cipher)) {
+            System.arraycopy(pdu.getCiphertextBuffer(), 0, pending, off, length);
+            cipher.skip(length);
+        } else {
+            System.arraycopy(pdu.getPayloadBuffer(), 0, pending, off, length);
+            cipher.encrypt(pending, off, length);
+        }
+        written();
+    }
+
+    /**
+     * Write just the header of a PDU, to be followed by its payload in one or more calls to {@link #writePayload}.
+     * The header, and anything buffered before it, is flushed immediately.
+     */
+    public synchronized void writeHeader(Pdu pdu) throws IOException {
+        checkDeadlineFailure();
+        int off = reserve(HEADER_LENGTH);
+        putShort(pending, off, pdu.getId());
+        putUInt3(pending, off + 2, pdu.getPayloadLength());
+        putShort(pending, off + 5, pdu.getVersion());
+        flush();
+    }
+
+    /**
+     * Encrypt and write part of a PDU's payload following {@link #writeHeader}. The PDU isn't modified. Each part is
+     * flushed immediately.
+     * <p>
+     * As with {@link #write}, if the PDU carries ciphertext for this point in this stream's keystream, the ciphertext
+     * is written as is.
+     *
+     * @param pdu the PDU whose header was written
+     * @param off the offset of the part in the payload
+     * @param len the length of the part
+     */
+    public synchronized void writePayload(Pdu pdu, int off, int len) throws IOException {
+        checkDeadlineFailure();
+        int start = reserve(len);
+        if (pdu.isCiphertextFor(cipher, off)) {
+            System.arraycopy(pdu.getCiphertextBuffer(), off, pending, start, len);
+            cipher.skip(len);
+        } else {
+            System.arraycopy(pdu.getPayloadBuffer(), off, pending, start, len);
+            cipher.encrypt(pending, start, len);
+        }
+        flush();
+    }
+
+    /**
+     * Write everything buffered to the underlying stream and flush it.
+     */
+    public synchronized void flush() throws IOException {
+        checkDeadlineFailure();
+        writePending();
+    }
+
+    private void writePending() throws IOException {
+        if (deadlineFlush != null) {
+            deadlineFlush.cancel(false);
+            deadlineFlush = null;
+        }
+        if (pendingLength > 0) {
+            try {
+                out.write(pending, 0, pendingLength);
+                out.flush();
+            } finally {
+                pendingLength = 0;
+                bufferPool.release(pending);
+                pending = null;
+            }
+        }
     }
 
-    private void writeUInt3(int v) throws IOException {
-        out.write(v >>> 16);
-        out.write(v >>> 8);
-        out.write(v);
+    /**
+     * Apply the flush policy after a PDU has been buffered.
+     */
+    private void written() throws IOException {
+        if (pendingLength >= MAX_PENDING) {
+            flush();
+        } else if (batchDepth == 0) {
+            switch (flushPolicy) {
+                case IMMEDIATE:
+                    flush();
+                    break;
+                case DEADLINE:
+                    if (deadlineFlush == null) {
+                        ScheduledExecutorService scheduler = this.scheduler == null ? Scheduler.INSTANCE : this.scheduler;
+                        deadlineFlush = scheduler.schedule(this::deadline, deadlineMicros, TimeUnit.MICROSECONDS);
+                    }
+                    break;
+                case BATCH:
+                    break;
+            }
+        }
+    }
+
+    private synchronized void deadline() {
+        deadlineFlush = null;
+        try {
+            writePending();
+        } catch (IOException e) {
+            log.info("Deadline flush failed: {}", e.toString());
+            deadlineFailure = e;
+        }
     }
 
-    private void writeShort(int v) throws IOException {
-        out.write(v >>> 8);
-        out.write(v);
+    /**
+     * Throw the failure of an earlier deadline flush, whose PDUs have been lost.
+     */
+    private void checkDeadlineFailure() throws IOException {
+        if (deadlineFailure != null) {
+            IOException e = deadlineFailure;
+            deadlineFailure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Make room for len bytes at the end of the pending buffer.
+     *
+     * @return the offset of the reserved space
+     */
+    private int reserve(int len) {
+        int off = pendingLength;
+        if (pending == null) {
+            pending = bufferPool.acquire(len);
+        } else if (off + len > pending.length) {
+            byte[] larger = bufferPool.acquire(off + len);
+            System.arraycopy(pending, 0, larger, 0, off);
+            bufferPool.release(pending);
+            pending = larger;
+        }
+        pendingLength = off + len;
+        return off;
     }
 
-    public void setKey(byte[] nonce) {
+    private static void putUInt3(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 16);
+        b[off + 1] = (byte) (v >>> 8);
+        b[off + 2] = (byte) v;
+    }
+
+    private static void putShort(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    /**
+     * Rekeys take effect from the next PDU written; PDUs already buffered stay encrypted with the old key.
+     */
+    public synchronized void setKey(byte[] nonce) {
         cipher.setKey(nonce);
     }
 
     @Override
-    public void close() throws IOException {
-        out.close();
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Timer for deadline flushes, started on first use.
+     */
+    private static class Scheduler {
+        static final ScheduledExecutorService INSTANCE = ThreadPools.newScheduler("PDU flush");
     }
 }
@@ -0,0 +1,197 @@
+package sir.barchable.clash.protocol;
+
+import java.util.*;
+
+/**
+ * The message types, and the fields of each, that a consumer reads. Fields are named by dotted paths from the top of
+ * the message, e.g. "user.userName". A path into a struct array applies to every element. A type with no paths is
+ * wanted whole. A consumer that needs to see every message, but only reads the fields of some, can add the
+ * {@link #andOtherTypes() other types} with no fields.
+ * <p>
+ * Messages read through a projection hold only the projected fields (plus the id field of structs with extensions),
+ * so they're for reading, not for writing back out.
+ *
+ * @see MessageFactory#fromPdu(Pdu, Fields)
+ * @author Sir Barchable
+ */
+public final class Projection {
+    /**
+     * Every field of every message type.
+     */
+    public static final Projection ALL = new Projection(Fields.ALL, Collections.emptyMap());
+
+    /**
+     * Nothing.
+     */
+    public static final Projection NONE = new Projection(null, Collections.emptyMap());
+
+    /**
+     * The fields wanted from types that aren't in {@link #types}, or null if they aren't wanted.
+     */
+    private final Fields otherTypes;
+    private final Map<Pdu.Type, Fields> types;
+
+    private Projection(Fields otherTypes, Map<Pdu.Type, Fields> types) {
+        this.otherTypes = otherTypes;
+        this.types = types;
+    }
+
+    /**
+     * Project a message type.
+     *
+     * @param type the message type
+     * @param paths the field paths read, or none to read the whole message
+     */
+    public static Projection of(Pdu.Type type, String... paths) {
+        return NONE.and(type, paths);
+    }
+
+    /**
+     * This projection plus another message type.
+     *
+     * @param type the message type
+     * @param paths the field paths read, or none to read the whole message
+     */
+    public Projection and(Pdu.Type type, String... paths) {
+        Fields fields = Fields.ALL;
+        if (paths.length > 0) {
+            fields = new Fields();
+            for (String path : paths) {
+                fields.add(path.split("\\."), 0);
+            }
+        }
+        return union(new Projection(null, Collections.singletonMap(type, fields)));
+    }
+
+    /**
+     * This projection plus every other message type, with none of its fields read.
+     */
+    public Projection andOtherTypes() {
+        return union(new Projection(Fields.NONE, Collections.emptyMap()));
+    }
+
+    /**
+     * Everything in either projection.
+     */
+    public Projection union(Projection other) {
+        if (otherTypes == Fields.ALL || other == NONE) {
+            return this;
+        }
+        if (other.otherTypes == Fields.ALL || this == NONE) {
+            return other;
+        }
+        Map<Pdu.Type, Fields> union = new EnumMap<>(Pdu.Type.class);
+        for (Pdu.Type type : types.keySet()) {
+            union.put(type, Fields.union(fields(type), other.fields(type)));
+        }
+        for (Pdu.Type type : other.types.keySet()) {
+            union.put(type, Fields.union(fields(type), other.fields(type)));
+        }
+        return new Projection(Fields.union(otherTypes, other.otherTypes), union);
+    }
+
+    /**
+     * Is the message type wanted?
+     */
+    public boolean includes(Pdu.Type type) {
+        return otherTypes != null || types.containsKey(type);
+    }
+
+    /**
+     * The fields wanted from a message type.
+     *
+     * @return the fields, {@link Fields#ALL} if the whole message is wanted, {@link Fields#NONE} if it's wanted but
+     * none of its fields are, or null if the type isn't wanted at all
+     */
+    public Fields fields(Pdu.Type type) {
+        Fields fields = types.get(type);
+        return fields != null ? fields : otherTypes;
+    }
+
+    @Override
+    public String toString() {
+        if (otherTypes == Fields.ALL) {
+            return "*";
+        }
+        return otherTypes == null ? types.toString() : types + " + *" + otherTypes;
+    }
+
+    /**
+     * The fields wanted from a struct. Each wanted field has its own set of wanted subfields.
+     */
+    public static final class Fields {
+        /**
+         * Every field.
+         */
+        public static final Fields ALL = new Fields();
+
+        /**
+         * No fields.
+         */
+        public static final Fields NONE = new Fields();
+
+        private final Map<String, Fields> children = new HashMap<>();
+
+        private Fields() {
+        }
+
+        private void add(String[] path, int depth) {
+            if (this == ALL || this == NONE) {
+                return;
+            }
+            String key = path[depth];
+            if (depth == path.length - 1) {
+                children.put(key, ALL);
+            } else {
+                children.computeIfAbsent(key, k -> new Fields()).add(path, depth + 1);
+            }
+        }
+
+        /**
+         * The fields in either set, where a null set is empty.
+         */
+        private static Fields union(Fields a, Fields b) {
+            if (a == null || a == NONE) {
+                return b == null ? a : b;
+            }
+            if (b == null || b == NONE || a == ALL) {
+                return a;
+            }
+            if (b == ALL) {
+                return ALL;
+            }
+            Fields union = new Fields();
+            union.children.putAll(a.children);
+            b.children.forEach((key, fields) -> union.children.merge(key, fields, Fields::union));
+            return union;
+        }
+
+        /**
+         * Are no fields wanted?
+         */
+        public boolean isEmpty() {
+            return this != ALL && children.isEmpty();
+        }
+
+        /**
+         * Is the field wanted?
+         */
+        public boolean includes(String key) {
+            return this == ALL || children.containsKey(key);
+        }
+
+        /**
+         * The subfields wanted from a field.
+         *
+         * @return the subfields, {@link #ALL} if the whole field is wanted, or null if it isn't wanted at all
+         */
+        public Fields get(String key) {
+            return this == ALL ? ALL : children.get(key);
+        }
+
+        @Override
+        public String toString() {
+            return this == ALL ? "*" : children.toString();
+        }
+    }
+}
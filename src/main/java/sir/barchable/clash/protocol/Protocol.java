@@ -3,7 +3,9 @@ package sir.barchable.clash.protocol;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -30,6 +32,11 @@ public class Protocol {
         private List<FieldDefinition> fields;
         private final List<Extension> extensions;
 
+        /**
+         * Field name -> first field with that name, built on first use.
+         */
+        private volatile Map<String, FieldDefinition> fieldIndex;
+
         public StructDefinition(
             @JsonProperty(value = "id") Integer id,
             @JsonProperty(value = "name", required = true) String name,
@@ -68,12 +75,17 @@ public class Protocol {
         }
 
         public FieldDefinition getField(String name) {
-            for (FieldDefinition field : fields) {
-                if (name.equals(field.getName())) {
-                    return field;
+            Map<String, FieldDefinition> index = fieldIndex;
+            if (index == null) {
+                index = new HashMap<>();
+                for (FieldDefinition field : fields) {
+                    if (field.getName() != null) {
+                        index.putIfAbsent(field.getName(), field);
+                    }
                 }
+                fieldIndex = index;
             }
-            return null;
+            return index.get(name);
         }
 
         public Extension getExtension(int id) {
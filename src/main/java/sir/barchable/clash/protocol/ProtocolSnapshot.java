@@ -0,0 +1,277 @@
+package sir.barchable.clash.protocol;
+
+import sir.barchable.clash.protocol.Protocol.StructDefinition;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A protocol definition in a compact binary form, written by the build alongside Protocol.json, so that a
+ * {@link TypeFactory} can start without parsing JSON or matching type names against regular expressions.
+ * <p>
+ * The snapshot holds a table of strings, a table of the type names used by fields, already split into their optional,
+ * name, array and length parts, and the struct definitions, which refer to both tables by index. The protocol is
+ * checked before a snapshot is written, so it isn't checked again when it's read.
+ * <p>
+ * The snapshot also holds a hash of the Protocol.json it was written with. The json is the definition of record: a
+ * snapshot that doesn't match it is stale, and is ignored.
+ *
+ * @see ProtocolTool
+ * @author Sir Barchable
+ */
+final class ProtocolSnapshot {
+    private static final int MAGIC = 0x434c5042; // CLPB
+    private static final int VERSION = 2;
+    private static final int NONE = 0xffff;
+
+    private static final int OPTIONAL = 1;
+    private static final int ARRAY = 2;
+
+    private final byte[] sourceHash;
+    private final Protocol protocol;
+    private final Map<String, TypeName> typeNames;
+
+    private ProtocolSnapshot(byte[] sourceHash, Protocol protocol, Map<String, TypeName> typeNames) {
+        this.sourceHash = sourceHash;
+        this.protocol = protocol;
+        this.typeNames = typeNames;
+    }
+
+    /**
+     * Was this snapshot written with this json?
+     *
+     * @param json the bytes of a Protocol.json
+     */
+    boolean isSnapshotOf(byte[] json) {
+        return MessageDigest.isEqual(sourceHash, hash(json));
+    }
+
+    Protocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Type name -> its parts, for every type named by a field.
+     */
+    Map<String, TypeName> getTypeNames() {
+        return typeNames;
+    }
+
+    /**
+     * A type name split into its parts, as {@link TypeFactory#resolveType(String)} would split it.
+     */
+    static class TypeName {
+        final boolean optional;
+        final String name;
+        final boolean array;
+        final int length;
+
+        TypeName(boolean optional, String name, boolean array, int length) {
+            this.optional = optional;
+            this.name = name;
+            this.array = array;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Check a protocol and write a snapshot of it.
+     *
+     * @param protocol the protocol
+     * @param json the protocol as written to Protocol.json
+     * @throws TypeException if the protocol isn't valid
+     */
+    static void write(Protocol protocol, byte[] json, OutputStream out) throws IOException {
+        TypeFactory typeFactory = new TypeFactory(protocol);
+
+        Strings strings = new Strings();
+        Map<String, Integer> types = new LinkedHashMap<>();
+        for (StructDefinition struct : protocol.getMessages()) {
+            strings.add(struct.getName());
+            strings.add(struct.getComment());
+            addFields(struct.getFields(), strings, types);
+            for (Extension extension : struct.getExtensions()) {
+                strings.add(extension.getComment());
+                addFields(extension.getFields(), strings, types);
+            }
+        }
+        Map<String, TypeFactory.Type> resolved = new HashMap<>();
+        for (String type : types.keySet()) {
+            try {
+                resolved.put(type, typeFactory.resolveType(type));
+                strings.add(resolved.get(type).getName());
+            } catch (RuntimeException e) {
+                // Extension fields aren't checked when a protocol is loaded. Leave the type to fail when it's used.
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+
+        byte[] sourceHash = hash(json);
+        data.writeShort(sourceHash.length);
+        data.write(sourceHash);
+
+        data.writeShort(strings.list.size());
+        for (String s : strings.list) {
+            data.writeUTF(s);
+        }
+
+        data.writeShort(types.size());
+        for (String type : types.keySet()) {
+            TypeFactory.Type resolvedType = resolved.get(type);
+            data.writeShort(strings.indexOf(type));
+            if (resolvedType == null) {
+                data.writeShort(NONE);
+                data.writeByte(0);
+                data.writeInt(0);
+            } else {
+                data.writeShort(strings.indexOf(resolvedType.getName()));
+                data.writeByte((resolvedType.isOptional() ? OPTIONAL : 0) | (resolvedType.isArray() ? ARRAY : 0));
+                data.writeInt(resolvedType.getLength());
+            }
+        }
+
+        data.writeShort(protocol.getMessages().size());
+        for (StructDefinition struct : protocol.getMessages()) {
+            data.writeBoolean(struct.getId() != null);
+            if (struct.getId() != null) {
+                data.writeInt(struct.getId());
+            }
+            data.writeShort(strings.indexOf(struct.getName()));
+            data.writeShort(strings.indexOf(struct.getComment()));
+            writeFields(struct.getFields(), data, strings, types);
+            data.writeShort(struct.getExtensions().size());
+            for (Extension extension : struct.getExtensions()) {
+                data.writeInt(extension.getId());
+                data.writeShort(strings.indexOf(extension.getComment()));
+                writeFields(extension.getFields(), data, strings, types);
+            }
+        }
+        data.flush();
+    }
+
+    private static void addFields(List<FieldDefinition> fields, Strings strings, Map<String, Integer> types) {
+        for (FieldDefinition field : fields) {
+            strings.add(field.getName());
+            strings.add(field.getType());
+            strings.add(field.getComment());
+            strings.add(field.getDefault());
+            types.putIfAbsent(field.getType(), types.size());
+        }
+    }
+
+    private static void writeFields(List<FieldDefinition> fields, DataOutputStream data, Strings strings, Map<String, Integer> types) throws IOException {
+        data.writeShort(fields.size());
+        for (FieldDefinition field : fields) {
+            data.writeShort(strings.indexOf(field.getName()));
+            data.writeShort(types.get(field.getType()));
+            data.writeShort(strings.indexOf(field.getComment()));
+            data.writeShort(strings.indexOf(field.getDefault()));
+        }
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @throws IOException if the stream isn't a snapshot this version can read
+     */
+    static ProtocolSnapshot read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a protocol snapshot");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol snapshot version " + version);
+        }
+
+        byte[] sourceHash = new byte[data.readUnsignedShort()];
+        data.readFully(sourceHash);
+
+        String[] strings = new String[data.readUnsignedShort()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = data.readUTF();
+        }
+
+        String[] types = new String[data.readUnsignedShort()];
+        Map<String, TypeName> typeNames = new HashMap<>(types.length * 2);
+        for (int i = 0; i < types.length; i++) {
+            types[i] = string(strings, data.readUnsignedShort());
+            String name = string(strings, data.readUnsignedShort());
+            int flags = data.readUnsignedByte();
+            int length = data.readInt();
+            if (name != null) {
+                typeNames.put(types[i], new TypeName((flags & OPTIONAL) != 0, name, (flags & ARRAY) != 0, length));
+            }
+        }
+
+        int structCount = data.readUnsignedShort();
+        List<StructDefinition> structs = new ArrayList<>(structCount);
+        for (int i = 0; i < structCount; i++) {
+            Integer id = data.readBoolean() ? data.readInt() : null;
+            String name = string(strings, data.readUnsignedShort());
+            String comment = string(strings, data.readUnsignedShort());
+            List<FieldDefinition> fields = readFields(data, strings, types);
+            int extensionCount = data.readUnsignedShort();
+            List<Extension> extensions = new ArrayList<>(extensionCount);
+            for (int j = 0; j < extensionCount; j++) {
+                int extensionId = data.readInt();
+                String extensionComment = string(strings, data.readUnsignedShort());
+                extensions.add(new Extension(extensionId, extensionComment, readFields(data, strings, types)));
+            }
+            structs.add(new StructDefinition(id, name, comment, fields, extensions));
+        }
+        return new ProtocolSnapshot(sourceHash, new Protocol(structs), typeNames);
+    }
+
+    private static List<FieldDefinition> readFields(DataInputStream data, String[] strings, String[] types) throws IOException {
+        int count = data.readUnsignedShort();
+        List<FieldDefinition> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = string(strings, data.readUnsignedShort());
+            String type = types[data.readUnsignedShort()];
+            String comment = string(strings, data.readUnsignedShort());
+            String dflt = string(strings, data.readUnsignedShort());
+            fields.add(new FieldDefinition(name, type, comment, dflt));
+        }
+        return fields;
+    }
+
+    private static byte[] hash(byte[] json) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(json);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NONE ? null : strings[index];
+    }
+
+    /**
+     * A de-duplicated list of strings.
+     */
+    private static class Strings {
+        private final List<String> list = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+
+        void add(String s) {
+            if (s != null && !index.containsKey(s)) {
+                index.put(s, list.size());
+                list.add(s);
+            }
+        }
+
+        int indexOf(String s) {
+            return s == null ? NONE : index.get(s);
+        }
+    }
+}
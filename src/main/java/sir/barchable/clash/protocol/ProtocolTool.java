@@ -16,7 +16,7 @@ import java.util.List;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
- * Read and write Protocol json.
+ * Read and write Protocol json, and the binary {@link ProtocolSnapshot} that the {@link TypeFactory} starts from.
  *
  * @author Sir Barchable
  *         Date: 6/04/15
@@ -28,6 +28,9 @@ public class ProtocolTool {
     @Parameter(names = {"-o", "--outfile"}, description = "Output file. Will write to stdout if not set")
     private File outFile;
 
+    @Parameter(names = {"-b", "--binary-outfile"}, description = "Binary snapshot output file")
+    private File binaryOutFile;
+
     private static final Logger log = LoggerFactory.getLogger(ProtocolTool.class);
 
     public static void main(String[] args) {
@@ -53,16 +56,20 @@ public class ProtocolTool {
         if (!resourceDir.exists() || !resourceDir.isDirectory()) {
             throw new FileNotFoundException(resourceDir.toString());
         } else {
-            OutputStreamWriter out;
+            Protocol protocol = read();
+            StringWriter buffer = new StringWriter();
+            write(protocol, buffer);
+            byte[] json = buffer.toString().getBytes(UTF_8);
             if (outFile == null) {
-                out = new OutputStreamWriter(System.out);
+                System.out.write(json);
+                System.out.flush();
             } else {
-                out = new OutputStreamWriter(new FileOutputStream(outFile), UTF_8);
+                Files.write(outFile.toPath(), json);
             }
-            try {
-                write(read(), out);
-            } finally {
-                out.close();
+            if (binaryOutFile != null) {
+                try (OutputStream binaryOut = new FileOutputStream(binaryOutFile)) {
+                    ProtocolSnapshot.write(protocol, json, binaryOut);
+                }
             }
         }
     }
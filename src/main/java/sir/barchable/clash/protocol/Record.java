@@ -0,0 +1,441 @@
+package sir.barchable.clash.protocol;
+
+import sir.barchable.clash.protocol.CodecCompiler.FieldCodec;
+import sir.barchable.clash.protocol.CodecCompiler.Layout;
+import sir.barchable.clash.protocol.CodecCompiler.StructCodec;
+
+import java.io.IOException;
+import java.util.*;
+
+import static sir.barchable.clash.protocol.TypeFactory.ID_FIELD;
+
+/**
+ * A decoded struct, stored by field ordinal rather than by key.
+ * <p>
+ * Each field has a slot in an array of references. Boolean, byte, int and long fields are held unboxed in an array
+ * of longs, and only boxed when they're read through the map interface. There are no map entries, so a struct takes
+ * a fraction of the memory of a {@link LinkedHashMap} holding the same fields.
+ * <p>
+ * Changes that alter the shape of the struct (removing a key, adding a key the layout doesn't have, or setting the id
+ * of a struct with extensions) copy every field into an ordinary map, which backs the struct from then on.
+ *
+ * @author Sir Barchable
+ */
+class Record extends AbstractMap<String, Object> {
+    /**
+     * Key for the bytes that trail a message.
+     */
+    static final String END_KEY = "end";
+
+    /**
+     * Marks a slot whose value is in the primitive array.
+     */
+    private static final Object PRIMITIVE = new Object();
+
+    private static final long[] NO_PRIMITIVES = new long[0];
+
+    final StructCodec codec;
+    final boolean trailing;
+
+    Layout layout;
+
+    /**
+     * A value for each field in the layout, then the trailing bytes if there are any.
+     */
+    Object[] refs;
+    private long[] primitives;
+
+    Map<String, Object> delegate;
+
+    /**
+     * A record whose layout isn't known yet. Subclasses {@link #setLayout(Layout) set it} when {@link #index()} is
+     * called.
+     */
+    Record(StructCodec codec, boolean trailing) {
+        this.codec = codec;
+        this.trailing = trailing;
+    }
+
+    /**
+     * @param codec the struct
+     * @param layout the fields of the struct
+     * @param trailing whether the struct is a whole message, with any bytes after it available as {@link #END_KEY}
+     */
+    Record(StructCodec codec, Layout layout, boolean trailing) {
+        this(codec, trailing);
+        setLayout(layout);
+    }
+
+    /**
+     * Set the layout, or switch to a layout that extends the current one, keeping the values already set.
+     */
+    void setLayout(Layout layout) {
+        int length = layout.fields.length + (trailing ? 1 : 0);
+        if (refs == null) {
+            refs = new Object[length];
+            primitives = layout.primitiveCount == 0 ? NO_PRIMITIVES : new long[layout.primitiveCount];
+        } else if (layout != this.layout) {
+            refs = Arrays.copyOf(refs, length);
+            primitives = Arrays.copyOf(primitives, layout.primitiveCount);
+        }
+        this.layout = layout;
+    }
+
+    /**
+     * A copy of a message record, with the bytes that trailed it.
+     */
+    static Record withEnd(Record record, Object[] end) {
+        Record message = new Record(record.codec, record.layout, true);
+        copySlots(record, message);
+        message.refs[record.layout.fields.length] = end;
+        return message;
+    }
+
+    /**
+     * Copy the slots of one record to another with the same layout.
+     */
+    static void copySlots(Record from, Record to) {
+        System.arraycopy(from.refs, 0, to.refs, 0, Math.min(from.refs.length, to.refs.length));
+        System.arraycopy(from.primitives, 0, to.primitives, 0, from.primitives.length);
+    }
+
+    /**
+     * Copy the slots of one record to another with the same layout, {@link StructCopy#copyOf copying} the nested
+     * structs and arrays so that the two can be changed independently.
+     */
+    static void copyValues(Record from, Record to) {
+        copySlots(from, to);
+        for (int i = 0; i < to.refs.length; i++) {
+            to.refs[i] = StructCopy.copyOf(to.refs[i]);
+        }
+    }
+
+    /**
+     * A copy of the record that can be changed independently. Only reads this record.
+     */
+    Map<String, Object> copy() {
+        if (delegate != null) {
+            return StructCopy.copyStruct(delegate);
+        }
+        Record copy = new Record(codec, layout, trailing);
+        copyValues(this, copy);
+        return copy;
+    }
+
+    /**
+     * Make sure the layout is known.
+     */
+    void index() {
+    }
+
+    /**
+     * The value in a slot.
+     */
+    Object value(int i) {
+        Object value = refs[i];
+        return value == PRIMITIVE ? layout.fields[i].kind.box(primitives[layout.slots[i]]) : value;
+    }
+
+    /**
+     * The value in a slot, for a caller outside the record.
+     */
+    Object exposed(int i) {
+        return value(i);
+    }
+
+    /**
+     * Store a value in a slot, unboxing it if the slot is primitive.
+     */
+    void store(int i, Object value) {
+        Kind kind = i < layout.fields.length ? layout.fields[i].kind : null;
+        if (kind != null && kind.type.isInstance(value)) {
+            primitives[layout.slots[i]] = kind.unbox(value);
+            refs[i] = PRIMITIVE;
+        } else {
+            refs[i] = value;
+        }
+    }
+
+    /**
+     * Read a field into its slot, without boxing it if it's primitive.
+     */
+    void read(int i, MessageInputStream in) throws IOException {
+        FieldCodec field = layout.fields[i];
+        if (field.kind != null) {
+            primitives[layout.slots[i]] = field.kind.read(in);
+            refs[i] = PRIMITIVE;
+        } else {
+            refs[i] = field.codec.read(in);
+        }
+    }
+
+    /**
+     * Called when a slot is set through the map interface.
+     */
+    void changed(int i) {
+    }
+
+    int indexOf(Object key) {
+        Integer i = layout.index.get(key);
+        if (i != null) {
+            return i;
+        }
+        return trailing && END_KEY.equals(key) ? layout.fields.length : -1;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (delegate != null) {
+            return delegate.get(key);
+        }
+        index();
+        int i = indexOf(key);
+        return i < 0 ? null : exposed(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (delegate != null) {
+            return delegate.containsKey(key);
+        }
+        index();
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        if (delegate != null) {
+            return delegate.size();
+        }
+        index();
+        return layout.index.size() + (trailing ? 1 : 0);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (delegate == null) {
+            index();
+            int i = indexOf(key);
+            if (i >= 0 && !(codec.hasExtensions && ID_FIELD.equals(key))) {
+                changed(i);
+                Object old = value(i);
+                store(i, value);
+                return old;
+            }
+            materialize();
+        }
+        return delegate.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return materialize().remove(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (delegate != null) {
+            return delegate.entrySet();
+        }
+        index();
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private final int n = refs.length;
+                    private int next = advance(0);
+
+                    private int advance(int i) {
+                        // Where keys repeat the last field wins, as it does in a map
+                        while (i < layout.fields.length && layout.index.get(layout.fields[i].key) != i) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < n;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= n) {
+                            throw new NoSuchElementException();
+                        }
+                        String key = next < layout.fields.length ? layout.fields[next].key : END_KEY;
+                        next = advance(next + 1);
+                        return new Field(key);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return Record.this.size();
+            }
+        };
+    }
+
+    /**
+     * Copy every field into a map, which then backs the record.
+     */
+    Map<String, Object> materialize() {
+        if (delegate == null) {
+            index();
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (int i = 0; i < layout.fields.length; i++) {
+                fields.put(layout.fields[i].key, value(i));
+            }
+            if (trailing) {
+                fields.put(END_KEY, value(layout.fields.length));
+            }
+            delegate = fields;
+            refs = null;
+            primitives = null;
+        }
+        return delegate;
+    }
+
+    /**
+     * An entry that reads and writes through to the record.
+     */
+    private class Field implements Entry<String, Object> {
+        private final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /**
+     * The primitive field types held unboxed.
+     */
+    enum Kind {
+        BOOLEAN(Boolean.class) {
+            long read(MessageInputStream in) throws IOException {
+                return in.readBit() ? 1 : 0;
+            }
+
+            Object box(long value) {
+                return value != 0;
+            }
+
+            long unbox(Object value) {
+                return (Boolean) value ? 1 : 0;
+            }
+        },
+
+        BYTE(Byte.class) {
+            long read(MessageInputStream in) throws IOException {
+                return (byte) in.read();
+            }
+
+            Object box(long value) {
+                return (byte) value;
+            }
+
+            long unbox(Object value) {
+                return (Byte) value;
+            }
+        },
+
+        INT(Integer.class) {
+            long read(MessageInputStream in) throws IOException {
+                return in.readInt();
+            }
+
+            Object box(long value) {
+                return (int) value;
+            }
+
+            long unbox(Object value) {
+                return (Integer) value;
+            }
+        },
+
+        LONG(Long.class) {
+            long read(MessageInputStream in) throws IOException {
+                return in.readLong();
+            }
+
+            Object box(long value) {
+                return value;
+            }
+
+            long unbox(Object value) {
+                return (Long) value;
+            }
+        };
+
+        final Class<?> type;
+
+        Kind(Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Read a value the way the field's codec would.
+         */
+        abstract long read(MessageInputStream in) throws IOException;
+
+        abstract Object box(long value);
+
+        abstract long unbox(Object value);
+
+        /**
+         * The kind for a field type, or null if the field isn't held unboxed.
+         */
+        static Kind of(TypeFactory.Type type) {
+            if (!type.isPrimitive() || type.isArray() || type.isOptional()) {
+                return null;
+            }
+            switch (type.getPrimitiveType()) {
+                case BOOLEAN:
+                    return BOOLEAN;
+                case BYTE:
+                    return BYTE;
+                case INT:
+                    return INT;
+                case LONG:
+                    return LONG;
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package sir.barchable.clash.protocol;
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * Copies of struct field values, for {@link Message#copy()}.
+ * <p>
+ * Nested structs and arrays are copied all the way down, except that a {@link LazyStruct lazy struct} shares its
+ * payload with its copy, so only the fields that might have changed are copied. The rest are decoded again from the
+ * payload if the copy reads them. Copying only reads the original, so a message that nobody is changing, like a
+ * template, can be copied from several threads at once.
+ *
+ * @see Message#copy()
+ * @author Sir Barchable
+ */
+final class StructCopy {
+    private StructCopy() {
+    }
+
+    /**
+     * Copy a struct, as a {@link Record#copy() record}, a {@link LazyStruct#copy() lazy struct} or an ordinary map.
+     */
+    static Map<String, Object> copyStruct(Map<String, Object> struct) {
+        if (struct instanceof Record) {
+            return ((Record) struct).copy();
+        }
+        Map<String, Object> copy = new LinkedHashMap<>(struct);
+        for (Map.Entry<String, Object> entry : copy.entrySet()) {
+            entry.setValue(copyOf(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy a field value. Structs are copied as {@link Record#copy() records}, {@link LazyStruct#copy() lazy structs}
+     * or ordinary maps, arrays are copied with their elements copied the same way, and anything else is immutable and
+     * returned as is.
+     */
+    @SuppressWarnings("unchecked")
+    static Object copyOf(Object value) {
+        if (value instanceof Map) {
+            return copyStruct((Map<String, Object>) value);
+        }
+        if (value instanceof Object[]) {
+            Object[] elements = ((Object[]) value).clone();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = copyOf(elements[i]);
+            }
+            return elements;
+        }
+        if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+}
@@ -6,14 +6,20 @@ import sir.barchable.clash.ResourceException;
 import sir.barchable.clash.protocol.Protocol.StructDefinition;
 import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
 import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+import sir.barchable.util.IdTable;
 import sir.barchable.util.Json;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -48,9 +54,21 @@ public class TypeFactory {
     private Map<String, StructDefinition> structDefinitions = new LinkedHashMap<>();
 
     /**
-     * A map from type name -> definition
+     * A map from type name -> definition. Filled as types are resolved.
      */
-    private Map<String, Type> typeDefinitions = new LinkedHashMap<>();
+    private Map<String, Type> typeDefinitions = new ConcurrentHashMap<>();
+
+    /**
+     * Type names already split into their parts by a {@link ProtocolSnapshot}.
+     */
+    private Map<String, ProtocolSnapshot.TypeName> typeNames = Collections.emptyMap();
+
+    /**
+     * Message id -> everything known about the message.
+     */
+    private IdTable<MessageType> messageTypes = new IdTable<>();
+
+    private CodecCompiler codecCompiler = new CodecCompiler(this);
 
     public enum Primitive {
         BOOLEAN(Boolean::valueOf),
@@ -72,20 +90,54 @@ public class TypeFactory {
     }
 
     /**
-     * Read the default protocol definition from the Protocol.json in this package.
+     * Read the default protocol definition from the Protocol.bin snapshot in this package, or if there isn't one, or
+     * it wasn't written from the Protocol.json beside it, from the Protocol.json.
      */
     public TypeFactory() {
         try {
-            log.info("Reading protocol definition from class path");
-            try (InputStream in = Protocol.class.getResourceAsStream("Protocol.json")) {
-                Protocol protocol = Json.read(in, Protocol.class);
-                init(protocol);
+            byte[] json = readResource("Protocol.json");
+            try (InputStream in = Protocol.class.getResourceAsStream("Protocol.bin")) {
+                if (in != null) {
+                    ProtocolSnapshot snapshot = readSnapshot(in);
+                    if (snapshot != null && snapshot.isSnapshotOf(json)) {
+                        log.info("Reading protocol snapshot from class path");
+                        init(snapshot);
+                        return;
+                    }
+                    log.warn("Protocol snapshot doesn't match Protocol.json. Rebuild to refresh it.");
+                }
             }
+            log.info("Reading protocol definition from class path");
+            init(Json.read(new ByteArrayInputStream(json), Protocol.class));
         } catch (IOException e) {
             throw new ResourceException(e);
         }
     }
 
+    private static ProtocolSnapshot readSnapshot(InputStream in) {
+        try {
+            return ProtocolSnapshot.read(in);
+        } catch (IOException e) {
+            log.warn("Couldn't read protocol snapshot: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = Protocol.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new FileNotFoundException(name);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
     public TypeFactory(Protocol protocol) {
         init(protocol);
     }
@@ -121,6 +173,37 @@ public class TypeFactory {
             // Cache the struct type
             typeDefinitions.put(structDefinition.getName(), resolveType(structDefinition.getName()));
         }
+
+        // Compile codecs for everything the messages use
+        for (Type type : typeDefinitions.values()) {
+            type.getCodec();
+        }
+
+        indexMessages();
+    }
+
+    /**
+     * Start from a snapshot, which was checked when it was written. Types are resolved, and their codecs compiled, as
+     * they're first used.
+     */
+    private void init(ProtocolSnapshot snapshot) {
+        typeNames = snapshot.getTypeNames();
+        for (StructDefinition structDefinition : snapshot.getProtocol().getMessages()) {
+            structDefinitions.put(structDefinition.getName(), structDefinition);
+        }
+        indexMessages();
+    }
+
+    /**
+     * Index the top level messages. The first definition for an id wins.
+     */
+    private void indexMessages() {
+        for (StructDefinition structDefinition : structDefinitions.values()) {
+            Integer id = structDefinition.getId();
+            if (id != null && messageTypes.get(id) == null) {
+                messageTypes.put(id, new MessageType(id, structDefinition, this));
+            }
+        }
     }
 
     private void checkFields(List<FieldDefinition> fields) {
@@ -138,30 +221,32 @@ public class TypeFactory {
     }
 
     /**
-     * Find the message name for a given message ID.
+     * Look up a message by ID.
      *
      * @param messageId the message ID to search for
-     * @return the message name if defined
+     * @return the message type, or null if there's no definition for the ID
      */
-    public Optional<String> getStructNameForId(int messageId) {
+    public MessageType getMessageType(int messageId) {
         if (messageId <= 0) {
             throw new TypeException("Illegal ID " + messageId);
         }
-        for (StructDefinition definition: structDefinitions.values()) {
-            if (definition.getId() != null && definition.getId() == messageId) {
-                return Optional.ofNullable(definition.getName());
-            }
-        }
-        return Optional.empty();
+        return messageTypes.get(messageId);
+    }
+
+    /**
+     * Find the message name for a given message ID.
+     *
+     * @param messageId the message ID to search for
+     * @return the message name if defined
+     */
+    public Optional<String> getStructNameForId(int messageId) {
+        MessageType messageType = getMessageType(messageId);
+        return messageType == null ? Optional.empty() : Optional.of(messageType.getName());
     }
 
     public StructDefinition getStructDefinitionForId(int messageId) {
-        Optional<String> messageName = getStructNameForId(messageId);
-        if (messageName.isPresent()) {
-            return structDefinitions.get(messageName.get());
-        } else {
-            return null;
-        }
+        MessageType messageType = getMessageType(messageId);
+        return messageType == null ? null : messageType.getStructDefinition();
     }
 
     /**
@@ -222,10 +307,23 @@ public class TypeFactory {
         if (typeDefinition == null) {
             throw new TypeException("Missing type definition");
         }
-        if (typeDefinitions.containsKey(typeDefinition)) {
-            return typeDefinitions.get(typeDefinition);
+        Type type = typeDefinitions.get(typeDefinition);
+        if (type == null) {
+            ProtocolSnapshot.TypeName typeName = typeNames.get(typeDefinition);
+            if (typeName != null) {
+                type = newType(typeName.optional, typeName.name, typeName.array, typeName.length);
+            } else {
+                type = parseType(typeDefinition);
+            }
+            Type existing = typeDefinitions.putIfAbsent(typeDefinition, type);
+            if (existing != null) {
+                type = existing;
+            }
         }
+        return type;
+    }
 
+    private Type parseType(String typeDefinition) {
         Matcher matcher = TYPE_PATTERN.matcher(typeDefinition);
         if (!matcher.matches()) {
             throw new IllegalArgumentException("Badly formed type name " + typeDefinition);
@@ -236,10 +334,13 @@ public class TypeFactory {
         String arraySize = matcher.group(4);
 
         boolean isOptional = optional != null;
-        StructDefinition struct = structDefinitions.get(name);
         boolean isArray = array != null;
         int length = (arraySize == null) ? 0 : Integer.parseInt(arraySize);
+        return newType(isOptional, name, isArray, length);
+    }
 
+    private Type newType(boolean isOptional, String name, boolean isArray, int length) {
+        StructDefinition struct = structDefinitions.get(name);
         Type type;
         if (struct != null) {
             type = new Type(isOptional, name, isArray, length, struct);
@@ -254,6 +355,51 @@ public class TypeFactory {
         return type;
     }
 
+    /**
+     * A top level message: its ID, PDU type, definition and resolved struct type.
+     */
+    public static class MessageType {
+        private final int id;
+        private final Pdu.Type pduType;
+        private final StructDefinition structDefinition;
+        private final TypeFactory typeFactory;
+        private volatile Type type;
+
+        private MessageType(int id, StructDefinition structDefinition, TypeFactory typeFactory) {
+            this.id = id;
+            this.pduType = Pdu.Type.valueOf(id);
+            this.structDefinition = structDefinition;
+            this.typeFactory = typeFactory;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * The PDU type, or {@link Pdu.Type#Unknown} if the definition has an ID that isn't in the enum.
+         */
+        public Pdu.Type getPduType() {
+            return pduType;
+        }
+
+        public String getName() {
+            return structDefinition.getName();
+        }
+
+        public StructDefinition getStructDefinition() {
+            return structDefinition;
+        }
+
+        public Type getType() {
+            Type type = this.type;
+            if (type == null) {
+                this.type = type = typeFactory.resolveType(structDefinition.getName());
+            }
+            return type;
+        }
+    }
+
     /**
      * A big ball of mud containing everything the reader needs to know about a type.
      */
@@ -264,6 +410,7 @@ public class TypeFactory {
         private int length;
         private StructDefinition structDefinition;
         private Primitive primitiveType;
+        private volatile Codec codec;
 
         public Type(boolean optional, String name, boolean array, int length, StructDefinition structDefinition) {
             this.optional = optional;
@@ -313,6 +460,17 @@ public class TypeFactory {
             return primitiveType;
         }
 
+        /**
+         * The compiled reader/writer for this type.
+         */
+        public Codec getCodec() {
+            Codec codec = this.codec;
+            if (codec == null) {
+                this.codec = codec = codecCompiler.compile(this);
+            }
+            return codec;
+        }
+
         public Object valueOf(String dflt) {
             if (isPrimitive()) {
                 return primitiveType.fromString(dflt);
@@ -0,0 +1,37 @@
+package sir.barchable.clash.protocol;
+
+import java.io.IOException;
+
+/**
+ * A message decoded into a class generated from its definition, with a plain Java field for each field of the
+ * message. See {@link MessageClassGenerator}.
+ *
+ * @see MessageFactory#fromPdu(Pdu, Class)
+ * @author Sir Barchable
+ */
+public interface TypedMessage {
+    /**
+     * The message id.
+     */
+    int getId();
+
+    default Pdu.Type getType() {
+        return Pdu.Type.valueOf(getId());
+    }
+
+    /**
+     * Models parsed from the JSON fields of the message, e.g.
+     * {@code message.getModels().get("homeVillage", message.homeVillage, Village.class)}.
+     */
+    ModelCache getModels();
+
+    /**
+     * Share a model cache, e.g. the one kept by the PDU the message was read from, with the {@link Message} view.
+     */
+    void setModels(ModelCache models);
+
+    /**
+     * Write the message, without the PDU header.
+     */
+    void encode(MessageOutputStream out) throws IOException;
+}
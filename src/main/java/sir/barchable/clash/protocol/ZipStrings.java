@@ -0,0 +1,141 @@
+package sir.barchable.clash.protocol;
+
+import sir.barchable.util.Bits;
+
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compression for zipped strings, with pooled {@link Inflater}s and {@link Deflater}s.
+ * <p>
+ * A zipped string is sent as its unzipped length in little endian order, the deflated UTF-8 bytes, and a null
+ * terminator, all prefixed with the total length. We call everything after the prefix the block. Streams reading or
+ * writing a message keep the blocks in the message's {@link ModelCache}.
+ *
+ * @author Sir Barchable
+ */
+final class ZipStrings {
+    /**
+     * Idle inflaters or deflaters kept. Each holds native memory, so more are ended rather than pooled.
+     */
+    private static final int POOL_LIMIT = 4;
+
+    private static final Deque<Inflater> inflaters = new ArrayDeque<>();
+    private static final Deque<Deflater> deflaters = new ArrayDeque<>();
+
+    private ZipStrings() {
+    }
+
+    /**
+     * Unzip a block.
+     *
+     * @param block the unzipped length, zipped bytes and terminator
+     */
+    static String inflate(byte[] block) throws ZipException {
+        if (block.length < 4) {
+            throw new PduException("Zip string too short (" + block.length + ")");
+        }
+        int unzippedLength = Bits.swapEndian(
+            (block[0] & 0xff) << 24 | (block[1] & 0xff) << 16 | (block[2] & 0xff) << 8 | block[3] & 0xff
+        );
+        if (unzippedLength < 0 || unzippedLength > MessageInputStream.MAX_ARRAY_LENGTH) {
+            throw new PduException("String length out of bounds (" + unzippedLength + ")");
+        }
+
+        Inflater inflater = acquireInflater();
+        try {
+            inflater.setInput(block, 4, block.length - 4);
+            // Trust the declared length, but not blindly
+            byte[] unzipped = new byte[unzippedLength];
+            int n = 0;
+            while (!inflater.finished()) {
+                if (n == unzipped.length) {
+                    unzipped = Arrays.copyOf(unzipped, Math.max(64, n * 2));
+                }
+                int count = inflater.inflate(unzipped, n, unzipped.length - n);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Unexpected end of zip string");
+                }
+                n += count;
+            }
+            return new String(unzipped, 0, n, UTF_8);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            releaseInflater(inflater);
+        }
+    }
+
+    /**
+     * Zip a string.
+     *
+     * @return the unzipped length, zipped bytes and terminator
+     */
+    static byte[] deflate(String s) {
+        byte[] bytes = s.getBytes(UTF_8);
+        Deflater deflater = acquireDeflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            // Room for the length and terminator, and for incompressible input
+            byte[] block = new byte[bytes.length + bytes.length / 1000 + 64];
+            int n = 4;
+            while (!deflater.finished()) {
+                if (n == block.length - 1) {
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                n += deflater.deflate(block, n, block.length - 1 - n);
+            }
+            int unzippedLength = Bits.swapEndian(bytes.length);
+            block[0] = (byte) (unzippedLength >>> 24);
+            block[1] = (byte) (unzippedLength >>> 16);
+            block[2] = (byte) (unzippedLength >>> 8);
+            block[3] = (byte) unzippedLength;
+            block[n] = 0;
+            return Arrays.copyOf(block, n + 1);
+        } finally {
+            releaseDeflater(deflater);
+        }
+    }
+
+    private static Inflater acquireInflater() {
+        synchronized (inflaters) {
+            Inflater inflater = inflaters.poll();
+            return inflater == null ? new Inflater() : inflater;
+        }
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        synchronized (inflaters) {
+            if (inflaters.size() < POOL_LIMIT) {
+                inflaters.push(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    private static Deflater acquireDeflater() {
+        synchronized (deflaters) {
+            Deflater deflater = deflaters.poll();
+            return deflater == null ? new Deflater() : deflater;
+        }
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        synchronized (deflaters) {
+            if (deflaters.size() < POOL_LIMIT) {
+                deflaters.push(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+}
@@ -0,0 +1,148 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AllianceData implements TypedMessage {
+    public static final int ID = 24324;
+
+    public String clanDescription;
+
+    public int field2;
+
+    public int field3;
+
+    public Long field4;
+
+    public long clanId;
+
+    public String clanName;
+
+    public int badge;
+
+    public int field8;
+
+    public int field9;
+
+    public int field10;
+
+    public int field11;
+
+    public int field12;
+
+    public int field13;
+
+    public int field14;
+
+    public int field15;
+
+    public int field16;
+
+    public int field17;
+
+    public int field18;
+
+    public int field19;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static AllianceData decode(MessageInputStream in) throws IOException {
+        AllianceData struct = new AllianceData();
+        struct.clanDescription = in.readString();
+        struct.field2 = in.readInt();
+        struct.field3 = in.readInt();
+        struct.field4 = in.readBit() ? in.readLong() : null;
+        struct.clanId = in.readLong();
+        struct.clanName = in.readString();
+        struct.badge = in.readInt();
+        struct.field8 = in.readInt();
+        struct.field9 = in.readInt();
+        struct.field10 = in.readInt();
+        struct.field11 = in.readInt();
+        struct.field12 = in.readInt();
+        struct.field13 = in.readInt();
+        struct.field14 = in.readInt();
+        struct.field15 = in.readInt();
+        struct.field16 = in.readInt();
+        struct.field17 = in.readInt();
+        struct.field18 = in.readInt();
+        struct.field19 = in.readInt();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static AllianceData decodeMessage(MessageInputStream in) throws IOException {
+        AllianceData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static AllianceData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AllianceData[] array = new AllianceData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeString(clanDescription);
+        out.writeInt(field2);
+        out.writeInt(field3);
+        out.writeBit(field4 != null);
+        if (field4 != null) {
+            out.writeLong(field4);
+        }
+        out.writeLong(clanId);
+        out.writeString(clanName);
+        out.writeInt(badge);
+        out.writeInt(field8);
+        out.writeInt(field9);
+        out.writeInt(field10);
+        out.writeInt(field11);
+        out.writeInt(field12);
+        out.writeInt(field13);
+        out.writeInt(field14);
+        out.writeInt(field15);
+        out.writeInt(field16);
+        out.writeInt(field17);
+        out.writeInt(field18);
+        out.writeInt(field19);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AllianceDonation {
+    public long userId;
+
+    public ResourceComponent[] troops;
+
+    public static AllianceDonation decode(MessageInputStream in) throws IOException {
+        AllianceDonation struct = new AllianceDonation();
+        struct.userId = in.readLong();
+        struct.troops = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        return struct;
+    }
+
+    public static AllianceDonation[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AllianceDonation[] array = new AllianceDonation[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(userId);
+        out.writeArrayLength(troops == null ? 0 : troops.length, 0, "ResourceComponent");
+        if (troops != null) {
+            for (ResourceComponent element : troops) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AllianceStream implements TypedMessage {
+    public static final int ID = 24311;
+
+    public AllianceStreamEntry[] entries;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static AllianceStream decode(MessageInputStream in) throws IOException {
+        AllianceStream struct = new AllianceStream();
+        struct.entries = AllianceStreamEntry.decodeArray(in, in.readArrayLength(0));
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static AllianceStream decodeMessage(MessageInputStream in) throws IOException {
+        AllianceStream message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static AllianceStream[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AllianceStream[] array = new AllianceStream[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeArrayLength(entries == null ? 0 : entries.length, 0, "AllianceStreamEntry");
+        if (entries != null) {
+            for (AllianceStreamEntry element : entries) {
+                (element != null ? element : new AllianceStreamEntry()).encode(out);
+            }
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
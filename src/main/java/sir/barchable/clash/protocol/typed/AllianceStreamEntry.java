@@ -0,0 +1,336 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AllianceStreamEntry implements TypedMessage {
+    public static final int ID = 24312;
+
+    public int id;
+
+    public int field2;
+
+    public int messageId;
+
+    public byte field4;
+
+    public long userId;
+
+    public long homeId;
+
+    public String userName;
+
+    public int field8;
+
+    public int field9;
+
+    public int field10;
+
+    public int field11;
+
+    /**
+     * Troop request
+     */
+    public Extension1 extension1;
+
+    /**
+     * Send chat line
+     */
+    public Extension2 extension2;
+
+    /**
+     * Accept/reject a join request
+     */
+    public Extension3 extension3;
+
+    /**
+     * Join or leave
+     */
+    public Extension4 extension4;
+
+    /**
+     * Share replay
+     */
+    public Extension5 extension5;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static AllianceStreamEntry decode(MessageInputStream in) throws IOException {
+        AllianceStreamEntry struct = new AllianceStreamEntry();
+        struct.id = in.readInt();
+        struct.field2 = in.readInt();
+        struct.messageId = in.readInt();
+        struct.field4 = (byte) in.read();
+        struct.userId = in.readLong();
+        struct.homeId = in.readLong();
+        struct.userName = in.readString();
+        struct.field8 = in.readInt();
+        struct.field9 = in.readInt();
+        struct.field10 = in.readInt();
+        struct.field11 = in.readInt();
+        switch (struct.id) {
+            case 1:
+                struct.extension1 = Extension1.decode(in);
+                break;
+            case 2:
+                struct.extension2 = Extension2.decode(in);
+                break;
+            case 3:
+                struct.extension3 = Extension3.decode(in);
+                break;
+            case 4:
+                struct.extension4 = Extension4.decode(in);
+                break;
+            case 5:
+                struct.extension5 = Extension5.decode(in);
+                break;
+        }
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static AllianceStreamEntry decodeMessage(MessageInputStream in) throws IOException {
+        AllianceStreamEntry message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static AllianceStreamEntry[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AllianceStreamEntry[] array = new AllianceStreamEntry[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(id);
+        out.writeInt(field2);
+        out.writeInt(messageId);
+        out.write(field4);
+        out.writeLong(userId);
+        out.writeLong(homeId);
+        out.writeString(userName);
+        out.writeInt(field8);
+        out.writeInt(field9);
+        out.writeInt(field10);
+        out.writeInt(field11);
+        switch (id) {
+            case 1:
+                (extension1 != null ? extension1 : new Extension1()).encode(out);
+                break;
+            case 2:
+                (extension2 != null ? extension2 : new Extension2()).encode(out);
+                break;
+            case 3:
+                (extension3 != null ? extension3 : new Extension3()).encode(out);
+                break;
+            case 4:
+                (extension4 != null ? extension4 : new Extension4()).encode(out);
+                break;
+            case 5:
+                (extension5 != null ? extension5 : new Extension5()).encode(out);
+                break;
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+
+    /**
+     * Troop request
+     */
+    public static class Extension1 {
+        public int field12;
+
+        public int field13;
+
+        public int field14;
+
+        public AllianceDonation[] donations;
+
+        public String text;
+
+        public static Extension1 decode(MessageInputStream in) throws IOException {
+            Extension1 struct = new Extension1();
+            struct.field12 = in.readInt();
+            struct.field13 = in.readInt();
+            struct.field14 = in.readInt();
+            struct.donations = AllianceDonation.decodeArray(in, in.readArrayLength(0));
+            struct.text = in.readBit() ? in.readString() : null;
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(field12);
+            out.writeInt(field13);
+            out.writeInt(field14);
+            out.writeArrayLength(donations == null ? 0 : donations.length, 0, "AllianceDonation");
+            if (donations != null) {
+                for (AllianceDonation element : donations) {
+                    (element != null ? element : new AllianceDonation()).encode(out);
+                }
+            }
+            out.writeBit(text != null);
+            if (text != null) {
+                out.writeString(text);
+            }
+        }
+    }
+
+    /**
+     * Send chat line
+     */
+    public static class Extension2 {
+        public String text;
+
+        public static Extension2 decode(MessageInputStream in) throws IOException {
+            Extension2 struct = new Extension2();
+            struct.text = in.readString();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeString(text);
+        }
+    }
+
+    /**
+     * Accept/reject a join request
+     */
+    public static class Extension3 {
+        public String text;
+
+        public String actionedByUserName;
+
+        public int action;
+
+        public static Extension3 decode(MessageInputStream in) throws IOException {
+            Extension3 struct = new Extension3();
+            struct.text = in.readString();
+            struct.actionedByUserName = in.readString();
+            struct.action = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeString(text);
+            out.writeString(actionedByUserName);
+            out.writeInt(action);
+        }
+    }
+
+    /**
+     * Join or leave
+     */
+    public static class Extension4 {
+        public int action;
+
+        public long actionedByUserId;
+
+        public String actionedByUserName;
+
+        public static Extension4 decode(MessageInputStream in) throws IOException {
+            Extension4 struct = new Extension4();
+            struct.action = in.readInt();
+            struct.actionedByUserId = in.readLong();
+            struct.actionedByUserName = in.readString();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(action);
+            out.writeLong(actionedByUserId);
+            out.writeString(actionedByUserName);
+        }
+    }
+
+    /**
+     * Share replay
+     */
+    public static class Extension5 {
+        public int field12;
+
+        public int field13;
+
+        public int field14;
+
+        public byte field15;
+
+        public String text;
+
+        public String enemyName;
+
+        /**
+         * JSON description of battle
+         */
+        public String replay;
+
+        public int field19;
+
+        public int field20;
+
+        public int field21;
+
+        public static Extension5 decode(MessageInputStream in) throws IOException {
+            Extension5 struct = new Extension5();
+            struct.field12 = in.readInt();
+            struct.field13 = in.readInt();
+            struct.field14 = in.readInt();
+            struct.field15 = (byte) in.read();
+            struct.text = in.readString();
+            struct.enemyName = in.readString();
+            struct.replay = in.readString();
+            struct.field19 = in.readInt();
+            struct.field20 = in.readInt();
+            struct.field21 = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(field12);
+            out.writeInt(field13);
+            out.writeInt(field14);
+            out.write(field15);
+            out.writeString(text);
+            out.writeString(enemyName);
+            out.writeString(replay);
+            out.writeInt(field19);
+            out.writeInt(field20);
+            out.writeInt(field21);
+        }
+    }
+}
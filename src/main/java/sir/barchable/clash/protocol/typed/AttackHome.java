@@ -0,0 +1,87 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Revenge attack
+ * <p>
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AttackHome implements TypedMessage {
+    public static final int ID = 14106;
+
+    public long homeId;
+
+    public int field2;
+
+    public int field3;
+
+    public int field4;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static AttackHome decode(MessageInputStream in) throws IOException {
+        AttackHome struct = new AttackHome();
+        struct.homeId = in.readLong();
+        struct.field2 = in.readInt();
+        struct.field3 = in.readInt();
+        struct.field4 = in.readInt();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static AttackHome decodeMessage(MessageInputStream in) throws IOException {
+        AttackHome message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static AttackHome[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AttackHome[] array = new AttackHome[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(homeId);
+        out.writeInt(field2);
+        out.writeInt(field3);
+        out.writeInt(field4);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
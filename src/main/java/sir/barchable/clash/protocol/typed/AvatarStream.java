@@ -0,0 +1,38 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Mail stream. Clan mail, defense, etc. ID is 24411 (if and when this work is done...)
+ * <p>
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AvatarStream {
+    public AvatarStreamEntry[] entries;
+
+    public static AvatarStream decode(MessageInputStream in) throws IOException {
+        AvatarStream struct = new AvatarStream();
+        struct.entries = AvatarStreamEntry.decodeArray(in, in.readArrayLength(0));
+        return struct;
+    }
+
+    public static AvatarStream[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AvatarStream[] array = new AvatarStream[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeArrayLength(entries == null ? 0 : entries.length, 0, "AvatarStreamEntry");
+        if (entries != null) {
+            for (AvatarStreamEntry element : entries) {
+                (element != null ? element : new AvatarStreamEntry()).encode(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class AvatarStreamEntry {
+    public int id;
+
+    /**
+     * todo: extensions for the various inbox types
+     */
+    public Extension0 extension0;
+
+    public static AvatarStreamEntry decode(MessageInputStream in) throws IOException {
+        AvatarStreamEntry struct = new AvatarStreamEntry();
+        struct.id = in.readInt();
+        switch (struct.id) {
+            case 0:
+                struct.extension0 = Extension0.decode(in);
+                break;
+        }
+        return struct;
+    }
+
+    public static AvatarStreamEntry[] decodeArray(MessageInputStream in, int length) throws IOException {
+        AvatarStreamEntry[] array = new AvatarStreamEntry[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(id);
+        switch (id) {
+            case 0:
+                (extension0 != null ? extension0 : new Extension0()).encode(out);
+                break;
+        }
+    }
+
+    /**
+     * todo: extensions for the various inbox types
+     */
+    public static class Extension0 {
+        public static Extension0 decode(MessageInputStream in) throws IOException {
+            Extension0 struct = new Extension0();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class ClanComponent {
+    public long clanId;
+
+    public String clanName;
+
+    public int badge;
+
+    public int field4;
+
+    public int rank;
+
+    public static ClanComponent decode(MessageInputStream in) throws IOException {
+        ClanComponent struct = new ClanComponent();
+        struct.clanId = in.readLong();
+        struct.clanName = in.readString();
+        struct.badge = in.readInt();
+        struct.field4 = in.readInt();
+        struct.rank = in.readInt();
+        return struct;
+    }
+
+    public static ClanComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        ClanComponent[] array = new ClanComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(clanId);
+        out.writeString(clanName);
+        out.writeInt(badge);
+        out.writeInt(field4);
+        out.writeInt(rank);
+    }
+}
@@ -0,0 +1,35 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class ClanIdComponent {
+    public long clanId;
+
+    public String clanName;
+
+    public static ClanIdComponent decode(MessageInputStream in) throws IOException {
+        ClanIdComponent struct = new ClanIdComponent();
+        struct.clanId = in.readLong();
+        struct.clanName = in.readString();
+        return struct;
+    }
+
+    public static ClanIdComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        ClanIdComponent[] array = new ClanIdComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(clanId);
+        out.writeString(clanName);
+    }
+}
@@ -0,0 +1,760 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class CommandComponent {
+    public int id;
+
+    /**
+     * Donate unit in response to troop request
+     */
+    public Extension4 extension4;
+
+    /**
+     * Donate unit to clan war castle
+     */
+    public Extension10 extension10;
+
+    /**
+     * Move building
+     */
+    public Extension501 extension501;
+
+    /**
+     * Collect resources
+     */
+    public Extension506 extension506;
+
+    /**
+     * Train troops
+     */
+    public Extension508 extension508;
+
+    /**
+     * Cancel troop production
+     */
+    public Extension509 extension509;
+
+    /**
+     * Buy decoration
+     */
+    public Extension512 extension512;
+
+    /**
+     * New shop item seen
+     */
+    public Extension532 extension532;
+
+    /**
+     * Edit layout
+     */
+    public Extension546 extension546;
+
+    /**
+     * ? edit layout command
+     */
+    public Extension548 extension548;
+
+    /**
+     * Save Layout
+     */
+    public Extension552 extension552;
+
+    /**
+     * ? edit layout command
+     */
+    public Extension554 extension554;
+
+    /**
+     * Set layout as active
+     */
+    public Extension567 extension567;
+
+    /**
+     * Copy layout
+     */
+    public Extension568 extension568;
+
+    /**
+     * Place attacker
+     */
+    public Extension600 extension600;
+
+    /**
+     * End combat
+     */
+    public Extension603 extension603;
+
+    /**
+     * Cast spell
+     */
+    public Extension604 extension604;
+
+    /**
+     * Next village during attack selection
+     */
+    public Extension700 extension700;
+
+    public static CommandComponent decode(MessageInputStream in) throws IOException {
+        CommandComponent struct = new CommandComponent();
+        struct.id = in.readInt();
+        switch (struct.id) {
+            case 4:
+                struct.extension4 = Extension4.decode(in);
+                break;
+            case 10:
+                struct.extension10 = Extension10.decode(in);
+                break;
+            case 501:
+                struct.extension501 = Extension501.decode(in);
+                break;
+            case 506:
+                struct.extension506 = Extension506.decode(in);
+                break;
+            case 508:
+                struct.extension508 = Extension508.decode(in);
+                break;
+            case 509:
+                struct.extension509 = Extension509.decode(in);
+                break;
+            case 512:
+                struct.extension512 = Extension512.decode(in);
+                break;
+            case 532:
+                struct.extension532 = Extension532.decode(in);
+                break;
+            case 546:
+                struct.extension546 = Extension546.decode(in);
+                break;
+            case 548:
+                struct.extension548 = Extension548.decode(in);
+                break;
+            case 552:
+                struct.extension552 = Extension552.decode(in);
+                break;
+            case 554:
+                struct.extension554 = Extension554.decode(in);
+                break;
+            case 567:
+                struct.extension567 = Extension567.decode(in);
+                break;
+            case 568:
+                struct.extension568 = Extension568.decode(in);
+                break;
+            case 600:
+                struct.extension600 = Extension600.decode(in);
+                break;
+            case 603:
+                struct.extension603 = Extension603.decode(in);
+                break;
+            case 604:
+                struct.extension604 = Extension604.decode(in);
+                break;
+            case 700:
+                struct.extension700 = Extension700.decode(in);
+                break;
+        }
+        return struct;
+    }
+
+    public static CommandComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        CommandComponent[] array = new CommandComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(id);
+        switch (id) {
+            case 4:
+                (extension4 != null ? extension4 : new Extension4()).encode(out);
+                break;
+            case 10:
+                (extension10 != null ? extension10 : new Extension10()).encode(out);
+                break;
+            case 501:
+                (extension501 != null ? extension501 : new Extension501()).encode(out);
+                break;
+            case 506:
+                (extension506 != null ? extension506 : new Extension506()).encode(out);
+                break;
+            case 508:
+                (extension508 != null ? extension508 : new Extension508()).encode(out);
+                break;
+            case 509:
+                (extension509 != null ? extension509 : new Extension509()).encode(out);
+                break;
+            case 512:
+                (extension512 != null ? extension512 : new Extension512()).encode(out);
+                break;
+            case 532:
+                (extension532 != null ? extension532 : new Extension532()).encode(out);
+                break;
+            case 546:
+                (extension546 != null ? extension546 : new Extension546()).encode(out);
+                break;
+            case 548:
+                (extension548 != null ? extension548 : new Extension548()).encode(out);
+                break;
+            case 552:
+                (extension552 != null ? extension552 : new Extension552()).encode(out);
+                break;
+            case 554:
+                (extension554 != null ? extension554 : new Extension554()).encode(out);
+                break;
+            case 567:
+                (extension567 != null ? extension567 : new Extension567()).encode(out);
+                break;
+            case 568:
+                (extension568 != null ? extension568 : new Extension568()).encode(out);
+                break;
+            case 600:
+                (extension600 != null ? extension600 : new Extension600()).encode(out);
+                break;
+            case 603:
+                (extension603 != null ? extension603 : new Extension603()).encode(out);
+                break;
+            case 604:
+                (extension604 != null ? extension604 : new Extension604()).encode(out);
+                break;
+            case 700:
+                (extension700 != null ? extension700 : new Extension700()).encode(out);
+                break;
+        }
+    }
+
+    /**
+     * Donate unit in response to troop request
+     */
+    public static class Extension4 {
+        public int field2;
+
+        public int messageId;
+
+        public int typeId;
+
+        public int field5;
+
+        public int tick;
+
+        public static Extension4 decode(MessageInputStream in) throws IOException {
+            Extension4 struct = new Extension4();
+            struct.field2 = in.readInt();
+            struct.messageId = in.readInt();
+            struct.typeId = in.readInt();
+            struct.field5 = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(field2);
+            out.writeInt(messageId);
+            out.writeInt(typeId);
+            out.writeInt(field5);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Donate unit to clan war castle
+     */
+    public static class Extension10 {
+        public int field2;
+
+        public int homeId;
+
+        public int typeId;
+
+        public int index;
+
+        public int tick;
+
+        public static Extension10 decode(MessageInputStream in) throws IOException {
+            Extension10 struct = new Extension10();
+            struct.field2 = in.readInt();
+            struct.homeId = in.readInt();
+            struct.typeId = in.readInt();
+            struct.index = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(field2);
+            out.writeInt(homeId);
+            out.writeInt(typeId);
+            out.writeInt(index);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Move building
+     */
+    public static class Extension501 {
+        public int x;
+
+        public int y;
+
+        public int buildingId;
+
+        public int tick;
+
+        public static Extension501 decode(MessageInputStream in) throws IOException {
+            Extension501 struct = new Extension501();
+            struct.x = in.readInt();
+            struct.y = in.readInt();
+            struct.buildingId = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(buildingId);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Collect resources
+     */
+    public static class Extension506 {
+        public int buildingId;
+
+        public int tick;
+
+        public static Extension506 decode(MessageInputStream in) throws IOException {
+            Extension506 struct = new Extension506();
+            struct.buildingId = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(buildingId);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Train troops
+     */
+    public static class Extension508 {
+        public int buildingId;
+
+        public int field3;
+
+        public int typeId;
+
+        public int count;
+
+        public int tick;
+
+        public static Extension508 decode(MessageInputStream in) throws IOException {
+            Extension508 struct = new Extension508();
+            struct.buildingId = in.readInt();
+            struct.field3 = in.readInt();
+            struct.typeId = in.readInt();
+            struct.count = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(buildingId);
+            out.writeInt(field3);
+            out.writeInt(typeId);
+            out.writeInt(count);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Cancel troop production
+     */
+    public static class Extension509 {
+        public int buildingId;
+
+        public int field3;
+
+        public int typeId;
+
+        public int count;
+
+        public int field6;
+
+        public int tick;
+
+        public static Extension509 decode(MessageInputStream in) throws IOException {
+            Extension509 struct = new Extension509();
+            struct.buildingId = in.readInt();
+            struct.field3 = in.readInt();
+            struct.typeId = in.readInt();
+            struct.count = in.readInt();
+            struct.field6 = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(buildingId);
+            out.writeInt(field3);
+            out.writeInt(typeId);
+            out.writeInt(count);
+            out.writeInt(field6);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Buy decoration
+     */
+    public static class Extension512 {
+        public int x;
+
+        public int y;
+
+        public int buildingId;
+
+        public int tick;
+
+        public static Extension512 decode(MessageInputStream in) throws IOException {
+            Extension512 struct = new Extension512();
+            struct.x = in.readInt();
+            struct.y = in.readInt();
+            struct.buildingId = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(buildingId);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * New shop item seen
+     */
+    public static class Extension532 {
+        public int field2;
+
+        public int field3;
+
+        public int field4;
+
+        public int tick;
+
+        public static Extension532 decode(MessageInputStream in) throws IOException {
+            Extension532 struct = new Extension532();
+            struct.field2 = in.readInt();
+            struct.field3 = in.readInt();
+            struct.field4 = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(field2);
+            out.writeInt(field3);
+            out.writeInt(field4);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Edit layout
+     */
+    public static class Extension546 {
+        public int x;
+
+        public int y;
+
+        public int buildingId;
+
+        public int layout;
+
+        public int tick;
+
+        public static Extension546 decode(MessageInputStream in) throws IOException {
+            Extension546 struct = new Extension546();
+            struct.x = in.readInt();
+            struct.y = in.readInt();
+            struct.buildingId = in.readInt();
+            struct.layout = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(buildingId);
+            out.writeInt(layout);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * ? edit layout command
+     */
+    public static class Extension548 {
+        public int layout;
+
+        /**
+         * 0 for home villages, 1 for war
+         */
+        public int field3;
+
+        public int tick;
+
+        public static Extension548 decode(MessageInputStream in) throws IOException {
+            Extension548 struct = new Extension548();
+            struct.layout = in.readInt();
+            struct.field3 = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(layout);
+            out.writeInt(field3);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Save Layout
+     */
+    public static class Extension552 {
+        public int layout;
+
+        public int field3;
+
+        /**
+         * true to save, false to cancel
+         */
+        public boolean save;
+
+        public int tick;
+
+        public static Extension552 decode(MessageInputStream in) throws IOException {
+            Extension552 struct = new Extension552();
+            struct.layout = in.readInt();
+            struct.field3 = in.readInt();
+            struct.save = in.readBit();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(layout);
+            out.writeInt(field3);
+            out.writeBit(save);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * ? edit layout command
+     */
+    public static class Extension554 {
+        public int buildingId;
+
+        public int layout;
+
+        public byte field4;
+
+        public int field5;
+
+        public byte field6;
+
+        public int tick;
+
+        public static Extension554 decode(MessageInputStream in) throws IOException {
+            Extension554 struct = new Extension554();
+            struct.buildingId = in.readInt();
+            struct.layout = in.readInt();
+            struct.field4 = (byte) in.read();
+            struct.field5 = in.readInt();
+            struct.field6 = (byte) in.read();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(buildingId);
+            out.writeInt(layout);
+            out.write(field4);
+            out.writeInt(field5);
+            out.write(field6);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Set layout as active
+     */
+    public static class Extension567 {
+        public int layout;
+
+        /**
+         * 0 for home villages, 1 for war
+         */
+        public int field3;
+
+        public int tick;
+
+        public static Extension567 decode(MessageInputStream in) throws IOException {
+            Extension567 struct = new Extension567();
+            struct.layout = in.readInt();
+            struct.field3 = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(layout);
+            out.writeInt(field3);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Copy layout
+     */
+    public static class Extension568 {
+        public int tick;
+
+        public int fromLayout;
+
+        public int toLayout;
+
+        public static Extension568 decode(MessageInputStream in) throws IOException {
+            Extension568 struct = new Extension568();
+            struct.tick = in.readInt();
+            struct.fromLayout = in.readInt();
+            struct.toLayout = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(tick);
+            out.writeInt(fromLayout);
+            out.writeInt(toLayout);
+        }
+    }
+
+    /**
+     * Place attacker
+     */
+    public static class Extension600 {
+        public int x;
+
+        public int y;
+
+        public int typeId;
+
+        public int tick;
+
+        public static Extension600 decode(MessageInputStream in) throws IOException {
+            Extension600 struct = new Extension600();
+            struct.x = in.readInt();
+            struct.y = in.readInt();
+            struct.typeId = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(typeId);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * End combat
+     */
+    public static class Extension603 {
+        public int tick;
+
+        public static Extension603 decode(MessageInputStream in) throws IOException {
+            Extension603 struct = new Extension603();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Cast spell
+     */
+    public static class Extension604 {
+        public int x;
+
+        public int y;
+
+        public int typeId;
+
+        public int tick;
+
+        public static Extension604 decode(MessageInputStream in) throws IOException {
+            Extension604 struct = new Extension604();
+            struct.x = in.readInt();
+            struct.y = in.readInt();
+            struct.typeId = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(typeId);
+            out.writeInt(tick);
+        }
+    }
+
+    /**
+     * Next village during attack selection
+     */
+    public static class Extension700 {
+        public int field2;
+
+        public int field3;
+
+        public int tick;
+
+        public static Extension700 decode(MessageInputStream in) throws IOException {
+            Extension700 struct = new Extension700();
+            struct.field2 = in.readInt();
+            struct.field3 = in.readInt();
+            struct.tick = in.readInt();
+            return struct;
+        }
+
+        public void encode(MessageOutputStream out) throws IOException {
+            out.writeInt(field2);
+            out.writeInt(field3);
+            out.writeInt(tick);
+        }
+    }
+}
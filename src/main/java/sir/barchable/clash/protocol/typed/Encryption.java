@@ -0,0 +1,80 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class Encryption implements TypedMessage {
+    public static final int ID = 20000;
+
+    public byte[] serverRandom;
+
+    public int version;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static Encryption decode(MessageInputStream in) throws IOException {
+        Encryption struct = new Encryption();
+        struct.serverRandom = in.readArray(new byte[in.readArrayLength(0)]);
+        struct.version = in.readInt();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static Encryption decodeMessage(MessageInputStream in) throws IOException {
+        Encryption message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static Encryption[] decodeArray(MessageInputStream in, int length) throws IOException {
+        Encryption[] array = new Encryption[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeArrayLength(serverRandom == null ? 0 : serverRandom.length, 0, "BYTE");
+        if (serverRandom != null) {
+            out.write(serverRandom);
+        }
+        out.writeInt(version);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class EndClientTurn implements TypedMessage {
+    public static final int ID = 14102;
+
+    public int tick;
+
+    public int checksum;
+
+    public CommandComponent[] commands;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static EndClientTurn decode(MessageInputStream in) throws IOException {
+        EndClientTurn struct = new EndClientTurn();
+        struct.tick = in.readInt();
+        struct.checksum = in.readInt();
+        struct.commands = CommandComponent.decodeArray(in, in.readArrayLength(0));
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static EndClientTurn decodeMessage(MessageInputStream in) throws IOException {
+        EndClientTurn message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static EndClientTurn[] decodeArray(MessageInputStream in, int length) throws IOException {
+        EndClientTurn[] array = new EndClientTurn[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(tick);
+        out.writeInt(checksum);
+        out.writeArrayLength(commands == null ? 0 : commands.length, 0, "CommandComponent");
+        if (commands != null) {
+            for (CommandComponent element : commands) {
+                (element != null ? element : new CommandComponent()).encode(out);
+            }
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class EnemyHomeData implements TypedMessage {
+    public static final int ID = 24107;
+
+    public int age;
+
+    public int field2 = -1;
+
+    public int timeStamp;
+
+    public int field4;
+
+    public long homeId;
+
+    public int remainingShield;
+
+    public int field7 = 1200;
+
+    public int field8 = 60;
+
+    public String homeVillage;
+
+    public UserComponent user;
+
+    public ResourceListComponent resources;
+
+    public int field12;
+
+    public UserComponent attacker;
+
+    public ResourceListComponent attackerResources;
+
+    public int field15;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static EnemyHomeData decode(MessageInputStream in) throws IOException {
+        EnemyHomeData struct = new EnemyHomeData();
+        struct.age = in.readInt();
+        struct.field2 = in.readInt();
+        struct.timeStamp = in.readInt();
+        struct.field4 = in.readInt();
+        struct.homeId = in.readLong();
+        struct.remainingShield = in.readInt();
+        struct.field7 = in.readInt();
+        struct.field8 = in.readInt();
+        struct.homeVillage = in.readBit() ? in.readZipString() : null;
+        struct.user = UserComponent.decode(in);
+        struct.resources = ResourceListComponent.decode(in);
+        struct.field12 = in.readInt();
+        struct.attacker = UserComponent.decode(in);
+        struct.attackerResources = ResourceListComponent.decode(in);
+        struct.field15 = in.readInt();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static EnemyHomeData decodeMessage(MessageInputStream in) throws IOException {
+        EnemyHomeData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static EnemyHomeData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        EnemyHomeData[] array = new EnemyHomeData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(age);
+        out.writeInt(field2);
+        out.writeInt(timeStamp);
+        out.writeInt(field4);
+        out.writeLong(homeId);
+        out.writeInt(remainingShield);
+        out.writeInt(field7);
+        out.writeInt(field8);
+        out.writeBit(homeVillage != null);
+        if (homeVillage != null) {
+            out.writeZipString(homeVillage);
+        }
+        (user != null ? user : new UserComponent()).encode(out);
+        (resources != null ? resources : new ResourceListComponent()).encode(out);
+        out.writeInt(field12);
+        (attacker != null ? attacker : new UserComponent()).encode(out);
+        (attackerResources != null ? attackerResources : new ResourceListComponent()).encode(out);
+        out.writeInt(field15);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class GlobalChatLine implements TypedMessage {
+    public static final int ID = 24715;
+
+    public String text;
+
+    public String userName;
+
+    public int field3;
+
+    public int field4;
+
+    public long userId;
+
+    public long homeId;
+
+    public ClanIdComponent clan;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static GlobalChatLine decode(MessageInputStream in) throws IOException {
+        GlobalChatLine struct = new GlobalChatLine();
+        struct.text = in.readString();
+        struct.userName = in.readString();
+        struct.field3 = in.readInt();
+        struct.field4 = in.readInt();
+        struct.userId = in.readLong();
+        struct.homeId = in.readLong();
+        struct.clan = in.readBit() ? ClanIdComponent.decode(in) : null;
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static GlobalChatLine decodeMessage(MessageInputStream in) throws IOException {
+        GlobalChatLine message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static GlobalChatLine[] decodeArray(MessageInputStream in, int length) throws IOException {
+        GlobalChatLine[] array = new GlobalChatLine[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeString(text);
+        out.writeString(userName);
+        out.writeInt(field3);
+        out.writeInt(field4);
+        out.writeLong(userId);
+        out.writeLong(homeId);
+        out.writeBit(clan != null);
+        if (clan != null) {
+            clan.encode(out);
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class HomeBattleReplayData implements TypedMessage {
+    public static final int ID = 24114;
+
+    public String replay;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static HomeBattleReplayData decode(MessageInputStream in) throws IOException {
+        HomeBattleReplayData struct = new HomeBattleReplayData();
+        struct.replay = in.readZipString();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static HomeBattleReplayData decodeMessage(MessageInputStream in) throws IOException {
+        HomeBattleReplayData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static HomeBattleReplayData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        HomeBattleReplayData[] array = new HomeBattleReplayData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeZipString(replay == null ? "" : replay);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
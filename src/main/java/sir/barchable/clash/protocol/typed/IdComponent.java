@@ -0,0 +1,31 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class IdComponent {
+    public long id;
+
+    public static IdComponent decode(MessageInputStream in) throws IOException {
+        IdComponent struct = new IdComponent();
+        struct.id = in.readLong();
+        return struct;
+    }
+
+    public static IdComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        IdComponent[] array = new IdComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(id);
+    }
+}
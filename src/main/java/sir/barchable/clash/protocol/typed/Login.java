@@ -0,0 +1,152 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class Login implements TypedMessage {
+    public static final int ID = 10101;
+
+    public long userId;
+
+    public String userToken;
+
+    public int majorVersion;
+
+    public int field4;
+
+    public int minorVersion;
+
+    public String masterHash;
+
+    public String field7;
+
+    public String openUdid;
+
+    public String mac;
+
+    public String phoneModel;
+
+    public int locale;
+
+    public String language;
+
+    public String advertisingIdentifier;
+
+    public String osVersion;
+
+    public byte[] field15 = new byte[5];
+
+    public String androidDeviceId;
+
+    public String facebookAttributionId;
+
+    public byte advertisingTrackingEnabled;
+
+    public String vendorUuid;
+
+    public int clientSeed;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static Login decode(MessageInputStream in) throws IOException {
+        Login struct = new Login();
+        struct.userId = in.readLong();
+        struct.userToken = in.readString();
+        struct.majorVersion = in.readInt();
+        struct.field4 = in.readInt();
+        struct.minorVersion = in.readInt();
+        struct.masterHash = in.readString();
+        struct.field7 = in.readString();
+        struct.openUdid = in.readString();
+        struct.mac = in.readString();
+        struct.phoneModel = in.readString();
+        struct.locale = in.readInt();
+        struct.language = in.readString();
+        struct.advertisingIdentifier = in.readString();
+        struct.osVersion = in.readString();
+        struct.field15 = in.readArray(new byte[in.readArrayLength(5)]);
+        struct.androidDeviceId = in.readString();
+        struct.facebookAttributionId = in.readString();
+        struct.advertisingTrackingEnabled = (byte) in.read();
+        struct.vendorUuid = in.readString();
+        struct.clientSeed = in.readInt();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static Login decodeMessage(MessageInputStream in) throws IOException {
+        Login message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static Login[] decodeArray(MessageInputStream in, int length) throws IOException {
+        Login[] array = new Login[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(userId);
+        out.writeString(userToken);
+        out.writeInt(majorVersion);
+        out.writeInt(field4);
+        out.writeInt(minorVersion);
+        out.writeString(masterHash);
+        out.writeString(field7);
+        out.writeString(openUdid);
+        out.writeString(mac);
+        out.writeString(phoneModel);
+        out.writeInt(locale);
+        out.writeString(language);
+        out.writeString(advertisingIdentifier);
+        out.writeString(osVersion);
+        out.writeArrayLength(field15 == null ? 0 : field15.length, 5, "BYTE");
+        if (field15 != null) {
+            out.write(field15);
+        }
+        out.writeString(androidDeviceId);
+        out.writeString(facebookAttributionId);
+        out.write(advertisingTrackingEnabled);
+        out.writeString(vendorUuid);
+        out.writeInt(clientSeed);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
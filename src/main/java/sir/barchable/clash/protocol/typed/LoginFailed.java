@@ -0,0 +1,109 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class LoginFailed implements TypedMessage {
+    public static final int ID = 20103;
+
+    public int failureReason;
+
+    public String field2;
+
+    public String hostName;
+
+    public String downloadUrl;
+
+    public String appStoreUrl;
+
+    public int field6;
+
+    public int field7;
+
+    public byte field8;
+
+    public String fingerPrint;
+
+    public String field10;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static LoginFailed decode(MessageInputStream in) throws IOException {
+        LoginFailed struct = new LoginFailed();
+        struct.failureReason = in.readInt();
+        struct.field2 = in.readString();
+        struct.hostName = in.readString();
+        struct.downloadUrl = in.readString();
+        struct.appStoreUrl = in.readString();
+        struct.field6 = in.readInt();
+        struct.field7 = in.readInt();
+        struct.field8 = (byte) in.read();
+        struct.fingerPrint = in.readZipString();
+        struct.field10 = in.readString();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static LoginFailed decodeMessage(MessageInputStream in) throws IOException {
+        LoginFailed message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static LoginFailed[] decodeArray(MessageInputStream in, int length) throws IOException {
+        LoginFailed[] array = new LoginFailed[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(failureReason);
+        out.writeString(field2);
+        out.writeString(hostName);
+        out.writeString(downloadUrl);
+        out.writeString(appStoreUrl);
+        out.writeInt(field6);
+        out.writeInt(field7);
+        out.write(field8);
+        out.writeZipString(fingerPrint == null ? "" : fingerPrint);
+        out.writeString(field10);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
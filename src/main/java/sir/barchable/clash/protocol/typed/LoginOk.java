@@ -0,0 +1,141 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class LoginOk implements TypedMessage {
+    public static final int ID = 20104;
+
+    public long userId;
+
+    public long homeId;
+
+    public String userToken;
+
+    public String facebookId;
+
+    public String gameCenterId;
+
+    public int majorVersion;
+
+    public int minorVersion;
+
+    public int revision;
+
+    public String environment;
+
+    public int loginCount;
+
+    public int timeOnline;
+
+    public int f12;
+
+    public String facebookAppId;
+
+    public String lastLoginDate;
+
+    public String joinDate;
+
+    public int field16;
+
+    public String googlePlusId;
+
+    public String country;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static LoginOk decode(MessageInputStream in) throws IOException {
+        LoginOk struct = new LoginOk();
+        struct.userId = in.readLong();
+        struct.homeId = in.readLong();
+        struct.userToken = in.readString();
+        struct.facebookId = in.readString();
+        struct.gameCenterId = in.readString();
+        struct.majorVersion = in.readInt();
+        struct.minorVersion = in.readInt();
+        struct.revision = in.readInt();
+        struct.environment = in.readString();
+        struct.loginCount = in.readInt();
+        struct.timeOnline = in.readInt();
+        struct.f12 = in.readInt();
+        struct.facebookAppId = in.readString();
+        struct.lastLoginDate = in.readString();
+        struct.joinDate = in.readString();
+        struct.field16 = in.readInt();
+        struct.googlePlusId = in.readString();
+        struct.country = in.readString();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static LoginOk decodeMessage(MessageInputStream in) throws IOException {
+        LoginOk message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static LoginOk[] decodeArray(MessageInputStream in, int length) throws IOException {
+        LoginOk[] array = new LoginOk[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(userId);
+        out.writeLong(homeId);
+        out.writeString(userToken);
+        out.writeString(facebookId);
+        out.writeString(gameCenterId);
+        out.writeInt(majorVersion);
+        out.writeInt(minorVersion);
+        out.writeInt(revision);
+        out.writeString(environment);
+        out.writeInt(loginCount);
+        out.writeInt(timeOnline);
+        out.writeInt(f12);
+        out.writeString(facebookAppId);
+        out.writeString(lastLoginDate);
+        out.writeString(joinDate);
+        out.writeInt(field16);
+        out.writeString(googlePlusId);
+        out.writeString(country);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class OwnHomeData implements TypedMessage {
+    public static final int ID = 24101;
+
+    public int age;
+
+    public int field2 = -1;
+
+    public int timeStamp;
+
+    public int field4;
+
+    public long homeId;
+
+    public int remainingShield;
+
+    public int field7 = 1200;
+
+    public int field8 = 60;
+
+    public String homeVillage;
+
+    public UserComponent user;
+
+    public ResourceListComponent resources;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static OwnHomeData decode(MessageInputStream in) throws IOException {
+        OwnHomeData struct = new OwnHomeData();
+        struct.age = in.readInt();
+        struct.field2 = in.readInt();
+        struct.timeStamp = in.readInt();
+        struct.field4 = in.readInt();
+        struct.homeId = in.readLong();
+        struct.remainingShield = in.readInt();
+        struct.field7 = in.readInt();
+        struct.field8 = in.readInt();
+        struct.homeVillage = in.readBit() ? in.readZipString() : null;
+        struct.user = UserComponent.decode(in);
+        struct.resources = ResourceListComponent.decode(in);
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static OwnHomeData decodeMessage(MessageInputStream in) throws IOException {
+        OwnHomeData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static OwnHomeData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        OwnHomeData[] array = new OwnHomeData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(age);
+        out.writeInt(field2);
+        out.writeInt(timeStamp);
+        out.writeInt(field4);
+        out.writeLong(homeId);
+        out.writeInt(remainingShield);
+        out.writeInt(field7);
+        out.writeInt(field8);
+        out.writeBit(homeVillage != null);
+        if (homeVillage != null) {
+            out.writeZipString(homeVillage);
+        }
+        (user != null ? user : new UserComponent()).encode(out);
+        (resources != null ? resources : new ResourceListComponent()).encode(out);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
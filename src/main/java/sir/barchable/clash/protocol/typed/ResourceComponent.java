@@ -0,0 +1,35 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class ResourceComponent {
+    public int type;
+
+    public int value;
+
+    public static ResourceComponent decode(MessageInputStream in) throws IOException {
+        ResourceComponent struct = new ResourceComponent();
+        struct.type = in.readInt();
+        struct.value = in.readInt();
+        return struct;
+    }
+
+    public static ResourceComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        ResourceComponent[] array = new ResourceComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(type);
+        out.writeInt(value);
+    }
+}
@@ -0,0 +1,171 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class ResourceListComponent {
+    public ResourceComponent[] resourceCapacities;
+
+    public ResourceComponent[] resourceCounts;
+
+    public ResourceComponent[] unitCounts;
+
+    public ResourceComponent[] spellCounts;
+
+    public ResourceComponent[] unitLevels;
+
+    public ResourceComponent[] spellLevels;
+
+    public ResourceComponent[] heroLevels;
+
+    public ResourceComponent[] heroHealth;
+
+    public ResourceComponent[] heroState;
+
+    public UnitComponent[] allianceUnits;
+
+    public int[] missions;
+
+    public int[] achievements;
+
+    public ResourceComponent[] achievementProgress;
+
+    public ResourceComponent[] goblinStars;
+
+    public ResourceComponent[] goblinGold;
+
+    public ResourceComponent[] goblinElixir;
+
+    public static ResourceListComponent decode(MessageInputStream in) throws IOException {
+        ResourceListComponent struct = new ResourceListComponent();
+        struct.resourceCapacities = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.resourceCounts = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.unitCounts = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.spellCounts = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.unitLevels = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.spellLevels = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.heroLevels = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.heroHealth = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.heroState = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.allianceUnits = UnitComponent.decodeArray(in, in.readArrayLength(0));
+        struct.missions = in.readArray(new int[in.readArrayLength(0)]);
+        struct.achievements = in.readArray(new int[in.readArrayLength(0)]);
+        struct.achievementProgress = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.goblinStars = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.goblinGold = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        struct.goblinElixir = ResourceComponent.decodeArray(in, in.readArrayLength(0));
+        return struct;
+    }
+
+    public static ResourceListComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        ResourceListComponent[] array = new ResourceListComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeArrayLength(resourceCapacities == null ? 0 : resourceCapacities.length, 0, "ResourceComponent");
+        if (resourceCapacities != null) {
+            for (ResourceComponent element : resourceCapacities) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(resourceCounts == null ? 0 : resourceCounts.length, 0, "ResourceComponent");
+        if (resourceCounts != null) {
+            for (ResourceComponent element : resourceCounts) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(unitCounts == null ? 0 : unitCounts.length, 0, "ResourceComponent");
+        if (unitCounts != null) {
+            for (ResourceComponent element : unitCounts) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(spellCounts == null ? 0 : spellCounts.length, 0, "ResourceComponent");
+        if (spellCounts != null) {
+            for (ResourceComponent element : spellCounts) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(unitLevels == null ? 0 : unitLevels.length, 0, "ResourceComponent");
+        if (unitLevels != null) {
+            for (ResourceComponent element : unitLevels) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(spellLevels == null ? 0 : spellLevels.length, 0, "ResourceComponent");
+        if (spellLevels != null) {
+            for (ResourceComponent element : spellLevels) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(heroLevels == null ? 0 : heroLevels.length, 0, "ResourceComponent");
+        if (heroLevels != null) {
+            for (ResourceComponent element : heroLevels) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(heroHealth == null ? 0 : heroHealth.length, 0, "ResourceComponent");
+        if (heroHealth != null) {
+            for (ResourceComponent element : heroHealth) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(heroState == null ? 0 : heroState.length, 0, "ResourceComponent");
+        if (heroState != null) {
+            for (ResourceComponent element : heroState) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(allianceUnits == null ? 0 : allianceUnits.length, 0, "UnitComponent");
+        if (allianceUnits != null) {
+            for (UnitComponent element : allianceUnits) {
+                (element != null ? element : new UnitComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(missions == null ? 0 : missions.length, 0, "INT");
+        if (missions != null) {
+            for (int element : missions) {
+                out.writeInt(element);
+            }
+        }
+        out.writeArrayLength(achievements == null ? 0 : achievements.length, 0, "INT");
+        if (achievements != null) {
+            for (int element : achievements) {
+                out.writeInt(element);
+            }
+        }
+        out.writeArrayLength(achievementProgress == null ? 0 : achievementProgress.length, 0, "ResourceComponent");
+        if (achievementProgress != null) {
+            for (ResourceComponent element : achievementProgress) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(goblinStars == null ? 0 : goblinStars.length, 0, "ResourceComponent");
+        if (goblinStars != null) {
+            for (ResourceComponent element : goblinStars) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(goblinGold == null ? 0 : goblinGold.length, 0, "ResourceComponent");
+        if (goblinGold != null) {
+            for (ResourceComponent element : goblinGold) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+        out.writeArrayLength(goblinElixir == null ? 0 : goblinElixir.length, 0, "ResourceComponent");
+        if (goblinElixir != null) {
+            for (ResourceComponent element : goblinElixir) {
+                (element != null ? element : new ResourceComponent()).encode(out);
+            }
+        }
+    }
+}
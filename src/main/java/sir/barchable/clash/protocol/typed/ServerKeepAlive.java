@@ -0,0 +1,69 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class ServerKeepAlive implements TypedMessage {
+    public static final int ID = 20108;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static ServerKeepAlive decode(MessageInputStream in) throws IOException {
+        ServerKeepAlive struct = new ServerKeepAlive();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static ServerKeepAlive decodeMessage(MessageInputStream in) throws IOException {
+        ServerKeepAlive message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static ServerKeepAlive[] decodeArray(MessageInputStream in, int length) throws IOException {
+        ServerKeepAlive[] array = new ServerKeepAlive[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
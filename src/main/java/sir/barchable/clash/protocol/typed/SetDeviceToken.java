@@ -0,0 +1,76 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class SetDeviceToken implements TypedMessage {
+    public static final int ID = 10113;
+
+    public byte[] token;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static SetDeviceToken decode(MessageInputStream in) throws IOException {
+        SetDeviceToken struct = new SetDeviceToken();
+        struct.token = in.readArray(new byte[in.readArrayLength(0)]);
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static SetDeviceToken decodeMessage(MessageInputStream in) throws IOException {
+        SetDeviceToken message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static SetDeviceToken[] decodeArray(MessageInputStream in, int length) throws IOException {
+        SetDeviceToken[] array = new SetDeviceToken[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeArrayLength(token == null ? 0 : token.length, 0, "BYTE");
+        if (token != null) {
+            out.write(token);
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
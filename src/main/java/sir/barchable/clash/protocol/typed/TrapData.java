@@ -0,0 +1,94 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class TrapData implements TypedMessage {
+    public static final int ID = 24326;
+
+    public int field1;
+
+    public String teslas;
+
+    public int field3;
+
+    public String traps;
+
+    public UnitComponent[] garrison;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static TrapData decode(MessageInputStream in) throws IOException {
+        TrapData struct = new TrapData();
+        struct.field1 = in.readInt();
+        struct.teslas = in.readString();
+        struct.field3 = in.readInt();
+        struct.traps = in.readString();
+        struct.garrison = UnitComponent.decodeArray(in, in.readArrayLength(0));
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static TrapData decodeMessage(MessageInputStream in) throws IOException {
+        TrapData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static TrapData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        TrapData[] array = new TrapData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(field1);
+        out.writeString(teslas);
+        out.writeInt(field3);
+        out.writeString(traps);
+        out.writeArrayLength(garrison == null ? 0 : garrison.length, 0, "UnitComponent");
+        if (garrison != null) {
+            for (UnitComponent element : garrison) {
+                (element != null ? element : new UnitComponent()).encode(out);
+            }
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Decodes messages into their generated classes.
+ * <p>
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class TypedMessages {
+    private TypedMessages() {
+    }
+
+    /**
+     * Decode a message, including any trailing bytes.
+     *
+     * @param id the message id
+     * @return the message, or null if there's no class for the id
+     */
+    public static TypedMessage decode(int id, MessageInputStream in) throws IOException {
+        switch (id) {
+            case Login.ID:
+                return Login.decodeMessage(in);
+            case KeepAlive.ID:
+                return KeepAlive.decodeMessage(in);
+            case SetDeviceToken.ID:
+                return SetDeviceToken.decodeMessage(in);
+            case AttackResult.ID:
+                return AttackResult.decodeMessage(in);
+            case EndClientTurn.ID:
+                return EndClientTurn.decodeMessage(in);
+            case AttackHome.ID:
+                return AttackHome.decodeMessage(in);
+            case VisitHome.ID:
+                return VisitHome.decodeMessage(in);
+            case ChatToAllianceStream.ID:
+                return ChatToAllianceStream.decodeMessage(in);
+            case Encryption.ID:
+                return Encryption.decodeMessage(in);
+            case LoginFailed.ID:
+                return LoginFailed.decodeMessage(in);
+            case LoginOk.ID:
+                return LoginOk.decodeMessage(in);
+            case ServerKeepAlive.ID:
+                return ServerKeepAlive.decodeMessage(in);
+            case OwnHomeData.ID:
+                return OwnHomeData.decodeMessage(in);
+            case EnemyHomeData.ID:
+                return EnemyHomeData.decodeMessage(in);
+            case VisitedHomeData.ID:
+                return VisitedHomeData.decodeMessage(in);
+            case HomeBattleReplayData.ID:
+                return HomeBattleReplayData.decodeMessage(in);
+            case AllianceStream.ID:
+                return AllianceStream.decodeMessage(in);
+            case AllianceStreamEntry.ID:
+                return AllianceStreamEntry.decodeMessage(in);
+            case AllianceData.ID:
+                return AllianceData.decodeMessage(in);
+            case TrapData.ID:
+                return TrapData.decodeMessage(in);
+            case WarLog.ID:
+                return WarLog.decodeMessage(in);
+            case GlobalChatLine.ID:
+                return GlobalChatLine.decodeMessage(in);
+            case WarHomeData.ID:
+                return WarHomeData.decodeMessage(in);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class UnitComponent {
+    public int typeId;
+
+    public int count;
+
+    public int level;
+
+    public static UnitComponent decode(MessageInputStream in) throws IOException {
+        UnitComponent struct = new UnitComponent();
+        struct.typeId = in.readInt();
+        struct.count = in.readInt();
+        struct.level = in.readInt();
+        return struct;
+    }
+
+    public static UnitComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        UnitComponent[] array = new UnitComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(typeId);
+        out.writeInt(count);
+        out.writeInt(level);
+    }
+}
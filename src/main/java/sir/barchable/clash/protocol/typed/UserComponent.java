@@ -0,0 +1,234 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class UserComponent {
+    public int field1;
+
+    public long userId;
+
+    public long homeId;
+
+    public ClanComponent clan;
+
+    public Long league;
+
+    public int leagueType;
+
+    public int castleLevel;
+
+    public int field8;
+
+    public int field9;
+
+    public int field10;
+
+    public int field11;
+
+    public int field12;
+
+    public int field13;
+
+    public int field14;
+
+    public int field15;
+
+    public int field16;
+
+    public int field17;
+
+    public int field18;
+
+    public int field19;
+
+    public int field20;
+
+    public int builders;
+
+    public String userName;
+
+    public String facebookId;
+
+    public int level;
+
+    public int points;
+
+    public int gemCount;
+
+    public int gemCount2;
+
+    public int field28;
+
+    public int field29;
+
+    public int trophyCount;
+
+    public int field31;
+
+    public int field32;
+
+    public int field33;
+
+    public int field34;
+
+    public byte field35;
+
+    public byte field36;
+
+    public int[] field37;
+
+    public byte field38;
+
+    public int field39;
+
+    public Long field40;
+
+    public byte field41;
+
+    public int field42;
+
+    public int field43;
+
+    public int field44;
+
+    public int field45;
+
+    public int field46;
+
+    public int field47;
+
+    public int field48;
+
+    public static UserComponent decode(MessageInputStream in) throws IOException {
+        UserComponent struct = new UserComponent();
+        struct.field1 = in.readInt();
+        struct.userId = in.readLong();
+        struct.homeId = in.readLong();
+        struct.clan = in.readBit() ? ClanComponent.decode(in) : null;
+        struct.league = in.readBit() ? in.readLong() : null;
+        struct.leagueType = in.readInt();
+        struct.castleLevel = in.readInt();
+        struct.field8 = in.readInt();
+        struct.field9 = in.readInt();
+        struct.field10 = in.readInt();
+        struct.field11 = in.readInt();
+        struct.field12 = in.readInt();
+        struct.field13 = in.readInt();
+        struct.field14 = in.readInt();
+        struct.field15 = in.readInt();
+        struct.field16 = in.readInt();
+        struct.field17 = in.readInt();
+        struct.field18 = in.readInt();
+        struct.field19 = in.readInt();
+        struct.field20 = in.readInt();
+        struct.builders = in.readInt();
+        struct.userName = in.readString();
+        struct.facebookId = in.readString();
+        struct.level = in.readInt();
+        struct.points = in.readInt();
+        struct.gemCount = in.readInt();
+        struct.gemCount2 = in.readInt();
+        struct.field28 = in.readInt();
+        struct.field29 = in.readInt();
+        struct.trophyCount = in.readInt();
+        struct.field31 = in.readInt();
+        struct.field32 = in.readInt();
+        struct.field33 = in.readInt();
+        struct.field34 = in.readInt();
+        struct.field35 = (byte) in.read();
+        struct.field36 = (byte) in.read();
+        struct.field37 = in.readBit() ? in.readArray(new int[in.readArrayLength(4)]) : null;
+        struct.field38 = (byte) in.read();
+        struct.field39 = in.readInt();
+        struct.field40 = in.readBit() ? in.readLong() : null;
+        struct.field41 = (byte) in.read();
+        struct.field42 = in.readInt();
+        struct.field43 = in.readInt();
+        struct.field44 = in.readInt();
+        struct.field45 = in.readInt();
+        struct.field46 = in.readInt();
+        struct.field47 = in.readInt();
+        struct.field48 = in.readInt();
+        return struct;
+    }
+
+    public static UserComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        UserComponent[] array = new UserComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(field1);
+        out.writeLong(userId);
+        out.writeLong(homeId);
+        out.writeBit(clan != null);
+        if (clan != null) {
+            clan.encode(out);
+        }
+        out.writeBit(league != null);
+        if (league != null) {
+            out.writeLong(league);
+        }
+        out.writeInt(leagueType);
+        out.writeInt(castleLevel);
+        out.writeInt(field8);
+        out.writeInt(field9);
+        out.writeInt(field10);
+        out.writeInt(field11);
+        out.writeInt(field12);
+        out.writeInt(field13);
+        out.writeInt(field14);
+        out.writeInt(field15);
+        out.writeInt(field16);
+        out.writeInt(field17);
+        out.writeInt(field18);
+        out.writeInt(field19);
+        out.writeInt(field20);
+        out.writeInt(builders);
+        out.writeString(userName);
+        out.writeString(facebookId);
+        out.writeInt(level);
+        out.writeInt(points);
+        out.writeInt(gemCount);
+        out.writeInt(gemCount2);
+        out.writeInt(field28);
+        out.writeInt(field29);
+        out.writeInt(trophyCount);
+        out.writeInt(field31);
+        out.writeInt(field32);
+        out.writeInt(field33);
+        out.writeInt(field34);
+        out.write(field35);
+        out.write(field36);
+        out.writeBit(field37 != null);
+        if (field37 != null) {
+            out.writeArrayLength(field37.length, 4, "INT");
+            for (int element : field37) {
+                out.writeInt(element);
+            }
+        }
+        out.write(field38);
+        out.writeInt(field39);
+        out.writeBit(field40 != null);
+        if (field40 != null) {
+            out.writeLong(field40);
+        }
+        out.write(field41);
+        out.writeInt(field42);
+        out.writeInt(field43);
+        out.writeInt(field44);
+        out.writeInt(field45);
+        out.writeInt(field46);
+        out.writeInt(field47);
+        out.writeInt(field48);
+    }
+}
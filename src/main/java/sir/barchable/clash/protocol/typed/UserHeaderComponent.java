@@ -0,0 +1,35 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class UserHeaderComponent {
+    public int field1;
+
+    public int field2;
+
+    public static UserHeaderComponent decode(MessageInputStream in) throws IOException {
+        UserHeaderComponent struct = new UserHeaderComponent();
+        struct.field1 = in.readInt();
+        struct.field2 = in.readInt();
+        return struct;
+    }
+
+    public static UserHeaderComponent[] decodeArray(MessageInputStream in, int length) throws IOException {
+        UserHeaderComponent[] array = new UserHeaderComponent[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(field1);
+        out.writeInt(field2);
+    }
+}
@@ -0,0 +1,73 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class VisitHome implements TypedMessage {
+    public static final int ID = 14113;
+
+    public long homeId;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static VisitHome decode(MessageInputStream in) throws IOException {
+        VisitHome struct = new VisitHome();
+        struct.homeId = in.readLong();
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static VisitHome decodeMessage(MessageInputStream in) throws IOException {
+        VisitHome message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static VisitHome[] decodeArray(MessageInputStream in, int length) throws IOException {
+        VisitHome[] array = new VisitHome[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(homeId);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
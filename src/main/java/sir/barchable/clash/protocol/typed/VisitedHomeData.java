@@ -0,0 +1,104 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class VisitedHomeData implements TypedMessage {
+    public static final int ID = 24113;
+
+    public int age;
+
+    public int field2 = -1;
+
+    public long homeId;
+
+    public int remainingShield;
+
+    public int field5 = 1200;
+
+    public int field6 = 60;
+
+    public String homeVillage;
+
+    public UserComponent user;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static VisitedHomeData decode(MessageInputStream in) throws IOException {
+        VisitedHomeData struct = new VisitedHomeData();
+        struct.age = in.readInt();
+        struct.field2 = in.readInt();
+        struct.homeId = in.readLong();
+        struct.remainingShield = in.readInt();
+        struct.field5 = in.readInt();
+        struct.field6 = in.readInt();
+        struct.homeVillage = in.readBit() ? in.readZipString() : null;
+        struct.user = UserComponent.decode(in);
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static VisitedHomeData decodeMessage(MessageInputStream in) throws IOException {
+        VisitedHomeData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static VisitedHomeData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        VisitedHomeData[] array = new VisitedHomeData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeInt(age);
+        out.writeInt(field2);
+        out.writeLong(homeId);
+        out.writeInt(remainingShield);
+        out.writeInt(field5);
+        out.writeInt(field6);
+        out.writeBit(homeVillage != null);
+        if (homeVillage != null) {
+            out.writeZipString(homeVillage);
+        }
+        (user != null ? user : new UserComponent()).encode(out);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
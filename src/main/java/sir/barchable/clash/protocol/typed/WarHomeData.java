@@ -0,0 +1,97 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class WarHomeData implements TypedMessage {
+    public static final int ID = 25000;
+
+    public long userId;
+
+    public long homeId;
+
+    public String homeVillage;
+
+    public int field4;
+
+    public boolean field5;
+
+    public UserComponent user;
+
+    public ResourceListComponent resources;
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static WarHomeData decode(MessageInputStream in) throws IOException {
+        WarHomeData struct = new WarHomeData();
+        struct.userId = in.readLong();
+        struct.homeId = in.readLong();
+        struct.homeVillage = in.readZipString();
+        struct.field4 = in.readInt();
+        struct.field5 = in.readBit();
+        struct.user = UserComponent.decode(in);
+        struct.resources = ResourceListComponent.decode(in);
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static WarHomeData decodeMessage(MessageInputStream in) throws IOException {
+        WarHomeData message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static WarHomeData[] decodeArray(MessageInputStream in, int length) throws IOException {
+        WarHomeData[] array = new WarHomeData[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(userId);
+        out.writeLong(homeId);
+        out.writeZipString(homeVillage == null ? "" : homeVillage);
+        out.writeInt(field4);
+        out.writeBit(field5);
+        (user != null ? user : new UserComponent()).encode(out);
+        (resources != null ? resources : new ResourceListComponent()).encode(out);
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+import sir.barchable.clash.protocol.ModelCache;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class WarLog implements TypedMessage {
+    public static final int ID = 24338;
+
+    public WarLogEntry[] entries = new WarLogEntry[1];
+
+    /**
+     * Bytes following the message that the definition doesn't account for.
+     */
+    public byte[] end;
+
+    private ModelCache models;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public ModelCache getModels() {
+        if (models == null) {
+            models = new ModelCache();
+        }
+        return models;
+    }
+
+    @Override
+    public void setModels(ModelCache models) {
+        this.models = models;
+    }
+
+    public static WarLog decode(MessageInputStream in) throws IOException {
+        WarLog struct = new WarLog();
+        struct.entries = WarLogEntry.decodeArray(in, in.readArrayLength(1));
+        return struct;
+    }
+
+    /**
+     * Decode a message, keeping any trailing bytes in {@link #end}.
+     */
+    public static WarLog decodeMessage(MessageInputStream in) throws IOException {
+        WarLog message = decode(in);
+        message.end = in.readRemaining();
+        return message;
+    }
+
+    public static WarLog[] decodeArray(MessageInputStream in, int length) throws IOException {
+        WarLog[] array = new WarLog[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    @Override
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeArrayLength(entries == null ? 0 : entries.length, 1, "WarLogEntry");
+        if (entries != null) {
+            for (WarLogEntry element : entries) {
+                (element != null ? element : new WarLogEntry()).encode(out);
+            }
+        }
+        if (end != null) {
+            out.write(end);
+        }
+    }
+}
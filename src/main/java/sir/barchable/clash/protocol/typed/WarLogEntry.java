@@ -0,0 +1,103 @@
+package sir.barchable.clash.protocol.typed;
+
+import sir.barchable.clash.protocol.MessageInputStream;
+import sir.barchable.clash.protocol.MessageOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Generated from the protocol definition by {@link sir.barchable.clash.protocol.MessageClassGenerator}. Don't edit.
+ */
+public class WarLogEntry {
+    public long clanId;
+
+    public String clanName;
+
+    public int field3;
+
+    public int clanLevel;
+
+    public long enemyClanId;
+
+    public String enemyClanName;
+
+    public int field7;
+
+    public int enemyClanLevel;
+
+    public int stars;
+
+    public int enemyStars;
+
+    public int attacksUsed;
+
+    public int xpEarned;
+
+    public int field13;
+
+    public int field14;
+
+    public int field15;
+
+    public byte field16;
+
+    public int field17;
+
+    public int field18;
+
+    public int field19;
+
+    public static WarLogEntry decode(MessageInputStream in) throws IOException {
+        WarLogEntry struct = new WarLogEntry();
+        struct.clanId = in.readLong();
+        struct.clanName = in.readString();
+        struct.field3 = in.readInt();
+        struct.clanLevel = in.readInt();
+        struct.enemyClanId = in.readLong();
+        struct.enemyClanName = in.readString();
+        struct.field7 = in.readInt();
+        struct.enemyClanLevel = in.readInt();
+        struct.stars = in.readInt();
+        struct.enemyStars = in.readInt();
+        struct.attacksUsed = in.readInt();
+        struct.xpEarned = in.readInt();
+        struct.field13 = in.readInt();
+        struct.field14 = in.readInt();
+        struct.field15 = in.readInt();
+        struct.field16 = (byte) in.read();
+        struct.field17 = in.readInt();
+        struct.field18 = in.readInt();
+        struct.field19 = in.readInt();
+        return struct;
+    }
+
+    public static WarLogEntry[] decodeArray(MessageInputStream in, int length) throws IOException {
+        WarLogEntry[] array = new WarLogEntry[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = decode(in);
+        }
+        return array;
+    }
+
+    public void encode(MessageOutputStream out) throws IOException {
+        out.writeLong(clanId);
+        out.writeString(clanName);
+        out.writeInt(field3);
+        out.writeInt(clanLevel);
+        out.writeLong(enemyClanId);
+        out.writeString(enemyClanName);
+        out.writeInt(field7);
+        out.writeInt(enemyClanLevel);
+        out.writeInt(stars);
+        out.writeInt(enemyStars);
+        out.writeInt(attacksUsed);
+        out.writeInt(xpEarned);
+        out.writeInt(field13);
+        out.writeInt(field14);
+        out.writeInt(field15);
+        out.write(field16);
+        out.writeInt(field17);
+        out.writeInt(field18);
+        out.writeInt(field19);
+    }
+}
@@ -0,0 +1,139 @@
+package sir.barchable.clash.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread. All I/O for the channels registered with a loop happens on that loop's thread, so the
+ * handlers attached to its keys don't need to synchronize with each other.
+ *
+ * @author Sir Barchable
+ */
+class EventLoop implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(EventLoop.class);
+
+    /**
+     * Attached to each {@link SelectionKey} registered with the loop.
+     */
+    interface Handler {
+        /**
+         * Called on the loop thread when the key is ready.
+         */
+        void onReady(SelectionKey key) throws IOException;
+
+        /**
+         * Called on the loop thread if {@link #onReady} throws.
+         */
+        void onError(Exception e);
+
+        /**
+         * Called on the loop thread when the loop shuts down. Release the key's resources and close its channel.
+         */
+        void onShutdown();
+    }
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private Thread thread;
+
+    EventLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+    }
+
+    void start() {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Run a task on the loop thread. Channels must be registered with the loop's selector from a task.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        if (key.isValid()) {
+                            handler.onReady(key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        handler.onError(e);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.debug("{} terminated: {}", name, e.toString());
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("Unexpected exception from task on {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * Stop the loop, shutting down the handler attached to each registered key. Any channel its handler leaves open
+     * is closed.
+     */
+    void shutdown() {
+        execute(() -> {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    ((Handler) key.attachment()).onShutdown();
+                } catch (RuntimeException e) {
+                    log.warn("Unexpected exception shutting down {}", name, e);
+                }
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        });
+    }
+}
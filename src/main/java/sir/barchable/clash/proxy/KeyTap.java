@@ -6,6 +6,11 @@ import sir.barchable.clash.protocol.Clash7Random;
 import sir.barchable.clash.protocol.Message;
 import sir.barchable.clash.protocol.MessageFactory;
 import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.Projection;
+
+import static sir.barchable.clash.protocol.Pdu.Type.Encryption;
+import static sir.barchable.clash.protocol.Pdu.Type.Login;
+import static sir.barchable.clash.protocol.Pdu.Type.LoginFailed;
 
 /**
  * Manage key exchange.
@@ -13,6 +18,16 @@ import sir.barchable.clash.protocol.Pdu;
 class KeyTap implements MessageTap {
     private static final Logger log = LoggerFactory.getLogger(KeyTap.class);
 
+    /**
+     * The key exchange fields, and every other type without its fields, so that PDUs arriving before key exchange are
+     * noticed.
+     */
+    private static final Projection PROJECTION = Projection
+        .of(Login, "clientSeed")
+        .and(Encryption, "serverRandom")
+        .and(LoginFailed, "failureReason")
+        .andOtherTypes();
+
     private Clash7Random prng;
 
     private byte[] key;
@@ -21,6 +36,11 @@ class KeyTap implements MessageTap {
         return key;
     }
 
+    @Override
+    public Projection getProjection() {
+        return PROJECTION;
+    }
+
     @Override
     public void onMessage(Message message) {
         switch (message.getType()) {
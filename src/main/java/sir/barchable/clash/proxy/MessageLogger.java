@@ -1,7 +1,9 @@
 package sir.barchable.clash.proxy;
 
+import sir.barchable.clash.protocol.Message;
 import sir.barchable.clash.protocol.PduException;
 import sir.barchable.clash.protocol.Pdu.Type;
+import sir.barchable.clash.protocol.Projection;
 import sir.barchable.util.Json;
 
 import java.io.IOException;
@@ -30,7 +32,33 @@ public class MessageLogger {
     }
 
     public MessageTap tapFor(Type messageType, String field) {
-        return (message) -> {
+        Projection projection = Projection.of(messageType);
+        if (field != null) {
+            projection = messageType == EndClientTurn
+                ? Projection.of(messageType, field, "commands")
+                : Projection.of(messageType, field);
+        }
+        return new LoggingTap(messageType, field, projection);
+    }
+
+    private class LoggingTap implements MessageTap {
+        private final Type messageType;
+        private final String field;
+        private final Projection projection;
+
+        LoggingTap(Type messageType, String field, Projection projection) {
+            this.messageType = messageType;
+            this.field = field;
+            this.projection = projection;
+        }
+
+        @Override
+        public Projection getProjection() {
+            return projection;
+        }
+
+        @Override
+        public void onMessage(Message message) {
             if (message.getType() == messageType) {
 
                 // Hack to ignore empty EndClientTurns...
@@ -61,6 +89,6 @@ public class MessageLogger {
                     }
                 }
             }
-        };
+        }
     }
 }
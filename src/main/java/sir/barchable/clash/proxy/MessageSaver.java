@@ -6,7 +6,6 @@ import sir.barchable.clash.model.json.Replay;
 import sir.barchable.clash.model.json.WarVillage;
 import sir.barchable.clash.protocol.*;
 import sir.barchable.clash.protocol.Pdu.Type;
-import sir.barchable.util.Json;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -72,7 +71,7 @@ public class MessageSaver implements PduFilter {
 
     @Override
     public Pdu filter(Pdu pdu) throws IOException {
-        Type type = Type.valueOf(pdu.getId());
+        Type type = pdu.getType();
         try {
 
             if ( types.size()==0 ||  types.contains(type)) {
@@ -101,6 +100,14 @@ public class MessageSaver implements PduFilter {
         return pdu;
     }
 
+    /**
+     * Saving doesn't modify the PDU.
+     */
+    @Override
+    public boolean needsWholePdu(Type type) {
+        return false;
+    }
+
     /**
      * Try to extract the village name from a PDU.
      *
@@ -119,12 +126,12 @@ public class MessageSaver implements PduFilter {
                     break;
 
                 case WarHomeData:
-                    WarVillage warVillage = Json.valueOf(message.getString("homeVillage"), WarVillage.class);
+                    WarVillage warVillage = message.getModel("homeVillage", WarVillage.class);
                     villageName = warVillage.name;
                     break;
 
                 case HomeBattleReplayData:
-                    Replay replay = Json.valueOf(message.getString("replay"), Replay.class);
+                    Replay replay = message.getModel("replay", Replay.class);
                     villageName = replay.defender.name;
                     break;
             }
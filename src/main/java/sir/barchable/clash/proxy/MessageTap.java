@@ -1,6 +1,7 @@
 package sir.barchable.clash.proxy;
 
 import sir.barchable.clash.protocol.Message;
+import sir.barchable.clash.protocol.Projection;
 
 /**
  * @author Sir Barchable
@@ -8,4 +9,12 @@ import sir.barchable.clash.protocol.Message;
  */
 public interface MessageTap {
     void onMessage(Message message);
+
+    /**
+     * The message types and fields this tap reads. Other types aren't passed to the tap, and other fields may be
+     * missing from the messages that are. Defaults to everything.
+     */
+    default Projection getProjection() {
+        return Projection.ALL;
+    }
 }
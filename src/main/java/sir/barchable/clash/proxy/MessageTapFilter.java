@@ -10,7 +10,8 @@ import java.util.Map;
 import static sir.barchable.clash.protocol.Pdu.Type.Unknown;
 
 /**
- * A filter that deserializes Pdus and hands them off to a {@link MessageTap} for analysis.
+ * A filter that deserializes Pdus and hands them off to a {@link MessageTap} for analysis. Only the fields in the
+ * taps' {@link MessageTap#getProjection() projections} are read, and PDUs that no tap wants aren't read at all.
  *
  * @author Sir Barchable
  *         Date: 18/04/15
@@ -20,10 +21,14 @@ public class MessageTapFilter implements PduFilter {
 
     private MessageFactory messageFactory;
     private MessageTap[] taps;
+    private Projection projection = Projection.NONE;
 
     public MessageTapFilter(MessageFactory messageFactory, MessageTap... taps) {
         this.messageFactory = messageFactory;
         this.taps = taps;
+        for (MessageTap tap : taps) {
+            projection = projection.union(tap.getProjection());
+        }
     }
 
     @Override
@@ -31,10 +36,12 @@ public class MessageTapFilter implements PduFilter {
         try {
             if (pdu.getType() == Unknown) {
                 log.warn("Unknown PDU type {}", pdu.getId());
-            } else {
-                Message message = messageFactory.fromPdu(pdu);
+            } else if (projection.includes(pdu.getType())) {
+                Message message = messageFactory.fromPdu(pdu, projection.fields(pdu.getType()));
                 for (MessageTap tap : taps) {
-                    tap.onMessage(message);
+                    if (tap.getProjection().includes(pdu.getType())) {
+                        tap.onMessage(message);
+                    }
                 }
             }
         } catch (PduException e) {
@@ -46,4 +53,12 @@ public class MessageTapFilter implements PduFilter {
         }
         return pdu;
     }
+
+    /**
+     * Taps only observe.
+     */
+    @Override
+    public boolean needsWholePdu(Pdu.Type type) {
+        return false;
+    }
 }
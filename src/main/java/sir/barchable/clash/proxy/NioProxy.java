@@ -0,0 +1,93 @@
+package sir.barchable.clash.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.MessageFactory;
+import sir.barchable.util.KeystreamBuffer;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Selector based proxy engine. Multiplexes client sessions over a small fixed set of {@link EventLoop event loops}
+ * instead of running two blocked pipe threads per connection as {@link ProxySession} does.
+ * <p>
+ * Filters are called on the event loop threads, so a slow filter will stall every session on its loop.
+ *
+ * @author Sir Barchable
+ */
+public class NioProxy {
+    private static final Logger log = LoggerFactory.getLogger(NioProxy.class);
+
+    private final MessageFactory messageFactory;
+    private final SocketAddress serverAddress;
+    private final PduFilterChain filterChain;
+    private final Consumer<ProxySession> onClose;
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean transparent;
+    private volatile KeystreamBuffer.Mode prefetch;
+
+    /**
+     * @param messageFactory for the key exchange
+     * @param serverAddress where to connect to the real server
+     * @param filterChain filters to run the PDUs through
+     * @param threads the number of event loops to run
+     * @param onClose called on the event loop when a session ends, or null
+     */
+    public NioProxy(MessageFactory messageFactory, SocketAddress serverAddress, PduFilterChain filterChain, int threads, Consumer<ProxySession> onClose) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one event loop");
+        }
+        this.messageFactory = messageFactory;
+        this.serverAddress = serverAddress;
+        this.filterChain = filterChain;
+        this.onClose = onClose;
+        this.loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop("Event loop " + (i + 1));
+            loops[i].start();
+        }
+    }
+
+    /**
+     * Proxy a connection from a client to the server. Returns immediately; the session is run on one of the event
+     * loops and the channel will be closed when it completes.
+     */
+    public void accept(SocketChannel clientChannel) throws IOException {
+        log.info("Client connected from {}", clientChannel.socket().getInetAddress());
+        EventLoop loop = loops[Math.abs(next.getAndIncrement() % loops.length)];
+        NioSession session = new NioSession(loop, messageFactory, clientChannel, serverAddress, filterChain, prefetch, onClose);
+        session.setTransparent(transparent);
+        loop.execute(session::start);
+    }
+
+    /**
+     * Forward unmodified PDUs as the original ciphertext rather than re-encrypting them. Applies to sessions accepted
+     * after the call.
+     */
+    public void setTransparent(boolean transparent) {
+        this.transparent = transparent;
+    }
+
+    /**
+     * Generate each session's keystream ahead of use. Applies to sessions accepted after the call.
+     *
+     * @param prefetch how to generate keystream ahead of use, or null to generate it as it's used
+     */
+    public void setPrefetch(KeystreamBuffer.Mode prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Stop the event loops, closing all sessions.
+     */
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
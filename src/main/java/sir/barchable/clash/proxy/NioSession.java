@@ -0,0 +1,367 @@
+package sir.barchable.clash.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.Clash7Crypt;
+import sir.barchable.clash.protocol.MessageFactory;
+import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.PduDecoder;
+import sir.barchable.util.BufferPool;
+import sir.barchable.util.KeystreamBuffer;
+import sir.barchable.util.TrackedCipher;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * One proxied client connection in the {@link NioProxy}. Frames PDUs from each side, runs them through the filter
+ * chain and queues them for the other side. Everything here runs on the session's {@link EventLoop}.
+ * <p>
+ * Key exchange is handled the same way as in {@link ProxySession}: PDUs pass through a {@link KeyTap} until the key
+ * is known, then both connections are re-keyed.
+ *
+ * @author Sir Barchable
+ */
+class NioSession {
+    private static final Logger log = LoggerFactory.getLogger(NioSession.class);
+
+    private static final int HEADER_LENGTH = PduDecoder.HEADER_LENGTH;
+
+    /**
+     * Stop reading from a source when this much data is waiting to be written to its sink.
+     */
+    private static final int HIGH_WATER = 1024 * 1024;
+
+    /**
+     * Initial size of the read buffers. They grow to fit the largest PDU seen.
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final EventLoop loop;
+    private final SocketAddress serverAddress;
+    private final PduFilter filterChain;
+    private final PduFilter loginFilter;
+    private final KeyTap keyTap = new KeyTap();
+    private final BufferPool bufferPool = BufferPool.getDefault();
+    private final ProxySession session = ProxySession.newDetachedSession();
+    private final Consumer<ProxySession> onClose;
+
+    private final Endpoint client;
+    private final Endpoint server;
+
+    private boolean keyed;
+    private boolean closed;
+
+    /**
+     * Retain ciphertext so that unmodified PDUs can be forwarded without re-encryption.
+     */
+    private boolean transparent;
+
+    /**
+     * @param prefetch how to generate keystream ahead of use, or null to generate it as it's used
+     */
+    NioSession(EventLoop loop, MessageFactory messageFactory, SocketChannel clientChannel, SocketAddress serverAddress, PduFilterChain filterChain, KeystreamBuffer.Mode prefetch, Consumer<ProxySession> onClose) throws IOException {
+        this.loop = loop;
+        this.serverAddress = serverAddress;
+        this.filterChain = filterChain;
+        this.loginFilter = filterChain.addAfter(new MessageTapFilter(messageFactory, keyTap));
+        this.onClose = onClose;
+        this.client = new Endpoint("Request", clientChannel, prefetch);
+        this.server = new Endpoint("Response", SocketChannel.open(), prefetch);
+        client.peer = server;
+        server.peer = client;
+    }
+
+    void setTransparent(boolean transparent) {
+        this.transparent = transparent;
+    }
+
+    /**
+     * Register with the loop and start connecting to the server. Call on the loop thread.
+     */
+    void start() {
+        try {
+            client.channel.configureBlocking(false);
+            client.key = client.channel.register(loop.getSelector(), 0, client);
+            server.channel.configureBlocking(false);
+            server.key = server.channel.register(loop.getSelector(), 0, server);
+            if (server.channel.connect(serverAddress)) {
+                connected();
+            } else {
+                server.key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException e) {
+            log.info("Could not proxy connection from {}: {}", client.channel.socket().getInetAddress(), e.toString());
+            close();
+        }
+    }
+
+    private void connected() {
+        client.key.interestOps(client.eof ? 0 : SelectionKey.OP_READ);
+        server.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Process the PDUs framed in a read. Runs the filters with the session bound to the loop thread so that taps can
+     * find their {@link ProxySession#getSession() session}.
+     */
+    private void forward(Endpoint source, Pdu pdu) throws IOException {
+        Pdu filteredPdu;
+        ProxySession.setSession(session);
+        try {
+            filteredPdu = keyed ? filterChain.filter(pdu) : loginFilter.filter(pdu);
+        } finally {
+            ProxySession.setSession(null);
+        }
+
+        if (filteredPdu != null) {
+            try {
+                source.peer.write(filteredPdu);
+            } finally {
+                filteredPdu.release();
+            }
+        }
+
+        if (!keyed && keyTap.getKey() != null) {
+            // Re-key the streams
+            byte[] key = keyTap.getKey();
+            client.setKey(key);
+            server.setKey(key);
+            keyed = true;
+        }
+    }
+
+    /**
+     * Close the session once both sides have sent EOF and everything they sent has been delivered.
+     */
+    private void closeIfDrained() {
+        if (client.eof && server.eof && client.pendingBytes == 0 && server.pendingBytes == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Close both connections. Safe to call more than once.
+     */
+    void close() {
+        if (!closed) {
+            closed = true;
+            client.close();
+            server.close();
+            log.info("Client {} disconnected", client.channel.socket());
+            if (onClose != null) {
+                onClose.accept(session);
+            }
+        }
+    }
+
+    /**
+     * One side of the session.
+     */
+    private class Endpoint implements EventLoop.Handler {
+        private final String name;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private Endpoint peer;
+
+        /**
+         * Decrypts PDUs read from this endpoint.
+         */
+        private final TrackedCipher inCipher;
+
+        /**
+         * Encrypts PDUs written to this endpoint.
+         */
+        private final TrackedCipher outCipher;
+
+        private final PduDecoder decoder = new PduDecoder(READ_BUFFER_SIZE);
+        private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private int pendingBytes;
+
+        /**
+         * Set on EOF; the peer's output is shut down once its write queue drains.
+         */
+        private boolean eof;
+
+        /**
+         * Set once we've passed on our peer's EOF.
+         */
+        private boolean outputShutdown;
+
+        Endpoint(String name, SocketChannel channel, KeystreamBuffer.Mode prefetch) {
+            this.name = name;
+            this.channel = channel;
+            this.inCipher = new TrackedCipher(new Clash7Crypt(prefetch));
+            this.outCipher = new TrackedCipher(new Clash7Crypt(prefetch));
+        }
+
+        @Override
+        public void onReady(SelectionKey key) throws IOException {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                connected();
+                return;
+            }
+            if (key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            if (e instanceof EOFException) {
+                log.debug("{} at EOF", name);
+            } else if (e instanceof IOException) {
+                log.debug("{} IOException: {}", name, e.toString());
+            } else {
+                log.debug("{} closed with exception", name, e);
+            }
+            NioSession.this.close();
+        }
+
+        @Override
+        public void onShutdown() {
+            NioSession.this.close();
+        }
+
+        private void read() throws IOException {
+            if (decoder.fill(channel) < 0) {
+                eof = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (peer.pendingBytes == 0) {
+                    peer.shutdownOutput();
+                }
+                closeIfDrained();
+                return;
+            }
+
+            PduDecoder.Frame frame;
+            while (!closed && (frame = decoder.next()) != null) {
+                int length = frame.getLength();
+                Pdu pdu = Pdu.allocate(bufferPool, frame.getId(), length);
+                pdu.setVersion(frame.getVersion());
+                frame.getPayload().get(pdu.getPayloadBuffer(), 0, length);
+                if (transparent) {
+                    byte[] ciphertext = bufferPool.acquire(length);
+                    System.arraycopy(pdu.getPayloadBuffer(), 0, ciphertext, 0, length);
+                    pdu.setCiphertext(ciphertext, inCipher.getKeystream(), inCipher.getOffset());
+                }
+                inCipher.encrypt(pdu.getPayloadBuffer(), 0, length);
+
+                forward(this, pdu);
+            }
+        }
+
+        /**
+         * Encrypt and queue a PDU, writing as much as the socket will take now. The queued frame is assembled in a
+         * pooled buffer that is released once it has been written.
+         */
+        void write(Pdu pdu) throws IOException {
+            int length = pdu.getPayloadLength();
+            ByteBuffer buffer = ByteBuffer.wrap(bufferPool.acquire(HEADER_LENGTH + length), 0, HEADER_LENGTH + length);
+            putUInt2(buffer, pdu.getId());
+            putUInt3(buffer, length);
+            putUInt2(buffer, pdu.getVersion());
+            if (pdu.isCiphertextFor(outCipher)) {
+                buffer.put(pdu.getCiphertextBuffer(), 0, length);
+                outCipher.skip(length);
+            } else {
+                buffer.put(pdu.getPayloadBuffer(), 0, length);
+                buffer.position(HEADER_LENGTH);
+                outCipher.encrypt(buffer);
+            }
+            buffer.flip();
+
+            writeQueue.add(buffer);
+            pendingBytes += buffer.remaining();
+            flush();
+        }
+
+        private void flush() throws IOException {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer buffer = writeQueue.peek();
+                pendingBytes -= channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                writeQueue.poll();
+                bufferPool.release(buffer.array());
+            }
+
+            if (closed) {
+                return;
+            }
+
+            if (pendingBytes == 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (peer.eof) {
+                    // Everything the peer sent before closing has been delivered
+                    shutdownOutput();
+                    closeIfDrained();
+                    if (closed) {
+                        return;
+                    }
+                }
+            } else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+
+            // Back pressure on the peer
+            if (!peer.eof && peer.key.isValid()) {
+                if (pendingBytes > HIGH_WATER) {
+                    peer.key.interestOps(peer.key.interestOps() & ~SelectionKey.OP_READ);
+                } else {
+                    peer.key.interestOps(peer.key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        /**
+         * Pass the peer's EOF on to this side, leaving the other direction open.
+         */
+        private void shutdownOutput() throws IOException {
+            if (!outputShutdown) {
+                outputShutdown = true;
+                channel.shutdownOutput();
+            }
+        }
+
+        void setKey(byte[] nonce) {
+            inCipher.setKey(nonce);
+            outCipher.setKey(nonce);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.poll()) != null) {
+                bufferPool.release(buffer.array());
+            }
+        }
+    }
+
+    private static void putUInt2(ByteBuffer buffer, int v) {
+        buffer.put((byte) (v >>> 8));
+        buffer.put((byte) v);
+    }
+
+    private static void putUInt3(ByteBuffer buffer, int v) {
+        buffer.put((byte) (v >>> 16));
+        buffer.put((byte) (v >>> 8));
+        buffer.put((byte) v);
+    }
+}
@@ -10,4 +10,13 @@ import java.io.IOException;
  */
 public interface PduFilter {
     Pdu filter(Pdu pdu) throws IOException;
+
+    /**
+     * Does this filter need to see PDUs of a type before they are forwarded? Filters that might modify or drop a PDU
+     * must answer true. Filters that only observe can answer false, allowing PDUs to be forwarded, and large ones
+     * streamed through the proxy as they arrive, with the filter called once the whole PDU has been forwarded.
+     */
+    default boolean needsWholePdu(Pdu.Type type) {
+        return true;
+    }
 }
@@ -5,8 +5,17 @@ import org.slf4j.LoggerFactory;
 import sir.barchable.clash.protocol.Pdu;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
+ * Runs a PDU through a sequence of filters.
+ * <p>
+ * The chain owns a reference to the PDU it is given. When a filter replaces the PDU, or drops it by returning null,
+ * the chain {@link Pdu#release() releases} the PDU it replaced. The caller is responsible for releasing the PDU the
+ * chain returns. Filters that hold on to a PDU after returning should {@link Pdu#retain() retain} it.
+ *
  * @author Sir Barchable
  *         Date: 15/04/15
  */
@@ -20,14 +29,18 @@ public class PduFilterChain implements PduFilter {
     }
 
     public PduFilterChain(PduFilter... chain) {
-        this.chain = chain;
+        this.chain = flatten(chain);
     }
 
     @Override
     public Pdu filter(Pdu pdu) throws IOException {
         for (PduFilter filter : chain) {
             try {
-                pdu = filter.filter(pdu);
+                Pdu filteredPdu = filter.filter(pdu);
+                if (filteredPdu != pdu) {
+                    pdu.release();
+                }
+                pdu = filteredPdu;
                 if (pdu == null) {
                     break;
                 }
@@ -39,6 +52,16 @@ public class PduFilterChain implements PduFilter {
         return pdu;
     }
 
+    @Override
+    public boolean needsWholePdu(Pdu.Type type) {
+        for (PduFilter filter : chain) {
+            if (filter.needsWholePdu(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public PduFilterChain addBefore(PduFilter... filters) {
         return new PduFilterChain(concat(filters, chain));
     }
@@ -47,6 +70,21 @@ public class PduFilterChain implements PduFilter {
         return new PduFilterChain(concat(chain, filters));
     }
 
+    /**
+     * Inline nested chains so that each PDU is passed through a single loop.
+     */
+    private static PduFilter[] flatten(PduFilter[] filters) {
+        List<PduFilter> flattened = new ArrayList<>(filters.length);
+        for (PduFilter filter : filters) {
+            if (filter instanceof PduFilterChain) {
+                Collections.addAll(flattened, ((PduFilterChain) filter).chain);
+            } else {
+                flattened.add(filter);
+            }
+        }
+        return flattened.toArray(new PduFilter[flattened.size()]);
+    }
+
     private PduFilter[] concat(PduFilter[] a, PduFilter[] b) {
         PduFilter[] c = new PduFilter[a.length + b.length];
         System.arraycopy(a, 0, c, 0, a.length);
@@ -5,9 +5,6 @@ import org.slf4j.LoggerFactory;
 import sir.barchable.clash.protocol.Pdu;
 import sir.barchable.clash.protocol.PduInputStream;
 import sir.barchable.clash.protocol.PduOutputStream;
-import sir.barchable.clash.ClashServices;
-import sir.barchable.clash.protocol.Message;
-import sir.barchable.clash.protocol.MessageFactory;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -21,6 +18,12 @@ import java.io.IOException;
 class Pipe {
 
     private static final Logger log = LoggerFactory.getLogger(Pipe.class);
+
+    /**
+     * PDUs with payloads at least this long are candidates for cut-through.
+     */
+    private static final int CUT_THROUGH_LENGTH = 16 * 1024;
+
     /**
      * Name for debugging
      */
@@ -34,10 +37,6 @@ class Pipe {
     private PduInputStream source;
     private PduOutputStream sink;
 
-    private ClashServices services = ClashServices.getInstance();
-    private MessageFactory messageFactory = services.getMessageFactory();
-
-
     public Pipe(String name, PduInputStream source, PduOutputStream sink) {
         this.name = name;
         this.source = source;
@@ -46,50 +45,104 @@ class Pipe {
 
     /**
      * Pipe one PDU through the supplied filter.
+     * <p>
+     * PDUs of a type that the filter doesn't {@link PduFilter#needsWholePdu need to see first} are forwarded before
+     * the filter is called with them, as their original ciphertext where the sink is at the same point in the same
+     * keystream. Large ones are cut through: the header and each part of the payload are forwarded as they arrive.
      */
     public void filterThrough(PduFilter filter) throws IOException {
         // Read
         Pdu pdu;
 
         try {
-            pdu = source.read();
+            pdu = source.readHeader();
         } catch (EOFException eof) {
-            if (propagateEof) {
-                try {
-                    sink.close();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
+            propagateEof();
             throw eof;
         }
-        
-        // switch (pdu.getType()) {
-        //     case Encryption:
-        //     case LoginOk:
-        //     case UnknownInfoResponse:
-        //     case GlobalChatLine:
-        //     case EndClientTurn:
-                
-        //         Message m = messageFactory.fromPdu(pdu);
-        //         if( m!=null ) {
-        //             log.debug("Transformed {} - {}", this.name, pdu.getType());
-        //             pdu = messageFactory.toPdu(m);
-        //         }
 
-        //         break;
-        // }
+        try {
+            if (filter.needsWholePdu(pdu.getType())) {
+                readPayload(pdu);
+
+                // Transform. The filter takes over our reference.
+                Pdu unfilteredPdu = pdu;
+                pdu = null;
+                Pdu filteredPdu = filter.filter(unfilteredPdu);
+                if (filteredPdu != null) {
+                    // Write
+                    try {
+                        sink.write(filteredPdu);
+                    } finally {
+                        filteredPdu.release();
+                    }
+                }
+            } else {
+                if (pdu.getPayloadLength() >= CUT_THROUGH_LENGTH) {
+                    cutThrough(pdu);
+                } else {
+                    readPayload(pdu);
+                    sink.write(pdu);
+                }
 
-        // Transform
-        Pdu filteredPdu = filter.filter(pdu);
+                // Already forwarded
+                pdu.clearCiphertext();
 
+                // Tee to the filter
+                Pdu filteredPdu = filter.filter(pdu.retain());
+                if (filteredPdu != null) {
+                    if (filteredPdu != pdu) {
+                        log.warn("{} filter replaced {} after it was forwarded", name, pdu.getType());
+                    }
+                    filteredPdu.release();
+                }
+            }
+        } finally {
+            if (pdu != null) {
+                pdu.release();
+            }
+        }
+    }
 
+    private void readPayload(Pdu pdu) throws IOException {
+        int length = pdu.getPayloadLength();
+        try {
+            for (int offset = 0; offset < length; ) {
+                offset += source.readPayload(pdu, offset);
+            }
+        } catch (EOFException eof) {
+            propagateEof();
+            throw eof;
+        }
+    }
 
+    /**
+     * Stream a PDU to the sink as it arrives.
+     */
+    private void cutThrough(Pdu pdu) throws IOException {
+        log.debug("{} cutting through {} ({} bytes)", name, pdu.getType(), pdu.getPayloadLength());
+        sink.writeHeader(pdu);
+        int length = pdu.getPayloadLength();
+        try {
+            for (int offset = 0; offset < length; ) {
+                int n = source.readPayload(pdu, offset);
+                sink.writePayload(pdu, offset, n);
+                offset += n;
+            }
+        } catch (EOFException eof) {
+            propagateEof();
+            throw eof;
+        }
+    }
 
-        if (filteredPdu != null) {
-            // Write
-            sink.write(filteredPdu);
-        };
+    private void propagateEof() {
+        if (propagateEof) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
     }
 
     public String getName() {
@@ -60,6 +60,24 @@ public class ProxySession {
      */
     private static final InheritableThreadLocal<ProxySession> localSession = new InheritableThreadLocal<>();
 
+    /**
+     * Bind a session to the calling thread. Used by engines that multiplex sessions over shared threads, like the
+     * {@link NioProxy}.
+     *
+     * @param session the session, or null to unbind
+     */
+    static void setSession(ProxySession session) {
+        localSession.set(session);
+    }
+
+    /**
+     * A session that holds state but doesn't own any connections or threads. The caller does the I/O and must
+     * {@link #setSession(ProxySession) bind} the session while its PDUs are being filtered.
+     */
+    static ProxySession newDetachedSession() {
+        return new ProxySession(null, null, null);
+    }
+
     /**
      * Proxy a connection from a client to a clash server. This will block until processing completes, or until the
      * calling thread is interrupted.
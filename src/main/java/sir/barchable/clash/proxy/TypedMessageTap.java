@@ -0,0 +1,21 @@
+package sir.barchable.clash.proxy;
+
+import sir.barchable.clash.protocol.Projection;
+import sir.barchable.clash.protocol.TypedMessage;
+
+/**
+ * A {@link MessageTap} for messages decoded into their generated classes.
+ *
+ * @author Sir Barchable
+ */
+public interface TypedMessageTap {
+    void onMessage(TypedMessage message);
+
+    /**
+     * The message types this tap reads. Other types aren't passed to the tap. Generated classes are always decoded
+     * whole, so only the types of the projection matter. Defaults to everything.
+     */
+    default Projection getProjection() {
+        return Projection.ALL;
+    }
+}
@@ -0,0 +1,66 @@
+package sir.barchable.clash.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sir.barchable.clash.protocol.MessageFactory;
+import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.PduException;
+import sir.barchable.clash.protocol.Projection;
+import sir.barchable.clash.protocol.TypedMessage;
+
+import java.io.IOException;
+
+/**
+ * A filter that decodes Pdus into their generated message classes and hands them off to a {@link TypedMessageTap}
+ * for analysis. PDUs without a generated class, or that no tap {@link TypedMessageTap#getProjection() wants}, aren't
+ * decoded.
+ *
+ * @author Sir Barchable
+ */
+public class TypedMessageTapFilter implements PduFilter {
+    private static final Logger log = LoggerFactory.getLogger(TypedMessageTapFilter.class);
+
+    private MessageFactory messageFactory;
+    private TypedMessageTap[] taps;
+    private Projection projection = Projection.NONE;
+
+    public TypedMessageTapFilter(MessageFactory messageFactory, TypedMessageTap... taps) {
+        this.messageFactory = messageFactory;
+        this.taps = taps;
+        for (TypedMessageTap tap : taps) {
+            projection = projection.union(tap.getProjection());
+        }
+    }
+
+    @Override
+    public Pdu filter(Pdu pdu) throws IOException {
+        try {
+            if (!projection.includes(pdu.getType())) {
+                return pdu;
+            }
+            TypedMessage message = messageFactory.decode(pdu);
+            if (message != null) {
+                for (TypedMessageTap tap : taps) {
+                    if (tap.getProjection().includes(pdu.getType())) {
+                        tap.onMessage(message);
+                    }
+                }
+            }
+        } catch (PduException e) {
+            log.warn(
+                "Unable to decode message of type {}: {}",
+                pdu.getId(),
+                e.getMessage() == null ? e.toString() : e.getMessage()
+            );
+        }
+        return pdu;
+    }
+
+    /**
+     * Taps only observe.
+     */
+    @Override
+    public boolean needsWholePdu(Pdu.Type type) {
+        return false;
+    }
+}
@@ -9,6 +9,11 @@ import sir.barchable.clash.model.SessionState;
 import sir.barchable.clash.model.json.Village;
 import sir.barchable.clash.model.json.Village.Building;
 import sir.barchable.clash.protocol.*;
+import sir.barchable.clash.protocol.typed.CommandComponent;
+import sir.barchable.clash.protocol.typed.EndClientTurn;
+import sir.barchable.clash.protocol.typed.Encryption;
+import sir.barchable.clash.protocol.typed.Login;
+import sir.barchable.clash.protocol.typed.LoginOk;
 
 import java.io.File;
 import java.io.IOException;
@@ -150,14 +155,25 @@ public class ServerSession {
 
                     log.debug("Incoming Pdu id:{} type:{}", pdu.getId(), pdu.getType());
 
-                    Message request;
+                    TypedMessage request;
                     try {
-                        request = messageFactory.fromPdu(pdu);
+                        request = messageFactory.decode(pdu);
                     } catch (RuntimeException e) {
+                        if (pdu.getType() == Pdu.Type.Login) {
+                            // Too short for the user id and client seed, and the session can't go on without them
+                            throw new PduException("Expected user id and client seed in login message", e);
+                        }
                         // Probably no type definition for the PDU
                         log.debug("Can't respond to {}: {}", pdu.getType(), e.getMessage());
                         e.printStackTrace(System.out);
                         continue;
+                    } finally {
+                        // The request is decoded into its own fields, so the pooled payload can go back now
+                        pdu.release();
+                    }
+                    if (request == null) {
+                        log.debug("Can't respond to {}: no message class", pdu.getType());
+                        continue;
                     }
 
                     //
@@ -168,7 +184,7 @@ public class ServerSession {
 
                     switch (pdu.getType()) {
                         case EndClientTurn:
-                            response = endTurn(request);
+                            response = endTurn((EndClientTurn) request);
                             break;
 
                         case AttackResult:
@@ -184,7 +200,13 @@ public class ServerSession {
                             break;
 
                         case Login:
-                            response = login(request);
+                            // Send the login burst in one write
+                            connection.getOut().beginBatch();
+                            try {
+                                response = login((Login) request);
+                            } finally {
+                                connection.getOut().endBatch();
+                            }
                             break;
 
                         default:
@@ -194,7 +216,7 @@ public class ServerSession {
 
                     if (response != null) {
                         log.debug(" Responding to {}", pdu.getType());
-                        connection.getOut().write(messageFactory.toPdu(response));
+                        write(connection.getOut(), messageFactory.toPdu(response));
                     } else {
                         log.debug(" No Responce to {}", pdu.getType());
                     }
@@ -224,7 +246,18 @@ public class ServerSession {
         }
     }
 
-    private Message login(Message loginMessage) throws IOException  {
+    /**
+     * Write a PDU and return its buffer to the pool.
+     */
+    private void write(PduOutputStream out, Pdu pdu) throws IOException {
+        try {
+            out.write(pdu);
+        } finally {
+            pdu.release();
+        }
+    }
+
+    private Message login(Login loginMessage) throws IOException  {
 
         // A login Request requires the following
         //  Encription, LoginOk, OwnHomeData, UnknownInfoResponse, AvatarStream
@@ -232,30 +265,23 @@ public class ServerSession {
 
 
 
-        Long userId = loginMessage.getLong("userId");
-        if (userId == null) {
-            throw new PduException("No user id in login");
-        }
+        long userId = loginMessage.userId;
         sessionState.setUserId(userId);
 
-        Object clientSeed = loginMessage.get("clientSeed");
-        if (clientSeed == null || !(clientSeed instanceof Integer)) {
-            throw new PduException("Expected client seed in login message");
-        }
-        Clash7Random prng = new Clash7Random((Integer) clientSeed);
+        Clash7Random prng = new Clash7Random(loginMessage.clientSeed);
 
         //
         //  Encription
         //      Generate a nonce and pass it back to the client
         //
-        Message encryptionMessage = messageFactory.newMessage(Encryption);
+        Encryption encryptionMessage = new Encryption();
 
         byte[] nonce = new byte[24];
         ThreadLocalRandom.current().nextBytes(nonce); // generate a new key
-        encryptionMessage.set("serverRandom", nonce);
-        encryptionMessage.set("version", 1);
+        encryptionMessage.serverRandom = nonce;
+        encryptionMessage.version = 1;
 
-        clientConnection.getOut().write(messageFactory.toPdu(encryptionMessage));
+        write(clientConnection.getOut(), messageFactory.toPdu(encryptionMessage));
         log.info("Sent Encription");
 
 
@@ -266,31 +292,31 @@ public class ServerSession {
         //      Tell the client that all is well
         //
 
-        Message loginOkMessage = messageFactory.newMessage(LoginOk);
-
-        loginOkMessage.set("userId", userId);
-        loginOkMessage.set("homeId", userId);
-        loginOkMessage.set("userToken", loginMessage.get("userToken"));
-        loginOkMessage.set("majorVersion", loginMessage.get("majorVersion"));
-        loginOkMessage.set("minorVersion", loginMessage.get("minorVersion"));
-        loginOkMessage.set("revision", 3);
-        loginOkMessage.set("environment", "prod");
-        loginOkMessage.set("loginCount", 60);
-        loginOkMessage.set("timeOnline", 6110);
-        loginOkMessage.set("f12", 14);
-        loginOkMessage.set("facebookAppId", "297484437009394");
-        loginOkMessage.set("lastLoginDate", "" + System.currentTimeMillis() / 1000);
-        loginOkMessage.set("joinDate", "1436580824000");
-        loginOkMessage.set("country", "US");
-
-        clientConnection.getOut().write(messageFactory.toPdu(loginOkMessage));
+        LoginOk loginOkMessage = new LoginOk();
+
+        loginOkMessage.userId = userId;
+        loginOkMessage.homeId = userId;
+        loginOkMessage.userToken = loginMessage.userToken;
+        loginOkMessage.majorVersion = loginMessage.majorVersion;
+        loginOkMessage.minorVersion = loginMessage.minorVersion;
+        loginOkMessage.revision = 3;
+        loginOkMessage.environment = "prod";
+        loginOkMessage.loginCount = 60;
+        loginOkMessage.timeOnline = 6110;
+        loginOkMessage.f12 = 14;
+        loginOkMessage.facebookAppId = "297484437009394";
+        loginOkMessage.lastLoginDate = "" + System.currentTimeMillis() / 1000;
+        loginOkMessage.joinDate = "1436580824000";
+        loginOkMessage.country = "US";
+
+        write(clientConnection.getOut(), messageFactory.toPdu(loginOkMessage));
         log.info("Sent LoginOk");
 
         //
         // OwnHomeData
         //      Your base info
         //
-        clientConnection.getOut().write(messageFactory.toPdu(loadHome()));
+        write(clientConnection.getOut(), messageFactory.toPdu(loadHome()));
         log.info("Sent OwnHomeData");
 
 
@@ -306,7 +332,7 @@ public class ServerSession {
         response.set("f4", 40);
         response.set("f5", 1077978);
         response.set("f6", 12);
-        clientConnection.getOut().write(messageFactory.toPdu(response));
+        write(clientConnection.getOut(), messageFactory.toPdu(response));
         log.info("Sent UnknownInfoResponse");
 
 
@@ -321,34 +347,37 @@ public class ServerSession {
         return null;
     }
 
-    private Message endTurn(Message message) throws IOException {
+    private Message endTurn(EndClientTurn message) throws IOException {
         Message response = null;
-        Message[] commands = message.getArray("commands");
+        CommandComponent[] commands = message.commands;
         if (commands != null) {
-            commandLoop: for (Message command : commands) {
-                Integer id = command.getInt("id");
-                if (id != null) {
-                    switch (id) {
-                        case 700:
-                            response = loadEnemy();
-                            break commandLoop;
-
-                        case 603:
-                            response = loadHome();
-                            break commandLoop;
-
-                        case 501:   // Move building
-                            moveBuilding(command.getInt("x"), command.getInt("y"), command.getInt("buildingId"));
-                            break;
+            commandLoop: for (CommandComponent command : commands) {
+                switch (command.id) {
+                    case 700:
+                        response = loadEnemy();
+                        break commandLoop;
+
+                    case 603:
+                        response = loadHome();
+                        break commandLoop;
+
+                    case 501:   // Move building
+                        if (command.extension501 == null) {
+                            throw new PduException("No move in command 501");
+                        }
+                        moveBuilding(command.extension501.x, command.extension501.y, command.extension501.buildingId);
+                        break;
 
-                        case 512:   // Buy decoration
-                            newBuilding(command.getInt("x"), command.getInt("y"), command.getInt("buildingId"));
+                    case 512:   // Buy decoration
+                        if (command.extension512 == null) {
+                            throw new PduException("No decoration in command 512");
+                        }
+                        newBuilding(command.extension512.x, command.extension512.y, command.extension512.buildingId);
 
-                        default:
-                            // We're lost; give up
-                            log.debug("Not processing command {} from client", id);
-                            break commandLoop;
-                    }
+                    default:
+                        // We're lost; give up
+                        log.debug("Not processing command {} from client", command.id);
+                        break commandLoop;
                 }
             }
         }
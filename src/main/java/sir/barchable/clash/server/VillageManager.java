@@ -48,7 +48,11 @@ public class VillageManager {
     private Message ownHomeData;
     private File[] enemyHomes;
 
-    private static Message workingEnemyHome;
+    /**
+     * The last enemy home served, for use as a template. Never changed, only {@link Message#copy() copied}, so it can
+     * be shared by every session.
+     */
+    private static volatile Message workingEnemyHome;
 
     public VillageManager(MessageFactory messageFactory, LoadoutManager loadoutManager, File homeFile, File villageDir) throws IOException {
         this.messageFactory = messageFactory;
@@ -116,7 +120,8 @@ public class VillageManager {
             switch (village.getType()) {
                 case EnemyHomeData:
                     village = filterEnemyHome(village, war);
-                    VillageManager.workingEnemyHome = village;
+                    // The village goes on to be changed by this session, so keep a copy
+                    VillageManager.workingEnemyHome = village.copy();
                     break;
 
                 case VisitedHomeData:
@@ -172,9 +177,7 @@ public class VillageManager {
         // swap from home layout to war layout
         enemyVillage.set("homeVillage", Json.toString(
             layoutManager.setWarLayout(
-                layoutManager.loadVillage(
-                    enemyVillage.getString("homeVillage")
-                )
+                enemyVillage.getModel("homeVillage", Village.class)
             )
         ));
     }
@@ -183,12 +186,11 @@ public class VillageManager {
         Message homeVillage = getOwnHomeData();
 
 
-        Pdu enemyClone = services.getMessageFactory().toPdu(VillageManager.workingEnemyHome);
-        Message enemyVillage = services.getMessageFactory().fromPdu(enemyClone);
+        Message enemyVillage = VillageManager.workingEnemyHome.copy();
 
         //enemyVillage.set("homeId", village.get("homeId"));
 
-        WarVillage warVillage = layoutManager.loadWarVillage(village.getString("homeVillage"));
+        WarVillage warVillage = village.getModel("homeVillage", WarVillage.class);
         enemyVillage.set("homeVillage", Json.toString(layoutManager.warVillageToVillage(warVillage)));
 
         //
@@ -214,10 +216,9 @@ public class VillageManager {
 
     private Message replayToEnemyHome(Message replayMessage) throws IOException {
 
-        Pdu enemyClone = services.getMessageFactory().toPdu(VillageManager.workingEnemyHome);
-        Message enemyVillage = services.getMessageFactory().fromPdu(enemyClone);
+        Message enemyVillage = VillageManager.workingEnemyHome.copy();
 
-        Replay replay = Json.valueOf(replayMessage.getString("replay"), Replay.class);
+        Replay replay = replayMessage.getModel("replay", Replay.class);
         Message homeVillage = getOwnHomeData();
 
 
@@ -271,7 +272,12 @@ public class VillageManager {
     public void save() {
         log.info("Saving " + homeFile);
         try (PduOutputStream out = new PduOutputStream(new FileOutputStream(homeFile), NOOP_CIPHER)) {
-            out.write(messageFactory.toPdu(getOwnHomeData()));
+            Pdu pdu = messageFactory.toPdu(getOwnHomeData());
+            try {
+                out.write(pdu);
+            } finally {
+                pdu.release();
+            }
         } catch (IOException e) {
             log.error("Couldn't save home village: " + e);
         }
@@ -63,6 +63,30 @@ public class BitInputStream extends InputStream {
         return bit;
     }
 
+    @Override
+    public long skip(long n) throws IOException {
+        bitField = -1;
+        return in.skip(n);
+    }
+
+    /**
+     * The mask for the next bit of a partly read bit field, or 0 if the next read starts at a byte boundary.
+     */
+    public int getBitMask() {
+        return bitField == -1 ? 0 : mask;
+    }
+
+    /**
+     * Continue reading a partly read bit field, e.g. when resuming a read at a position recorded earlier.
+     *
+     * @param bitField the byte holding the bit field
+     * @param mask the mask for the next bit, as returned by {@link #getBitMask()}
+     */
+    public void resumeBits(int bitField, int mask) {
+        this.bitField = bitField & 0xff;
+        this.mask = mask;
+    }
+
     @Override
     public void close() throws IOException {
         in.close();
@@ -57,6 +57,13 @@ public class BitOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Are there bit writes that haven't been committed?
+     */
+    public boolean hasPendingBits() {
+        return bitField != -1;
+    }
+
     /**
      * Commit any outstanding bit writes and flush the underlying output stream.
      */
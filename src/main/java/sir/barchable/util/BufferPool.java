@@ -0,0 +1,117 @@
+package sir.barchable.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of byte arrays in power of two size classes.
+ * <p>
+ * Arrays handed out by {@link #acquire(int)} may be longer than requested. Requests larger than the biggest size
+ * class get an exact sized array that isn't pooled. Each size class keeps at most {@link #CLASS_LIMIT} bytes of idle
+ * arrays (and always at least two), so a burst of large PDUs doesn't pin memory for the life of the process.
+ *
+ * @author Sir Barchable
+ */
+public class BufferPool {
+    private static final BufferPool DEFAULT_POOL = new BufferPool();
+
+    /**
+     * Smallest size class, 2^8 bytes.
+     */
+    private static final int MIN_SHIFT = 8;
+
+    /**
+     * Largest size class, 2^24 bytes. The PDU length field is three bytes, so no payload is bigger than this.
+     */
+    private static final int MAX_SHIFT = 24;
+
+    /**
+     * Maximum idle bytes retained per size class.
+     */
+    private static final int CLASS_LIMIT = 4 * 1024 * 1024;
+
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+
+    public BufferPool() {
+        for (int i = 0; i < classes.length; i++) {
+            int size = 1 << (MIN_SHIFT + i);
+            classes[i] = new SizeClass(size, Math.max(2, CLASS_LIMIT / size));
+        }
+    }
+
+    /**
+     * The process wide pool.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Get an array of at least the requested length. Its contents are undefined.
+     */
+    public byte[] acquire(int length) {
+        int index = indexFor(length);
+        if (index < 0) {
+            return new byte[length];
+        }
+        return classes[index].acquire();
+    }
+
+    /**
+     * Return an array to the pool. Arrays that aren't one of the pool's sizes are left to the garbage collector. The
+     * caller must not use the array after releasing it.
+     */
+    public void release(byte[] buffer) {
+        int length = buffer.length;
+        if (Integer.bitCount(length) == 1) {
+            int index = Integer.numberOfTrailingZeros(length) - MIN_SHIFT;
+            if (index >= 0 && index < classes.length) {
+                classes[index].release(buffer);
+            }
+        }
+    }
+
+    /**
+     * The length of the array that would be returned for a request.
+     */
+    public static int sizeFor(int length) {
+        return length <= 1 << MIN_SHIFT ? 1 << MIN_SHIFT : Integer.highestOneBit(length - 1) << 1;
+    }
+
+    private static int indexFor(int length) {
+        if (length > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(sizeFor(length)) - MIN_SHIFT;
+    }
+
+    private static class SizeClass {
+        private final int size;
+        private final int limit;
+        private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        SizeClass(int size, int limit) {
+            this.size = size;
+            this.limit = limit;
+        }
+
+        byte[] acquire() {
+            byte[] buffer = free.poll();
+            if (buffer == null) {
+                return new byte[size];
+            }
+            count.decrementAndGet();
+            return buffer;
+        }
+
+        void release(byte[] buffer) {
+            if (count.incrementAndGet() <= limit) {
+                free.add(buffer);
+            } else {
+                count.decrementAndGet();
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package sir.barchable.util;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface for ciphers.
+ * <p>
+ * Stream ciphers keep their position between calls, so the same bytes must be passed through exactly once, in order,
+ * whichever variant is used.
  *
  * @author Sir Barchable
  *         Date: 7/05/15
@@ -14,10 +19,60 @@ public interface Cipher {
      * @param b the bytes to encrypt
      * @return the encrypted bytes
      */
-    byte[] encrypt(byte[] b);
+    default byte[] encrypt(byte[] b) {
+        byte[] c = b.clone();
+        encrypt(c, 0, c.length);
+        return c;
+    }
+
+    /**
+     * Encrypt part of a byte[] in place.
+     *
+     * @param b the buffer holding the bytes to encrypt
+     * @param off the offset of the first byte to encrypt
+     * @param len the number of bytes to encrypt
+     */
+    void encrypt(byte[] b, int off, int len);
+
+    /**
+     * Encrypt the bytes between a buffer's position and its limit in place. Works with both heap and direct buffers.
+     * On return the buffer's position is equal to its limit.
+     */
+    void encrypt(ByteBuffer buffer);
+
+    /**
+     * Advance the keystream as if length bytes had been encrypted.
+     */
+    default void skip(int length) {
+        byte[] scratch = new byte[Math.min(length, 4096)];
+        while (length > 0) {
+            int n = Math.min(length, scratch.length);
+            encrypt(scratch, 0, n);
+            length -= n;
+        }
+    }
 
     /**
      * Set the key for encryption.
      */
     void setKey(byte[] key);
+
+    /**
+     * Save the cipher's position in its keystream, so that a cipher of the same type can carry on from here with
+     * {@link #importState}.
+     *
+     * @throws UnsupportedOperationException if the cipher can't do that
+     */
+    default byte[] exportState() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " state can't be exported");
+    }
+
+    /**
+     * Restore state saved by {@link #exportState()}.
+     *
+     * @throws UnsupportedOperationException if the cipher can't do that
+     */
+    default void importState(byte[] state) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " state can't be imported");
+    }
 }
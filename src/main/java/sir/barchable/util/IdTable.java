@@ -0,0 +1,41 @@
+package sir.barchable.util;
+
+/**
+ * Map from 16 bit ids to values, looked up by array index.
+ * <p>
+ * Ids are split into a page number and an index within the page, and pages are only allocated where there are ids,
+ * so a table holding a few clusters of ids stays small while every lookup is two array reads.
+ *
+ * @author Sir Barchable
+ */
+public class IdTable<T> {
+    private static final int MAX_ID = 0xffff;
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final Object[][] pages = new Object[(MAX_ID >> PAGE_BITS) + 1][];
+
+    /**
+     * @return the value for an id, or null if there isn't one or the id is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        if (id < 0 || id > MAX_ID) {
+            return null;
+        }
+        Object[] page = pages[id >> PAGE_BITS];
+        return page == null ? null : (T) page[id & PAGE_MASK];
+    }
+
+    public void put(int id, T value) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("Id " + id + " out of range");
+        }
+        Object[] page = pages[id >> PAGE_BITS];
+        if (page == null) {
+            page = pages[id >> PAGE_BITS] = new Object[PAGE_SIZE];
+        }
+        page[id & PAGE_MASK] = value;
+    }
+}
@@ -0,0 +1,254 @@
+package sir.barchable.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RC4 keystream generated ahead of use into a ring buffer.
+ * <p>
+ * The keystream doesn't depend on the data, so it can be computed before the data arrives, leaving encryption as a
+ * plain XOR over bytes that are already there. In {@link Mode#BULK} mode the keystream is generated on the calling
+ * thread a ring at a time; in {@link Mode#BACKGROUND} mode a producer thread keeps the ring topped up. The producer
+ * is started on first use and exits again once the ring has been full for a while, so an idle or abandoned buffer
+ * doesn't hold a thread. It's started again when the ring drains to low water.
+ * <p>
+ * Not thread safe: one thread encrypts, the producer only generates.
+ *
+ * @author Sir Barchable
+ */
+public class KeystreamBuffer {
+    public enum Mode {
+        /**
+         * Generate a ring's worth of keystream at a time on the encrypting thread.
+         */
+        BULK,
+
+        /**
+         * Generate keystream on a helper thread.
+         */
+        BACKGROUND
+    }
+
+    private static final int CAPACITY = 64 * 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * The producer generates this much at a time, so that a waiting consumer can start early.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Wake the producer once no more than this much keystream is left, so that it refills the ring in one run instead
+     * of being woken for every chunk that's used.
+     */
+    private static final int LOW_WATER = CAPACITY / 2;
+
+    /**
+     * Producer exits after the ring has been full this long.
+     */
+    private static final long IDLE_NANOS = 1_000_000_000L;
+
+    /**
+     * How long a consumer waits for the producer before checking it's still running.
+     */
+    private static final long WAIT_NANOS = 50_000L;
+
+    private final RC4 rc4;
+    private final Mode mode;
+    private final byte[] ring = new byte[CAPACITY];
+
+    /**
+     * Total keystream bytes generated. Only written by the generating thread.
+     */
+    private volatile long written;
+
+    /**
+     * Total keystream bytes used. Only written by the encrypting thread.
+     */
+    private volatile long read;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Thread producer;
+    private volatile Thread waiter;
+    private volatile boolean closed;
+
+    /**
+     * @param rc4 the keystream source, already keyed. The buffer takes ownership.
+     * @param mode how to generate keystream
+     */
+    public KeystreamBuffer(RC4 rc4, Mode mode) {
+        this.rc4 = rc4;
+        this.mode = mode;
+    }
+
+    /**
+     * XOR part of a byte[] with the keystream, in place.
+     */
+    public void encrypt(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = available(len);
+            int pos = (int) (read & MASK);
+            for (int i = 0; i < n; ++i) {
+                b[off + i] ^= ring[pos + i];
+            }
+            consumed(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * XOR the remaining bytes in a buffer with the keystream, in place, leaving the position at the limit.
+     */
+    public void encrypt(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            encrypt(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            int i = buffer.position();
+            int end = buffer.limit();
+            while (i < end) {
+                int n = available(end - i);
+                int pos = (int) (read & MASK);
+                for (int j = 0; j < n; ++j, ++i) {
+                    buffer.put(i, (byte) (buffer.get(i) ^ ring[pos + j]));
+                }
+                consumed(n);
+            }
+        }
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Discard keystream.
+     */
+    public void skip(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (mode == Mode.BULK && length >= CAPACITY && written == read) {
+            // Nothing buffered, so jump the generator forward directly
+            rc4.skip(length);
+            written += length;
+            read += length;
+            return;
+        }
+        while (length > 0) {
+            int n = available(length);
+            consumed(n);
+            length -= n;
+        }
+    }
+
+    /**
+     * Stop the producer, if there is one.
+     */
+    public void close() {
+        closed = true;
+        Thread p = producer;
+        if (p != null) {
+            LockSupport.unpark(p);
+        }
+    }
+
+    /**
+     * Wait for keystream.
+     *
+     * @return the number of contiguous bytes that can be used, up to len
+     */
+    private int available(int len) {
+        long avail = written - read;
+        if (avail == 0) {
+            avail = await();
+        }
+        return (int) Math.min(Math.min(avail, len), CAPACITY - (read & MASK));
+    }
+
+    private long await() {
+        if (mode == Mode.BULK) {
+            generate(CAPACITY);
+            return written - read;
+        }
+        waiter = Thread.currentThread();
+        try {
+            long avail;
+            while ((avail = written - read) == 0) {
+                if (closed) {
+                    throw new IllegalStateException("Keystream closed");
+                }
+                startProducer();
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+            return avail;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    private void consumed(int n) {
+        long left = written - read;
+        read += n;
+        if (mode == Mode.BACKGROUND && left > LOW_WATER && left - n <= LOW_WATER) {
+            // The producer only parks when the ring is nearly full, so it's woken when the level falls past low water,
+            // or started again if it has gone idle
+            Thread p = producer;
+            if (p != null) {
+                LockSupport.unpark(p);
+            } else {
+                startProducer();
+            }
+        }
+    }
+
+    private void startProducer() {
+        if (running.compareAndSet(false, true)) {
+            Thread t = new Thread(this::produce, "RC4 prefetch");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Generate up to max bytes of keystream into free space in the ring.
+     */
+    private void generate(int max) {
+        long w = written;
+        int pos = (int) (w & MASK);
+        int n = (int) Math.min(Math.min(max, CAPACITY - (w - read)), CAPACITY - pos);
+        if (n > 0) {
+            rc4.keystream(ring, pos, n);
+            written = w + n;
+        }
+    }
+
+    private void produce() {
+        producer = Thread.currentThread();
+        try {
+            long idleSince = System.nanoTime();
+            while (!closed) {
+                if (CAPACITY - (written - read) >= CHUNK) {
+                    generate(CHUNK);
+                    Thread w = waiter;
+                    if (w != null) {
+                        LockSupport.unpark(w);
+                    }
+                    idleSince = System.nanoTime();
+                } else if (System.nanoTime() - idleSince > IDLE_NANOS) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+        } finally {
+            producer = null;
+            running.set(false);
+        }
+        if (!closed && written - read <= LOW_WATER) {
+            // Drained past low water while we were on the way out
+            startProducer();
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package sir.barchable.util;
 
+import java.nio.ByteBuffer;
+
 /**
- * No-op {@link Cipher}. Simply clones the input byte[] during encryption.
+ * No-op {@link Cipher}. Simply clones the input byte[] during encryption, and leaves buffers untouched when encrypting
+ * in place.
  *
  * @author Sir Barchable
  *         Date: 7/05/15
@@ -19,8 +22,35 @@ public class NoopCipher implements Cipher {
         return b.clone();
     }
 
+    @Override
+    public void encrypt(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    public void encrypt(ByteBuffer buffer) {
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public void skip(int length) {
+        // nothing to do
+    }
+
     @Override
     public void setKey(byte[] nonce) {
         // nothing to do
     }
+
+    @Override
+    public byte[] exportState() {
+        return new byte[0];
+    }
+
+    @Override
+    public void importState(byte[] state) {
+        // nothing to do
+    }
 }
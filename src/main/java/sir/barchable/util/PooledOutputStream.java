@@ -0,0 +1,76 @@
+package sir.barchable.util;
+
+import java.io.OutputStream;
+
+/**
+ * A {@link java.io.ByteArrayOutputStream} alternative that writes into arrays from a {@link BufferPool}, so the
+ * result can be handed over without the copy made by {@code toByteArray()}.
+ *
+ * @author Sir Barchable
+ */
+public class PooledOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+
+    public PooledOutputStream(BufferPool pool, int initialSize) {
+        this.pool = pool;
+        this.buffer = pool.acquire(initialSize);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer == null) {
+            throw new IllegalStateException("Stream closed");
+        }
+        if (capacity > buffer.length) {
+            byte[] larger = pool.acquire(Math.max(capacity, buffer.length << 1));
+            System.arraycopy(buffer, 0, larger, 0, count);
+            pool.release(buffer);
+            buffer = larger;
+        }
+    }
+
+    /**
+     * The number of bytes written.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Take ownership of the pooled buffer. The first {@link #size()} bytes are valid. The caller is responsible for
+     * releasing the buffer, and the stream can't be written to afterwards.
+     */
+    public byte[] detach() {
+        byte[] detached = buffer;
+        buffer = null;
+        return detached;
+    }
+
+    /**
+     * Return the buffer to the pool, unless it has been {@link #detach() detached}.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -1,9 +1,27 @@
 package sir.barchable.util;
 
+import java.nio.ByteBuffer;
+
 public class RC4 {
+    /**
+     * Length of the {@link #getState() saved state}.
+     */
+    public static final int STATE_LENGTH = 258;
+
     public RC4(byte[] key) {
         setKey(key);
     }
+
+    private RC4() { }
+
+    /**
+     * Create a cipher from {@link #getState() saved state}.
+     */
+    public static RC4 fromState(byte[] saved) {
+        RC4 rc4 = new RC4();
+        rc4.setState(saved);
+        return rc4;
+    }
     private byte[] state = new byte[256];
     private int x, y;
 
@@ -22,13 +40,37 @@ public class RC4 {
     }
 
     public byte[] encrypt(byte[] clearText) {
-        byte[] cipherText = new byte[clearText.length];
-        for (int i = 0; i < clearText.length; ++i) {
-            cipherText[i] = (byte) (clearText[i] ^ state[next()]);
-        }
+        byte[] cipherText = clearText.clone();
+        encrypt(cipherText, 0, cipherText.length);
         return cipherText;
     }
 
+    /**
+     * Encrypt in place.
+     */
+    public void encrypt(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off, end = off + len; i < end; ++i) {
+            b[i] ^= state[next()];
+        }
+    }
+
+    /**
+     * Encrypt the remaining bytes in a buffer in place, leaving the position at the limit.
+     */
+    public void encrypt(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            encrypt(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            for (int i = buffer.position(), end = buffer.limit(); i < end; ++i) {
+                buffer.put(i, (byte) (buffer.get(i) ^ state[next()]));
+            }
+        }
+        buffer.position(buffer.limit());
+    }
+
     private int next() {
         byte temp;
         x = (x + 1) & 0xff;
@@ -37,6 +79,18 @@ public class RC4 {
         return (state[x] + state[y]) & 0xff;
     }
 
+    /**
+     * Write the next len bytes of keystream into b. Encryption is then an XOR with these bytes.
+     */
+    public void keystream(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off, end = off + len; i < end; ++i) {
+            b[i] = state[next()];
+        }
+    }
+
     public byte[] generate(int length) {
         byte[] key = new byte[length];
         for (int i = 0; i < key.length; i++) {
@@ -45,6 +99,29 @@ public class RC4 {
         return key;
     }
 
+    /**
+     * Copy the cipher's internal state: the 256 byte permutation followed by the x and y indices.
+     */
+    public byte[] getState() {
+        byte[] copy = new byte[STATE_LENGTH];
+        System.arraycopy(state, 0, copy, 0, 256);
+        copy[256] = (byte) x;
+        copy[257] = (byte) y;
+        return copy;
+    }
+
+    /**
+     * Restore state from {@link #getState()}.
+     */
+    public void setState(byte[] saved) {
+        if (saved.length != STATE_LENGTH) {
+            throw new IllegalArgumentException("Expected " + STATE_LENGTH + " bytes of state, got " + saved.length);
+        }
+        System.arraycopy(saved, 0, state, 0, 256);
+        x = saved[256] & 0xff;
+        y = saved[257] & 0xff;
+    }
+
     public void skip(int length) {
         for (int i = 0; i < length; i++) {
             next();
@@ -28,4 +28,19 @@ public class ThreadPools {
             }
         );
     }
+
+    /**
+     * Single threaded scheduler on a daemon thread.
+     *
+     * @param name the thread name
+     */
+    public static ScheduledExecutorService newScheduler(String name) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
 }
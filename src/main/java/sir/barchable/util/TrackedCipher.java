@@ -0,0 +1,132 @@
+package sir.barchable.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link Cipher} that keeps track of its position in the keystream.
+ * <p>
+ * Stream ciphers like RC4 produce a keystream that depends only on the key and the number of bytes processed, so
+ * two streams with the same {@link Keystream} at the same offset would produce identical ciphertext. That lets a
+ * proxy forward the original ciphertext instead of re-encrypting, and just {@link #skip} the keystream it would have
+ * used. Skips are deferred until the next real encryption, so a run of forwarded PDUs costs nothing.
+ *
+ * @author Sir Barchable
+ */
+public class TrackedCipher implements Cipher {
+    private final Cipher cipher;
+    private Keystream keystream;
+    private long offset;
+
+    /**
+     * Keystream bytes that have been skipped but not yet generated.
+     */
+    private long lag;
+
+    public TrackedCipher(Cipher cipher) {
+        this.cipher = cipher;
+        this.keystream = new Keystream(cipher.getClass(), null);
+    }
+
+    @Override
+    public void encrypt(byte[] b, int off, int len) {
+        catchUp();
+        cipher.encrypt(b, off, len);
+        offset += len;
+    }
+
+    @Override
+    public void encrypt(ByteBuffer buffer) {
+        catchUp();
+        offset += buffer.remaining();
+        cipher.encrypt(buffer);
+    }
+
+    @Override
+    public void skip(int length) {
+        lag += length;
+        offset += length;
+    }
+
+    private void catchUp() {
+        while (lag > 0) {
+            int n = (int) Math.min(lag, Integer.MAX_VALUE);
+            cipher.skip(n);
+            lag -= n;
+        }
+    }
+
+    @Override
+    public void setKey(byte[] key) {
+        cipher.setKey(key);
+        keystream = new Keystream(cipher.getClass(), key);
+        offset = 0;
+        lag = 0;
+    }
+
+    @Override
+    public byte[] exportState() {
+        catchUp();
+        return cipher.exportState();
+    }
+
+    /**
+     * Restore saved state. The key it came from isn't known, so the keystream becomes unique to this cipher.
+     */
+    @Override
+    public void importState(byte[] state) {
+        cipher.importState(state);
+        keystream = new Keystream(cipher.getClass(), null);
+        offset = 0;
+        lag = 0;
+    }
+
+    public Keystream getKeystream() {
+        return keystream;
+    }
+
+    /**
+     * The number of bytes processed since the key was set.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Would this cipher produce the same output as one at the given keystream position?
+     */
+    public boolean isAt(Keystream keystream, long offset) {
+        return this.offset == offset && this.keystream.equals(keystream);
+    }
+
+    /**
+     * Identifies a keystream by cipher type and key. Until a key is set through the {@link TrackedCipher} the key
+     * isn't known, and the keystream is only equal to itself.
+     */
+    public static final class Keystream {
+        private final Class<?> type;
+        private final byte[] key;
+
+        private Keystream(Class<?> type, byte[] key) {
+            this.type = type;
+            this.key = key == null ? null : key.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Keystream)) {
+                return false;
+            }
+            Keystream that = (Keystream) o;
+            return key != null && type == that.type && Arrays.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key == null ? System.identityHashCode(this) : 31 * type.hashCode() + Arrays.hashCode(key);
+        }
+    }
+}
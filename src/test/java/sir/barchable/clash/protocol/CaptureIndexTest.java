@@ -0,0 +1,79 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author Sir Barchable
+ */
+public class CaptureIndexTest {
+    private static final byte[] KEY = "0123456789abcdefghijklmn".getBytes(UTF_8);
+    private static final int COUNT = 50;
+    private static final int REKEY_AFTER = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Random random = new Random(1);
+
+    @Test
+    public void testSeek() throws IOException {
+        byte[][] payloads = new byte[COUNT][];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes);
+        for (int i = 0; i < COUNT; i++) {
+            if (i == REKEY_AFTER) {
+                out.setKey(KEY);
+            }
+            payloads[i] = new byte[random.nextInt(2000)];
+            random.nextBytes(payloads[i]);
+            out.write(new Pdu(10101, payloads[i]));
+        }
+        File capture = folder.newFile("client.stream");
+        Files.write(capture.toPath(), bytes.toByteArray());
+
+        // Index with a checkpoint every 7 PDUs, re-keying the way a session would
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        try (
+            CaptureIndex.Writer writer = new CaptureIndex.Writer(indexBytes, 7, Long.MAX_VALUE);
+            PduInputStream in = new PduInputStream(FileChannel.open(capture.toPath()))
+        ) {
+            in.setCheckpointWriter(writer);
+            for (int i = 0; i < COUNT; i++) {
+                if (i == REKEY_AFTER) {
+                    in.setKey(KEY);
+                }
+                Assert.assertArrayEquals(payloads[i], in.read().getPayload());
+            }
+        }
+        CaptureIndex index = CaptureIndex.load(new ByteArrayInputStream(indexBytes.toByteArray()));
+        Assert.assertEquals(8, index.getCheckpoints().size());
+        // The re-key forces a checkpoint at 20, and the interval restarts from there
+        Assert.assertEquals(34, index.floor(40).getPduNumber());
+        Assert.assertEquals(20, index.floor(26).getPduNumber());
+
+        for (int start : new int[] {0, 13, 20, 22, 42, COUNT - 1}) {
+            try (PduInputStream in = index.open(FileChannel.open(capture.toPath()), start)) {
+                for (int i = start; i < COUNT; i++) {
+                    if (i == REKEY_AFTER) {
+                        // Checkpoints carry the key, but a re-key further on still has to be replayed
+                        in.setKey(KEY);
+                    }
+                    Assert.assertArrayEquals("PDU " + i + " from " + start, payloads[i], in.read().getPayload());
+                }
+            }
+        }
+    }
+}
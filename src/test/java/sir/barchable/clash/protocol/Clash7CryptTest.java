@@ -0,0 +1,132 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sir.barchable.util.KeystreamBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author Sir Barchable
+ */
+public class Clash7CryptTest {
+    private static final byte[] NONCE = "0123456789abcdefghijklmn".getBytes(UTF_8);
+
+    private byte[] clearText = new byte[5000];
+    private byte[] expected;
+
+    @Before
+    public void setUp() {
+        new Random(1).nextBytes(clearText);
+        Clash7Crypt cipher = new Clash7Crypt();
+        cipher.setKey(NONCE);
+        expected = cipher.encrypt(clearText);
+    }
+
+    @Test
+    public void testCopyLeavesInputUnchanged() {
+        byte[] copy = clearText.clone();
+        keyed().encrypt(copy);
+        Assert.assertArrayEquals(clearText, copy);
+    }
+
+    @Test
+    public void testInPlace() {
+        Clash7Crypt cipher = keyed();
+        byte[] b = new byte[clearText.length + 20];
+        System.arraycopy(clearText, 0, b, 10, clearText.length);
+        // Split across calls, to check that the keystream carries on
+        cipher.encrypt(b, 10, 1000);
+        cipher.encrypt(b, 1010, clearText.length - 1000);
+        Assert.assertArrayEquals(expected, Arrays.copyOfRange(b, 10, 10 + clearText.length));
+        Assert.assertEquals(0, b[0]);
+        Assert.assertEquals(0, b[b.length - 1]);
+    }
+
+    @Test
+    public void testHeapBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(clearText.length + 10);
+        buffer.position(10);
+        ByteBuffer slice = buffer.slice();
+        slice.put(clearText).flip();
+        keyed().encrypt(slice);
+        Assert.assertFalse(slice.hasRemaining());
+        slice.flip();
+        byte[] actual = new byte[clearText.length];
+        slice.get(actual);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(clearText.length);
+        buffer.put(clearText).flip();
+        Clash7Crypt cipher = keyed();
+        buffer.limit(3000);
+        cipher.encrypt(buffer);
+        buffer.limit(clearText.length);
+        cipher.encrypt(buffer);
+        buffer.flip();
+        byte[] actual = new byte[clearText.length];
+        buffer.get(actual);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] b = clearText.clone();
+        keyed().encrypt(b, 0, b.length);
+        keyed().encrypt(b, 0, b.length);
+        Assert.assertArrayEquals(clearText, b);
+    }
+
+    @Test
+    public void testPrefetchIsCompatible() {
+        for (KeystreamBuffer.Mode mode : KeystreamBuffer.Mode.values()) {
+            Random random = new Random(2);
+            Clash7Crypt plain = new Clash7Crypt();
+            Clash7Crypt prefetching = new Clash7Crypt(mode);
+            for (int rekey = 0; rekey < 3; rekey++) {
+                // Before the first key is set this checks the initial nonce
+                for (int i = 0; i < 50; i++) {
+                    // Sizes straddling the ring buffer
+                    int length = random.nextInt(i % 10 == 0 ? 200_000 : 2000);
+                    byte[] b = new byte[length];
+                    random.nextBytes(b);
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            Assert.assertArrayEquals(plain.encrypt(b), prefetching.encrypt(b));
+                            break;
+                        case 1:
+                            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                            direct.put(b).flip();
+                            prefetching.encrypt(direct);
+                            direct.flip();
+                            byte[] actual = new byte[length];
+                            direct.get(actual);
+                            Assert.assertArrayEquals(plain.encrypt(b), actual);
+                            break;
+                        default:
+                            plain.skip(length);
+                            prefetching.skip(length);
+                    }
+                }
+                byte[] nonce = new byte[24];
+                random.nextBytes(nonce);
+                plain.setKey(nonce);
+                prefetching.setKey(nonce);
+            }
+        }
+    }
+
+    private static Clash7Crypt keyed() {
+        Clash7Crypt cipher = new Clash7Crypt();
+        cipher.setKey(NONCE);
+        return cipher;
+    }
+}
@@ -0,0 +1,255 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.clash.protocol.Protocol.StructDefinition;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.Extension;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+import sir.barchable.util.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * Compiled codecs, lazy structs and in-memory streams against the interpreter, for random values of every message in
+ * the protocol.
+ *
+ * @author Sir Barchable
+ */
+public class CodecTest {
+    private static final int MAX_DEPTH = 4;
+    private static final String[] OTHER_CHARACTERS = {"\u00e9", "\u20ac", "\ud83d\ude00", "\ud800"};
+
+    private Random random = new Random(1);
+    private TypeFactory typeFactory;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompiledMatchesInterpreter() throws IOException {
+        Protocol protocol;
+        try (InputStream in = Protocol.class.getResourceAsStream("Protocol.json")) {
+            protocol = Json.read(in, Protocol.class);
+        }
+        typeFactory = new TypeFactory(protocol);
+        MessageWriter compiledWriter = new MessageWriter(typeFactory);
+        MessageWriter interpretingWriter = new MessageWriter(typeFactory);
+        interpretingWriter.setCompiled(false);
+        MessageReader compiledReader = new MessageReader(typeFactory);
+        MessageReader interpretingReader = new MessageReader(typeFactory);
+        interpretingReader.setCompiled(false);
+
+        for (StructDefinition definition : protocol.getMessages()) {
+            TypeFactory.Type type = typeFactory.resolveType(definition.getName());
+            for (int i = 0; i < 5; i++) {
+                Object value = randomStruct(definition, 0);
+
+                byte[] compiled;
+                try {
+                    compiled = write(compiledWriter, type, value);
+                } catch (IOException | RuntimeException e) {
+                    // Then the interpreter should fail the same way
+                    try {
+                        write(interpretingWriter, type, value);
+                        Assert.fail(definition.getName() + ": " + e);
+                    } catch (IOException | RuntimeException expected) {
+                        Assert.assertEquals(expected.toString(), e.toString());
+                    }
+                    continue;
+                }
+                byte[] interpreted = write(interpretingWriter, type, value);
+                Assert.assertArrayEquals(definition.getName(), interpreted, compiled);
+
+                // Sized, then written in place
+                MessageSizer sizer = new MessageSizer();
+                compiledWriter.write(type, value, sizer);
+                Assert.assertEquals(definition.getName(), compiled.length, sizer.size());
+                byte[] payload = new byte[compiled.length];
+                PayloadOutputStream payloadOut = new PayloadOutputStream(payload, 0, payload.length);
+                compiledWriter.write(type, value, payloadOut);
+                payloadOut.flush();
+                Assert.assertArrayEquals(definition.getName(), compiled, payload);
+
+                Object compiledValue = compiledReader.readValue(type, in(compiled));
+                Object interpretedValue = interpretingReader.readValue(type, in(compiled));
+                Assert.assertTrue(definition.getName(), deepEquals(interpretedValue, compiledValue));
+                Assert.assertTrue(definition.getName(), compiledValue instanceof Record);
+
+                // In memory payloads
+                Object payloadValue = compiledReader.readValue(type, new PayloadInputStream(compiled, 0, compiled.length));
+                Assert.assertTrue(definition.getName(), deepEquals(interpretedValue, payloadValue));
+
+                // Lazy structs, a field at a time and then whole
+                Map<String, Object> eager = new LinkedHashMap<>((Map<String, Object>) compiledValue);
+                eager.put(LazyStruct.END_KEY, compiledReader.readEnd(in(new byte[0])));
+                LazyStruct lazy = LazyStruct.forMessage(type, compiled);
+                List<String> keys = new ArrayList<>(eager.keySet());
+                Collections.shuffle(keys, random);
+                for (String key : keys) {
+                    Assert.assertTrue(definition.getName() + "." + key, deepEquals(eager.get(key), lazy.get(key)));
+                }
+                Assert.assertTrue(definition.getName(), deepEquals(eager, LazyStruct.forMessage(type, compiled)));
+
+                // Spliced from the payload, unchanged and then with one field changed
+                LazyStruct spliced = LazyStruct.forMessage(type, compiled);
+                Assert.assertArrayEquals(definition.getName(), compiled, write(compiledWriter, type, spliced));
+                keys.remove(LazyStruct.END_KEY);
+                if (!keys.isEmpty()) {
+                    String key = keys.get(0);
+                    Object changed = randomStruct(definition, 0).get(key);
+                    eager.put(key, changed);
+                    spliced.put(key, changed);
+                    byte[] expected;
+                    try {
+                        expected = write(compiledWriter, type, eager);
+                    } catch (IOException | RuntimeException e) {
+                        continue;
+                    }
+                    Assert.assertArrayEquals(definition.getName() + "." + key, expected, write(compiledWriter, type, spliced));
+                    sizer = new MessageSizer();
+                    compiledWriter.write(type, spliced, sizer);
+                    Assert.assertEquals(definition.getName() + "." + key, expected.length, sizer.size());
+                }
+            }
+        }
+    }
+
+    private static byte[] write(MessageWriter writer, TypeFactory.Type type, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageOutputStream out = new MessageOutputStream(bytes);
+        writer.write(type, value, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static MessageInputStream in(byte[] bytes) {
+        return new MessageInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private Map<String, Object> randomStruct(StructDefinition definition, int depth) {
+        Map<String, Object> struct = new LinkedHashMap<>();
+        int fieldIndex = 0;
+        for (FieldDefinition field : definition.getFields()) {
+            fieldIndex++;
+            randomField(field, fieldIndex, struct, depth);
+        }
+        List<Extension> extensions = definition.getExtensions();
+        if (!extensions.isEmpty()) {
+            Extension extension = extensions.get(random.nextInt(extensions.size()));
+            struct.put(TypeFactory.ID_FIELD, extension.getId());
+            for (FieldDefinition field : extension.getFields()) {
+                fieldIndex++;
+                randomField(field, fieldIndex, struct, depth);
+            }
+        }
+        return struct;
+    }
+
+    private void randomField(FieldDefinition field, int fieldIndex, Map<String, Object> struct, int depth) {
+        String key = field.getName() != null ? field.getName() : "field" + fieldIndex;
+        TypeFactory.Type type = typeFactory.resolveType(field.getType());
+        // Leave some fields out to exercise defaults, and to check that both fail on fixed length arrays
+        if (random.nextInt(type.getLength() > 0 ? 50 : 10) > 0) {
+            struct.put(key, randomValue(type, depth + 1));
+        }
+    }
+
+    private Object randomValue(TypeFactory.Type type, int depth) {
+        if (type.isOptional() && (depth > MAX_DEPTH || random.nextBoolean())) {
+            return null;
+        }
+        if (type.isArray()) {
+            int length = type.getLength() > 0 ? type.getLength() : depth > MAX_DEPTH ? 0 : random.nextInt(4);
+            if (type.isPrimitive()) {
+                switch (type.getPrimitiveType()) {
+                    case BYTE:
+                        byte[] bytes = new byte[length];
+                        random.nextBytes(bytes);
+                        return bytes;
+                    case INT:
+                        return random.ints(length).toArray();
+                    case LONG:
+                        return random.longs(length).toArray();
+                    case STRING:
+                        String[] strings = new String[length];
+                        for (int i = 0; i < length; i++) {
+                            strings[i] = randomString();
+                        }
+                        return strings;
+                    default:
+                        return null;
+                }
+            }
+            Object[] structs = new Object[length];
+            for (int i = 0; i < length; i++) {
+                structs[i] = randomStruct(type.getStructDefinition(), depth);
+            }
+            return structs;
+        }
+        if (type.isPrimitive()) {
+            switch (type.getPrimitiveType()) {
+                case BOOLEAN:
+                    return random.nextBoolean();
+                case BYTE:
+                    return (byte) random.nextInt();
+                case INT:
+                    return random.nextInt();
+                case LONG:
+                    return random.nextLong();
+                default:
+                    return randomString();
+            }
+        }
+        return randomStruct(type.getStructDefinition(), depth);
+    }
+
+    private String randomString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = random.nextInt(20); i > 0; i--) {
+            if (random.nextInt(8) == 0) {
+                // Multibyte characters, a surrogate pair and an unpaired surrogate
+                s.append(OTHER_CHARACTERS[random.nextInt(OTHER_CHARACTERS.length)]);
+            } else {
+                s.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return s.toString();
+    }
+
+    private static boolean deepEquals(Object a, Object b) {
+        if (a instanceof Map && b instanceof Map) {
+            Map<?, ?> ma = (Map<?, ?>) a;
+            Map<?, ?> mb = (Map<?, ?>) b;
+            if (!new ArrayList<>(ma.keySet()).equals(new ArrayList<>(mb.keySet()))) {
+                return false;
+            }
+            for (Object key : ma.keySet()) {
+                if (!deepEquals(ma.get(key), mb.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof Object[] && b instanceof Object[]) {
+            Object[] oa = (Object[]) a;
+            Object[] ob = (Object[]) b;
+            if (oa.length != ob.length) {
+                return false;
+            }
+            for (int i = 0; i < oa.length; i++) {
+                if (!deepEquals(oa[i], ob[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a != null && b != null && a.getClass().isArray()) {
+            return a.getClass() == b.getClass() && Array.getLength(a) == Array.getLength(b)
+                && Arrays.deepEquals(new Object[] {a}, new Object[] {b});
+        }
+        return Objects.equals(a, b);
+    }
+}
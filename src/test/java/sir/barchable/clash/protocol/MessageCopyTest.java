@@ -0,0 +1,205 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.util.BufferPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static sir.barchable.clash.protocol.Pdu.Type.EnemyHomeData;
+
+/**
+ * @author Sir Barchable
+ */
+public class MessageCopyTest {
+    private MessageFactory messageFactory = new MessageFactory(new TypeFactory());
+
+    @Test
+    public void testCopyNewMessage() {
+        Message home = enemyHome();
+        checkCopy(home);
+    }
+
+    @Test
+    public void testCopyReadMessage() {
+        Pdu pdu = messageFactory.toPdu(enemyHome());
+        try {
+            for (boolean lazy : new boolean[] {false, true}) {
+                messageFactory.setLazy(lazy);
+                pdu.clearCiphertext();
+                Message home = messageFactory.fromPdu(pdu);
+                checkCopy(home);
+
+                // Unchanged copies write the same bytes
+                Pdu copy = messageFactory.toPdu(home.copy());
+                Pdu original = messageFactory.toPdu(home);
+                try {
+                    Assert.assertArrayEquals(original.getPayload(), copy.getPayload());
+                } finally {
+                    copy.release();
+                    original.release();
+                }
+            }
+        } finally {
+            pdu.release();
+        }
+    }
+
+    @Test
+    public void testCopyLeavesNestedMessageAttached() {
+        Pdu pdu = messageFactory.toPdu(enemyHome());
+        try {
+            for (boolean lazy : new boolean[] {false, true}) {
+                messageFactory.setLazy(lazy);
+                pdu.clearCiphertext();
+                for (Message home : new Message[] {enemyHome(), messageFactory.fromPdu(pdu)}) {
+                    Message user = home.getMessage("user");
+                    Message copy = user.copy();
+                    user.set("userName", "changed");
+                    copy.set("userName", "copy");
+
+                    // The nested message still writes through to its parent
+                    Assert.assertEquals("changed", home.getMessage("user").getString("userName"));
+                    Assert.assertEquals("copy", copy.getString("userName"));
+                }
+            }
+        } finally {
+            pdu.release();
+        }
+    }
+
+    @Test
+    public void testCopyOnlyCopiesChangedFields() {
+        Pdu pdu = messageFactory.toPdu(enemyHome());
+        try {
+            messageFactory.setLazy(false);
+            Message home = messageFactory.fromPdu(pdu);
+            home.getMessage("user").set("userName", "changed");
+            Object user = home.get("user");
+
+            // Only the changed struct is copied. Everything else is left to be read again from the payload.
+            Message copy = home.copy();
+            int copied = 0;
+            for (Object value : ((LazyStruct) copy.getFields()).refs) {
+                if (value instanceof Map || value instanceof Object[]) {
+                    Assert.assertNotSame(user, value);
+                    copied++;
+                }
+            }
+            Assert.assertEquals(1, copied);
+
+            Assert.assertEquals(1, (int) copy.getInt("age"));
+            Assert.assertEquals("changed", copy.getMessage("user").getString("userName"));
+            Assert.assertEquals("clan", copy.getMessage("user").getFields("clan").get("clanName"));
+        } finally {
+            pdu.release();
+        }
+    }
+
+    @Test
+    public void testConcurrentCopies() throws Exception {
+        Pdu pdu = messageFactory.toPdu(enemyHome());
+        byte[] expected = pdu.getPayload();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int n = 0; n < 3; n++) {
+                messageFactory.setLazy(n == 2);
+                pdu.clearCiphertext();
+                Message template = n == 0 ? enemyHome() : messageFactory.fromPdu(pdu);
+                Map<String, Object> fields = template.getFields();
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    int id = t;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < 500; i++) {
+                            Message copy = template.copy();
+                            copy.set("age", id);
+                            copy.getMessage("user").set("userName", "copy " + id);
+                            copy.getMessage("user").getFields("clan").put("clanName", "clan " + id);
+                            Assert.assertEquals(id, (int) copy.getInt("age"));
+                            Assert.assertEquals("copy " + id, copy.getMessage("user").getString("userName"));
+                            Assert.assertEquals("clan " + id, copy.getMessage("user").getFields("clan").get("clanName"));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                // The template was only read
+                Assert.assertSame(fields, template.getFields());
+                Pdu written = messageFactory.toPdu(template);
+                try {
+                    Assert.assertArrayEquals(expected, written.getPayload());
+                } finally {
+                    written.release();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            pdu.release();
+        }
+    }
+
+    @Test
+    public void testReadMessageOutlivesPooledPdu() {
+        Pdu written = messageFactory.toPdu(enemyHome());
+        byte[] bytes = written.getPayload();
+        written.release();
+
+        BufferPool pool = new BufferPool();
+        Pdu pdu = Pdu.allocate(pool, EnemyHomeData.id(), bytes.length);
+        System.arraycopy(bytes, 0, pdu.getPayloadBuffer(), 0, bytes.length);
+        messageFactory.setLazy(true);
+        Message home = messageFactory.fromPdu(pdu);
+        byte[] buffer = pdu.getPayloadBuffer();
+        pdu.release();
+
+        // The message kept the buffer, so the pool doesn't hand it out again
+        byte[] reused = pool.acquire(bytes.length);
+        Assert.assertNotSame(buffer, reused);
+        Arrays.fill(reused, (byte) -1);
+
+        Assert.assertEquals("enemy", home.getMessage("user").getString("userName"));
+        Pdu copy = messageFactory.toPdu(home);
+        try {
+            Assert.assertArrayEquals(bytes, copy.getPayload());
+        } finally {
+            copy.release();
+        }
+    }
+
+    private void checkCopy(Message home) {
+        Message copy = home.copy();
+        copy.set("age", 2);
+        copy.getMessage("user").set("userName", "copy");
+        home.getMessage("user").getFields("clan").put("clanName", "original");
+
+        Assert.assertEquals(1, (int) home.getInt("age"));
+        Assert.assertEquals("enemy", home.getMessage("user").getString("userName"));
+        Assert.assertEquals("original", home.getMessage("user").getFields("clan").get("clanName"));
+
+        Assert.assertEquals(2, (int) copy.getInt("age"));
+        Assert.assertEquals("copy", copy.getMessage("user").getString("userName"));
+        Assert.assertEquals("clan", copy.getMessage("user").getFields("clan").get("clanName"));
+    }
+
+    private Message enemyHome() {
+        Message home = messageFactory.newMessage(EnemyHomeData);
+        home.set("age", 1);
+        Message user = home.getMessage("user");
+        user.set("userName", "enemy");
+        Message clan = messageFactory.newMessage("ClanComponent");
+        clan.set("clanName", "clan");
+        user.set("clan", clan);
+        return home;
+    }
+}
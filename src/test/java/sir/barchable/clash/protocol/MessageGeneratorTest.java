@@ -0,0 +1,112 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.clash.model.json.Village;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static sir.barchable.clash.protocol.Pdu.Type.EnemyHomeData;
+
+/**
+ * @author Sir Barchable
+ */
+public class MessageGeneratorTest {
+    private MessageFactory messageFactory = new MessageFactory(new TypeFactory());
+
+    /**
+     * Read each generated message back, then write it again from a plain copy of its fields and from its typed
+     * class. Neither can splice bytes from the original payload, so both have to encode every field.
+     */
+    @Test
+    public void testRoundTripAllTypes() {
+        MessageGenerator generator = new MessageGenerator(messageFactory, 1);
+        generator.setSize(8);
+        for (Pdu.Type type : generator.getMessageTypes()) {
+            for (int i = 0; i < 4; i++) {
+                Pdu pdu = generator.generatePdu(type);
+                try {
+                    byte[] payload = pdu.getPayload();
+                    Message message = messageFactory.fromPdu(pdu);
+                    Assert.assertEquals(type, message.getType());
+
+                    Message copy = messageFactory.newMessage(type);
+                    for (Map.Entry<String, Object> field : message.getFields().entrySet()) {
+                        copy.set(field.getKey(), plain(field.getValue()));
+                    }
+                    assertWrites(type.toString(), payload, messageFactory.toPdu(copy));
+
+                    TypedMessage typed = messageFactory.decode(pdu);
+                    if (typed != null) {
+                        assertWrites(type + " (typed)", payload, messageFactory.toPdu(typed));
+                    }
+                } finally {
+                    pdu.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedSameMessages() {
+        MessageGenerator a = new MessageGenerator(messageFactory, 42);
+        MessageGenerator b = new MessageGenerator(messageFactory, 42);
+        for (Pdu.Type type : a.getMessageTypes()) {
+            Pdu pduA = a.generatePdu(type);
+            Pdu pduB = b.generatePdu(type);
+            try {
+                Assert.assertArrayEquals(type.toString(), pduA.getPayload(), pduB.getPayload());
+            } finally {
+                pduA.release();
+                pduB.release();
+            }
+        }
+    }
+
+    @Test
+    public void testVillage() throws IOException {
+        MessageGenerator generator = new MessageGenerator(messageFactory, 1);
+        generator.setSize(40);
+        Pdu pdu = generator.generatePdu(EnemyHomeData);
+        try {
+            Village village = messageFactory.fromPdu(pdu).getModel("homeVillage", Village.class);
+            Assert.assertEquals(41, village.buildings.length);
+            Assert.assertEquals(20, village.obstacles.length);
+            Assert.assertEquals(10, village.traps.length);
+        } finally {
+            pdu.release();
+        }
+    }
+
+    private static void assertWrites(String message, byte[] expected, Pdu pdu) {
+        try {
+            Assert.assertArrayEquals(message, expected, pdu.getPayload());
+        } finally {
+            pdu.release();
+        }
+    }
+
+    /**
+     * A copy of a decoded value in plain maps and arrays, with every field read.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object plain(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> field : ((Map<String, Object>) value).entrySet()) {
+                copy.put(field.getKey(), plain(field.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof Object[]) {
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = plain(copy[i]);
+            }
+            return copy;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.clash.model.json.Village;
+import sir.barchable.clash.protocol.typed.OwnHomeData;
+
+import java.io.IOException;
+
+/**
+ * @author Sir Barchable
+ */
+public class ModelCacheTest {
+    private MessageFactory messageFactory = new MessageFactory(new TypeFactory());
+
+    @Test
+    public void testParseOnce() throws IOException {
+        Message home = messageFactory.newMessage(Pdu.Type.OwnHomeData);
+        home.set("homeVillage", "{\"wave_num\":1}");
+        Village village = home.getModel("homeVillage", Village.class);
+        Assert.assertEquals(1, (int) village.wave_num);
+        Assert.assertSame(village, home.getModel("homeVillage", Village.class));
+
+        home.set("homeVillage", "{\"wave_num\":2}");
+        Assert.assertEquals(2, (int) home.getModel("homeVillage", Village.class).wave_num);
+    }
+
+    @Test
+    public void testSharedByPduReaders() throws IOException {
+        Message home = messageFactory.newMessage(Pdu.Type.OwnHomeData);
+        home.set("homeVillage", "{\"wave_num\":1}");
+        Pdu pdu = messageFactory.toPdu(home);
+        try {
+            Message first = messageFactory.fromPdu(pdu);
+            Assert.assertSame(first, messageFactory.fromPdu(pdu));
+            Assert.assertSame(
+                first.getModel("homeVillage", Village.class),
+                messageFactory.fromPdu(pdu).getModel("homeVillage", Village.class)
+            );
+
+            pdu.clearCiphertext();
+            Assert.assertNotSame(first, messageFactory.fromPdu(pdu));
+        } finally {
+            pdu.release();
+        }
+    }
+
+    @Test
+    public void testSharedByMessageAndTypedMessage() throws IOException {
+        Message home = messageFactory.newMessage(Pdu.Type.OwnHomeData);
+        home.set("homeVillage", "{\"wave_num\":1}");
+        Pdu pdu = messageFactory.toPdu(home);
+        try {
+            Village village = messageFactory.fromPdu(pdu).getModel("homeVillage", Village.class);
+            OwnHomeData typed = messageFactory.fromPdu(pdu, OwnHomeData.class);
+            Assert.assertSame(village, typed.getModels().get("homeVillage", typed.homeVillage, Village.class));
+        } finally {
+            pdu.release();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static sir.barchable.util.NoopCipher.NOOP_CIPHER;
+
+/**
+ * @author Sir Barchable
+ */
+public class PduDecoderTest {
+    private Random random = new Random(1);
+
+    @Test
+    public void testFramesEveryPduInOneRead() throws IOException {
+        byte[][] payloads = new byte[50][];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = randomBytes(random.nextInt(200));
+        }
+        CountingChannel in = new CountingChannel(stream(payloads), Integer.MAX_VALUE);
+
+        PduDecoder decoder = new PduDecoder();
+        for (byte[] payload : payloads) {
+            PduDecoder.Frame frame = decoder.read(in);
+            Assert.assertEquals(10101, frame.getId());
+            Assert.assertEquals(7, frame.getVersion());
+            Assert.assertArrayEquals(payload, frame.copyPayload());
+        }
+        Assert.assertEquals(1, in.reads);
+    }
+
+    @Test
+    public void testLargePdu() throws IOException {
+        // More than 64k, to exercise the high byte of the length
+        byte[] large = randomBytes(200000);
+        byte[] small = randomBytes(10);
+        PduDecoder decoder = new PduDecoder(1024);
+        ReadableByteChannel in = new CountingChannel(stream(small, large, small), Integer.MAX_VALUE);
+
+        Assert.assertArrayEquals(small, decoder.read(in).copyPayload());
+        Assert.assertArrayEquals(large, decoder.read(in).copyPayload());
+        Assert.assertArrayEquals(small, decoder.read(in).copyPayload());
+    }
+
+    @Test
+    public void testTrickle() throws IOException {
+        byte[][] payloads = {randomBytes(5), randomBytes(0), randomBytes(300)};
+        PduDecoder decoder = new PduDecoder(16);
+        ReadableByteChannel in = new CountingChannel(stream(payloads), 3);
+
+        for (byte[] payload : payloads) {
+            Assert.assertArrayEquals(payload, decoder.read(in).copyPayload());
+        }
+        Assert.assertEquals(0, decoder.available());
+    }
+
+    @Test
+    public void testPduInputStream() throws IOException {
+        byte[][] payloads = {randomBytes(70000), randomBytes(1)};
+        PduInputStream in = new PduInputStream(new ByteArrayInputStream(stream(payloads)), NOOP_CIPHER);
+        for (byte[] payload : payloads) {
+            Pdu pdu = in.read();
+            Assert.assertEquals(10101, pdu.getId());
+            Assert.assertArrayEquals(payload, pdu.getPayload());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedPdu() throws IOException {
+        byte[] bytes = stream(randomBytes(100));
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+        new PduDecoder().read(in);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] stream(byte[]... payloads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes, NOOP_CIPHER);
+        for (byte[] payload : payloads) {
+            Pdu pdu = new Pdu();
+            pdu.setId(10101);
+            pdu.setVersion(7);
+            pdu.setPayload(payload);
+            out.write(pdu);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Counts reads, and returns no more than chunkSize bytes from each.
+     */
+    private static class CountingChannel implements ReadableByteChannel {
+        private final ByteBuffer source;
+        private final int chunkSize;
+        private int reads;
+
+        CountingChannel(byte[] bytes, int chunkSize) {
+            this.source = ByteBuffer.wrap(bytes);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            reads++;
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(dst.remaining(), source.remaining()), chunkSize);
+            ByteBuffer chunk = source.slice();
+            chunk.limit(n);
+            dst.put(chunk);
+            source.position(source.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
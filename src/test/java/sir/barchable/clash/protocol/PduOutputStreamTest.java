@@ -0,0 +1,172 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static sir.barchable.clash.protocol.PduOutputStream.FlushPolicy.BATCH;
+
+/**
+ * @author Sir Barchable
+ */
+public class PduOutputStreamTest {
+    private Random random = new Random(1);
+
+    @Test
+    public void testBatchIsOneWrite() throws IOException {
+        byte[][] payloads = payloads(4);
+        CountingOutputStream bytes = new CountingOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes);
+        out.beginBatch();
+        out.beginBatch();
+        for (byte[] payload : payloads) {
+            out.write(new Pdu(10101, payload));
+        }
+        out.endBatch();
+        Assert.assertEquals(0, bytes.writes);
+        out.endBatch();
+        Assert.assertEquals(1, bytes.writes);
+        Assert.assertArrayEquals(immediate(payloads), bytes.toByteArray());
+    }
+
+    @Test
+    public void testBatchPolicyWaitsForFlush() throws IOException {
+        byte[][] payloads = payloads(3);
+        CountingOutputStream bytes = new CountingOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes);
+        out.setFlushPolicy(BATCH);
+        for (byte[] payload : payloads) {
+            out.write(new Pdu(10101, payload));
+        }
+        Assert.assertEquals(0, bytes.size());
+        out.flush();
+        Assert.assertEquals(1, bytes.writes);
+        Assert.assertArrayEquals(immediate(payloads), bytes.toByteArray());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        byte[][] payloads = payloads(3);
+        CountingOutputStream bytes = new CountingOutputStream();
+        ManualScheduler scheduler = new ManualScheduler();
+        try {
+            PduOutputStream out = new PduOutputStream(bytes);
+            out.setScheduler(scheduler);
+            out.setFlushDeadline(20_000);
+            for (byte[] payload : payloads) {
+                out.write(new Pdu(10101, payload));
+            }
+            // One flush scheduled, for the first PDU
+            Assert.assertEquals(1, scheduler.scheduled);
+            Assert.assertEquals(20_000, scheduler.delayMicros);
+            Assert.assertEquals(0, bytes.writes);
+
+            scheduler.fire();
+            Assert.assertEquals(1, bytes.writes);
+            Assert.assertArrayEquals(immediate(payloads), bytes.toByteArray());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeadlineFailureIsThrownFromNextWrite() throws Exception {
+        FailingOutputStream bytes = new FailingOutputStream();
+        ManualScheduler scheduler = new ManualScheduler();
+        try {
+            PduOutputStream out = new PduOutputStream(bytes);
+            out.setScheduler(scheduler);
+            out.setFlushDeadline(20_000);
+            out.write(new Pdu(10101, payloads(1)[0]));
+            scheduler.fire();
+            Assert.assertEquals(1, bytes.writes);
+
+            try {
+                out.write(new Pdu(10101, payloads(1)[0]));
+                Assert.fail("Expected the deadline failure");
+            } catch (IOException e) {
+                Assert.assertSame(bytes.failure, e);
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private byte[][] payloads(int count) {
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            payloads[i] = new byte[10 + random.nextInt(500)];
+            random.nextBytes(payloads[i]);
+        }
+        return payloads;
+    }
+
+    private static byte[] immediate(byte[][] payloads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes);
+        for (byte[] payload : payloads) {
+            out.write(new Pdu(10101, payload));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Holds on to the last task scheduled, which only runs when the test {@link #fire fires} it.
+     */
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+        private Runnable task;
+        private int scheduled;
+        private long delayMicros;
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            task = command;
+            scheduled++;
+            delayMicros = unit.toMicros(delay);
+            return super.schedule(() -> {}, 1, TimeUnit.DAYS);
+        }
+
+        void fire() {
+            Runnable task = this.task;
+            this.task = null;
+            task.run();
+        }
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        private volatile int writes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            super.write(b, off, len);
+            writes++;
+        }
+    }
+
+    private static class FailingOutputStream extends OutputStream {
+        private final IOException failure = new IOException("Broken pipe");
+        private volatile int writes;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writes++;
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Forwarding PDUs as ciphertext between streams in the same keystream.
+ *
+ * @author Sir Barchable
+ */
+public class PduPassThroughTest {
+    private static final byte[] KEY = "0123456789abcdefghijklmn".getBytes(UTF_8);
+
+    private Random random = new Random(1);
+
+    @Test
+    public void testUnmodifiedPdusAreForwardedVerbatim() throws IOException {
+        byte[][] payloads = payloads(5);
+        byte[] sent = send(payloads);
+        byte[] forwarded = forward(sent, -1, null);
+        Assert.assertArrayEquals(sent, forwarded);
+    }
+
+    @Test
+    public void testReplacementOfSameLength() throws IOException {
+        byte[][] payloads = payloads(5);
+        byte[] replacement = new byte[payloads[2].length];
+        random.nextBytes(replacement);
+        byte[] sent = send(payloads);
+
+        byte[] forwarded = forward(sent, 2, replacement);
+
+        byte[][] expected = payloads.clone();
+        expected[2] = replacement;
+        Assert.assertArrayEquals(expected, receive(forwarded, 5));
+        // The keystream stays aligned, so the PDUs after the replacement are still passed through
+        int tail = payloads[3].length + payloads[4].length + 14;
+        Assert.assertArrayEquals(
+            Arrays.copyOfRange(sent, sent.length - tail, sent.length),
+            Arrays.copyOfRange(forwarded, forwarded.length - tail, forwarded.length)
+        );
+    }
+
+    @Test
+    public void testReplacementOfDifferentLength() throws IOException {
+        byte[][] payloads = payloads(5);
+        byte[] replacement = new byte[payloads[2].length + 10];
+        random.nextBytes(replacement);
+
+        byte[] forwarded = forward(send(payloads), 2, replacement);
+
+        byte[][] expected = payloads.clone();
+        expected[2] = replacement;
+        Assert.assertArrayEquals(expected, receive(forwarded, 5));
+    }
+
+    private byte[][] payloads(int count) {
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            payloads[i] = new byte[100 + random.nextInt(1000)];
+            random.nextBytes(payloads[i]);
+        }
+        return payloads;
+    }
+
+    private static byte[] send(byte[][] payloads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes, keyed());
+        for (byte[] payload : payloads) {
+            out.write(new Pdu(10101, payload));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Proxy a stream, replacing the payload of one PDU.
+     */
+    private static byte[] forward(byte[] sent, int replace, byte[] replacement) throws IOException {
+        PduInputStream in = new PduInputStream(new ByteArrayInputStream(sent));
+        in.setKey(KEY);
+        in.setRetainCiphertext(true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes);
+        out.setKey(KEY);
+        for (int i = 0; ; i++) {
+            Pdu pdu;
+            try {
+                pdu = in.read();
+            } catch (EOFException e) {
+                break;
+            }
+            Assert.assertTrue(pdu.hasCiphertext());
+            if (i == replace) {
+                pdu.setPayload(replacement);
+                Assert.assertFalse(pdu.hasCiphertext());
+            }
+            out.write(pdu);
+            pdu.release();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[][] receive(byte[] bytes, int count) throws IOException {
+        PduInputStream in = new PduInputStream(new ByteArrayInputStream(bytes), keyed());
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            payloads[i] = in.read().getPayload();
+        }
+        return payloads;
+    }
+
+    private static Clash7Crypt keyed() {
+        Clash7Crypt cipher = new Clash7Crypt();
+        cipher.setKey(KEY);
+        return cipher;
+    }
+}
@@ -0,0 +1,92 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static sir.barchable.clash.protocol.Pdu.Type.EndClientTurn;
+import static sir.barchable.clash.protocol.Pdu.Type.Login;
+
+/**
+ * Projected reads.
+ *
+ * @author Sir Barchable
+ */
+public class ProjectionTest {
+    private MessageFactory messageFactory = new MessageFactory(new TypeFactory());
+
+    @Test
+    public void testUnion() {
+        Projection projection = Projection.of(Login, "clientSeed").union(Projection.of(EndClientTurn, "commands.x"));
+        Assert.assertTrue(projection.includes(Login));
+        Assert.assertFalse(projection.includes(Pdu.Type.Encryption));
+        Assert.assertTrue(projection.fields(EndClientTurn).get("commands").includes("x"));
+        Assert.assertFalse(projection.fields(EndClientTurn).get("commands").includes("y"));
+
+        projection = projection.and(EndClientTurn, "commands");
+        Assert.assertSame(Projection.Fields.ALL, projection.fields(EndClientTurn).get("commands"));
+        Assert.assertSame(Projection.ALL, projection.union(Projection.ALL));
+        Assert.assertSame(projection, projection.union(Projection.NONE));
+    }
+
+    @Test
+    public void testOtherTypes() {
+        Projection projection = Projection.of(Login, "clientSeed").andOtherTypes();
+        Assert.assertTrue(projection.includes(EndClientTurn));
+        Assert.assertTrue(projection.fields(EndClientTurn).isEmpty());
+        Assert.assertTrue(projection.fields(Login).includes("clientSeed"));
+
+        projection = projection.and(EndClientTurn, "checksum");
+        Assert.assertTrue(projection.fields(EndClientTurn).includes("checksum"));
+        Assert.assertTrue(projection.fields(Pdu.Type.Encryption).isEmpty());
+        Assert.assertSame(Projection.ALL, projection.union(Projection.ALL));
+
+        Message turn = messageFactory.newMessage(EndClientTurn);
+        turn.set("tick", 5);
+        Pdu pdu = messageFactory.toPdu(turn);
+        try {
+            Message message = messageFactory.fromPdu(pdu, Projection.NONE.andOtherTypes().fields(EndClientTurn));
+            Assert.assertEquals(EndClientTurn, message.getType());
+            Assert.assertNull(message.get("tick"));
+        } finally {
+            pdu.release();
+        }
+    }
+
+    @Test
+    public void testReadProjected() {
+        Map<String, Object> move = new LinkedHashMap<>();
+        move.put("id", 501);
+        move.put("x", 10);
+        move.put("y", 20);
+        move.put("buildingId", 500000007);
+        Map<String, Object> place = new LinkedHashMap<>();
+        place.put("id", 600);
+        place.put("typeId", 4000001);
+        Message turn = messageFactory.newMessage(EndClientTurn);
+        turn.set("tick", 5);
+        turn.set("checksum", 99);
+        turn.set("commands", new Object[] {move, place});
+
+        Pdu pdu = messageFactory.toPdu(turn);
+        try {
+            Projection projection = Projection.of(EndClientTurn, "checksum", "commands.y");
+            Message message = messageFactory.fromPdu(pdu, projection.fields(EndClientTurn));
+
+            Assert.assertNull(message.get("tick"));
+            Assert.assertEquals(99, (int) message.getInt("checksum"));
+            Message[] commands = message.getArray("commands");
+            Assert.assertEquals(2, commands.length);
+            // Extension ids are always read
+            Assert.assertEquals(501, (int) commands[0].getInt("id"));
+            Assert.assertEquals(20, (int) commands[0].getInt("y"));
+            Assert.assertNull(commands[0].get("x"));
+            Assert.assertEquals(600, (int) commands[1].getInt("id"));
+            Assert.assertNull(commands[1].get("typeId"));
+        } finally {
+            pdu.release();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.clash.protocol.Protocol.StructDefinition;
+import sir.barchable.clash.protocol.Protocol.StructDefinition.FieldDefinition;
+import sir.barchable.util.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * @author Sir Barchable
+ */
+public class ProtocolSnapshotTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        Protocol protocol = readProtocol();
+        byte[] json = Json.toPrettyString(protocol).getBytes(UTF_8);
+        ProtocolSnapshot snapshot = snapshot(protocol, json);
+
+        Assert.assertEquals(Json.toString(protocol), Json.toString(snapshot.getProtocol()));
+        Assert.assertTrue(snapshot.isSnapshotOf(json));
+
+        TypeFactory fromJson = new TypeFactory(protocol);
+        TypeFactory fromSnapshot = new TypeFactory();
+        for (StructDefinition struct : protocol.getMessages()) {
+            for (FieldDefinition field : struct.getFields()) {
+                TypeFactory.Type expected = fromJson.resolveType(field.getType());
+                TypeFactory.Type actual = fromSnapshot.resolveType(field.getType());
+                Assert.assertEquals(expected.getName(), actual.getName());
+                Assert.assertEquals(expected.isOptional(), actual.isOptional());
+                Assert.assertEquals(expected.isArray(), actual.isArray());
+                Assert.assertEquals(expected.getLength(), actual.getLength());
+            }
+            if (struct.getId() != null) {
+                Assert.assertSame(fromSnapshot.resolveType(struct.getName()), fromSnapshot.getMessageType(struct.getId()).getType());
+            }
+        }
+    }
+
+    @Test
+    public void testStaleSnapshot() throws IOException {
+        Protocol protocol = readProtocol();
+        byte[] json = Json.toPrettyString(protocol).getBytes(UTF_8);
+        ProtocolSnapshot snapshot = snapshot(protocol, json);
+
+        byte[] edited = Json.toPrettyString(new Protocol(protocol.getMessages().subList(1, protocol.getMessages().size()))).getBytes(UTF_8);
+        Assert.assertFalse(snapshot.isSnapshotOf(edited));
+    }
+
+    private static Protocol readProtocol() throws IOException {
+        try (InputStream in = Protocol.class.getResourceAsStream("Protocol.json")) {
+            return Json.read(in, Protocol.class);
+        }
+    }
+
+    private static ProtocolSnapshot snapshot(Protocol protocol, byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProtocolSnapshot.write(protocol, json, out);
+        return ProtocolSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -18,4 +18,17 @@ public class TypeParserTest {
         Assert.assertFalse(type.isArray());
         Assert.assertEquals(0, type.getLength());
     }
+
+    @Test
+    public void testMessageTypeRegistry() {
+        TypeFactory.MessageType login = typeParser.getMessageType(Pdu.Type.Login.id());
+        Assert.assertEquals(Pdu.Type.Login, login.getPduType());
+        Assert.assertEquals("Login", login.getName());
+        Assert.assertSame(typeParser.resolveType("Login"), login.getType());
+        Assert.assertNull(typeParser.getMessageType(65535));
+        for (Pdu.Type pduType : Pdu.Type.values()) {
+            Assert.assertEquals(pduType, Pdu.Type.valueOf(pduType.id()));
+        }
+        Assert.assertEquals(Pdu.Type.Unknown, Pdu.Type.valueOf(70000));
+    }
 }
@@ -0,0 +1,110 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sir.barchable.clash.protocol.typed.CommandComponent;
+import sir.barchable.clash.protocol.typed.EndClientTurn;
+import sir.barchable.clash.protocol.typed.TypedMessages;
+import sir.barchable.util.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generated message classes against the map API.
+ *
+ * @author Sir Barchable
+ */
+public class TypedMessageTest {
+    private Protocol protocol;
+    private TypeFactory typeFactory;
+    private MessageWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        try (InputStream in = Protocol.class.getResourceAsStream("Protocol.json")) {
+            protocol = Json.read(in, Protocol.class);
+        }
+        typeFactory = new TypeFactory(protocol);
+        writer = new MessageWriter(typeFactory);
+    }
+
+    @Test
+    public void testReadCommands() throws IOException {
+        Map<String, Object> move = new LinkedHashMap<>();
+        move.put("id", 501);
+        move.put("x", 10);
+        move.put("y", 20);
+        move.put("buildingId", 500000007);
+        Map<String, Object> place = new LinkedHashMap<>();
+        place.put("id", 600);
+        place.put("typeId", 4000001);
+        Map<String, Object> turn = new LinkedHashMap<>();
+        turn.put("tick", 5);
+        turn.put("commands", new Object[] {move, place});
+
+        byte[] bytes = write("EndClientTurn", turn);
+        EndClientTurn message = (EndClientTurn) decode(EndClientTurn.ID, bytes);
+
+        Assert.assertEquals(5, message.tick);
+        Assert.assertEquals(2, message.commands.length);
+        CommandComponent first = message.commands[0];
+        Assert.assertEquals(501, first.id);
+        Assert.assertEquals(10, first.extension501.x);
+        Assert.assertEquals(20, first.extension501.y);
+        Assert.assertEquals(500000007, first.extension501.buildingId);
+        Assert.assertNull(first.extension600);
+        Assert.assertEquals(4000001, message.commands[1].extension600.typeId);
+
+        Assert.assertArrayEquals(bytes, encode(message));
+    }
+
+    /**
+     * Every message written with default values through the map API should read and write back the same.
+     */
+    @Test
+    public void testDefaultsRoundTrip() throws IOException {
+        for (Protocol.StructDefinition definition : protocol.getMessages()) {
+            Integer id = definition.getId();
+            if (id == null || typeFactory.getMessageType(id).getStructDefinition() != definition) {
+                continue;
+            }
+            byte[] bytes;
+            try {
+                bytes = write(definition.getName(), Collections.emptyMap());
+            } catch (IOException e) {
+                // Needs values the map API won't default, e.g. fixed length arrays
+                continue;
+            }
+            TypedMessage message = decode(id, bytes);
+            Assert.assertNotNull(definition.getName(), message);
+            Assert.assertArrayEquals(definition.getName(), bytes, encode(message));
+        }
+    }
+
+    private byte[] write(String typeName, Map<String, Object> fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageOutputStream out = new MessageOutputStream(bytes);
+        writer.write(typeFactory.resolveType(typeName), fields, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static TypedMessage decode(int id, byte[] bytes) throws IOException {
+        return TypedMessages.decode(id, new MessageInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static byte[] encode(TypedMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageOutputStream out = new MessageOutputStream(bytes);
+        message.encode(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,84 @@
+package sir.barchable.clash.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * @author Sir Barchable
+ */
+public class ZipStringsTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        StringBuilder village = new StringBuilder("{\"buildings\":[");
+        for (int i = 0; i < 1000; i++) {
+            village.append("{\"data\":").append(1000000 + i % 50).append(",\"lvl\":").append(i % 11).append("},");
+        }
+        village.append("{}]}");
+        String s = village.toString();
+
+        String read = read(write(s));
+        Assert.assertEquals(s, read);
+        Assert.assertEquals("", read(write("")));
+    }
+
+    /**
+     * Unchanged strings should be written back exactly as they were read, even if we'd have zipped them differently.
+     */
+    @Test
+    public void testReuseBlock() throws IOException {
+        String s = "Sir Barchable's village, zipped harder than usual. Sir Barchable's village.";
+        byte[] utf8 = s.getBytes("UTF-8");
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(zipped, new Deflater(Deflater.BEST_COMPRESSION))) {
+            out.write(utf8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageOutputStream out = new MessageOutputStream(bytes);
+        out.writeInt(zipped.size() + 5);
+        out.writeInt(Integer.reverseBytes(utf8.length));
+        out.write(zipped.toByteArray());
+        out.write(0);
+        out.flush();
+        byte[] original = bytes.toByteArray();
+
+        ModelCache models = new ModelCache();
+        String read = read(original, models);
+        Assert.assertEquals(s, read);
+        Assert.assertArrayEquals(original, write(read, models));
+        Assert.assertArrayEquals(original, write(read, models.forCopy()));
+
+        // Blocks are kept with the message, not globally
+        Assert.assertFalse(Arrays.equals(original, write(read, new ModelCache())));
+    }
+
+    private static byte[] write(String s) throws IOException {
+        return write(s, null);
+    }
+
+    private static byte[] write(String s, ModelCache models) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageOutputStream out = new MessageOutputStream(bytes);
+        out.setModels(models);
+        out.writeZipString(s);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static String read(byte[] bytes) throws IOException {
+        return read(bytes, null);
+    }
+
+    private static String read(byte[] bytes, ModelCache models) throws IOException {
+        MessageInputStream in = new MessageInputStream(new ByteArrayInputStream(bytes));
+        in.setModels(models);
+        return in.readZipString();
+    }
+}
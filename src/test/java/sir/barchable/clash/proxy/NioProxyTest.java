@@ -0,0 +1,209 @@
+package sir.barchable.clash.proxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sir.barchable.clash.protocol.*;
+import sir.barchable.util.KeystreamBuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A keyed session through the {@link NioProxy} over loopback, against an echo server.
+ *
+ * @author Sir Barchable
+ */
+public class NioProxyTest {
+    private static final int SEED = 1234;
+
+    private MessageFactory messageFactory = new MessageFactory(new TypeFactory());
+    private Random random = new Random(1);
+
+    private ServerSocket upstream;
+    private ServerSocketChannel listener;
+    private NioProxy proxy;
+    private CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * PDUs as the server decrypted them.
+     */
+    private List<Pdu> received = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        upstream = new ServerSocket(0, 1, loopback);
+        Thread server = new Thread(this::serve, "Echo server");
+        server.setDaemon(true);
+        server.start();
+
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(loopback, 0));
+        proxy = new NioProxy(
+            messageFactory,
+            upstream.getLocalSocketAddress(),
+            new PduFilterChain(),
+            1,
+            session -> closed.countDown()
+        );
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        proxy.shutdown();
+        listener.close();
+        upstream.close();
+    }
+
+    @Test
+    public void testKeyedSession() throws Exception {
+        Pdu login = login();
+        byte[][] payloads = {payload(100), payload(20000), payload(0)};
+
+        try (Connection client = connect()) {
+            client.getOut().write(login);
+            keyClient(client);
+            for (int i = 0; i < payloads.length; i++) {
+                Pdu pdu = new Pdu(10108, payloads[i]);
+                pdu.setVersion(i);
+                client.getOut().write(pdu);
+
+                Pdu echo = client.getIn().read();
+                Assert.assertEquals(20108, echo.getId());
+                Assert.assertEquals(i, echo.getVersion());
+                Assert.assertArrayEquals(payloads[i], echo.getPayload());
+            }
+        }
+
+        // The server only reads the PDUs after login in the clear if the proxy re-keyed both sides
+        Assert.assertEquals(1 + payloads.length, received.size());
+        Assert.assertArrayEquals(login.getPayload(), received.get(0).getPayload());
+        for (int i = 0; i < payloads.length; i++) {
+            Pdu pdu = received.get(i + 1);
+            Assert.assertEquals(10108, pdu.getId());
+            Assert.assertEquals(i, pdu.getVersion());
+            Assert.assertArrayEquals(payloads[i], pdu.getPayload());
+        }
+
+        Assert.assertTrue("Session not closed", closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPrefetchedKeystream() throws Exception {
+        proxy.setPrefetch(KeystreamBuffer.Mode.BACKGROUND);
+        testKeyedSession();
+    }
+
+    @Test
+    public void testHalfClose() throws Exception {
+        byte[][] payloads = {payload(100), payload(20000), payload(50)};
+
+        Socket socket = new Socket();
+        socket.connect(listener.getLocalAddress());
+        proxy.accept(listener.accept());
+        try (Connection client = new Connection(socket)) {
+            client.getOut().write(login());
+            keyClient(client);
+            for (byte[] payload : payloads) {
+                client.getOut().write(new Pdu(10108, payload));
+            }
+            socket.shutdownOutput();
+
+            // Echoes still queued toward the client are delivered after its EOF
+            for (byte[] payload : payloads) {
+                Assert.assertArrayEquals(payload, client.getIn().read().getPayload());
+            }
+            try {
+                client.getIn().read();
+                Assert.fail("Expected EOF");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+
+        Assert.assertTrue("Session not closed", closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownClosesSessions() throws Exception {
+        try (Connection client = connect()) {
+            client.getOut().write(login());
+            keyClient(client);
+
+            proxy.shutdown();
+
+            Assert.assertTrue("Session not closed", closed.await(10, TimeUnit.SECONDS));
+            try {
+                client.getIn().read();
+                Assert.fail("Expected EOF");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(listener.getLocalAddress());
+        proxy.accept(listener.accept());
+        return new Connection(socket);
+    }
+
+    private Pdu login() {
+        Message login = messageFactory.newMessage(Pdu.Type.Login);
+        login.set("userId", 42L);
+        login.set("clientSeed", SEED);
+        login.set("field15", new byte[5]);
+        return messageFactory.toPdu(login);
+    }
+
+    private void keyClient(Connection client) throws IOException {
+        Message encryption = messageFactory.fromPdu(client.getIn().read());
+        client.setKey(new Clash7Random(SEED).scramble(encryption.getBytes("serverRandom")));
+    }
+
+    private byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        random.nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Answer the login with a nonce, then echo each PDU back with a response id.
+     */
+    private void serve() {
+        try (Connection connection = new Connection(upstream.accept())) {
+            Pdu login = connection.getIn().read();
+            received.add(login);
+            Message encryption = messageFactory.newMessage(Pdu.Type.Encryption);
+            byte[] nonce = new byte[24];
+            new Random(2).nextBytes(nonce);
+            encryption.set("serverRandom", nonce);
+            encryption.set("version", 1);
+            connection.getOut().write(messageFactory.toPdu(encryption));
+            int seed = messageFactory.fromPdu(login).getInt("clientSeed");
+            connection.setKey(new Clash7Random(seed).scramble(nonce));
+            while (true) {
+                Pdu pdu = connection.getIn().read();
+                received.add(pdu);
+                Pdu echo = new Pdu(pdu.getId() + 10000, pdu.getPayload());
+                echo.setVersion(pdu.getVersion());
+                connection.getOut().write(echo);
+            }
+        } catch (IOException e) {
+            // Closed
+        }
+    }
+}
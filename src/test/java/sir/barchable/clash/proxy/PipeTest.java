@@ -0,0 +1,233 @@
+package sir.barchable.clash.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.clash.protocol.Clash7Crypt;
+import sir.barchable.clash.protocol.Pdu;
+import sir.barchable.clash.protocol.PduDecoder;
+import sir.barchable.clash.protocol.PduInputStream;
+import sir.barchable.clash.protocol.PduOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static sir.barchable.clash.protocol.Pdu.Type.EnemyHomeData;
+
+/**
+ * Cutting large PDUs through a {@link Pipe}.
+ *
+ * @author Sir Barchable
+ */
+public class PipeTest {
+    private static final byte[] KEY = "0123456789abcdefghijklmn".getBytes(UTF_8);
+    private static final int HEADER_LENGTH = PduDecoder.HEADER_LENGTH;
+
+    /**
+     * The most the source hands over per read.
+     */
+    private static final int CHUNK = 1024;
+
+    private Random random = new Random(1);
+
+    @Test
+    public void testCutThrough() throws IOException {
+        byte[] payload = payload(64 * 1024);
+        RecordingFilter filter = new RecordingFilter(false);
+
+        SlowSource source = new SlowSource(encrypt(payload));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        pipe(source, sink).filterThrough(filter);
+
+        // The header and most of the payload were forwarded before the last of it arrived
+        Assert.assertTrue(source.sunkBeforeLastRead >= HEADER_LENGTH + payload.length - CHUNK);
+        Assert.assertArrayEquals(encrypt(payload), sink.toByteArray());
+        Assert.assertArrayEquals(payload, filter.payload);
+    }
+
+    @Test
+    public void testFilterThatNeedsWholePdu() throws IOException {
+        byte[] payload = payload(64 * 1024);
+        RecordingFilter observer = new RecordingFilter(false);
+        RecordingFilter modifier = new RecordingFilter(true);
+        PduFilterChain chain = new PduFilterChain(observer, modifier);
+        Assert.assertTrue(chain.needsWholePdu(EnemyHomeData));
+
+        SlowSource source = new SlowSource(encrypt(payload));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        pipe(source, sink).filterThrough(chain);
+
+        Assert.assertEquals(0, source.sunkBeforeLastRead);
+        Assert.assertArrayEquals(encrypt(payload), sink.toByteArray());
+        Assert.assertArrayEquals(payload, observer.payload);
+        Assert.assertArrayEquals(payload, modifier.payload);
+    }
+
+    @Test
+    public void testSmallPduIsNotCutThrough() throws IOException {
+        byte[] payload = payload(8 * 1024);
+        RecordingFilter filter = new RecordingFilter(false);
+
+        SlowSource source = new SlowSource(encrypt(payload));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        pipe(source, sink).filterThrough(filter);
+
+        Assert.assertEquals(0, source.sunkBeforeLastRead);
+        Assert.assertArrayEquals(encrypt(payload), sink.toByteArray());
+        Assert.assertArrayEquals(payload, filter.payload);
+    }
+
+    @Test
+    public void testTransparentForwarding() throws IOException {
+        byte[] large = payload(64 * 1024);
+        byte[] small = payload(1024);
+        byte[] modified = payload(1024);
+        RecordingFilter filter = new RecordingFilter(false);
+
+        SlowSource source = new SlowSource(encrypt(large, small, modified));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        CountingCrypt sinkCipher = new CountingCrypt();
+        Pipe pipe = transparentPipe(source, sink, sinkCipher);
+
+        // Observed PDUs, cut through or not, go out as their original ciphertext
+        pipe.filterThrough(filter);
+        Assert.assertArrayEquals(large, filter.payload);
+        pipe.filterThrough(filter);
+        Assert.assertArrayEquals(small, filter.payload);
+        Assert.assertEquals(0, sinkCipher.encrypted);
+
+        // The sink's keystream has kept up, so a PDU that has to be re-encrypted still comes out right
+        pipe.filterThrough(new Modifier());
+        Assert.assertEquals(modified.length, sinkCipher.encrypted);
+        Assert.assertArrayEquals(encrypt(large, small, modified), sink.toByteArray());
+    }
+
+    private Pipe pipe(SlowSource source, ByteArrayOutputStream sink) {
+        source.sink = sink;
+        return new Pipe("Test", new PduInputStream(source, keyed()), new PduOutputStream(sink, keyed()));
+    }
+
+    /**
+     * A pipe whose source keeps the ciphertext of the PDUs it reads, with the key exchange done through the streams
+     * so that the source and sink know they share a keystream.
+     */
+    private Pipe transparentPipe(SlowSource source, ByteArrayOutputStream sink, CountingCrypt sinkCipher) {
+        source.sink = sink;
+        PduInputStream in = new PduInputStream(source, new CountingCrypt());
+        in.setKey(KEY);
+        in.setRetainCiphertext(true);
+        PduOutputStream out = new PduOutputStream(sink, sinkCipher);
+        out.setKey(KEY);
+        return new Pipe("Test", in, out);
+    }
+
+    private byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        random.nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * The PDUs written whole, for comparison with what was cut through.
+     */
+    private static byte[] encrypt(byte[]... payloads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PduOutputStream out = new PduOutputStream(bytes, keyed());
+        for (byte[] payload : payloads) {
+            Pdu pdu = new Pdu(EnemyHomeData.id(), payload);
+            pdu.setVersion(3);
+            out.write(pdu);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Clash7Crypt keyed() {
+        Clash7Crypt cipher = new Clash7Crypt();
+        cipher.setKey(KEY);
+        return cipher;
+    }
+
+    /**
+     * Hands over its bytes a chunk at a time, noting how much had reached the sink when the last chunk was read.
+     */
+    private static class SlowSource extends InputStream {
+        private final byte[] bytes;
+        private int position;
+        private ByteArrayOutputStream sink;
+        private int sunkBeforeLastRead = -1;
+
+        SlowSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position == bytes.length) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, CHUNK), bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            if (position == bytes.length) {
+                sunkBeforeLastRead = sink.size();
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Keeps a copy of the payload it was passed.
+     */
+    private static class RecordingFilter implements PduFilter {
+        private final boolean needsWholePdu;
+        private byte[] payload;
+
+        RecordingFilter(boolean needsWholePdu) {
+            this.needsWholePdu = needsWholePdu;
+        }
+
+        @Override
+        public Pdu filter(Pdu pdu) {
+            payload = Arrays.copyOf(pdu.getPayloadBuffer(), pdu.getPayloadLength());
+            return pdu;
+        }
+
+        @Override
+        public boolean needsWholePdu(Pdu.Type type) {
+            return needsWholePdu;
+        }
+    }
+
+    /**
+     * Stands in for a filter that changes the payload in place.
+     */
+    private static class Modifier implements PduFilter {
+        @Override
+        public Pdu filter(Pdu pdu) {
+            pdu.clearCiphertext();
+            return pdu;
+        }
+    }
+
+    /**
+     * Counts the bytes it actually encrypts, as opposed to skipping.
+     */
+    private static class CountingCrypt extends Clash7Crypt {
+        private int encrypted;
+
+        @Override
+        public void encrypt(byte[] b, int off, int len) {
+            encrypted += len;
+            super.encrypt(b, off, len);
+        }
+    }
+}
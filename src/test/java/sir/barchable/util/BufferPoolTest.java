@@ -0,0 +1,64 @@
+package sir.barchable.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sir.barchable.clash.protocol.Pdu;
+
+/**
+ * @author Sir Barchable
+ */
+public class BufferPoolTest {
+    private BufferPool pool = new BufferPool();
+
+    @Test
+    public void testSizeClasses() {
+        Assert.assertEquals(256, pool.acquire(0).length);
+        Assert.assertEquals(256, pool.acquire(256).length);
+        Assert.assertEquals(512, pool.acquire(257).length);
+        Assert.assertEquals(1 << 24, pool.acquire((1 << 24) - 1).length);
+        Assert.assertEquals((1 << 24) + 1, pool.acquire((1 << 24) + 1).length);
+    }
+
+    @Test
+    public void testReuse() {
+        byte[] buffer = pool.acquire(1000);
+        pool.release(buffer);
+        Assert.assertSame(buffer, pool.acquire(900));
+        Assert.assertNotSame(buffer, pool.acquire(900));
+    }
+
+    @Test
+    public void testPooledOutputStream() {
+        PooledOutputStream out = new PooledOutputStream(pool, 4);
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+            out.write(i);
+        }
+        Assert.assertEquals(1000, out.size());
+        Pdu pdu = Pdu.wrap(pool, 10101, out.detach(), out.size());
+        Assert.assertArrayEquals(bytes, pdu.getPayload());
+        Assert.assertEquals(1024, pdu.getPayloadBuffer().length);
+    }
+
+    @Test
+    public void testPduReferenceCount() {
+        Pdu pdu = Pdu.allocate(pool, 10101, 300);
+        byte[] buffer = pdu.getPayloadBuffer();
+        Assert.assertEquals(300, pdu.getPayload().length);
+
+        pdu.retain();
+        pdu.release();
+        Assert.assertEquals(300, pdu.getPayloadLength());
+        pdu.release();
+        Assert.assertEquals(0, pdu.getPayloadLength());
+        Assert.assertSame(buffer, pool.acquire(300));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOverRelease() {
+        Pdu pdu = Pdu.allocate(pool, 10101, 10);
+        pdu.release();
+        pdu.release();
+    }
+}